@@ -0,0 +1,9 @@
+import request from '@/utils/request'
+
+export function fetchList(query) {
+  return request({
+    url: '/visitor-session-record/page',
+    method: 'get',
+    params: query
+  })
+}
@@ -61,6 +61,7 @@ export default {
     log: '日志管理',
     loginLog: '登录日志',
     clientConnectLog: '客户端连接日志',
+    visitorSessionLog: '访问者会话日志',
     report: '报表管理',
     userFlowReport: '用户流量报表',
     licenseFlowReport: 'License流量报表',
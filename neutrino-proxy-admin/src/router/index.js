@@ -112,7 +112,8 @@ export const asyncRouterMap = [
     children: [
       { path: 'jobLog', component: _import('log/jobLog'), name: 'jobLog', meta: { title: 'jobLog' }},
       { path: 'loginLog', component: _import('log/loginLog'), name: 'loginLog', meta: { title: 'loginLog' }},
-      { path: 'clientConnectLog', component: _import('log/clientConnectLog'), name: 'clientConnectLog', meta: { title: 'clientConnectLog' }}
+      { path: 'clientConnectLog', component: _import('log/clientConnectLog'), name: 'clientConnectLog', meta: { title: 'clientConnectLog' }},
+      { path: 'visitorSessionLog', component: _import('log/visitorSessionLog'), name: 'visitorSessionLog', meta: { title: 'visitorSessionLog' }}
     ]
   }
 ]
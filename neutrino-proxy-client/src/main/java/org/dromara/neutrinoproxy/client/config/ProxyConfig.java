@@ -1,9 +1,13 @@
 package org.dromara.neutrinoproxy.client.config;
 
 import lombok.Data;
+import org.dromara.neutrinoproxy.core.transport.KcpConfig;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Inject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * @author: aoshiguchen
@@ -45,6 +49,42 @@ public class ProxyConfig {
 		private Boolean transferLogEnable;
 		private Boolean heartbeatLogEnable;
 		private Reconnection reconnection;
+		/**
+		 * 是否开启数据报隧道，开启后UDP端口映射优先走UDP隧道，服务端未开启时仍走TCP隧道
+		 */
+		private Boolean datagramEnable = false;
+		/**
+		 * 数据报隧道保活间隔（秒），用于维持NAT映射，<=0 不发送保活
+		 */
+		private Integer datagramKeepaliveSeconds = 20;
+		/**
+		 * 隧道传输方式：tcp、kcp，需与server-port对应的服务端端口一致
+		 */
+		private String transport = "tcp";
+		/**
+		 * KCP参数，需与服务端一致
+		 */
+		private KcpConfig kcp = new KcpConfig();
+		/**
+		 * 多路径隧道
+		 */
+		private Multipath multipath = new Multipath();
+	}
+
+	@Data
+	public static class Multipath {
+		/**
+		 * 是否开启，开启后访问者连接分散到多条路径的代理连接上，突破单条长RTT连接的拥塞窗口限制
+		 */
+		private Boolean enable = false;
+		/**
+		 * 本地出口地址，每个地址一条路径（如多网卡），为空时只有一条由系统选择出口的路径
+		 */
+		private List<String> localAddresses = new ArrayList<>();
+		/**
+		 * 每条路径预先建立的代理连接数
+		 */
+		private Integer connectionsPerPath = 4;
 	}
 
 	@Data
@@ -70,5 +110,17 @@ public class ProxyConfig {
 		private Integer workThreadCount;
 		private String puppetPortRange;
 		private Boolean transferLogEnable;
+		/**
+		 * 传输方式：nio、epoll（仅Linux，不可用时回退为nio）
+		 */
+		private String transport = "nio";
+		/**
+		 * epoll 模式下每次系统调用最多收发的数据报数
+		 */
+		private Integer batchSize = 16;
+		/**
+		 * epoll 模式下单个数据报的最大长度，超出部分被截断
+		 */
+		private Integer maxDatagramSize = 4096;
 	}
 }
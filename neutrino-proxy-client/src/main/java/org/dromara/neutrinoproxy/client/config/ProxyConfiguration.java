@@ -1,9 +1,12 @@
 package org.dromara.neutrinoproxy.client.config;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -11,10 +14,14 @@ import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import org.dromara.neutrinoproxy.client.core.*;
 import org.dromara.neutrinoproxy.client.util.ProxyUtil;
+import org.dromara.neutrinoproxy.client.util.UdpServerUtil;
 import org.dromara.neutrinoproxy.core.*;
 import org.dromara.neutrinoproxy.core.aot.NeutrinoCoreRuntimeNativeRegistrar;
 import org.dromara.neutrinoproxy.core.dispatcher.DefaultDispatcher;
 import org.dromara.neutrinoproxy.core.dispatcher.Dispatcher;
+import org.dromara.neutrinoproxy.core.transport.TunnelTransport;
+import org.dromara.neutrinoproxy.core.transport.TunnelTransports;
+import org.dromara.neutrinoproxy.core.util.DatagramChannelUtil;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelHandlerContext;
 import org.noear.solon.Solon;
@@ -55,9 +62,9 @@ public class ProxyConfiguration implements LifecycleBean {
     }
 
     @Bean("udpServerGroup")
-    public NioEventLoopGroup udpServerGroup(@Inject ProxyConfig proxyConfig) {
+    public EventLoopGroup udpServerGroup(@Inject ProxyConfig proxyConfig) {
         // 暂时先公用此配置
-        return new NioEventLoopGroup(proxyConfig.getClient().getUdp().getBossThreadCount());
+        return DatagramChannelUtil.newEventLoopGroup(proxyConfig.getClient().getUdp().getTransport(), proxyConfig.getClient().getUdp().getBossThreadCount());
     }
 
     @Bean("udpWorkGroup")
@@ -66,12 +73,15 @@ public class ProxyConfiguration implements LifecycleBean {
         return new NioEventLoopGroup(proxyConfig.getClient().getUdp().getWorkThreadCount());
     }
 
+    @Bean("tunnelTransport")
+    public TunnelTransport tunnelTransport(@Inject ProxyConfig proxyConfig) {
+        return TunnelTransports.of(proxyConfig.getTunnel().getTransport(), proxyConfig.getTunnel().getKcp());
+    }
+
     @Bean("cmdTunnelBootstrap")
     public Bootstrap cmdTunnelBootstrap(@Inject ProxyConfig proxyConfig,
-                                        @Inject("tunnelWorkGroup") NioEventLoopGroup tunnelWorkGroup) {
-        Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(tunnelWorkGroup);
-        bootstrap.channel(NioSocketChannel.class);
+                                        @Inject("tunnelWorkGroup") NioEventLoopGroup tunnelWorkGroup,
+                                        @Inject("tunnelTransport") TunnelTransport tunnelTransport) {
 //		bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 3000);
 //		bootstrap.option(ChannelOption.SO_KEEPALIVE, true);
 //		/**
@@ -79,12 +89,10 @@ public class ProxyConfiguration implements LifecycleBean {
 //		 * Nagle算法就是为了尽可能发送大块数据，避免网络中充斥着许多小数据块。
 //		 */
 //		bootstrap.option(ChannelOption.TCP_NODELAY, true);
-        bootstrap.remoteAddress(InetSocketAddress.createUnresolved(proxyConfig.getTunnel().getServerIp(), proxyConfig.getTunnel().getServerPort()));
-
-        bootstrap.handler(new ChannelInitializer<SocketChannel>() {
+        Bootstrap bootstrap = tunnelTransport.clientBootstrap(tunnelWorkGroup, new ChannelInitializer<Channel>() {
 
             @Override
-            public void initChannel(SocketChannel ch) throws Exception {
+            public void initChannel(Channel ch) throws Exception {
                 if (proxyConfig.getTunnel().getSslEnable()) {
                     ch.pipeline().addLast(ProxyUtil.createSslHandler(proxyConfig));
                 }
@@ -99,20 +107,18 @@ public class ProxyConfiguration implements LifecycleBean {
                 ch.pipeline().addLast(new CmdChannelHandler());
             }
         });
+        bootstrap.remoteAddress(InetSocketAddress.createUnresolved(proxyConfig.getTunnel().getServerIp(), proxyConfig.getTunnel().getServerPort()));
         return bootstrap;
     }
 
     @Bean("tcpProxyTunnelBootstrap")
     public Bootstrap tcpProxyTunnelBootstrap(@Inject ProxyConfig proxyConfig,
-                                             @Inject("tunnelWorkGroup") NioEventLoopGroup tunnelWorkGroup) {
-        Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(tunnelWorkGroup);
-        bootstrap.channel(NioSocketChannel.class);
-        bootstrap.remoteAddress(InetSocketAddress.createUnresolved(proxyConfig.getTunnel().getServerIp(), proxyConfig.getTunnel().getServerPort()));
-        bootstrap.handler(new ChannelInitializer<SocketChannel>() {
+                                             @Inject("tunnelWorkGroup") NioEventLoopGroup tunnelWorkGroup,
+                                             @Inject("tunnelTransport") TunnelTransport tunnelTransport) {
+        Bootstrap bootstrap = tunnelTransport.clientBootstrap(tunnelWorkGroup, new ChannelInitializer<Channel>() {
 
             @Override
-            public void initChannel(SocketChannel ch) throws Exception {
+            public void initChannel(Channel ch) throws Exception {
                 if (proxyConfig.getTunnel().getSslEnable()) {
                     ch.pipeline().addLast(ProxyUtil.createSslHandler(proxyConfig));
                 }
@@ -127,20 +133,18 @@ public class ProxyConfiguration implements LifecycleBean {
                 ch.pipeline().addLast(new TcpProxyChannelHandler());
             }
         });
+        bootstrap.remoteAddress(InetSocketAddress.createUnresolved(proxyConfig.getTunnel().getServerIp(), proxyConfig.getTunnel().getServerPort()));
         return bootstrap;
     }
 
     @Bean("udpProxyTunnelBootstrap")
     public Bootstrap udpProxyTunnelBootstrap(@Inject ProxyConfig proxyConfig,
-                                              @Inject("tunnelWorkGroup") NioEventLoopGroup tunnelWorkGroup) {
-        Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(tunnelWorkGroup);
-        bootstrap.channel(NioSocketChannel.class);
-        bootstrap.remoteAddress(InetSocketAddress.createUnresolved(proxyConfig.getTunnel().getServerIp(), proxyConfig.getTunnel().getServerPort()));
-        bootstrap.handler(new ChannelInitializer<SocketChannel>() {
+                                              @Inject("tunnelWorkGroup") NioEventLoopGroup tunnelWorkGroup,
+                                              @Inject("tunnelTransport") TunnelTransport tunnelTransport) {
+        Bootstrap bootstrap = tunnelTransport.clientBootstrap(tunnelWorkGroup, new ChannelInitializer<Channel>() {
 
             @Override
-            public void initChannel(SocketChannel ch) throws Exception {
+            public void initChannel(Channel ch) throws Exception {
                 if (proxyConfig.getTunnel().getSslEnable()) {
                     ch.pipeline().addLast(ProxyUtil.createSslHandler(proxyConfig));
                 }
@@ -155,6 +159,27 @@ public class ProxyConfiguration implements LifecycleBean {
                 ch.pipeline().addLast(new UdpProxyChannelHandler());
             }
         });
+        bootstrap.remoteAddress(InetSocketAddress.createUnresolved(proxyConfig.getTunnel().getServerIp(), proxyConfig.getTunnel().getServerPort()));
+        return bootstrap;
+    }
+
+    @Bean("datagramTunnelBootstrap")
+    public Bootstrap datagramTunnelBootstrap(@Inject ProxyConfig proxyConfig,
+                                             @Inject("tunnelWorkGroup") NioEventLoopGroup tunnelWorkGroup) {
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(tunnelWorkGroup)
+                .channel(NioDatagramChannel.class)
+                .option(ChannelOption.SO_RCVBUF, 2048 * 1024)
+                .option(ChannelOption.SO_SNDBUF, 1024 * 1024)
+                .handler(new ChannelInitializer<NioDatagramChannel>() {
+                    @Override
+                    protected void initChannel(NioDatagramChannel ch) {
+                        if (null != proxyConfig.getTunnel().getTransferLogEnable() && proxyConfig.getTunnel().getTransferLogEnable()) {
+                            ch.pipeline().addFirst(new LoggingHandler(DatagramTunnelChannelHandler.class));
+                        }
+                        ch.pipeline().addLast(new DatagramTunnelChannelHandler());
+                    }
+                });
         return bootstrap;
     }
 
@@ -180,25 +205,27 @@ public class ProxyConfiguration implements LifecycleBean {
 
     @Bean("udpServerBootstrap")
     public Bootstrap udpServerBootstrap(@Inject ProxyConfig proxyConfig,
-                                        @Inject("udpServerGroup") NioEventLoopGroup udpServerGroup,
+                                        @Inject("udpServerGroup") EventLoopGroup udpServerGroup,
                                         @Inject("udpWorkGroup") NioEventLoopGroup udpWorkGroup) {
+        ProxyConfig.Udp udp = proxyConfig.getClient().getUdp();
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(udpServerGroup)
-                // 主线程处理
-                .channel(NioDatagramChannel.class)
+        // 主线程处理
+        bootstrap.group(udpServerGroup);
+        DatagramChannelUtil.channel(bootstrap, udpServerGroup, udp.getBatchSize(), udp.getMaxDatagramSize())
                 // 广播
                 .option(ChannelOption.SO_BROADCAST, true)
                 // 设置读缓冲区为2M
                 .option(ChannelOption.SO_RCVBUF, 2048 * 1024)
                 // 设置写缓冲区为1M
                 .option(ChannelOption.SO_SNDBUF, 1024 * 1024)
-                .handler(new ChannelInitializer<NioDatagramChannel>() {
+                .handler(new ChannelInitializer<DatagramChannel>() {
                     @Override
-                    protected void initChannel(NioDatagramChannel ch) {
+                    protected void initChannel(DatagramChannel ch) {
                         ChannelPipeline pipeline = ch.pipeline();
-                        if (null != proxyConfig.getClient().getUdp().getTransferLogEnable() && proxyConfig.getClient().getUdp().getTransferLogEnable()) {
+                        if (null != udp.getTransferLogEnable() && udp.getTransferLogEnable()) {
                             ch.pipeline().addFirst(new LoggingHandler(UdpRealServerHandler.class));
                         }
+                        DatagramChannelUtil.addBatchHandlers(pipeline, UdpServerUtil.getBatchMetricsHandler(), udp.getBatchSize());
                         pipeline.addLast(udpWorkGroup, new UdpRealServerHandler());
                     }
                 });
@@ -52,6 +52,8 @@ public class CmdChannelHandler extends SimpleChannelInboundHandler<ProxyMessage>
         log.info("[CMD Channel]Client CmdChannel disconnect");
         ProxyUtil.setCmdChannel(null);
         ProxyUtil.clearRealServerChannels();
+        // 令牌随指令通道失效，重连认证后重新申请
+        Solon.context().getBean(DatagramTunnelClient.class).close();
 
         super.channelInactive(ctx);
     }
@@ -0,0 +1,77 @@
+package org.dromara.neutrinoproxy.client.core;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.client.util.UdpServerUtil;
+import org.dromara.neutrinoproxy.core.DatagramTunnelFrame;
+import org.dromara.neutrinoproxy.core.ProxyMessage;
+import org.noear.solon.Solon;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 数据报隧道处理器
+ * 非服务端地址发来、令牌不符（旧隧道的残留数据报）、消息认证码错误、计数重放、格式错误的数据报直接丢弃；转发目标未经指令通道放行的数据帧同样丢弃
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+@Slf4j
+public class DatagramTunnelChannelHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+    private final DatagramTunnelClient datagramTunnelClient = Solon.context().getBean(DatagramTunnelClient.class);
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagramPacket) throws Exception {
+        if (!datagramTunnelClient.isServer(datagramPacket.sender())) {
+            return;
+        }
+        DatagramTunnelFrame frame = datagramTunnelClient.decode(datagramPacket.content());
+        if (null == frame) {
+            return;
+        }
+        switch (frame.getType()) {
+            case DatagramTunnelFrame.TYPE_AUTH_ACK:
+            case DatagramTunnelFrame.TYPE_KEEPALIVE:
+                // 服务端重启等情况下认证可能丢失，收到任何应答都说明令牌仍有效
+                datagramTunnelClient.onAuthAck();
+                break;
+            case DatagramTunnelFrame.TYPE_DATA:
+                transfer(frame);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 与经TCP隧道的 UDP_TRANSFER 处理一致，只是响应经数据报隧道写回
+     */
+    private void transfer(DatagramTunnelFrame frame) {
+        if (!datagramTunnelClient.isAllowedTarget(frame.getServerPort(), frame.getTargetIp(), frame.getTargetPort())) {
+            log.debug("[datagram tunnel] target not allowed, dropped. serverPort:{} target:{}:{}", frame.getServerPort(), frame.getTargetIp(), frame.getTargetPort());
+            return;
+        }
+        ProxyMessage.UdpBaseInfo udpBaseInfo = new ProxyMessage.UdpBaseInfo()
+                .setVisitorId(String.valueOf(frame.getVisitorId()))
+                .setServerPort(frame.getServerPort())
+                .setTargetIp(frame.getTargetIp())
+                .setTargetPort(frame.getTargetPort())
+                .setProxyResponses(frame.getProxyResponses())
+                .setProxyTimeoutMs(frame.getProxyTimeoutMs());
+        Channel channel = UdpServerUtil.takeChannel(udpBaseInfo, null, true);
+        if (null == channel) {
+            log.error("[datagram tunnel] take udp channel failed.");
+            return;
+        }
+        InetSocketAddress address = new InetSocketAddress(udpBaseInfo.getTargetIp(), udpBaseInfo.getTargetPort());
+        channel.writeAndFlush(new DatagramPacket(Unpooled.wrappedBuffer(frame.getData()), address));
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("[datagram tunnel] error", cause);
+    }
+}
@@ -0,0 +1,220 @@
+package org.dromara.neutrinoproxy.client.core;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.client.config.ProxyConfig;
+import org.dromara.neutrinoproxy.client.util.UdpChannelBindInfo;
+import org.dromara.neutrinoproxy.core.DatagramReplayWindow;
+import org.dromara.neutrinoproxy.core.DatagramTunnelFrame;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据报隧道客户端
+ * 指令通道认证成功后申请令牌，收到令牌后绑定本地随机UDP端口，携带令牌向服务端发起认证，之后定时发送保活维持NAT映射。
+ * 认证应答丢失时按保活间隔重发认证；隧道未就绪期间服务端仍走TCP隧道，不影响UDP端口映射。
+ * 令牌明文传输只用于查找隧道，帧以指令通道下发的密钥认证并防重放；只接受服务端地址发来的帧，且只向服务端经指令通道通知过的目标转发。
+ * 服务端只在认证帧到达时更新客户端地址，开启保活时连续多个周期未收到应答则重新认证，以跟随NAT映射变化
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+@Slf4j
+@Component
+public class DatagramTunnelClient {
+    /**
+     * 未开启保活时，重发认证的间隔（秒）
+     */
+    private static final int AUTH_RETRY_SECONDS = 5;
+    /**
+     * 连续该数量的保活周期未收到应答时重新认证
+     */
+    private static final int KEEPALIVE_MISS_LIMIT = 3;
+
+    @Inject
+    private ProxyConfig proxyConfig;
+    @Inject("datagramTunnelBootstrap")
+    private Bootstrap datagramTunnelBootstrap;
+
+    private volatile Channel channel;
+    private volatile InetSocketAddress serverAddress;
+    private volatile long token;
+    private volatile byte[] key;
+    private volatile boolean authenticated;
+    private volatile long lastAckTime;
+    private volatile AtomicLong sendCounter = new AtomicLong();
+    private volatile DatagramReplayWindow replayWindow = new DatagramReplayWindow();
+    private ScheduledFuture<?> keepaliveFuture;
+    /**
+     * 服务端经指令通道通知放行的转发目标，随令牌重新下发清空
+     */
+    private final Set<String> allowedTargets = ConcurrentHashMap.newKeySet();
+
+    public boolean isEnable() {
+        return Boolean.TRUE.equals(proxyConfig.getTunnel().getDatagramEnable());
+    }
+
+    /**
+     * 打开隧道，指令通道重连后重新下发令牌时替换旧隧道
+     * 在指令通道的事件循环中调用，不能同步等待绑定完成
+     */
+    public synchronized void open(int port, long token, byte[] key) {
+        close();
+        InetSocketAddress address = new InetSocketAddress(proxyConfig.getTunnel().getServerIp(), port);
+        if (address.isUnresolved()) {
+            log.error("[datagram tunnel] server ip resolve failed: {}", proxyConfig.getTunnel().getServerIp());
+            return;
+        }
+        this.serverAddress = address;
+        this.token = token;
+        this.key = key;
+        this.sendCounter = new AtomicLong();
+        this.replayWindow = new DatagramReplayWindow();
+        datagramTunnelBootstrap.bind(0).addListener((ChannelFuture future) -> {
+            if (!future.isSuccess()) {
+                log.error("[datagram tunnel] bind failed", future.cause());
+                return;
+            }
+            synchronized (this) {
+                if (this.token != token) {
+                    // 绑定期间又重新下发了令牌
+                    future.channel().close();
+                    return;
+                }
+                this.channel = future.channel();
+                int keepaliveSeconds = null == proxyConfig.getTunnel().getDatagramKeepaliveSeconds() ? 0 : proxyConfig.getTunnel().getDatagramKeepaliveSeconds();
+                int period = keepaliveSeconds > 0 ? keepaliveSeconds : AUTH_RETRY_SECONDS;
+                keepaliveFuture = channel.eventLoop().scheduleAtFixedRate(() -> keepalive(keepaliveSeconds), 0, period, TimeUnit.SECONDS);
+            }
+            log.info("[datagram tunnel] open local port:{} server:{}", ((InetSocketAddress) future.channel().localAddress()).getPort(), address);
+        });
+    }
+
+    public synchronized void close() {
+        token = 0;
+        key = null;
+        authenticated = false;
+        allowedTargets.clear();
+        if (null != keepaliveFuture) {
+            keepaliveFuture.cancel(false);
+            keepaliveFuture = null;
+        }
+        if (null != channel) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * 收到服务端的认证应答
+     */
+    public void onAuthAck() {
+        lastAckTime = System.currentTimeMillis();
+        if (!authenticated) {
+            authenticated = true;
+            log.info("[datagram tunnel] auth success server:{}", serverAddress);
+        }
+    }
+
+    /**
+     * 校验并解码服务端发来的帧
+     * @return 令牌不符（旧隧道的残留数据报）、消息认证码错误、格式错误或计数重放时返回null
+     */
+    public DatagramTunnelFrame decode(ByteBuf buf) {
+        long curToken = token;
+        byte[] curKey = key;
+        if (0 == curToken || DatagramTunnelFrame.peekToken(buf) != curToken || !DatagramTunnelFrame.verify(buf, curKey)) {
+            return null;
+        }
+        DatagramTunnelFrame frame = DatagramTunnelFrame.decode(buf);
+        if (null == frame || !replayWindow.accept(frame.getCounter())) {
+            return null;
+        }
+        return frame;
+    }
+
+    /**
+     * 数据报是否来自服务端的数据报隧道端口
+     */
+    public boolean isServer(InetSocketAddress sender) {
+        InetSocketAddress address = serverAddress;
+        return null != address && null != sender && address.getPort() == sender.getPort()
+                && address.getAddress().equals(sender.getAddress());
+    }
+
+    /**
+     * 放行转发目标，只能由已认证的指令通道调用
+     */
+    public void allowTarget(int serverPort, String targetIp, int targetPort) {
+        allowedTargets.add(DatagramTunnelFrame.targetKey(serverPort, targetIp, targetPort));
+    }
+
+    public boolean isAllowedTarget(int serverPort, String targetIp, int targetPort) {
+        return allowedTargets.contains(DatagramTunnelFrame.targetKey(serverPort, targetIp, targetPort));
+    }
+
+    /**
+     * 将被代理服务的响应经数据报隧道写回服务端，超过单个数据报的最大载荷时丢弃
+     */
+    public void reply(UdpChannelBindInfo bindInfo, byte[] bytes) {
+        Channel curChannel = channel;
+        if (null == curChannel) {
+            return;
+        }
+        ByteBuf buf = encode(DatagramTunnelFrame.create(DatagramTunnelFrame.TYPE_DATA, token)
+                .setVisitorId(Long.parseLong(bindInfo.getVisitorId()))
+                .setServerPort(bindInfo.getServerPort())
+                .setData(bytes), curChannel);
+        if (null == buf) {
+            log.debug("[datagram tunnel] response too large, dropped. visitorId:{} length:{}", bindInfo.getVisitorId(), bytes.length);
+            return;
+        }
+        curChannel.writeAndFlush(new DatagramPacket(buf, serverAddress));
+    }
+
+    private void keepalive(int keepaliveSeconds) {
+        if (authenticated && keepaliveSeconds > 0
+                && System.currentTimeMillis() - lastAckTime > TimeUnit.SECONDS.toMillis((long) keepaliveSeconds * KEEPALIVE_MISS_LIMIT)) {
+            // 服务端可能重启或本地NAT映射已变化，重新认证
+            authenticated = false;
+            log.info("[datagram tunnel] keepalive timeout, re-auth server:{}", serverAddress);
+        }
+        if (!authenticated) {
+            send(DatagramTunnelFrame.TYPE_AUTH);
+        } else if (keepaliveSeconds > 0) {
+            send(DatagramTunnelFrame.TYPE_KEEPALIVE);
+        }
+    }
+
+    private void send(byte type) {
+        Channel curChannel = channel;
+        if (null == curChannel) {
+            return;
+        }
+        ByteBuf buf = encode(DatagramTunnelFrame.create(type, token), curChannel);
+        if (null != buf) {
+            curChannel.writeAndFlush(new DatagramPacket(buf, serverAddress));
+        }
+    }
+
+    /**
+     * @return 隧道已关闭或超过单个数据报的最大载荷时返回null
+     */
+    private ByteBuf encode(DatagramTunnelFrame frame, Channel curChannel) {
+        byte[] curKey = key;
+        if (null == curKey) {
+            return null;
+        }
+        return frame.setCounter(sendCounter.incrementAndGet()).encode(curChannel.alloc(), curKey);
+    }
+}
@@ -0,0 +1,200 @@
+package org.dromara.neutrinoproxy.client.core;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.client.config.ProxyConfig;
+import org.dromara.neutrinoproxy.client.util.TunnelPath;
+import org.dromara.neutrinoproxy.core.transport.TunnelTransport;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Init;
+import org.noear.solon.annotation.Inject;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多路径隧道
+ * 按配置的本地出口地址建立多条路径，每条路径预先建立若干代理连接，新的访问者连接选择负载最小的路径。
+ * 每个访问者连接独占一条代理连接，其数据始终在同一条TCP连接上按序传输。
+ * 连接失败的路径退避期间不参与选择，借用连接失败时换一条可用路径重试一次。
+ * KCP 没有连接握手，建连耗时不能反映路径RTT，因此不支持与 KCP 隧道同时使用
+ * @author: aoshiguchen
+ * @date: 2024/10/6
+ */
+@Slf4j
+@Component
+public class MultipathTunnel {
+    /**
+     * 每条路径最多保留的空闲连接数
+     */
+    private static final int MAX_IDLE_PER_PATH = 100;
+
+    @Inject
+    private ProxyConfig proxyConfig;
+    @Inject("tcpProxyTunnelBootstrap")
+    private Bootstrap tcpProxyTunnelBootstrap;
+
+    private volatile List<TunnelPath> paths = Collections.emptyList();
+
+    @Init
+    public void init() {
+        ProxyConfig.Multipath multipath = proxyConfig.getTunnel().getMultipath();
+        if (null == multipath || !Boolean.TRUE.equals(multipath.getEnable())) {
+            return;
+        }
+        if (TunnelTransport.KCP.equalsIgnoreCase(proxyConfig.getTunnel().getTransport())) {
+            log.warn("[multipath] not supported with kcp transport, disabled");
+            return;
+        }
+        List<TunnelPath> list = new ArrayList<>();
+        if (null == multipath.getLocalAddresses() || multipath.getLocalAddresses().isEmpty()) {
+            list.add(new TunnelPath(null));
+        } else {
+            for (String localAddress : multipath.getLocalAddresses()) {
+                list.add(new TunnelPath(new InetSocketAddress(localAddress.trim(), 0)));
+            }
+        }
+        this.paths = list;
+        log.info("[multipath] paths:{}", list);
+    }
+
+    public boolean isEnable() {
+        return !paths.isEmpty();
+    }
+
+    /**
+     * 指令通道认证成功后，补足每条路径的连接数
+     */
+    public void warmUp() {
+        int connectionsPerPath = proxyConfig.getTunnel().getMultipath().getConnectionsPerPath();
+        long now = System.nanoTime();
+        for (TunnelPath path : paths) {
+            if (!path.isUp(now)) {
+                continue;
+            }
+            for (int i = path.size(); i < connectionsPerPath; i++) {
+                connect(path, null);
+            }
+        }
+    }
+
+    /**
+     * 从负载最小的路径获取代理连接
+     */
+    public void borrow(ProxyChannelBorrowListener borrowListener) {
+        TunnelPath path = select(null);
+        Channel channel = path.borrow();
+        if (null != channel) {
+            borrowListener.success(channel);
+            return;
+        }
+        connect(path, new ProxyChannelBorrowListener() {
+            @Override
+            public void success(Channel channel) {
+                borrowListener.success(channel);
+            }
+
+            @Override
+            public void error(Throwable cause) {
+                TunnelPath retryPath = select(path);
+                if (retryPath == path) {
+                    borrowListener.error(cause);
+                    return;
+                }
+                Channel retryChannel = retryPath.borrow();
+                if (null != retryChannel) {
+                    borrowListener.success(retryChannel);
+                    return;
+                }
+                connect(retryPath, borrowListener);
+            }
+        });
+    }
+
+    /**
+     * 归还代理连接，返回false表示该连接不属于任何路径
+     */
+    public static boolean release(Channel channel) {
+        TunnelPath path = channel.attr(TunnelPath.TUNNEL_PATH).get();
+        if (null == path) {
+            return false;
+        }
+        path.release(channel, MAX_IDLE_PER_PATH);
+        return true;
+    }
+
+    public static boolean remove(Channel channel) {
+        TunnelPath path = channel.attr(TunnelPath.TUNNEL_PATH).get();
+        if (null == path) {
+            return false;
+        }
+        path.remove(channel);
+        return true;
+    }
+
+    /**
+     * 选择可用路径中负载最小的，excluded 不参与选择；都不可用时选择最早结束退避的路径
+     */
+    private TunnelPath select(TunnelPath excluded) {
+        List<TunnelPath> curPaths = paths;
+        long now = System.nanoTime();
+        TunnelPath selected = null;
+        long minCost = Long.MAX_VALUE;
+        for (TunnelPath path : curPaths) {
+            if (path == excluded || !path.isUp(now)) {
+                continue;
+            }
+            long cost = path.getCost();
+            if (null == selected || cost < minCost) {
+                selected = path;
+                minCost = cost;
+            }
+        }
+        if (null != selected) {
+            return selected;
+        }
+        if (null != excluded) {
+            // 没有其他可用路径，不再重试
+            return excluded;
+        }
+        selected = curPaths.get(0);
+        for (TunnelPath path : curPaths) {
+            if (path.getDownUntilNanos() - selected.getDownUntilNanos() < 0) {
+                selected = path;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 在指定路径上建立代理连接，borrowListener 为空时作为空闲连接放入池中
+     */
+    private void connect(TunnelPath path, ProxyChannelBorrowListener borrowListener) {
+        long startNanos = System.nanoTime();
+        ChannelFuture channelFuture = null == path.getLocalAddress() ? tcpProxyTunnelBootstrap.connect() :
+                tcpProxyTunnelBootstrap.connect(tcpProxyTunnelBootstrap.config().remoteAddress(), path.getLocalAddress());
+        channelFuture.addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                path.onConnectFailed();
+                log.warn("[multipath] connect failed path:{}", path, future.cause());
+                if (null != borrowListener) {
+                    borrowListener.error(future.cause());
+                }
+                return;
+            }
+            path.onConnected(future.channel(), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+            if (null == borrowListener) {
+                path.addIdle(future.channel());
+            } else {
+                path.addBusy(future.channel());
+                borrowListener.success(future.channel());
+            }
+        });
+    }
+}
@@ -6,7 +6,9 @@ import io.netty.channel.socket.DatagramPacket;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.neutrinoproxy.client.constant.Constants;
 import org.dromara.neutrinoproxy.client.util.UdpChannelBindInfo;
+import org.dromara.neutrinoproxy.client.util.UdpServerUtil;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
+import org.noear.solon.Solon;
 
 import java.net.InetSocketAddress;
 
@@ -25,17 +27,21 @@ public class UdpRealServerHandler extends SimpleChannelInboundHandler<DatagramPa
             byte[] bytes = new byte[datagramPacket.content().readableBytes()];
             datagramPacket.content().readBytes(bytes);
 
-            udpChannelBindInfo.getTunnelChannel().writeAndFlush(ProxyMessage.buildUdpTransferMessage(new ProxyMessage.UdpBaseInfo()
-                            .setVisitorId(udpChannelBindInfo.getVisitorId())
-                            .setVisitorIp(udpChannelBindInfo.getVisitorIp())
-                            .setVisitorPort(udpChannelBindInfo.getVisitorPort())
-                            .setServerPort(udpChannelBindInfo.getServerPort())
-                            .setTargetIp(udpChannelBindInfo.getTargetIp())
-                            .setTargetPort(udpChannelBindInfo.getTargetPort()))
-                    .setData(bytes)
-            );
+            if (udpChannelBindInfo.isDatagram()) {
+                Solon.context().getBean(DatagramTunnelClient.class).reply(udpChannelBindInfo, bytes);
+            } else {
+                udpChannelBindInfo.getTunnelChannel().writeAndFlush(ProxyMessage.buildUdpTransferMessage(new ProxyMessage.UdpBaseInfo()
+                                .setVisitorId(udpChannelBindInfo.getVisitorId())
+                                .setVisitorIp(udpChannelBindInfo.getVisitorIp())
+                                .setVisitorPort(udpChannelBindInfo.getVisitorPort())
+                                .setServerPort(udpChannelBindInfo.getServerPort())
+                                .setTargetIp(udpChannelBindInfo.getTargetIp())
+                                .setTargetPort(udpChannelBindInfo.getTargetPort()))
+                        .setData(bytes)
+                );
+            }
 
-            udpChannelBindInfo.getLockChannel().setResponseCount(udpChannelBindInfo.getLockChannel().getResponseCount() + 1);
+            UdpServerUtil.onResponse(udpChannelBindInfo.getLockChannel());
         }
     }
 }
@@ -3,6 +3,8 @@ package org.dromara.neutrinoproxy.client.handler;
 import io.netty.channel.ChannelHandlerContext;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.neutrinoproxy.client.config.ProxyConfig;
+import org.dromara.neutrinoproxy.client.core.DatagramTunnelClient;
+import org.dromara.neutrinoproxy.client.core.MultipathTunnel;
 import org.dromara.neutrinoproxy.core.Constants;
 import org.dromara.neutrinoproxy.core.ExceptionEnum;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
@@ -24,6 +26,10 @@ import org.noear.solon.annotation.Inject;
 public class ProxyMessageAuthHandler implements ProxyMessageHandler {
 	@Inject
 	private ProxyConfig proxyConfig;
+	@Inject
+	private DatagramTunnelClient datagramTunnelClient;
+	@Inject
+	private MultipathTunnel multipathTunnel;
 	@Override
 	public void handle(ChannelHandlerContext context, ProxyMessage proxyMessage) {
 		String info = proxyMessage.getInfo();
@@ -41,6 +47,15 @@ public class ProxyMessageAuthHandler implements ProxyMessageHandler {
 				ExceptionEnum.LICENSE_CANNOT_REPEAT_CONNECT.getCode().equals(code)
 		){
 			context.channel().close();
+		} else if (ExceptionEnum.SUCCESS.getCode().equals(code)) {
+			if (datagramTunnelClient.isEnable()) {
+				// 认证成功后申请数据报隧道令牌
+				context.channel().writeAndFlush(ProxyMessage.buildDatagramTunnelMessage());
+			}
+			if (multipathTunnel.isEnable()) {
+				// 预先在每条路径上建立代理连接
+				multipathTunnel.warmUp();
+			}
 		}
 	}
 }
@@ -1,6 +1,7 @@
 package org.dromara.neutrinoproxy.client.handler;
 
 import org.dromara.neutrinoproxy.client.config.ProxyConfig;
+import org.dromara.neutrinoproxy.client.core.MultipathTunnel;
 import org.dromara.neutrinoproxy.client.core.ProxyChannelBorrowListener;
 import org.dromara.neutrinoproxy.client.util.ProxyUtil;
 import org.dromara.neutrinoproxy.core.Constants;
@@ -13,6 +14,8 @@ import io.netty.channel.*;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Inject;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * 连接信息处理器
  * @author: aoshiguchen
@@ -27,9 +30,12 @@ public class ProxyMessageConnectHandler implements ProxyMessageHandler {
 	private Bootstrap realServerBootstrap;
 	@Inject
 	private ProxyConfig proxyConfig;
+	@Inject
+	private MultipathTunnel multipathTunnel;
 
 	@Override
 	public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
+		final long startNanos = System.nanoTime();
 		final Channel cmdChannel = ctx.channel();
 		final String visitorId = proxyMessage.getInfo();
 		String[] serverInfo = new String(proxyMessage.getData()).split(":");
@@ -44,11 +50,12 @@ public class ProxyMessageConnectHandler implements ProxyMessageHandler {
 				// 连接后端服务器成功
 				if (future.isSuccess()) {
 					final Channel realServerChannel = future.channel();
+					final long connectedNanos = System.nanoTime();
 
 					realServerChannel.config().setOption(ChannelOption.AUTO_READ, false);
 
-					// 获取连接
-					ProxyUtil.borrowTcpProxyChanel(tcpProxyTunnelBootstrap, new ProxyChannelBorrowListener() {
+					// 获取连接，开启多路径时从负载最小的路径获取
+					ProxyChannelBorrowListener borrowListener = new ProxyChannelBorrowListener() {
 
 						@Override
 						public void success(Channel channel) {
@@ -56,8 +63,10 @@ public class ProxyMessageConnectHandler implements ProxyMessageHandler {
 							channel.attr(Constants.NEXT_CHANNEL).set(realServerChannel);
 							realServerChannel.attr(Constants.NEXT_CHANNEL).set(channel);
 
-							// 远程绑定
-							channel.writeAndFlush(ProxyMessage.buildConnectMessage(visitorId + "@" + proxyConfig.getTunnel().getLicenseKey()));
+							// 远程绑定，同时上报连接被代理服务、获取代理通道的耗时（微秒）
+							long borrowedNanos = System.nanoTime();
+							String latency = TimeUnit.NANOSECONDS.toMicros(connectedNanos - startNanos) + "," + TimeUnit.NANOSECONDS.toMicros(borrowedNanos - connectedNanos);
+							channel.writeAndFlush(ProxyMessage.buildConnectMessage(visitorId + "@" + proxyConfig.getTunnel().getLicenseKey()).setData(latency.getBytes()));
 
 							realServerChannel.config().setOption(ChannelOption.AUTO_READ, true);
 							ProxyUtil.addRealServerChannel(visitorId, realServerChannel);
@@ -71,7 +80,12 @@ public class ProxyMessageConnectHandler implements ProxyMessageHandler {
 							proxyMessage.setInfo(visitorId);
 							cmdChannel.writeAndFlush(proxyMessage);
 						}
-					});
+					};
+					if (multipathTunnel.isEnable()) {
+						multipathTunnel.borrow(borrowListener);
+					} else {
+						ProxyUtil.borrowTcpProxyChanel(tcpProxyTunnelBootstrap, borrowListener);
+					}
 
 				} else {
 					cmdChannel.writeAndFlush(ProxyMessage.buildDisconnectMessage(visitorId));
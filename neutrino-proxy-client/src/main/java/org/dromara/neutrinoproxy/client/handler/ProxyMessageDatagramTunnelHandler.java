@@ -0,0 +1,45 @@
+package org.dromara.neutrinoproxy.client.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import org.dromara.neutrinoproxy.client.core.DatagramTunnelClient;
+import org.dromara.neutrinoproxy.core.Constants;
+import org.dromara.neutrinoproxy.core.ProxyDataTypeEnum;
+import org.dromara.neutrinoproxy.core.ProxyMessage;
+import org.dromara.neutrinoproxy.core.ProxyMessageHandler;
+import org.dromara.neutrinoproxy.core.dispatcher.Match;
+import org.noear.snack.ONode;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+
+import java.util.Base64;
+
+/**
+ * 数据报隧道令牌处理器
+ * 同时处理服务端下发的转发目标放行通知
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+@Match(type = Constants.ProxyDataTypeName.DATAGRAM_TUNNEL)
+@Component
+public class ProxyMessageDatagramTunnelHandler implements ProxyMessageHandler {
+	@Inject
+	private DatagramTunnelClient datagramTunnelClient;
+
+	@Override
+	public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
+		if (!datagramTunnelClient.isEnable()) {
+			return;
+		}
+		ONode load = ONode.load(proxyMessage.getInfo());
+		if (load.contains("targetIp")) {
+			datagramTunnelClient.allowTarget(load.get("serverPort").getInt(), load.get("targetIp").getString(), load.get("targetPort").getInt());
+			return;
+		}
+		datagramTunnelClient.open(load.get("port").getInt(), load.get("token").getLong(), Base64.getDecoder().decode(load.get("key").getString()));
+	}
+
+	@Override
+	public String name() {
+		return ProxyDataTypeEnum.DATAGRAM_TUNNEL.getDesc();
+	}
+}
@@ -0,0 +1,36 @@
+package org.dromara.neutrinoproxy.client.handler;
+
+import org.dromara.neutrinoproxy.client.util.TunnelPath;
+import org.dromara.neutrinoproxy.core.Constants;
+import org.dromara.neutrinoproxy.core.ProxyDataTypeEnum;
+import org.dromara.neutrinoproxy.core.ProxyMessage;
+import org.dromara.neutrinoproxy.core.ProxyMessageHandler;
+import org.dromara.neutrinoproxy.core.dispatcher.Match;
+import io.netty.channel.ChannelHandlerContext;
+import org.noear.solon.annotation.Component;
+
+/**
+ * 心跳处理器
+ * 服务端发出的带序号的心跳为延迟探测，以负序号立即回显；序号为0的心跳是服务端对客户端心跳的应答，多路径连接以其往返时延更新路径RTT
+ * @author: aoshiguchen
+ * @date: 2024/9/18
+ */
+@Match(type = Constants.ProxyDataTypeName.HEARTBEAT)
+@Component
+public class ProxyMessageHeartbeatHandler implements ProxyMessageHandler {
+
+	@Override
+	public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
+		if (proxyMessage.getSerialNumber() > 0) {
+			ctx.channel().writeAndFlush(ProxyMessage.buildHeartbeatMessage().setSerialNumber(-proxyMessage.getSerialNumber()));
+			return;
+		}
+		TunnelPath.onHeartbeatAck(ctx.channel());
+	}
+
+	@Override
+	public String name() {
+		return ProxyDataTypeEnum.HEARTBEAT.getDesc();
+	}
+
+}
@@ -30,7 +30,7 @@ public class UdpProxyMessageTransferHandler implements ProxyMessageHandler {
     public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
         final ProxyMessage.UdpBaseInfo udpBaseInfo = ONode.deserialize(proxyMessage.getInfo(), ProxyMessage.UdpBaseInfo.class);
         log.debug("[UDP transfer]info:{} data:{}", proxyMessage.getInfo(), new String(proxyMessage.getData()));
-        Channel channel = UdpServerUtil.takeChannel(udpBaseInfo, ctx.channel());
+        Channel channel = UdpServerUtil.takeChannel(udpBaseInfo, ctx.channel(), false);
         if (null == channel) {
             log.error("[UDP transfer] take udp channel failed.");
             return;
@@ -1,10 +1,12 @@
 package org.dromara.neutrinoproxy.client.util;
 
 import io.netty.channel.Channel;
+import io.netty.util.Timeout;
 import lombok.Data;
 import lombok.experimental.Accessors;
 
-import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author: aoshiguchen
@@ -22,7 +24,11 @@ public class LockChannel {
     // 超时时间（毫秒）
     private long proxyTimeoutMs;
     // 被获取的时间
-    private Date takeTime;
-    // 已经响应的次数
-    private int responseCount;
+    private long takeTime;
+    // 已经响应的次数，udp通道与释放任务并发访问
+    private final AtomicInteger responseCount = new AtomicInteger();
+    // 是否已释放，保证只释放一次
+    private final AtomicBoolean released = new AtomicBoolean();
+    // 超时释放任务
+    private volatile Timeout timeout;
 }
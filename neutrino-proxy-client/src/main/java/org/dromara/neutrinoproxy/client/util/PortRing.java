@@ -0,0 +1,92 @@
+package org.dromara.neutrinoproxy.client.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁有界端口环形队列（多生产者多消费者）
+ * 每个槽位带一个序号：序号 == 写指针 表示可写，序号 == 读指针 + 1 表示可读，读写各自 CAS 推进指针，
+ * 值写入后再以 volatile 方式更新序号发布，读取方先读序号再读值，因此值数组不需要额外同步。
+ * 只有指针确实表明写满、读空时才返回失败，另一方操作进行中时自旋等待，避免端口被误判丢弃
+ * @author: aoshiguchen
+ * @date: 2024/9/30
+ */
+public final class PortRing {
+    public static final int EMPTY = -1;
+
+    private final int mask;
+    private final int[] ports;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public PortRing(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.ports = new int[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 放入端口
+     * @return 队列已满时返回false
+     */
+    public boolean offer(int port) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    ports[index] = port;
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 槽位上一轮的端口正在被取出、序号尚未更新时并未真正写满，等待取出完成
+                if (pos - head.get() > mask) {
+                    return false;
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * 取出端口
+     * @return 队列为空时返回 EMPTY
+     */
+    public int poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    int port = ports[index];
+                    sequences.set(index, pos + mask + 1);
+                    return port;
+                }
+            } else if (diff < 0) {
+                // 槽位正在被写入、序号尚未更新时并不为空，等待写入完成
+                if (pos >= tail.get()) {
+                    return EMPTY;
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * 当前端口数（并发修改时为近似值）
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+}
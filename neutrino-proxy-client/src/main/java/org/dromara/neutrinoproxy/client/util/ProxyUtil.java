@@ -5,6 +5,7 @@ import io.netty.handler.ssl.SslHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.dromara.neutrinoproxy.client.config.ProxyConfig;
+import org.dromara.neutrinoproxy.client.core.MultipathTunnel;
 import org.dromara.neutrinoproxy.client.core.ProxyChannelBorrowListener;
 import org.dromara.neutrinoproxy.core.Constants;
 import io.netty.bootstrap.Bootstrap;
@@ -68,6 +69,9 @@ public class ProxyUtil {
 	}
 
 	public static void returnTcpProxyChanel(Channel proxyChanel) {
+		if (MultipathTunnel.release(proxyChanel)) {
+			return;
+		}
 		if (tcpProxyChannelPool.size() > MAX_POOL_SIZE) {
 			proxyChanel.close();
 		} else {
@@ -80,6 +84,9 @@ public class ProxyUtil {
 
 
 	public static void removeTcpProxyChanel(Channel proxyChanel) {
+		if (MultipathTunnel.remove(proxyChanel)) {
+			return;
+		}
 		tcpProxyChannelPool.remove(proxyChanel);
 	}
 
@@ -0,0 +1,200 @@
+package org.dromara.neutrinoproxy.client.util;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.util.AttributeKey;
+import org.dromara.neutrinoproxy.core.Constants;
+
+import java.net.InetSocketAddress;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多路径隧道中的一条路径（一个本地出口地址）及其代理连接池
+ * 单条连接受拥塞窗口限制时吞吐约为 窗口 / RTT，排空待发送数据的时间与 RTT * 字节数 成正比，
+ * 因此按 平滑RTT * (待发送字节数 + 每个在用连接的基准字节数) 估算负载，新的访问者连接选择负载最小的路径。
+ * RTT 取建立连接的耗时，之后由池中连接的心跳往返持续更新；连接失败的路径按指数退避暂停使用
+ * @author: aoshiguchen
+ * @date: 2024/10/6
+ */
+public class TunnelPath {
+    public static final AttributeKey<TunnelPath> TUNNEL_PATH = AttributeKey.newInstance("tunnel_path");
+    /**
+     * 最近一次发送心跳的时间（纳秒），收到服务端应答时计算往返时延
+     */
+    private static final AttributeKey<Long> HEARTBEAT_SENT_NANOS = AttributeKey.newInstance("tunnel_path_heartbeat_sent_nanos");
+    /**
+     * 连接失败后暂停使用的初始时长与最长时长
+     */
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(60);
+    /**
+     * 每个在用连接计入的基准字节数，没有积压时按在用连接数分摊
+     */
+    private static final long BASE_BYTES_PER_CHANNEL = 64 * 1024;
+
+    /**
+     * 本地出口地址，为空时由系统选择
+     */
+    private final InetSocketAddress localAddress;
+    private final Queue<Channel> idleChannels = new ConcurrentLinkedQueue<>();
+    private final Set<Channel> busyChannels = ConcurrentHashMap.newKeySet();
+    /**
+     * 平滑RTT（微秒），0为尚未测量
+     */
+    private volatile long srttMicros;
+    /**
+     * 连续连接失败次数及暂停使用的截止时间
+     */
+    private int failures;
+    private volatile long downUntilNanos;
+
+    public TunnelPath(InetSocketAddress localAddress) {
+        this.localAddress = localAddress;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    public long getSrttMicros() {
+        return srttMicros;
+    }
+
+    /**
+     * 连接建立后记录RTT样本，并恢复路径
+     */
+    public synchronized void onConnected(Channel channel, long rttMicros) {
+        failures = 0;
+        downUntilNanos = 0;
+        updateRtt(rttMicros);
+        channel.attr(TUNNEL_PATH).set(this);
+    }
+
+    /**
+     * 连接失败，按指数退避暂停使用该路径
+     */
+    public synchronized void onConnectFailed() {
+        failures++;
+        long backoff = MIN_BACKOFF_NANOS << Math.min(failures - 1, 6);
+        downUntilNanos = System.nanoTime() + Math.min(backoff, MAX_BACKOFF_NANOS);
+    }
+
+    /**
+     * 是否可用，连接失败后的退避期间不可用
+     */
+    public boolean isUp(long nowNanos) {
+        return nowNanos - downUntilNanos >= 0;
+    }
+
+    public long getDownUntilNanos() {
+        return downUntilNanos;
+    }
+
+    /**
+     * 更新平滑RTT，与TCP相同按 1/8 加权
+     */
+    private synchronized void updateRtt(long rttMicros) {
+        long sample = Math.max(rttMicros, 1);
+        srttMicros = srttMicros == 0 ? sample : srttMicros + (sample - srttMicros) / 8;
+    }
+
+    /**
+     * 多路径连接发送心跳时记录发送时间
+     */
+    public static void onHeartbeatSent(Channel channel) {
+        if (null != channel.attr(TUNNEL_PATH).get()) {
+            channel.attr(HEARTBEAT_SENT_NANOS).set(System.nanoTime());
+        }
+    }
+
+    /**
+     * 收到服务端的心跳应答，以往返时延更新所属路径的平滑RTT
+     */
+    public static void onHeartbeatAck(Channel channel) {
+        TunnelPath path = channel.attr(TUNNEL_PATH).get();
+        Long sentNanos = channel.attr(HEARTBEAT_SENT_NANOS).getAndSet(null);
+        if (null != path && null != sentNanos) {
+            path.updateRtt(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentNanos));
+        }
+    }
+
+    /**
+     * 取出空闲连接并标记为在用，没有可用连接时返回null
+     */
+    public Channel borrow() {
+        Channel channel;
+        while (null != (channel = idleChannels.poll())) {
+            if (channel.isActive()) {
+                busyChannels.add(channel);
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    public void addBusy(Channel channel) {
+        busyChannels.add(channel);
+    }
+
+    public void addIdle(Channel channel) {
+        idleChannels.offer(channel);
+    }
+
+    /**
+     * 访问者连接断开后归还连接，超过池容量时关闭
+     */
+    public void release(Channel channel, int maxIdle) {
+        busyChannels.remove(channel);
+        if (idleChannels.size() >= maxIdle) {
+            channel.close();
+            return;
+        }
+        channel.config().setOption(ChannelOption.AUTO_READ, true);
+        channel.attr(Constants.NEXT_CHANNEL).remove();
+        idleChannels.offer(channel);
+    }
+
+    public void remove(Channel channel) {
+        busyChannels.remove(channel);
+        idleChannels.remove(channel);
+    }
+
+    public int size() {
+        return idleChannels.size() + busyChannels.size();
+    }
+
+    public int getBusyCount() {
+        return busyChannels.size();
+    }
+
+    /**
+     * 在用连接尚未写入socket的字节数
+     */
+    public long getPendingBytes() {
+        long pendingBytes = 0;
+        for (Channel channel : busyChannels) {
+            ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+            if (null != outboundBuffer) {
+                pendingBytes += outboundBuffer.totalPendingWriteBytes();
+            }
+        }
+        return pendingBytes;
+    }
+
+    /**
+     * 负载，尚未测量RTT的路径为0，优先使用以完成测量
+     */
+    public long getCost() {
+        return srttMicros * (getPendingBytes() + BASE_BYTES_PER_CHANNEL * (busyChannels.size() + 1));
+    }
+
+    @Override
+    public String toString() {
+        return null == localAddress ? "default" : localAddress.getAddress().getHostAddress();
+    }
+}
@@ -12,6 +12,10 @@ import lombok.experimental.Accessors;
 @Data
 public class UdpChannelBindInfo {
     private Channel tunnelChannel;
+    /**
+     * 是否经数据报隧道转发，是则响应经数据报隧道写回，否则写回 tunnelChannel
+     */
+    private boolean datagram;
     private LockChannel lockChannel;
     private String visitorId;
     private String visitorIp;
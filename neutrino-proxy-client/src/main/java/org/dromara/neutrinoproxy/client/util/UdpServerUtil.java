@@ -1,20 +1,23 @@
 package org.dromara.neutrinoproxy.client.util;
 
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.dromara.neutrinoproxy.client.config.ProxyConfig;
 import org.dromara.neutrinoproxy.client.constant.Constants;
 import org.dromara.neutrinoproxy.client.core.CustomThreadFactory;
+import org.dromara.neutrinoproxy.core.DatagramBatchMetricsHandler;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
 import org.noear.solon.core.runtime.NativeDetector;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author: aoshiguchen
@@ -23,6 +26,10 @@ import java.util.concurrent.*;
 @Slf4j
 public class UdpServerUtil {
     private static final Boolean isSupportUdp = Boolean.FALSE;
+    /**
+     * 占用情况日志间隔（秒）
+     */
+    private static final long STATS_LOG_INTERVAL_SECONDS = 60;
     private static int udpServerPortMin = 0;
     private static int udpServerPortMax = 0;
     private static int nextUdpServerPort = 0;
@@ -33,12 +40,32 @@ public class UdpServerUtil {
     /**
      * udp服务空闲端口池
      */
-    private static ConcurrentLinkedQueue<Integer> udpServerFreePortPool = new ConcurrentLinkedQueue<>();
-    private static List<LockChannel> lockChannelList = new ArrayList<>();
+    private static PortRing udpServerFreePortPool;
+    /**
+     * 端口池容量（不含默认端口）
+     */
+    private static int poolCapacity;
+    /**
+     * 已锁定的端口数
+     */
+    private static final AtomicInteger lockedCount = new AtomicInteger();
     /**
-     * lockChannel扫描器
+     * 因端口池耗尽降级为默认udp服务的次数
      */
-    private static final ScheduledExecutorService lockChannelScanner = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory("lockChannelScanner"));
+    private static final LongAdder fallbackCount = new LongAdder();
+    private static long lastLogFallbackCount;
+    /**
+     * 傀儡端口批量收发统计，所有傀儡端口共用
+     */
+    private static final DatagramBatchMetricsHandler batchMetricsHandler = new DatagramBatchMetricsHandler();
+    private static long lastLogReadPackets;
+    private static long lastLogReadBatches;
+    private static long lastLogWritePackets;
+    private static long lastLogFlushes;
+    /**
+     * 锁定端口的释放定时器，按响应超时时间到期释放
+     */
+    private static HashedWheelTimer lockChannelTimer;
 
     /**
      * 初始化UDP缓存
@@ -75,8 +102,9 @@ public class UdpServerUtil {
             log.info("udp proxy server port: {} ~ {}", udpServerPortMin, udpServerPortMax);
             // 初始化udp服务
             initUdpServer();
-            // 初始化lockChannel扫描器
-            lockChannelScanner.scheduleWithFixedDelay(UdpServerUtil::lockChannelScan, 5, 3, TimeUnit.SECONDS);
+            // 初始化锁定端口释放定时器
+            lockChannelTimer = new HashedWheelTimer(new CustomThreadFactory("lockChannelTimer"), 10, TimeUnit.MILLISECONDS, 1024);
+            lockChannelTimer.newTimeout(UdpServerUtil::logStats, STATS_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
         } catch (Exception e) {
             log.error("client udp config error!", e);
             return;
@@ -89,6 +117,8 @@ public class UdpServerUtil {
     private static void initUdpServer() {
         defaultUdpServerPort = nextUdpServerPort();
         defaultUdpServerChannel = bindPort(defaultUdpServerPort);
+        poolCapacity = udpServerPortMax - udpServerPortMin;
+        udpServerFreePortPool = new PortRing(poolCapacity);
         // 初始化默认最多额外开启5个udp服务，其他的需要时再启动
         for (int i = 0; i < 5; i++) {
             if (!hasNextUdpServerPort()) {
@@ -126,36 +156,44 @@ public class UdpServerUtil {
     /**
      * 获取一个可用的udp通道
      * 1、如果期待的响应为0，或者超时时间<=0，则认为不需要响应，直接返回默认的udp服务，否则继续下一步
-     * 2、从可用端口队列中找到一个可用端口，若不存在可用端口，则降级为不需要响应，返回默认的udp服务。否则继续下一步
-     * 3、根据该端口找到udp服务通道，找不到则绑定端口开启一个通道并返回。将该端口添加到锁定列表
-     * 4、维护一个定时器的，定时扫描锁定列表，及时释放锁定的端口
+     * 2、从空闲端口池中取出一个端口，若不存在可用端口，则降级为不需要响应，返回默认的udp服务。否则继续下一步
+     * 3、根据该端口找到udp服务通道，找不到则绑定端口开启一个通道并返回
+     * 4、在定时器中挂一个响应超时任务，响应次数达到或超时后立即释放端口
      * @param info
+     * @param tunnelChannel 代理隧道，经数据报隧道转发时为null
+     * @param datagram 是否经数据报隧道转发
      * @return
      */
-    public static synchronized Channel takeChannel(ProxyMessage.UdpBaseInfo info, Channel tunnelChannel) {
+    public static Channel takeChannel(ProxyMessage.UdpBaseInfo info, Channel tunnelChannel, boolean datagram) {
         if (info.getProxyResponses() <= 0 || info.getProxyTimeoutMs() <= 0) {
             return defaultUdpServerChannel;
         }
-        Integer port = udpServerFreePortPool.poll();
-        if (null == port) {
+        int port = null == udpServerFreePortPool ? PortRing.EMPTY : udpServerFreePortPool.poll();
+        if (PortRing.EMPTY == port) {
+            fallbackCount.increment();
             return defaultUdpServerChannel;
         }
         Channel channel = portToChannelMap.get(port);
         if (null == channel) {
-            channel = bindPort(port);
+            try {
+                channel = bindPort(port);
+            } catch (Exception e) {
+                udpServerFreePortPool.offer(port);
+                fallbackCount.increment();
+                return defaultUdpServerChannel;
+            }
             portToChannelMap.put(port, channel);
         }
-        // 添加到锁定队列
+        lockedCount.incrementAndGet();
         LockChannel lockChannel = new LockChannel()
                 .setPort(port)
                 .setChannel(channel)
                 .setProxyResponses(info.getProxyResponses())
                 .setProxyTimeoutMs(info.getProxyTimeoutMs())
-                .setTakeTime(new Date())
-                .setResponseCount(0);
-        lockChannelList.add(lockChannel);
+                .setTakeTime(System.currentTimeMillis());
         channel.attr(Constants.UDP_CHANNEL_BIND_KEY).set(new UdpChannelBindInfo()
                 .setTunnelChannel(tunnelChannel)
+                .setDatagram(datagram)
                 .setVisitorId(info.getVisitorId())
                 .setVisitorIp(info.getVisitorIp())
                 .setVisitorPort(info.getVisitorPort())
@@ -164,38 +202,107 @@ public class UdpServerUtil {
                 .setTargetPort(info.getTargetPort())
                 .setLockChannel(lockChannel)
         );
+        lockChannel.setTimeout(lockChannelTimer.newTimeout(timeout -> releaseChannel(lockChannel), info.getProxyTimeoutMs(), TimeUnit.MILLISECONDS));
         return channel;
     }
 
     /**
-     * lockChannel扫描
+     * 记录一次响应，达到期望的响应次数后立即释放端口
+     * @param lockChannel
      */
-    public static synchronized void lockChannelScan() {
-        if (lockChannelList.isEmpty()) {
+    public static void onResponse(LockChannel lockChannel) {
+        if (lockChannel.getResponseCount().incrementAndGet() >= lockChannel.getProxyResponses()) {
+            releaseChannel(lockChannel);
+        }
+    }
+
+    /**
+     * 释放锁定的端口，响应次数达到与超时可能同时触发，只释放一次
+     * 代理隧道属于服务端的访问者会话，由服务端在会话空闲后关闭，这里不关闭
+     * @param lockChannel
+     */
+    private static void releaseChannel(LockChannel lockChannel) {
+        if (!lockChannel.getReleased().compareAndSet(false, true)) {
             return;
         }
-        Iterator<LockChannel> iter = lockChannelList.iterator();
-        if (iter.hasNext()) {
-            LockChannel lockChannel = iter.next();
-            if (lockChannel.getResponseCount() >= lockChannel.getProxyResponses() ||
-                    System.currentTimeMillis() - lockChannel.getTakeTime().getTime() >= lockChannel.getProxyTimeoutMs()
-            ) {
-                iter.remove();
-                UdpChannelBindInfo udpChannelBindInfo = lockChannel.getChannel().attr(Constants.UDP_CHANNEL_BIND_KEY).get();
-                // 此处必须释放代理隧道
-                closeChannel(udpChannelBindInfo.getTunnelChannel());
-                lockChannel.getChannel().attr(Constants.UDP_CHANNEL_BIND_KEY).set(null);
-                udpServerFreePortPool.offer(lockChannel.getPort());
-                log.debug("[udp channel]release udp channel port:{}", lockChannel.getPort());
-            }
+        Timeout timeout = lockChannel.getTimeout();
+        if (null != timeout) {
+            timeout.cancel();
+        }
+        Channel channel = lockChannel.getChannel();
+        UdpChannelBindInfo udpChannelBindInfo = channel.attr(Constants.UDP_CHANNEL_BIND_KEY).get();
+        if (null != udpChannelBindInfo && udpChannelBindInfo.getLockChannel() == lockChannel) {
+            channel.attr(Constants.UDP_CHANNEL_BIND_KEY).compareAndSet(udpChannelBindInfo, null);
         }
+        lockedCount.decrementAndGet();
+        udpServerFreePortPool.offer(lockChannel.getPort());
+        log.debug("[udp channel]release udp channel port:{} responses:{} cost:{}ms", lockChannel.getPort(),
+                lockChannel.getResponseCount().get(), System.currentTimeMillis() - lockChannel.getTakeTime());
     }
 
-    private static void closeChannel(Channel channel) {
-        try {
-            channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
-        } catch (Exception e) {
-            // ignore
+    /**
+     * 端口池容量
+     */
+    public static int getPoolCapacity() {
+        return poolCapacity;
+    }
+
+    /**
+     * 已锁定的端口数
+     */
+    public static int getLockedCount() {
+        return lockedCount.get();
+    }
+
+    /**
+     * 空闲端口数
+     */
+    public static int getFreeCount() {
+        return null == udpServerFreePortPool ? 0 : udpServerFreePortPool.size();
+    }
+
+    /**
+     * 端口池耗尽降级为默认udp服务的次数
+     */
+    public static long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    /**
+     * 定时输出端口池占用情况，有端口被锁定或发生降级时才输出
+     */
+    private static void logStats(Timeout timeout) {
+        long fallback = fallbackCount.sum();
+        int locked = lockedCount.get();
+        if (locked > 0 || fallback > lastLogFallbackCount) {
+            log.info("[udp channel]pool capacity:{} locked:{} free:{} fallback:{}(+{})", poolCapacity, locked, getFreeCount(),
+                    fallback, fallback - lastLogFallbackCount);
+        }
+        lastLogFallbackCount = fallback;
+        logBatchStats();
+        timeout.timer().newTimeout(UdpServerUtil::logStats, STATS_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static DatagramBatchMetricsHandler getBatchMetricsHandler() {
+        return batchMetricsHandler;
+    }
+
+    /**
+     * 输出本周期内每次系统调用平均收发的数据报数
+     */
+    private static void logBatchStats() {
+        long readPackets = batchMetricsHandler.getReadPackets() - lastLogReadPackets;
+        long readBatches = batchMetricsHandler.getReadBatches() - lastLogReadBatches;
+        long writePackets = batchMetricsHandler.getWritePackets() - lastLogWritePackets;
+        long flushes = batchMetricsHandler.getFlushes() - lastLogFlushes;
+        if (readPackets > 0 || writePackets > 0) {
+            log.info("[udp channel]read packets:{} per batch:{} write packets:{} per flush:{}", readPackets,
+                    String.format("%.2f", readBatches > 0 ? (double) readPackets / readBatches : 0),
+                    writePackets, String.format("%.2f", flushes > 0 ? (double) writePackets / flushes : 0));
         }
+        lastLogReadPackets += readPackets;
+        lastLogReadBatches += readBatches;
+        lastLogWritePackets += writePackets;
+        lastLogFlushes += flushes;
     }
 }
@@ -3,8 +3,6 @@ package org.dromara.neutrinoproxy.core;
 import io.netty.channel.Channel;
 import io.netty.util.AttributeKey;
 
-import java.net.InetSocketAddress;
-
 /**
  *
  * @author: aoshiguchen
@@ -25,15 +23,11 @@ public interface Constants {
 
     // 临时解决 udp channel被close的问题
     AttributeKey<Boolean> IS_UDP_KEY =  AttributeKey.newInstance("isUdp");
-    AttributeKey<InetSocketAddress> SENDER = AttributeKey.newInstance("sender");
 
     AttributeKey<Integer> SERVER_PORT = AttributeKey.newInstance("serverPort");
     AttributeKey<String> REAL_REMOTE_IP = AttributeKey.newInstance("realRemoteIp");
 
 
-    AttributeKey<Boolean> FLOW_LIMITER_FLAG = AttributeKey.newInstance("flowLimiterFlag");
-
-
     int HEADER_SIZE = 4;
     int TYPE_SIZE = 1;
     int SERIAL_NUMBER_SIZE = 8;
@@ -48,6 +42,7 @@ public interface Constants {
         String UDP_CONNECT = "UDP_CONNECT";
         String UDP_DISCONNECT = "UDP_DISCONNECT";
         String UDP_TRANSFER = "UDP_TRANSFER";
+        String DATAGRAM_TUNNEL = "DATAGRAM_TUNNEL";
         String ERROR = "ERROR";
         String PORT_MAPPING_SYNC = "PORT_MAPPING_SYNC";
     }
@@ -0,0 +1,66 @@
+package org.dromara.neutrinoproxy.core;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.socket.DatagramPacket;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * UDP批量收发统计
+ * 位于管道头部：读数据报数 / 读批次数 为每轮读取（epoll 下为 recvmmsg）平均收到的数据报数，
+ * 写数据报数 / 刷写次数 为每次刷写（epoll 下为 sendmmsg）平均发出的数据报数
+ * @author: aoshiguchen
+ * @date: 2024/10/4
+ */
+@ChannelHandler.Sharable
+public class DatagramBatchMetricsHandler extends ChannelDuplexHandler {
+    private final LongAdder readPackets = new LongAdder();
+    private final LongAdder readBatches = new LongAdder();
+    private final LongAdder writePackets = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readPackets.increment();
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        readBatches.increment();
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof DatagramPacket) {
+            writePackets.increment();
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flushes.increment();
+        super.flush(ctx);
+    }
+
+    public long getReadPackets() {
+        return readPackets.sum();
+    }
+
+    public long getReadBatches() {
+        return readBatches.sum();
+    }
+
+    public long getWritePackets() {
+        return writePackets.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+}
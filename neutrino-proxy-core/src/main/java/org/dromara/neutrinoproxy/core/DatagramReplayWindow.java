@@ -0,0 +1,40 @@
+package org.dromara.neutrinoproxy.core;
+
+/**
+ * 数据报隧道的防重放窗口
+ * 数据报可能乱序，接受比已收到的最大计数小但仍在窗口内且未收到过的计数，窗口外或重复的计数视为重放
+ * @author: aoshiguchen
+ * @date: 2024/10/8
+ */
+public class DatagramReplayWindow {
+    private static final int WINDOW_SIZE = 64;
+
+    private long maxCounter;
+    private long bitmap;
+
+    /**
+     * 只对已通过消息认证码校验的帧调用
+     * @return 未收到过的计数返回true
+     */
+    public synchronized boolean accept(long counter) {
+        if (counter <= 0) {
+            return false;
+        }
+        if (counter > maxCounter) {
+            long shift = counter - maxCounter;
+            bitmap = shift >= WINDOW_SIZE ? 1 : (bitmap << shift) | 1;
+            maxCounter = counter;
+            return true;
+        }
+        long offset = maxCounter - counter;
+        if (offset >= WINDOW_SIZE) {
+            return false;
+        }
+        long mask = 1L << offset;
+        if ((bitmap & mask) != 0) {
+            return false;
+        }
+        bitmap |= mask;
+        return true;
+    }
+}
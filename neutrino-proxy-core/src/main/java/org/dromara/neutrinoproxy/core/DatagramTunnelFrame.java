@@ -0,0 +1,206 @@
+package org.dromara.neutrinoproxy.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * 数据报隧道帧
+ * UDP端口映射可走客户端与服务端之间的UDP隧道，一个数据报即一帧，不分片、不重传、不保证顺序。
+ * 帧头为定长二进制，不使用json：
+ * <pre>
+ * magic(2) version(1) type(1) token(8) counter(8)
+ * 仅 TYPE_DATA：visitorId(8) serverPort(2) targetPort(2) proxyResponses(2) proxyTimeoutMs(4) targetIpLength(1) targetIp(n) data
+ * mac(16)
+ * </pre>
+ * 令牌明文传输只用于查找隧道，每帧以指令通道下发的密钥计算 HMAC-SHA256（截取前16字节），
+ * counter 为发送方递增的计数，接收方配合 {@link DatagramReplayWindow} 拒绝重放
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+@Accessors(chain = true)
+@Data
+public class DatagramTunnelFrame {
+    /**
+     * 认证，客户端携带指令通道下发的令牌
+     */
+    public static final byte TYPE_AUTH = 0x01;
+    /**
+     * 认证应答
+     */
+    public static final byte TYPE_AUTH_ACK = 0x02;
+    /**
+     * 保活，维持NAT映射，服务端原样应答
+     */
+    public static final byte TYPE_KEEPALIVE = 0x03;
+    /**
+     * 数据传输
+     */
+    public static final byte TYPE_DATA = 0x04;
+
+    private static final short MAGIC = 0x4E50;
+    private static final byte VERSION = 0x02;
+    private static final int HEADER_SIZE = 20;
+    private static final int DATA_HEADER_SIZE = HEADER_SIZE + 19;
+    private static final int MAC_SIZE = 16;
+    /**
+     * 密钥长度
+     */
+    public static final int KEY_SIZE = 32;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(MAC_ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    /**
+     * 单个UDP数据报的最大载荷
+     */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private byte type;
+    private long token;
+    private long counter;
+    private long visitorId;
+    private int serverPort;
+    private int targetPort;
+    private int proxyResponses;
+    private long proxyTimeoutMs;
+    private String targetIp;
+    private byte[] data;
+
+    /**
+     * 编码并追加消息认证码
+     * @return 超过单个数据报的最大载荷时返回null
+     */
+    public ByteBuf encode(ByteBufAllocator alloc, byte[] key) {
+        if (TYPE_DATA != type) {
+            ByteBuf buf = alloc.buffer(HEADER_SIZE + MAC_SIZE)
+                    .writeShort(MAGIC)
+                    .writeByte(VERSION)
+                    .writeByte(type)
+                    .writeLong(token)
+                    .writeLong(counter);
+            return buf.writeBytes(mac(buf, buf.readerIndex(), buf.readableBytes(), key), 0, MAC_SIZE);
+        }
+        byte[] targetIpBytes = null == targetIp ? new byte[0] : targetIp.getBytes(StandardCharsets.UTF_8);
+        int dataLength = null == data ? 0 : data.length;
+        int length = DATA_HEADER_SIZE + targetIpBytes.length + dataLength + MAC_SIZE;
+        if (targetIpBytes.length > 0xFF || length > MAX_DATAGRAM_SIZE) {
+            return null;
+        }
+        ByteBuf buf = alloc.buffer(length);
+        buf.writeShort(MAGIC)
+                .writeByte(VERSION)
+                .writeByte(type)
+                .writeLong(token)
+                .writeLong(counter)
+                .writeLong(visitorId)
+                .writeShort(serverPort)
+                .writeShort(targetPort)
+                .writeShort(Math.max(0, Math.min(proxyResponses, 0xFFFF)))
+                .writeInt((int) Math.max(0, Math.min(proxyTimeoutMs, Integer.MAX_VALUE)))
+                .writeByte(targetIpBytes.length)
+                .writeBytes(targetIpBytes);
+        if (dataLength > 0) {
+            buf.writeBytes(data);
+        }
+        return buf.writeBytes(mac(buf, buf.readerIndex(), buf.readableBytes(), key), 0, MAC_SIZE);
+    }
+
+    /**
+     * 读取令牌，不移动读指针，用于在校验前查找隧道
+     * @return 魔数、版本不符或长度不足时返回0（0不是有效令牌）
+     */
+    public static long peekToken(ByteBuf buf) {
+        int index = buf.readerIndex();
+        if (buf.readableBytes() < HEADER_SIZE + MAC_SIZE || buf.getShort(index) != MAGIC || buf.getByte(index + 2) != VERSION) {
+            return 0;
+        }
+        return buf.getLong(index + 4);
+    }
+
+    /**
+     * 校验消息认证码，不移动读指针，校验通过后再解码
+     */
+    public static boolean verify(ByteBuf buf, byte[] key) {
+        int length = buf.readableBytes() - MAC_SIZE;
+        if (length < HEADER_SIZE || null == key) {
+            return false;
+        }
+        byte[] expected = mac(buf, buf.readerIndex(), length, key);
+        byte[] actual = new byte[MAC_SIZE];
+        buf.getBytes(buf.readerIndex() + length, actual);
+        return MessageDigest.isEqual(Arrays.copyOf(expected, MAC_SIZE), actual);
+    }
+
+    private static byte[] mac(ByteBuf buf, int index, int length, byte[] key) {
+        Mac mac = MAC.get();
+        try {
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        mac.update(buf.nioBuffer(index, length));
+        return mac.doFinal();
+    }
+
+    /**
+     * 解码，从 buf 的读指针开始读取，不释放 buf；需先经 {@link #verify(ByteBuf, byte[])} 校验
+     * @return 魔数、版本不符或长度不足时返回null，由调用方直接丢弃
+     */
+    public static DatagramTunnelFrame decode(ByteBuf buf) {
+        if (buf.readableBytes() < HEADER_SIZE + MAC_SIZE) {
+            return null;
+        }
+        // 不含末尾的消息认证码
+        buf = buf.readSlice(buf.readableBytes() - MAC_SIZE);
+        if (buf.readShort() != MAGIC || buf.readByte() != VERSION) {
+            return null;
+        }
+        DatagramTunnelFrame frame = new DatagramTunnelFrame()
+                .setType(buf.readByte())
+                .setToken(buf.readLong())
+                .setCounter(buf.readLong());
+        if (TYPE_DATA != frame.getType()) {
+            return frame;
+        }
+        if (buf.readableBytes() < DATA_HEADER_SIZE - HEADER_SIZE) {
+            return null;
+        }
+        frame.setVisitorId(buf.readLong())
+                .setServerPort(buf.readUnsignedShort())
+                .setTargetPort(buf.readUnsignedShort())
+                .setProxyResponses(buf.readUnsignedShort())
+                .setProxyTimeoutMs(buf.readUnsignedInt());
+        int targetIpLength = buf.readUnsignedByte();
+        if (buf.readableBytes() < targetIpLength) {
+            return null;
+        }
+        frame.setTargetIp(buf.readCharSequence(targetIpLength, StandardCharsets.UTF_8).toString());
+        byte[] data = new byte[buf.readableBytes()];
+        buf.readBytes(data);
+        return frame.setData(data);
+    }
+
+    public static DatagramTunnelFrame create(byte type, long token) {
+        return new DatagramTunnelFrame().setType(type).setToken(token);
+    }
+
+    /**
+     * 转发目标的标识，服务端经指令通道下发放行的目标与客户端校验 TYPE_DATA 帧时使用
+     */
+    public static String targetKey(int serverPort, String targetIp, int targetPort) {
+        return serverPort + "-" + targetIp + ":" + targetPort;
+    }
+}
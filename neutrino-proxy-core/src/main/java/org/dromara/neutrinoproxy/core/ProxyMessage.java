@@ -5,6 +5,7 @@ import lombok.experimental.Accessors;
 import org.noear.snack.ONode;
 
 import java.util.Arrays;
+import java.util.Base64;
 
 /**
  *
@@ -56,6 +57,10 @@ public class ProxyMessage {
      * UDP数据传输
      */
     public static final byte TYPE_UDP_TRANSFER = 0x10;
+    /**
+     * 数据报隧道：客户端请求、服务端下发数据报隧道端口及认证令牌
+     */
+    public static final byte TYPE_DATAGRAM_TUNNEL = 0x11;
 
     /**
      * 消息类型
@@ -135,6 +140,28 @@ public class ProxyMessage {
                 .setInfo(info.toJsonString());
     }
 
+    public static ProxyMessage buildDatagramTunnelMessage() {
+        return create().setType(TYPE_DATAGRAM_TUNNEL);
+    }
+
+    public static ProxyMessage buildDatagramTunnelMessage(int port, long token, byte[] key) {
+        ONode data = ONode.newObject();
+        data.set("port", port);
+        data.set("token", token);
+        data.set("key", Base64.getEncoder().encodeToString(key));
+        return create().setType(TYPE_DATAGRAM_TUNNEL)
+                .setInfo(data.toJson());
+    }
+
+    public static ProxyMessage buildDatagramTunnelTargetMessage(int serverPort, String targetIp, int targetPort) {
+        ONode data = ONode.newObject();
+        data.set("serverPort", serverPort);
+        data.set("targetIp", targetIp);
+        data.set("targetPort", targetPort);
+        return create().setType(TYPE_DATAGRAM_TUNNEL)
+                .setInfo(data.toJson());
+    }
+
     public static ProxyMessage buildErrMessage(ExceptionEnum exceptionEnum, String info) {
         ONode data = ONode.newObject();
         data.set("code", exceptionEnum.getCode());
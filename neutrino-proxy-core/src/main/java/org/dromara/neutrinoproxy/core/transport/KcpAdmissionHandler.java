@@ -0,0 +1,82 @@
+package org.dromara.neutrinoproxy.core.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * KCP隧道的连接准入
+ * KCP没有握手，任意来源（包括伪造的源地址）的第一个数据报都会创建一个连接，并在会话存活期间按 interval 定时刷新。
+ * 该处理器位于监听通道上，在新连接注册（建立管道、启动定时刷新）之前，按总连接数、每秒新建连接数、单个IP每秒新建连接数限制，超出的直接丢弃
+ * @author: aoshiguchen
+ * @date: 2024/10/8
+ */
+@Slf4j
+public class KcpAdmissionHandler extends ChannelInboundHandlerAdapter {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final KcpConfig config;
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    // 以下状态只在监听通道的事件循环中访问
+    private final Map<InetAddress, Integer> ipAccepts = new HashMap<>();
+    private long windowStartNanos = System.nanoTime();
+    private int accepts;
+    private long dropped;
+
+    public KcpAdmissionHandler(KcpConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof Channel)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        Channel child = (Channel) msg;
+        if (!admit(child)) {
+            child.unsafe().closeForcibly();
+            return;
+        }
+        sessions.incrementAndGet();
+        child.closeFuture().addListener(future -> sessions.decrementAndGet());
+        ctx.fireChannelRead(child);
+    }
+
+    private boolean admit(Channel child) {
+        long now = System.nanoTime();
+        if (now - windowStartNanos >= WINDOW_NANOS) {
+            if (dropped > 0) {
+                log.warn("[kcp] dropped {} new sessions in last window, sessions:{}", dropped, sessions.get());
+            }
+            windowStartNanos = now;
+            accepts = 0;
+            dropped = 0;
+            ipAccepts.clear();
+        }
+        if (sessions.get() >= config.getMaxSessions() || accepts >= config.getAcceptRate()) {
+            dropped++;
+            return false;
+        }
+        InetAddress ip = child.remoteAddress() instanceof InetSocketAddress ? ((InetSocketAddress) child.remoteAddress()).getAddress() : null;
+        if (null != ip) {
+            int ipCount = ipAccepts.getOrDefault(ip, 0);
+            if (ipCount >= config.getAcceptRatePerIp()) {
+                dropped++;
+                return false;
+            }
+            ipAccepts.put(ip, ipCount + 1);
+        }
+        accepts++;
+        return true;
+    }
+}
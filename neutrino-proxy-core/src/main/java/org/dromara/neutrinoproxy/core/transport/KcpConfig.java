@@ -0,0 +1,63 @@
+package org.dromara.neutrinoproxy.core.transport;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * KCP参数，两端需保持一致
+ * 默认为极速模式：不等超时、不受拥塞窗口限制，收到2个后续包的确认即快速重传，以额外带宽换取丢包链路上更低的延迟
+ * @author: aoshiguchen
+ * @date: 2024/10/5
+ */
+@Data
+@Accessors(chain = true)
+public class KcpConfig {
+    /**
+     * 是否开启nodelay模式，开启后最小重传超时为30ms，重传超时按1.5倍而非2倍递增
+     */
+    private Boolean nodelay = true;
+    /**
+     * 内部刷新间隔（毫秒），越小重传越及时，CPU开销越大
+     */
+    private Integer interval = 10;
+    /**
+     * 快速重传阈值，被后续包跨越该次数后立即重传，0为关闭
+     */
+    private Integer fastResend = 2;
+    /**
+     * 是否关闭拥塞控制
+     */
+    private Boolean noCongestion = true;
+    /**
+     * 最小重传超时（毫秒）
+     */
+    private Integer minRto = 30;
+    /**
+     * 单个UDP包的最大长度，需小于链路MTU
+     */
+    private Integer mtu = 1350;
+    /**
+     * 发送窗口（包数）
+     */
+    private Integer sndWnd = 1024;
+    /**
+     * 接收窗口（包数）
+     */
+    private Integer rcvWnd = 1024;
+    /**
+     * 连续重传该次数仍未确认时判定连接断开
+     */
+    private Integer deadLink = 20;
+    /**
+     * 仅服务端：最大连接数
+     */
+    private Integer maxSessions = 10000;
+    /**
+     * 仅服务端：每秒最多新建的连接数
+     */
+    private Integer acceptRate = 200;
+    /**
+     * 仅服务端：单个IP每秒最多新建的连接数
+     */
+    private Integer acceptRatePerIp = 20;
+}
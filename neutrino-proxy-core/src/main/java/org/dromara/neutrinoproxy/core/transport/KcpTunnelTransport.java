@@ -0,0 +1,73 @@
+package org.dromara.neutrinoproxy.core.transport;
+
+import io.jpower.kcp.netty.UkcpChannelOption;
+import io.jpower.kcp.netty.UkcpClientChannel;
+import io.jpower.kcp.netty.UkcpServerChannel;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * KCP隧道（基于UDP的可靠传输）
+ * 使用流模式，隧道之上的协议帧与TCP隧道完全相同。
+ * 服务端所有连接共用一个UDP端口，KCP的收发与定时刷新都在 bossGroup 的同一个事件循环中进行，
+ * 协议处理（含认证的数据库查询）分派到 workerGroup 执行，避免拖慢所有隧道；新连接经 {@link KcpAdmissionHandler} 限制总数与新建速率
+ * @author: aoshiguchen
+ * @date: 2024/10/5
+ */
+public class KcpTunnelTransport implements TunnelTransport {
+    private final KcpConfig config;
+
+    public KcpTunnelTransport(KcpConfig config) {
+        this.config = null == config ? new KcpConfig() : config;
+    }
+
+    @Override
+    public String name() {
+        return KCP;
+    }
+
+    @Override
+    public ServerBootstrap serverBootstrap(EventLoopGroup bossGroup, EventLoopGroup workerGroup, ChannelHandler childHandler) {
+        return new ServerBootstrap()
+                .group(bossGroup)
+                .channel(UkcpServerChannel.class)
+                .handler(new KcpAdmissionHandler(config))
+                .childOption(UkcpChannelOption.UKCP_NODELAY, config.getNodelay())
+                .childOption(UkcpChannelOption.UKCP_INTERVAL, config.getInterval())
+                .childOption(UkcpChannelOption.UKCP_FAST_RESEND, config.getFastResend())
+                .childOption(UkcpChannelOption.UKCP_NOCWND, config.getNoCongestion())
+                .childOption(UkcpChannelOption.UKCP_MIN_RTO, config.getMinRto())
+                .childOption(UkcpChannelOption.UKCP_MTU, config.getMtu())
+                .childOption(UkcpChannelOption.UKCP_SND_WND, config.getSndWnd())
+                .childOption(UkcpChannelOption.UKCP_RCV_WND, config.getRcvWnd())
+                .childOption(UkcpChannelOption.UKCP_DEAD_LINK, config.getDeadLink())
+                .childOption(UkcpChannelOption.UKCP_STREAM, true)
+                .childHandler(childHandler);
+    }
+
+    @Override
+    public EventExecutorGroup childExecutor(EventLoopGroup workerGroup) {
+        return workerGroup;
+    }
+
+    @Override
+    public Bootstrap clientBootstrap(EventLoopGroup group, ChannelHandler handler) {
+        return new Bootstrap()
+                .group(group)
+                .channel(UkcpClientChannel.class)
+                .option(UkcpChannelOption.UKCP_NODELAY, config.getNodelay())
+                .option(UkcpChannelOption.UKCP_INTERVAL, config.getInterval())
+                .option(UkcpChannelOption.UKCP_FAST_RESEND, config.getFastResend())
+                .option(UkcpChannelOption.UKCP_NOCWND, config.getNoCongestion())
+                .option(UkcpChannelOption.UKCP_MIN_RTO, config.getMinRto())
+                .option(UkcpChannelOption.UKCP_MTU, config.getMtu())
+                .option(UkcpChannelOption.UKCP_SND_WND, config.getSndWnd())
+                .option(UkcpChannelOption.UKCP_RCV_WND, config.getRcvWnd())
+                .option(UkcpChannelOption.UKCP_DEAD_LINK, config.getDeadLink())
+                .option(UkcpChannelOption.UKCP_STREAM, true)
+                .handler(handler);
+    }
+}
@@ -0,0 +1,37 @@
+package org.dromara.neutrinoproxy.core.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * TCP隧道
+ * @author: aoshiguchen
+ * @date: 2024/10/5
+ */
+public class TcpTunnelTransport implements TunnelTransport {
+
+    @Override
+    public String name() {
+        return TCP;
+    }
+
+    @Override
+    public ServerBootstrap serverBootstrap(EventLoopGroup bossGroup, EventLoopGroup workerGroup, ChannelHandler childHandler) {
+        return new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(childHandler);
+    }
+
+    @Override
+    public Bootstrap clientBootstrap(EventLoopGroup group, ChannelHandler handler) {
+        return new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .handler(handler);
+    }
+}
@@ -0,0 +1,48 @@
+package org.dromara.neutrinoproxy.core.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * 隧道传输方式
+ * 服务端用于监听隧道端口，客户端用于连接服务端。传输方式只负责建立连接，
+ * SSL、协议编解码、心跳等处理由调用方通过 handler 统一添加，与传输方式无关
+ * @author: aoshiguchen
+ * @date: 2024/10/5
+ */
+public interface TunnelTransport {
+    String TCP = "tcp";
+    String KCP = "kcp";
+
+    /**
+     * 传输方式名称，对应配置中的 transport
+     */
+    String name();
+
+    /**
+     * 创建服务端监听引导
+     * @param bossGroup 接收连接的事件循环组，基于UDP的传输方式所有连接都在该组中处理
+     * @param workerGroup 处理连接的事件循环组
+     * @param childHandler 隧道连接的管道初始化
+     */
+    ServerBootstrap serverBootstrap(EventLoopGroup bossGroup, EventLoopGroup workerGroup, ChannelHandler childHandler);
+
+    /**
+     * 服务端隧道连接的协议处理器所在的执行组，添加处理器时使用
+     * @param workerGroup 处理连接的事件循环组
+     * @return null 表示在连接自身的事件循环中执行
+     */
+    default EventExecutorGroup childExecutor(EventLoopGroup workerGroup) {
+        return null;
+    }
+
+    /**
+     * 创建客户端连接引导
+     * @param group 事件循环组
+     * @param handler 隧道连接的管道初始化
+     */
+    Bootstrap clientBootstrap(EventLoopGroup group, ChannelHandler handler);
+}
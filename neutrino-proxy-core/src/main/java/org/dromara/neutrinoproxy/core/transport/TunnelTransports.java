@@ -0,0 +1,41 @@
+package org.dromara.neutrinoproxy.core.transport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 隧道传输方式注册表
+ * 内置 tcp、kcp，其他传输方式（如QUIC）实现 TunnelTransport 后在启动前调用 register 注册即可按名称使用
+ * @author: aoshiguchen
+ * @date: 2024/10/5
+ */
+public class TunnelTransports {
+    private static final Map<String, Function<KcpConfig, TunnelTransport>> FACTORY_MAP = new ConcurrentHashMap<>();
+
+    static {
+        register(TunnelTransport.TCP, kcpConfig -> new TcpTunnelTransport());
+        register(TunnelTransport.KCP, KcpTunnelTransport::new);
+    }
+
+    /**
+     * 注册传输方式，同名覆盖
+     * @param name 传输方式名称
+     * @param factory 按KCP参数创建传输方式，不需要该参数的传输方式忽略即可
+     */
+    public static void register(String name, Function<KcpConfig, TunnelTransport> factory) {
+        FACTORY_MAP.put(name.toLowerCase(), factory);
+    }
+
+    /**
+     * 按名称创建传输方式，为空时为 tcp
+     */
+    public static TunnelTransport of(String name, KcpConfig kcpConfig) {
+        String key = null == name || name.isEmpty() ? TunnelTransport.TCP : name.toLowerCase();
+        Function<KcpConfig, TunnelTransport> factory = FACTORY_MAP.get(key);
+        if (null == factory) {
+            throw new IllegalArgumentException("unsupported tunnel transport: " + name);
+        }
+        return factory.apply(kcpConfig);
+    }
+}
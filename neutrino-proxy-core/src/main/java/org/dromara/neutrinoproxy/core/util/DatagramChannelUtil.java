@@ -0,0 +1,76 @@
+package org.dromara.neutrinoproxy.core.util;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.core.DatagramBatchMetricsHandler;
+
+/**
+ * UDP通道工具类
+ * nio 模式每个数据报一次系统调用；epoll 模式（仅Linux）使用 recvmmsg/sendmmsg 一次系统调用收发多个数据报
+ * @author: aoshiguchen
+ * @date: 2024/10/4
+ */
+@Slf4j
+public class DatagramChannelUtil {
+    public static final String TRANSPORT_NIO = "nio";
+    public static final String TRANSPORT_EPOLL = "epoll";
+
+    /**
+     * 配置为 epoll 且当前平台支持时才使用 epoll，否则回退为 nio
+     */
+    public static boolean isEpoll(String transport) {
+        if (!TRANSPORT_EPOLL.equalsIgnoreCase(transport)) {
+            return false;
+        }
+        if (Epoll.isAvailable()) {
+            return true;
+        }
+        log.warn("[udp] epoll is not available, fall back to nio. cause: {}", String.valueOf(Epoll.unavailabilityCause()));
+        return false;
+    }
+
+    /**
+     * epoll 通道只能注册到 epoll 事件循环组，UDP监听使用的事件循环组需按传输方式创建
+     */
+    public static EventLoopGroup newEventLoopGroup(String transport, int nThreads) {
+        return isEpoll(transport) ? new EpollEventLoopGroup(nThreads) : new NioEventLoopGroup(nThreads);
+    }
+
+    /**
+     * 按事件循环组选择通道类型，epoll 模式下开启批量接收
+     * @param batchSize 每次 recvmmsg 最多接收的数据报数
+     * @param maxDatagramSize 单个数据报的最大长度，超出部分被截断
+     */
+    public static Bootstrap channel(Bootstrap bootstrap, EventLoopGroup group, int batchSize, int maxDatagramSize) {
+        if (!(group instanceof EpollEventLoopGroup)) {
+            return bootstrap.channel(NioDatagramChannel.class);
+        }
+        // 接收缓冲区能容纳多个最大长度的数据报时，epoll 通道使用 recvmmsg 一次读取多个数据报
+        return bootstrap.channel(EpollDatagramChannel.class)
+                .option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, maxDatagramSize)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(maxDatagramSize * batchSize).maxMessagesPerRead(batchSize));
+    }
+
+    /**
+     * 在管道头部添加批量统计处理器，epoll 模式下再合并刷写，
+     * 同一轮事件循环内写入的多个数据报在一次刷写中以 sendmmsg 发出
+     * @param batchSize 最多合并的刷写次数
+     */
+    public static void addBatchHandlers(ChannelPipeline pipeline, DatagramBatchMetricsHandler metricsHandler, int batchSize) {
+        if (pipeline.channel() instanceof EpollDatagramChannel) {
+            pipeline.addFirst(new FlushConsolidationHandler(batchSize, true));
+        }
+        pipeline.addFirst(metricsHandler);
+    }
+}
@@ -1,13 +1,18 @@
 package org.dromara.neutrinoproxy.core.util;
 
 
+import io.netty.buffer.ByteBuf;
 import org.apache.commons.lang3.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * @author: wen.y
  * @date: 2023/12/9
  */
 public class HttpUtil {
+    private static final String[] HTTP_METHODS = {"GET ", "POST ", "PUT ", "HEAD ", "DELETE ", "OPTIONS ", "PATCH ", "TRACE ", "CONNECT "};
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
 
     /**
      * 获取请求头 Host 忽略端口号
@@ -57,4 +62,49 @@ public class HttpUtil {
         return null;
     }
 
+    /**
+     * 根据首包开头的请求方法判断是否为http请求，不移动读指针
+     * @param buf 首包数据
+     * @return 是否为http请求
+     */
+    public static boolean isHttpRequest(ByteBuf buf) {
+        int readerIndex = buf.readerIndex();
+        int readable = buf.readableBytes();
+        for (String method : HTTP_METHODS) {
+            if (readable < method.length()) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < method.length(); i++) {
+                if (buf.getByte(readerIndex + i) != method.charAt(i)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只解码请求头部分（不含body），不移动读指针
+     * @param buf 首包数据
+     * @return 请求头文本
+     */
+    public static String getHeaderContent(ByteBuf buf) {
+        int readerIndex = buf.readerIndex();
+        int writerIndex = buf.writerIndex();
+        int headerEnd = writerIndex;
+        for (int i = readerIndex; i + HEADER_END.length <= writerIndex; i++) {
+            if (buf.getByte(i) == HEADER_END[0] && buf.getByte(i + 1) == HEADER_END[1]
+                && buf.getByte(i + 2) == HEADER_END[2] && buf.getByte(i + 3) == HEADER_END[3]) {
+                headerEnd = i;
+                break;
+            }
+        }
+        return buf.toString(readerIndex, headerEnd - readerIndex, StandardCharsets.ISO_8859_1);
+    }
+
 }
@@ -6,6 +6,7 @@ import org.dromara.neutrinoproxy.server.base.rest.ResponseBody;
 import org.dromara.neutrinoproxy.server.controller.req.proxy.PortMappingCreateReq;
 import org.dromara.neutrinoproxy.server.controller.req.proxy.PortMappingUpdateReq;
 import org.dromara.neutrinoproxy.server.controller.res.report.HomeDataView;
+import org.dromara.neutrinoproxy.server.controller.res.report.UniqueVisitorReportRes;
 import org.dromara.neutrinoproxy.server.dal.*;
 import org.dromara.neutrinoproxy.server.proxy.enhance.SslContextManager;
 import org.dromara.neutrinoproxy.server.service.*;
@@ -42,6 +43,7 @@ public class NeutrinoServerRuntimeNativeRegistrar implements RuntimeNativeRegist
         metadata.registerLambdaSerialization(UserService.class);
         metadata.registerLambdaSerialization(SecurityGroupService.class);
         metadata.registerLambdaSerialization(DomainService.class);
+        metadata.registerLambdaSerialization(VisitorSessionLogService.class);
         metadata.registerLambdaSerialization(SslContextManager.class);
 
         metadata.registerLambdaSerialization(LicenseMapper.class);
@@ -63,6 +65,8 @@ public class NeutrinoServerRuntimeNativeRegistrar implements RuntimeNativeRegist
         metadata.registerLambdaSerialization(SecurityRuleMapper.class);
         metadata.registerLambdaSerialization(DomainMapper.class);
         metadata.registerLambdaSerialization(DomainPortMappingMapper.class);
+        metadata.registerLambdaSerialization(VisitorSessionRecordMapper.class);
+        metadata.registerLambdaSerialization(UniqueVisitorReportMapper.class);
 
         metadata.registerReflection(PortMappingUpdateReq.DomainMapping.class, MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
         metadata.registerReflection(PortMappingCreateReq.DomainMapping.class, MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
@@ -75,6 +79,7 @@ public class NeutrinoServerRuntimeNativeRegistrar implements RuntimeNativeRegist
         metadata.registerReflection(HomeDataView.SingleDayFlow.class, MemberCategory.DECLARED_FIELDS);
         metadata.registerReflection(HomeDataView.TodayFlow.class, MemberCategory.DECLARED_FIELDS);
         metadata.registerReflection(HomeDataView.TotalFlow.class, MemberCategory.DECLARED_FIELDS);
+        metadata.registerReflection(UniqueVisitorReportRes.Item.class, MemberCategory.DECLARED_FIELDS);
 
         metadata.registerReflection(ResponseBody.class, MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
         metadata.registerSerialization(ResponseBody.class);
@@ -1,6 +1,7 @@
 package org.dromara.neutrinoproxy.server.base.proxy;
 
 import lombok.Data;
+import org.dromara.neutrinoproxy.core.transport.KcpConfig;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Inject;
 
@@ -44,6 +45,11 @@ public class ProxyConfig {
 	public static class Server {
 		private Tcp tcp;
 		private Udp udp;
+		private Security security;
+		private Quota quota;
+		private Metrics metrics;
+		private SessionLog sessionLog;
+		private TimeSeries timeSeries;
 	}
 
 	@Data
@@ -57,6 +63,26 @@ public class ProxyConfig {
 		private String jksPath;
 		private Boolean transferLogEnable;
 		private Boolean heartbeatLogEnable;
+		/**
+		 * 数据报隧道（UDP）端口，为空时不开启，UDP端口映射只走TCP隧道
+		 */
+		private Integer datagramPort;
+		/**
+		 * 数据报隧道空闲超时（秒），超时未收到客户端的数据报（含保活）时，UDP端口映射回退到TCP隧道
+		 */
+		private Integer datagramIdleSeconds = 60;
+		/**
+		 * KCP隧道端口（UDP），为空时不开启
+		 */
+		private Integer kcpPort;
+		/**
+		 * KCP隧道SSL端口（UDP），为空时不开启
+		 */
+		private Integer kcpSslPort;
+		/**
+		 * KCP参数，需与客户端一致
+		 */
+		private KcpConfig kcp = new KcpConfig();
 	}
 
 	@Data
@@ -75,5 +101,105 @@ public class ProxyConfig {
 		private Integer bossThreadCount;
 		private Integer workThreadCount;
 		private Boolean transferLogEnable;
+		/**
+		 * 访问者会话（服务端端口 + 来源地址）空闲超时（秒），超时后释放会话及其代理隧道
+		 */
+		private Integer sessionIdleSeconds = 60;
+		/**
+		 * 每个端口最多同时保持的访问者会话数，超出后新来源的数据包直接丢弃
+		 */
+		private Integer maxSessionsPerPort = 10000;
+		/**
+		 * 传输方式：nio、epoll（仅Linux，不可用时回退为nio）
+		 */
+		private String transport = "nio";
+		/**
+		 * epoll 模式下每次系统调用最多收发的数据报数
+		 */
+		private Integer batchSize = 16;
+		/**
+		 * epoll 模式下单个数据报的最大长度，超出部分被截断
+		 */
+		private Integer maxDatagramSize = 4096;
+	}
+
+	@Data
+	public static class Security {
+		/**
+		 * 来源IP限速器每行的桶数
+		 */
+		private Integer ipLimiterWidth = 4096;
+	}
+
+	@Data
+	public static class Quota {
+		/**
+		 * 软阈值，已用流量达到配额的该百分比后降速
+		 */
+		private Integer softPercent = 90;
+		/**
+		 * 超过软阈值后的限速
+		 */
+		private String softLimitRate = "128K";
+	}
+
+	@Data
+	public static class Metrics {
+		/**
+		 * 是否开启 /metrics 指标接口
+		 */
+		private Boolean enable = false;
+		/**
+		 * 访问令牌，需携带请求头 Authorization: Bearer {token}，为空时不开放指标接口
+		 */
+		private String token;
+	}
+
+	@Data
+	public static class SessionLog {
+		/**
+		 * 是否记录访问者会话日志
+		 */
+		private Boolean enable = true;
+		/**
+		 * 采样率，每N个会话记录1个，1表示全部记录
+		 */
+		private Integer sampleRate = 1;
+		/**
+		 * 上下行总流量超过该值的会话不参与采样，总是记录，为空表示不启用
+		 */
+		private String alwaysLogBytes = "10M";
+		/**
+		 * 环形缓冲区容量，写满后新的会话记录直接丢弃
+		 */
+		private Integer bufferSize = 8192;
+		/**
+		 * 每批写入的记录数
+		 */
+		private Integer batchSize = 500;
+		/**
+		 * 刷写间隔（毫秒）
+		 */
+		private Integer flushInterval = 1000;
+		/**
+		 * 写入目标：db（数据库）、file（按天滚动的文件）
+		 */
+		private String sink = "db";
+		/**
+		 * 写入目标为file时的文件目录
+		 */
+		private String fileDir = "logs/visitor-session";
+	}
+
+	@Data
+	public static class TimeSeries {
+		/**
+		 * 是否记录秒级流量、连接数时间序列
+		 */
+		private Boolean enable = true;
+		/**
+		 * 序列文件目录，每个端口映射、license一个文件（约180KB）
+		 */
+		private String dir = "data/time-series";
 	}
 }
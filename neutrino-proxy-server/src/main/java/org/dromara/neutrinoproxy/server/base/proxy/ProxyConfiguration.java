@@ -5,18 +5,22 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LoggingHandler;
+import org.dromara.neutrinoproxy.core.DatagramBatchMetricsHandler;
 import org.dromara.neutrinoproxy.core.ProxyDataTypeEnum;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
 import org.dromara.neutrinoproxy.core.ProxyMessageHandler;
 import org.dromara.neutrinoproxy.core.aot.NeutrinoCoreRuntimeNativeRegistrar;
 import org.dromara.neutrinoproxy.core.dispatcher.DefaultDispatcher;
 import org.dromara.neutrinoproxy.core.dispatcher.Dispatcher;
+import org.dromara.neutrinoproxy.core.util.DatagramChannelUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.nio.NioEventLoopGroup;
+import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
 import org.dromara.neutrinoproxy.server.proxy.core.BytesMetricsHandler;
 import org.dromara.neutrinoproxy.server.proxy.core.TcpVisitorChannelHandler;
 import org.dromara.neutrinoproxy.server.proxy.core.UdpVisitorChannelHandler;
@@ -75,7 +79,7 @@ public class ProxyConfiguration implements LifecycleBean {
             if (null != proxyConfig.getServer().getTcp().getTransferLogEnable() && proxyConfig.getServer().getTcp().getTransferLogEnable()) {
                 ch.pipeline().addFirst(new LoggingHandler(TcpVisitorChannelHandler.class));
             }
-            ch.pipeline().addFirst(new BytesMetricsHandler());
+            ch.pipeline().addFirst(new BytesMetricsHandler(NetworkProtocolEnum.TCP));
 //            ch.pipeline().addLast(new ChannelTrafficShapingHandler(1024 * 1024 * 20, 1024 * 1024 * 20, 100, 20000));
             ch.pipeline().addLast(new TcpVisitorSecurityChannelHandler());
             ch.pipeline().addLast("flowLimiter", new VisitorFlowLimiterChannelHandler());
@@ -86,8 +90,8 @@ public class ProxyConfiguration implements LifecycleBean {
     }
 
     @Bean("udpServerBossGroup")
-    public NioEventLoopGroup udpServerBossGroup(@Inject ProxyConfig proxyConfig) {
-        return new NioEventLoopGroup(proxyConfig.getServer().getUdp().getBossThreadCount());
+    public EventLoopGroup udpServerBossGroup(@Inject ProxyConfig proxyConfig) {
+        return DatagramChannelUtil.newEventLoopGroup(proxyConfig.getServer().getUdp().getTransport(), proxyConfig.getServer().getUdp().getBossThreadCount());
     }
 
     @Bean("udpServerWorkerGroup")
@@ -95,27 +99,36 @@ public class ProxyConfiguration implements LifecycleBean {
         return new NioEventLoopGroup(proxyConfig.getServer().getUdp().getWorkThreadCount());
     }
 
+    @Bean("udpBatchMetricsHandler")
+    public DatagramBatchMetricsHandler udpBatchMetricsHandler() {
+        return new DatagramBatchMetricsHandler();
+    }
+
     @Bean("udpServerBootstrap")
-    public Bootstrap udpServerBootstrap(@Inject("udpServerBossGroup") NioEventLoopGroup udpServerBossGroup,
+    public Bootstrap udpServerBootstrap(@Inject("udpServerBossGroup") EventLoopGroup udpServerBossGroup,
                                   @Inject("udpServerWorkerGroup") NioEventLoopGroup udpServerWorkerGroup,
+                                  @Inject("udpBatchMetricsHandler") DatagramBatchMetricsHandler udpBatchMetricsHandler,
                                   @Inject ProxyConfig proxyConfig) {
+        ProxyConfig.Udp udp = proxyConfig.getServer().getUdp();
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(udpServerBossGroup)
-            // 主线程处理
-            .channel(NioDatagramChannel.class)
+        // 主线程处理
+        bootstrap.group(udpServerBossGroup);
+        DatagramChannelUtil.channel(bootstrap, udpServerBossGroup, udp.getBatchSize(), udp.getMaxDatagramSize())
             // 广播
             .option(ChannelOption.SO_BROADCAST, true)
             // 设置读缓冲区为2M
             .option(ChannelOption.SO_RCVBUF, 2048 * 1024)
             // 设置写缓冲区为1M
             .option(ChannelOption.SO_SNDBUF, 1024 * 1024)
-            .handler(new ChannelInitializer<NioDatagramChannel>() {
+            .handler(new ChannelInitializer<DatagramChannel>() {
                 @Override
-                protected void initChannel(NioDatagramChannel ch) {
+                protected void initChannel(DatagramChannel ch) {
                     ChannelPipeline pipeline = ch.pipeline();
-                    if (null != proxyConfig.getServer().getUdp().getTransferLogEnable() && proxyConfig.getServer().getUdp().getTransferLogEnable()) {
+                    if (null != udp.getTransferLogEnable() && udp.getTransferLogEnable()) {
                         ch.pipeline().addFirst(new LoggingHandler(UdpVisitorChannelHandler.class));
                     }
+                    ch.pipeline().addFirst(new BytesMetricsHandler(NetworkProtocolEnum.UDP));
+                    DatagramChannelUtil.addBatchHandlers(pipeline, udpBatchMetricsHandler, udp.getBatchSize());
                     pipeline.addLast(udpServerWorkerGroup, new UdpVisitorSecurityChannelHandler());
                     ch.pipeline().addLast("flowLimiter", new VisitorFlowLimiterChannelHandler());
                     pipeline.addLast(udpServerWorkerGroup, new UdpVisitorChannelHandler());
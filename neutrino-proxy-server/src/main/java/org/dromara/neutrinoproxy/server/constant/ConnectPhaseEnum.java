@@ -0,0 +1,23 @@
+package org.dromara.neutrinoproxy.server.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 访问者建立代理连接的各阶段
+ * @author: aoshiguchen
+ * @date: 2024/9/16
+ */
+@Getter
+@AllArgsConstructor
+public enum ConnectPhaseEnum {
+	DISPATCH("dispatch", "访问者接入到CONNECT指令写出指令通道"),
+	TUNNEL("tunnel", "隧道往返耗时（CONNECT指令写出到代理通道CONNECT到达，扣除客户端处理耗时）"),
+	CLIENT_CONNECT("client_connect", "客户端连接被代理服务"),
+	CLIENT_BORROW("client_borrow", "客户端获取代理通道"),
+	BIND("bind", "服务端绑定代理通道并恢复访问者读取"),
+	TOTAL("total", "访问者接入到恢复读取的总耗时");
+
+	private String phase;
+	private String desc;
+}
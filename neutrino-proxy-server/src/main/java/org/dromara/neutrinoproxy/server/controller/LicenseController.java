@@ -51,6 +51,7 @@ public class LicenseController {
 		ParamCheckUtil.checkNotNull(req.getUserId(), "userId");
         ParamCheckUtil.checkBytesDesc(req.getUpLimitRate(), "upLimitRate");
         ParamCheckUtil.checkBytesDesc(req.getDownLimitRate(), "downLimitRate");
+        ParamCheckUtil.checkBytesDesc(req.getFlowQuota(), "flowQuota");
 
 		return licenseService.create(req);
 	}
@@ -64,6 +65,7 @@ public class LicenseController {
 		ParamCheckUtil.checkNotEmpty(req.getName(), "name");
         ParamCheckUtil.checkBytesDesc(req.getUpLimitRate(), "upLimitRate");
         ParamCheckUtil.checkBytesDesc(req.getDownLimitRate(), "downLimitRate");
+        ParamCheckUtil.checkBytesDesc(req.getFlowQuota(), "flowQuota");
 
 		return licenseService.update(req);
 	}
@@ -0,0 +1,57 @@
+package org.dromara.neutrinoproxy.server.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.service.MetricsExportService;
+import org.noear.solon.Solon;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+import org.noear.solon.core.bean.LifecycleBean;
+import org.noear.solon.core.handle.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Prometheus指标接口
+ * 直接注册为路由处理器，不经过登录校验与统一返回体包装，输出纯文本。
+ * 指标包含各license、端口的流量与来源IP，未配置访问令牌时不开放
+ * @author: aoshiguchen
+ * @date: 2024/9/14
+ */
+@Slf4j
+@Component
+public class MetricsController implements LifecycleBean {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Inject
+    private MetricsExportService metricsExportService;
+    @Inject
+    private ProxyConfig proxyConfig;
+
+    @Override
+    public void start() throws Throwable {
+        ProxyConfig.Metrics metricsConfig = proxyConfig.getServer().getMetrics();
+        if (null == metricsConfig || !Boolean.TRUE.equals(metricsConfig.getEnable())) {
+            return;
+        }
+        if (StringUtils.isBlank(metricsConfig.getToken())) {
+            log.warn("[metrics] token is blank, /metrics not enabled");
+            return;
+        }
+        Solon.app().get("/metrics", this::metrics);
+    }
+
+    private void metrics(Context ctx) throws Throwable {
+        String token = proxyConfig.getServer().getMetrics().getToken();
+        String authorization = ctx.header("Authorization");
+        if (StringUtils.isBlank(token) || null == authorization
+                || !MessageDigest.isEqual(("Bearer " + token).getBytes(StandardCharsets.UTF_8), authorization.getBytes(StandardCharsets.UTF_8))) {
+            ctx.status(401);
+            return;
+        }
+        ctx.contentType(CONTENT_TYPE);
+        ctx.output(metricsExportService.export());
+    }
+}
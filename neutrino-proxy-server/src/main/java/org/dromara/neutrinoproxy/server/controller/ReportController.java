@@ -2,19 +2,29 @@ package org.dromara.neutrinoproxy.server.controller;
 
 import org.dromara.neutrinoproxy.server.base.page.PageInfo;
 import org.dromara.neutrinoproxy.server.base.page.PageQuery;
+import org.dromara.neutrinoproxy.server.base.rest.Authorization;
 import org.dromara.neutrinoproxy.server.controller.req.report.LicenseFlowMonthReportReq;
 import org.dromara.neutrinoproxy.server.controller.req.report.LicenseFlowReportReq;
+import org.dromara.neutrinoproxy.server.controller.req.report.TimeSeriesReq;
+import org.dromara.neutrinoproxy.server.controller.req.report.TopTalkerReq;
+import org.dromara.neutrinoproxy.server.controller.req.report.UniqueVisitorReportReq;
 import org.dromara.neutrinoproxy.server.controller.req.report.UserFlowMonthReportReq;
 import org.dromara.neutrinoproxy.server.controller.req.report.UserFlowReportReq;
 import org.dromara.neutrinoproxy.server.controller.res.report.*;
 import org.dromara.neutrinoproxy.server.controller.res.report.*;
+import org.dromara.neutrinoproxy.server.service.ConnectLatencyService;
 import org.dromara.neutrinoproxy.server.service.ReportService;
+import org.dromara.neutrinoproxy.server.service.TimeSeriesService;
+import org.dromara.neutrinoproxy.server.service.TopTalkerService;
+import org.dromara.neutrinoproxy.server.service.UniqueVisitorService;
 import org.dromara.neutrinoproxy.server.util.ParamCheckUtil;
 import org.noear.solon.annotation.Controller;
 import org.noear.solon.annotation.Get;
 import org.noear.solon.annotation.Inject;
 import org.noear.solon.annotation.Mapping;
 
+import java.util.List;
+
 /**
  * 报表管理
  * @author: aoshiguchen
@@ -26,6 +36,14 @@ public class ReportController {
 
     @Inject
     private ReportService reportService;
+    @Inject
+    private ConnectLatencyService connectLatencyService;
+    @Inject
+    private TopTalkerService topTalkerService;
+    @Inject
+    private UniqueVisitorService uniqueVisitorService;
+    @Inject
+    private TimeSeriesService timeSeriesService;
 
     /**
      * 首页数据一览
@@ -37,6 +55,56 @@ public class ReportController {
         return reportService.homeDataView();
     }
 
+    /**
+     * 连接建立各阶段耗时统计（按端口映射、客户端）
+     * @return
+     */
+    @Authorization(onlyAdmin = true)
+    @Get
+    @Mapping("/connect-latency/list")
+    public List<ConnectLatencyRes> connectLatencyList() {
+        return connectLatencyService.list();
+    }
+
+    /**
+     * 最近几分钟的访问者IP排行（按端口映射、客户端）
+     * @param req
+     * @return
+     */
+    @Authorization(onlyAdmin = true)
+    @Get
+    @Mapping("/top-talkers/list")
+    public List<TopTalkerRes> topTalkerList(TopTalkerReq req) {
+        ParamCheckUtil.checkNotNull(req.getDimension(), "dimension");
+        ParamCheckUtil.checkNotNull(req.getKey(), "key");
+        return topTalkerService.list(req);
+    }
+
+    /**
+     * 秒级、分钟级、小时级流量与连接数时间序列（按端口映射、license）
+     * @param req
+     * @return
+     */
+    @Authorization(onlyAdmin = true)
+    @Get
+    @Mapping("/time-series/list")
+    public List<TimeSeriesRes> timeSeriesList(TimeSeriesReq req) {
+        ParamCheckUtil.checkNotNull(req.getType(), "type");
+        ParamCheckUtil.checkNotNull(req.getKey(), "key");
+        return timeSeriesService.list(req);
+    }
+
+    /**
+     * 独立访客数报表（按端口映射、域名），非管理员只能查询自己的端口映射
+     * @param req
+     * @return
+     */
+    @Get
+    @Mapping("/unique-visitor/list")
+    public UniqueVisitorReportRes uniqueVisitorList(UniqueVisitorReportReq req) {
+        return uniqueVisitorService.report(req);
+    }
+
     /**
      * 用户流量报表分页
      * @param pageQuery
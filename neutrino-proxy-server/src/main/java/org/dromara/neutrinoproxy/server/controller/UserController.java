@@ -68,6 +68,9 @@ public class UserController {
 		ParamCheckUtil.checkNotNull(req, "req");
 		ParamCheckUtil.checkNotEmpty(req.getName(), "name");
 		ParamCheckUtil.checkNotEmpty(req.getLoginName(), "loginName");
+		ParamCheckUtil.checkBytesDesc(req.getUpLimitRate(), "upLimitRate");
+		ParamCheckUtil.checkBytesDesc(req.getDownLimitRate(), "downLimitRate");
+		ParamCheckUtil.checkBytesDesc(req.getFlowQuota(), "flowQuota");
 
 		return userService.create(req);
 	}
@@ -80,6 +83,9 @@ public class UserController {
 		ParamCheckUtil.checkNotNull(req.getId(), "id");
 		ParamCheckUtil.checkNotEmpty(req.getName(), "name");
 		ParamCheckUtil.checkNotEmpty(req.getLoginName(), "loginName");
+		ParamCheckUtil.checkBytesDesc(req.getUpLimitRate(), "upLimitRate");
+		ParamCheckUtil.checkBytesDesc(req.getDownLimitRate(), "downLimitRate");
+		ParamCheckUtil.checkBytesDesc(req.getFlowQuota(), "flowQuota");
 
 		return userService.update(req);
 	}
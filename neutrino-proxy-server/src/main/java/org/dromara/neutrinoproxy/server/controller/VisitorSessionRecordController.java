@@ -0,0 +1,33 @@
+package org.dromara.neutrinoproxy.server.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.server.base.page.PageInfo;
+import org.dromara.neutrinoproxy.server.base.page.PageQuery;
+import org.dromara.neutrinoproxy.server.controller.req.log.VisitorSessionRecordListReq;
+import org.dromara.neutrinoproxy.server.controller.res.log.VisitorSessionRecordListRes;
+import org.dromara.neutrinoproxy.server.service.VisitorSessionLogService;
+import org.dromara.neutrinoproxy.server.util.ParamCheckUtil;
+import org.noear.solon.annotation.Controller;
+import org.noear.solon.annotation.Get;
+import org.noear.solon.annotation.Inject;
+import org.noear.solon.annotation.Mapping;
+
+/**
+ * 访问者会话记录
+ * @author: aoshiguchen
+ * @date: 2024/9/18
+ */
+@Slf4j
+@Mapping("/visitor-session-record")
+@Controller
+public class VisitorSessionRecordController {
+    @Inject
+    private VisitorSessionLogService visitorSessionLogService;
+
+    @Get
+    @Mapping("/page")
+    public PageInfo<VisitorSessionRecordListRes> page(PageQuery pageQuery, VisitorSessionRecordListReq req) {
+        ParamCheckUtil.checkNotNull(pageQuery, "pageQuery");
+        return visitorSessionLogService.page(pageQuery, req);
+    }
+}
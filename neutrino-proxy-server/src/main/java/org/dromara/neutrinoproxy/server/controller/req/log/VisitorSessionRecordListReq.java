@@ -0,0 +1,23 @@
+package org.dromara.neutrinoproxy.server.controller.req.log;
+
+import lombok.Data;
+
+/**
+ * @author: aoshiguchen
+ * @date: 2024/9/18
+ */
+@Data
+public class VisitorSessionRecordListReq {
+    /**
+     * licenseId
+     */
+    private Integer licenseId;
+    /**
+     * 服务端端口
+     */
+    private Integer serverPort;
+    /**
+     * 访问者IP
+     */
+    private String visitorIp;
+}
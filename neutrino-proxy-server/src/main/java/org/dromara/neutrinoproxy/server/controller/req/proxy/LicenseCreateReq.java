@@ -25,4 +25,8 @@ public class LicenseCreateReq {
      * 下载限速
      */
     private String downLimitRate;
+    /**
+     * 月流量配额
+     */
+    private String flowQuota;
 }
@@ -0,0 +1,26 @@
+package org.dromara.neutrinoproxy.server.controller.req.report;
+
+import lombok.Data;
+
+/**
+ * 流量、连接数时间序列查询
+ * @author: aoshiguchen
+ * @date: 2024/9/24
+ */
+@Data
+public class TimeSeriesReq {
+    /**
+     * 序列类型：mapping（端口映射，key为服务端端口）、license（客户端，key为licenseId）
+     */
+    private String type;
+    private Integer key;
+    /**
+     * 精度：second（保留1小时）、minute（保留1天）、hour（保留30天），默认second
+     */
+    private String resolution;
+    /**
+     * 开始、结束时间（毫秒时间戳），结束时间默认当前时间，开始时间默认结束时间前5分钟/2小时/7天（按精度）
+     */
+    private Long startTime;
+    private Long endTime;
+}
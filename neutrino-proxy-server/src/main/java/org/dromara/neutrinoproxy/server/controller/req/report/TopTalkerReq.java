@@ -0,0 +1,29 @@
+package org.dromara.neutrinoproxy.server.controller.req.report;
+
+import lombok.Data;
+
+/**
+ * 访问者IP排行查询
+ * @author: aoshiguchen
+ * @date: 2024/9/20
+ */
+@Data
+public class TopTalkerReq {
+    /**
+     * 统计维度：mapping（端口映射，key为服务端端口）、license（客户端，key为licenseId）
+     */
+    private String dimension;
+    private Integer key;
+    /**
+     * 排序指标：bytes（流量）、connections（连接数）
+     */
+    private String metric;
+    /**
+     * 最近N分钟，1 ~ 5，默认5
+     */
+    private Integer minutes;
+    /**
+     * 返回条数，默认20
+     */
+    private Integer limit;
+}
@@ -0,0 +1,26 @@
+package org.dromara.neutrinoproxy.server.controller.req.report;
+
+import lombok.Data;
+
+/**
+ * 独立访客数报表查询
+ * @author: aoshiguchen
+ * @date: 2024/9/22
+ */
+@Data
+public class UniqueVisitorReportReq {
+    /**
+     * 统计周期：hour、day、month，默认day
+     */
+    private String period;
+    /**
+     * 统计维度：mapping（端口映射，key为服务端端口）、domain（域名，key为完整域名）
+     */
+    private String dimension;
+    private String key;
+    /**
+     * 开始、结束日期 yyyy-MM-dd，默认最近7天
+     */
+    private String startDate;
+    private String endDate;
+}
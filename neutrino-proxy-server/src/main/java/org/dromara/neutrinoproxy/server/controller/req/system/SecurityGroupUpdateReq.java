@@ -18,4 +18,14 @@ public class SecurityGroupUpdateReq {
      */
     private String description;
 
+    /**
+     * 单个来源IP每秒允许新建的tcp连接数，为空或0表示不限制
+     */
+    private Integer ipConnectLimit;
+
+    /**
+     * 单个来源IP每秒允许的udp包数，为空或0表示不限制
+     */
+    private Integer ipPacketLimit;
+
 }
@@ -11,4 +11,16 @@ import lombok.Data;
 public class UserCreateReq {
 	private String name;
 	private String loginName;
+	/**
+	 * 上传限速
+	 */
+	private String upLimitRate;
+	/**
+	 * 下载限速
+	 */
+	private String downLimitRate;
+	/**
+	 * 月流量配额
+	 */
+	private String flowQuota;
 }
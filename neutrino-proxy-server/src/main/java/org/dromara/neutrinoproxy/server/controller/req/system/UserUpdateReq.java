@@ -12,4 +12,16 @@ public class UserUpdateReq {
 	private Integer id;
 	private String name;
 	private String loginName;
+	/**
+	 * 上传限速
+	 */
+	private String upLimitRate;
+	/**
+	 * 下载限速
+	 */
+	private String downLimitRate;
+	/**
+	 * 月流量配额
+	 */
+	private String flowQuota;
 }
@@ -0,0 +1,42 @@
+package org.dromara.neutrinoproxy.server.controller.res.log;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * @author: aoshiguchen
+ * @date: 2024/9/18
+ */
+@Data
+public class VisitorSessionRecordListRes {
+    private Long id;
+    private Integer licenseId;
+    private String licenseName;
+    private Integer userId;
+    private String userName;
+    private String protocol;
+    private Integer serverPort;
+    private String visitorIp;
+    private Integer visitorPort;
+    /**
+     * 连接建立时间
+     */
+    private Date startTime;
+    /**
+     * 连接时长（毫秒）
+     */
+    private Long duration;
+    /**
+     * 上行字节数
+     */
+    private Long readBytes;
+    /**
+     * 下行字节数
+     */
+    private Long writeBytes;
+    /**
+     * 连接关闭时间
+     */
+    private Date createTime;
+}
@@ -40,11 +40,27 @@ public class LicenseListRes {
      * 下载限速
      */
     private String downLimitRate;
+    /**
+     * 月流量配额
+     */
+    private String flowQuota;
 	/**
 	 * 是否在线
 	 * {@link OnlineStatusEnum}
 	 */
 	private Integer isOnline;
+	/**
+	 * 隧道平滑往返时延（毫秒），客户端在线且已回显心跳探测时才有值
+	 */
+	private Double rtt;
+	/**
+	 * 隧道往返时延抖动（毫秒）
+	 */
+	private Double rttJitter;
+	/**
+	 * 心跳探测丢失率（%）
+	 */
+	private Double probeLoss;
 	/**
 	 * 启用状态
 	 * {@link EnableStatusEnum}
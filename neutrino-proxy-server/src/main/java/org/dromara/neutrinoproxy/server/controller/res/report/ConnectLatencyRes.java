@@ -0,0 +1,32 @@
+package org.dromara.neutrinoproxy.server.controller.res.report;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 连接建立耗时统计
+ * @author: aoshiguchen
+ * @date: 2024/9/16
+ */
+@Accessors(chain = true)
+@Data
+public class ConnectLatencyRes {
+    /**
+     * 统计维度：mapping（端口映射，key为服务端端口）、license（客户端，key为licenseId）
+     */
+    private String dimension;
+    private Integer key;
+    /**
+     * 阶段
+     */
+    private String phase;
+    private Long count;
+    /**
+     * 以下耗时单位均为毫秒
+     */
+    private Double avg;
+    private Double p50;
+    private Double p90;
+    private Double p99;
+    private Double max;
+}
@@ -0,0 +1,30 @@
+package org.dromara.neutrinoproxy.server.controller.res.report;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 流量、连接数时间序列数据点
+ * @author: aoshiguchen
+ * @date: 2024/9/24
+ */
+@Accessors(chain = true)
+@Data
+public class TimeSeriesRes {
+    /**
+     * 时间（毫秒时间戳），数据点覆盖 [time, time + 精度)
+     */
+    private Long time;
+    /**
+     * 写入字节数（访问者 -> 客户端）
+     */
+    private Long writeBytes;
+    /**
+     * 读取字节数（客户端 -> 访问者）
+     */
+    private Long readBytes;
+    /**
+     * 连接数峰值，仅端口映射序列有值
+     */
+    private Integer channels;
+}
@@ -0,0 +1,30 @@
+package org.dromara.neutrinoproxy.server.controller.res.report;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 访问者IP排行
+ * @author: aoshiguchen
+ * @date: 2024/9/20
+ */
+@Accessors(chain = true)
+@Data
+public class TopTalkerRes {
+    /**
+     * 访问者IP
+     */
+    private String ip;
+    /**
+     * 字节数或连接数
+     */
+    private Long value;
+    /**
+     * 最大高估值，真实值不小于 value - error
+     */
+    private Long error;
+    /**
+     * 占窗口内总量的百分比
+     */
+    private Double percent;
+}
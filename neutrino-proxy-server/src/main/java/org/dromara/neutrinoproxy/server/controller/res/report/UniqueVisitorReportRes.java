@@ -0,0 +1,37 @@
+package org.dromara.neutrinoproxy.server.controller.res.report;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 独立访客数报表
+ * @author: aoshiguchen
+ * @date: 2024/9/22
+ */
+@Accessors(chain = true)
+@Data
+public class UniqueVisitorReportRes {
+    private String period;
+    private String dimension;
+    private String key;
+    /**
+     * 整个查询区间内的独立访客数（各周期去重合并，不是简单相加）
+     */
+    private Long total;
+    private List<Item> items;
+
+    @Accessors(chain = true)
+    @Data
+    public static class Item {
+        /**
+         * 统计时间
+         */
+        private String dateStr;
+        /**
+         * 独立访客数
+         */
+        private Long uv;
+    }
+}
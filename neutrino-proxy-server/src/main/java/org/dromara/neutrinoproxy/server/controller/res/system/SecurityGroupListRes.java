@@ -35,6 +35,16 @@ public class SecurityGroupListRes {
      */
     private Integer defaultPassType;
 
+    /**
+     * 单个来源IP每秒允许新建的tcp连接数，为空或0表示不限制
+     */
+    private Integer ipConnectLimit;
+
+    /**
+     * 单个来源IP每秒允许的udp包数，为空或0表示不限制
+     */
+    private Integer ipPacketLimit;
+
     /**
      * 创建时间
      */
@@ -30,10 +30,10 @@ public class SecurityRuleListRes {
     private String description;
 
     /**
-     * 规则,ipv6只支持单个ip判断
+     * 规则,ipv4、ipv6均支持以下类型
      * 单个ip：192.168.1.1,0:0:0:0:0:0:10.0.0.1
      * 范围类型：192.168.1.0-192.168.1.255
-     * 掩码类型：192.168.1.0/24
+     * 掩码类型：192.168.1.0/24,2001:db8::/32
      * 泛型：0.0.0.0/ALL
      * 每个类型中间以英文逗号分隔
      */
@@ -24,6 +24,18 @@ public class UserListRes {
 	 * 登录密码
 	 */
 	private String loginPassword;
+	/**
+	 * 上传限速
+	 */
+	private String upLimitRate;
+	/**
+	 * 下载限速
+	 */
+	private String downLimitRate;
+	/**
+	 * 月流量配额
+	 */
+	private String flowQuota;
 	/**
 	 * 是否禁用
 	 */
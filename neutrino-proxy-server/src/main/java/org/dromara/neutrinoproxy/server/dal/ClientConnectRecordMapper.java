@@ -1,9 +1,9 @@
 package org.dromara.neutrinoproxy.server.dal;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.ClientConnectRecordDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.dromara.neutrinoproxy.server.util.MapperUtil;
 
 import java.util.Date;
 
@@ -13,9 +13,10 @@ import java.util.Date;
  */
 @Mapper
 public interface ClientConnectRecordMapper extends BaseMapper<ClientConnectRecordDO> {
-    default void clean(Date date) {
-        this.delete(new LambdaQueryWrapper<ClientConnectRecordDO>()
-                .lt(ClientConnectRecordDO::getCreateTime, date)
-        );
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     */
+    default int clean(Date date, int limit) {
+        return MapperUtil.clean(this, ClientConnectRecordDO::getId, ClientConnectRecordDO::getCreateTime, date, limit);
     }
 }
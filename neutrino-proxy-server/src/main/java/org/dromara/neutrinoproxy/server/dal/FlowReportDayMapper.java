@@ -25,16 +25,19 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.FlowReportDayDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.dromara.neutrinoproxy.server.util.MapperUtil;
 
 import java.util.Date;
 import java.util.List;
 
 @Mapper
 public interface FlowReportDayMapper extends BaseMapper<FlowReportDayDO> {
-    default void clean(Date date) {
-        this.delete(new LambdaQueryWrapper<FlowReportDayDO>()
-                .lt(FlowReportDayDO::getDate, date)
-        );
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     */
+    default int clean(Date date, int limit) {
+        return MapperUtil.clean(this, FlowReportDayDO::getId, FlowReportDayDO::getDate, date, limit);
     }
 
     default void deleteByDateStr(String dateStr) {
@@ -49,4 +52,10 @@ public interface FlowReportDayMapper extends BaseMapper<FlowReportDayDO> {
                 .le(FlowReportDayDO::getDate, endDate)
         );
     }
+
+    /**
+     * 按license汇总时间范围内的小时报表，直接在数据库中 INSERT ... SELECT ... GROUP BY
+     */
+    int insertFromReport(@Param("date") Date date, @Param("dateStr") String dateStr, @Param("startDate") Date startDate,
+                         @Param("endDate") Date endDate, @Param("createTime") Date createTime);
 }
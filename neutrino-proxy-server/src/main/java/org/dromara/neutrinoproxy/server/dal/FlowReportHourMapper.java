@@ -25,16 +25,19 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.FlowReportHourDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.dromara.neutrinoproxy.server.util.MapperUtil;
 
 import java.util.Date;
 import java.util.List;
 
 @Mapper
 public interface FlowReportHourMapper extends BaseMapper<FlowReportHourDO> {
-    default void clean(Date date) {
-        this.delete(new LambdaQueryWrapper<FlowReportHourDO>()
-                .lt(FlowReportHourDO::getDate, date)
-        );
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     */
+    default int clean(Date date, int limit) {
+        return MapperUtil.clean(this, FlowReportHourDO::getId, FlowReportHourDO::getDate, date, limit);
     }
 
     default void deleteByDateStr(String dateStr) {
@@ -50,4 +53,9 @@ public interface FlowReportHourMapper extends BaseMapper<FlowReportHourDO> {
         );
     }
 
+    /**
+     * 按license汇总时间范围内的分钟报表，直接在数据库中 INSERT ... SELECT ... GROUP BY
+     */
+    int insertFromReport(@Param("date") Date date, @Param("dateStr") String dateStr, @Param("startDate") Date startDate,
+                         @Param("endDate") Date endDate, @Param("createTime") Date createTime);
 }
@@ -25,6 +25,8 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.FlowReportMinuteDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.dromara.neutrinoproxy.server.util.MapperUtil;
 
 import java.util.Date;
 import java.util.List;
@@ -32,10 +34,11 @@ import java.util.Set;
 
 @Mapper
 public interface FlowReportMinuteMapper extends BaseMapper<FlowReportMinuteDO> {
-    default void clean(Date date) {
-        this.delete(new LambdaQueryWrapper<FlowReportMinuteDO>()
-                .lt(FlowReportMinuteDO::getDate, date)
-        );
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     */
+    default int clean(Date date, int limit) {
+        return MapperUtil.clean(this, FlowReportMinuteDO::getId, FlowReportMinuteDO::getDate, date, limit);
     }
 
     default List<FlowReportMinuteDO> findList(Set<Integer> licenseIds, String date) {
@@ -45,6 +48,11 @@ public interface FlowReportMinuteMapper extends BaseMapper<FlowReportMinuteDO> {
         );
     }
 
+    /**
+     * 多行批量插入
+     */
+    int insertBatch(@Param("list") List<FlowReportMinuteDO> list);
+
     default List<FlowReportMinuteDO> findListByDateRange(Date startDate, Date endDate) {
         return this.selectList(new LambdaQueryWrapper<FlowReportMinuteDO>()
                 .ge(FlowReportMinuteDO::getDate, startDate)
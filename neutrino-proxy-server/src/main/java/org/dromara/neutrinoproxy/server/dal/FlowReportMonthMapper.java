@@ -25,6 +25,9 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.FlowReportMonthDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
 
 @Mapper
 public interface FlowReportMonthMapper extends BaseMapper<FlowReportMonthDO> {
@@ -34,4 +37,10 @@ public interface FlowReportMonthMapper extends BaseMapper<FlowReportMonthDO> {
                 .eq(FlowReportMonthDO::getDateStr, dateStr)
         );
     }
+
+    /**
+     * 按license汇总时间范围内的天报表，直接在数据库中 INSERT ... SELECT ... GROUP BY
+     */
+    int insertFromReport(@Param("date") Date date, @Param("dateStr") String dateStr, @Param("startDate") Date startDate,
+                         @Param("endDate") Date endDate, @Param("createTime") Date createTime);
 }
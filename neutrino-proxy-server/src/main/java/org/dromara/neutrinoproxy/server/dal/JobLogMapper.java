@@ -21,10 +21,10 @@
  */
 package org.dromara.neutrinoproxy.server.dal;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.JobLogDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.dromara.neutrinoproxy.server.util.MapperUtil;
 
 import java.util.Date;
 
@@ -36,10 +36,11 @@ import java.util.Date;
 @Mapper
 public interface JobLogMapper extends BaseMapper<JobLogDO> {
 
-    default void clean(Date date) {
-        this.delete(new LambdaQueryWrapper<JobLogDO>()
-                .lt(JobLogDO::getCreateTime, date)
-        );
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     */
+    default int clean(Date date, int limit) {
+        return MapperUtil.clean(this, JobLogDO::getId, JobLogDO::getCreateTime, date, limit);
     }
 
 }
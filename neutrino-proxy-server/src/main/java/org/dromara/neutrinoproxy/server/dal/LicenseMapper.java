@@ -77,6 +77,17 @@ public interface LicenseMapper extends BaseMapper<LicenseDO> {
         );
     }
 
+    /**
+     * 流量配额计数器落库，不更新update_time，避免每分钟刷新修改时间
+     */
+    default void updateQuotaUsed(Integer id, Long quotaUsedBytes, String quotaMonth) {
+        this.update(null, new LambdaUpdateWrapper<LicenseDO>()
+                .eq(LicenseDO::getId, id)
+                .set(LicenseDO::getQuotaUsedBytes, quotaUsedBytes)
+                .set(LicenseDO::getQuotaMonth, quotaMonth)
+        );
+    }
+
     default void reset(Integer id, String key, Date updateTime) {
         this.update(null, new LambdaUpdateWrapper<LicenseDO>()
                 .eq(LicenseDO::getId, id)
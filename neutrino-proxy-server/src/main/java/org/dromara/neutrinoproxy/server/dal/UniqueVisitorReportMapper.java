@@ -0,0 +1,62 @@
+package org.dromara.neutrinoproxy.server.dal;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.dromara.neutrinoproxy.server.dal.entity.UniqueVisitorReportDO;
+import org.dromara.neutrinoproxy.server.util.MapperUtil;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author: aoshiguchen
+ * @date: 2024/9/22
+ */
+@Mapper
+public interface UniqueVisitorReportMapper extends BaseMapper<UniqueVisitorReportDO> {
+
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     */
+    default int clean(String period, Date date, int limit) {
+        return MapperUtil.clean(this, new LambdaQueryWrapper<UniqueVisitorReportDO>().eq(UniqueVisitorReportDO::getPeriod, period),
+                UniqueVisitorReportDO::getId, UniqueVisitorReportDO::getDate, date, limit);
+    }
+
+    default void deleteByDateStr(String period, String dateStr) {
+        this.delete(new LambdaQueryWrapper<UniqueVisitorReportDO>()
+                .eq(UniqueVisitorReportDO::getPeriod, period)
+                .eq(UniqueVisitorReportDO::getDateStr, dateStr)
+        );
+    }
+
+    default UniqueVisitorReportDO findOne(String period, String dimension, String dimKey, String dateStr) {
+        return this.selectOne(new LambdaQueryWrapper<UniqueVisitorReportDO>()
+                .eq(UniqueVisitorReportDO::getPeriod, period)
+                .eq(UniqueVisitorReportDO::getDimension, dimension)
+                .eq(UniqueVisitorReportDO::getDimKey, dimKey)
+                .eq(UniqueVisitorReportDO::getDateStr, dateStr)
+                .last("limit 1")
+        );
+    }
+
+    default List<UniqueVisitorReportDO> findListByDateRange(String period, Date startDate, Date endDate) {
+        return this.selectList(new LambdaQueryWrapper<UniqueVisitorReportDO>()
+                .eq(UniqueVisitorReportDO::getPeriod, period)
+                .ge(UniqueVisitorReportDO::getDate, startDate)
+                .le(UniqueVisitorReportDO::getDate, endDate)
+        );
+    }
+
+    default List<UniqueVisitorReportDO> findListByDateRange(String period, String dimension, String dimKey, Date startDate, Date endDate) {
+        return this.selectList(new LambdaQueryWrapper<UniqueVisitorReportDO>()
+                .eq(UniqueVisitorReportDO::getPeriod, period)
+                .eq(UniqueVisitorReportDO::getDimension, dimension)
+                .eq(UniqueVisitorReportDO::getDimKey, dimKey)
+                .ge(UniqueVisitorReportDO::getDate, startDate)
+                .le(UniqueVisitorReportDO::getDate, endDate)
+                .orderByAsc(UniqueVisitorReportDO::getDate)
+        );
+    }
+}
@@ -21,10 +21,10 @@
  */
 package org.dromara.neutrinoproxy.server.dal;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.UserLoginRecordDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.dromara.neutrinoproxy.server.util.MapperUtil;
 
 import java.util.Date;
 
@@ -35,9 +35,10 @@ import java.util.Date;
  */
 @Mapper
 public interface UserLoginRecordMapper extends BaseMapper<UserLoginRecordDO> {
-	default void clean(Date date) {
-		this.delete(new LambdaQueryWrapper<UserLoginRecordDO>()
-				.lt(UserLoginRecordDO::getCreateTime, date)
-		);
+	/**
+	 * 按主键顺序删除一批过期数据，返回删除的行数
+	 */
+	default int clean(Date date, int limit) {
+		return MapperUtil.clean(this, UserLoginRecordDO::getId, UserLoginRecordDO::getCreateTime, date, limit);
 	}
 }
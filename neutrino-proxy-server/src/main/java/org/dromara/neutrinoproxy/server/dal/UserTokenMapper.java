@@ -51,6 +51,17 @@ public interface UserTokenMapper extends BaseMapper<UserTokenDO> {
 		);
 	}
 
+	/**
+	 * 根据token查询单条记录，不判断过期时间
+	 * @param token
+	 * @return
+	 */
+	default UserTokenDO findByToken(String token) {
+		return selectOne(new LambdaQueryWrapper<UserTokenDO>()
+				.eq(UserTokenDO::getToken, token)
+		);
+	}
+
 	/**
 	 * 根据token删除记录
 	 * @param token
@@ -0,0 +1,31 @@
+package org.dromara.neutrinoproxy.server.dal;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.dromara.neutrinoproxy.server.dal.entity.VisitorSessionRecordDO;
+import org.dromara.neutrinoproxy.server.util.MapperUtil;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author: aoshiguchen
+ * @date: 2024/9/18
+ */
+@Mapper
+public interface VisitorSessionRecordMapper extends BaseMapper<VisitorSessionRecordDO> {
+
+    /**
+     * 批量写入，一条多值INSERT语句
+     * @param list
+     */
+    void insertBatch(@Param("list") List<VisitorSessionRecordDO> list);
+
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     */
+    default int clean(Date date, int limit) {
+        return MapperUtil.clean(this, VisitorSessionRecordDO::getId, VisitorSessionRecordDO::getCreateTime, date, limit);
+    }
+}
@@ -52,11 +52,11 @@ public class FlowReportMinuteDO {
     /**
      * 写入字节数
      */
-    private Integer writeBytes;
+    private Long writeBytes;
     /**
      * 读取字节数
      */
-    private Integer readBytes;
+    private Long readBytes;
     /**
      * 报表统计时间
      */
@@ -68,6 +68,18 @@ public class LicenseDO {
      * 下载限速
      */
     private String downLimitRate;
+    /**
+     * 月流量配额
+     */
+    private String flowQuota;
+    /**
+     * 当月已用流量（定期从内存计数器落库）
+     */
+    private Long quotaUsedBytes;
+    /**
+     * 已用流量对应的月份，格式：yyyy-MM
+     */
+    private String quotaMonth;
 	/**
 	 * 是否在线
 	 * {@link OnlineStatusEnum}
@@ -3,7 +3,9 @@ package org.dromara.neutrinoproxy.server.dal.entity;
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.date.DatePattern;
 import cn.hutool.core.date.DateUtil;
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -51,6 +53,18 @@ public class SecurityGroupDO {
      */
     private Integer defaultPassType;
 
+    /**
+     * 单个来源IP每秒允许新建的tcp连接数，为空或0表示不限制
+     */
+    @TableField(updateStrategy = FieldStrategy.ALWAYS)
+    private Integer ipConnectLimit;
+
+    /**
+     * 单个来源IP每秒允许的udp包数，为空或0表示不限制
+     */
+    @TableField(updateStrategy = FieldStrategy.ALWAYS)
+    private Integer ipPacketLimit;
+
     /**
      * 创建时间
      */
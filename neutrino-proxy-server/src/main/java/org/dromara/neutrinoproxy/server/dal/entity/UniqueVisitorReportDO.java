@@ -0,0 +1,57 @@
+package org.dromara.neutrinoproxy.server.dal.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+import java.util.Date;
+
+/**
+ * 独立访客数报表（小时、天、月）
+ * @author: aoshiguchen
+ * @date: 2024/9/22
+ */
+@ToString(exclude = "registers")
+@Accessors(chain = true)
+@Data
+@TableName("unique_visitor_report")
+public class UniqueVisitorReportDO {
+    @TableId(type = IdType.AUTO)
+    private Integer id;
+    /**
+     * 统计周期：hour、day、month
+     */
+    private String period;
+    /**
+     * 统计维度：mapping（端口映射）、domain（域名）
+     */
+    private String dimension;
+    /**
+     * 维度值：服务端端口或完整域名
+     */
+    private String dimKey;
+    /**
+     * 独立访客数（估计值）
+     */
+    private Long uv;
+    /**
+     * HyperLogLog 寄存器，用于向上汇总
+     */
+    private byte[] registers;
+    /**
+     * 报表统计时间
+     */
+    private Date date;
+    /**
+     * 报表统计时间
+     * yyyy-MM-dd HH、yyyy-MM-dd、yyyy-MM
+     */
+    private String dateStr;
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+}
@@ -57,6 +57,18 @@ public class UserDO {
 	 * 是否禁用
 	 */
 	private Integer enable;
+	/**
+	 * 上传限速
+	 */
+	private String upLimitRate;
+	/**
+	 * 下载限速
+	 */
+	private String downLimitRate;
+	/**
+	 * 月流量配额
+	 */
+	private String flowQuota;
 	/**
 	 * 创建时间
 	 */
@@ -72,6 +84,9 @@ public class UserDO {
         res.setName(name);
         res.setLoginName(loginName);
         res.setEnable(enable);
+        res.setUpLimitRate(upLimitRate);
+        res.setDownLimitRate(downLimitRate);
+        res.setFlowQuota(flowQuota);
         res.setCreateTime(createTime);
         res.setUpdateTime(updateTime);
         return res;
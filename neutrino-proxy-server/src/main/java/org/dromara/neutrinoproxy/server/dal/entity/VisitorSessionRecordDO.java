@@ -0,0 +1,78 @@
+package org.dromara.neutrinoproxy.server.dal.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+import org.dromara.neutrinoproxy.server.controller.res.log.VisitorSessionRecordListRes;
+
+import java.util.Date;
+
+/**
+ * 访问者会话记录
+ * @author: aoshiguchen
+ * @date: 2024/9/18
+ */
+@ToString
+@Accessors(chain = true)
+@Data
+@TableName("visitor_session_record")
+public class VisitorSessionRecordDO {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private Integer licenseId;
+    /**
+     * 协议 TCP、HTTP
+     */
+    private String protocol;
+    /**
+     * 服务端端口（端口映射）
+     */
+    private Integer serverPort;
+    /**
+     * 访问者IP
+     */
+    private String visitorIp;
+    /**
+     * 访问者端口
+     */
+    private Integer visitorPort;
+    /**
+     * 连接建立时间
+     */
+    private Date startTime;
+    /**
+     * 连接时长（毫秒）
+     */
+    private Long duration;
+    /**
+     * 从访问者读取的字节数（上行）
+     */
+    private Long readBytes;
+    /**
+     * 写给访问者的字节数（下行）
+     */
+    private Long writeBytes;
+    /**
+     * 创建时间（连接关闭时间）
+     */
+    private Date createTime;
+
+    public VisitorSessionRecordListRes toRes() {
+        VisitorSessionRecordListRes res = new VisitorSessionRecordListRes();
+        res.setId(id);
+        res.setLicenseId(licenseId);
+        res.setProtocol(protocol);
+        res.setServerPort(serverPort);
+        res.setVisitorIp(visitorIp);
+        res.setVisitorPort(visitorPort);
+        res.setStartTime(startTime);
+        res.setDuration(duration);
+        res.setReadBytes(readBytes);
+        res.setWriteBytes(writeBytes);
+        res.setCreateTime(createTime);
+        return res;
+    }
+}
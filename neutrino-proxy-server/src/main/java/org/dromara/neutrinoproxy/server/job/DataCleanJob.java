@@ -10,7 +10,10 @@ import org.dromara.neutrinoproxy.server.dal.FlowReportDayMapper;
 import org.dromara.neutrinoproxy.server.dal.FlowReportHourMapper;
 import org.dromara.neutrinoproxy.server.dal.FlowReportMinuteMapper;
 import org.dromara.neutrinoproxy.server.dal.JobLogMapper;
+import org.dromara.neutrinoproxy.server.dal.UniqueVisitorReportMapper;
 import org.dromara.neutrinoproxy.server.dal.UserLoginRecordMapper;
+import org.dromara.neutrinoproxy.server.dal.VisitorSessionRecordMapper;
+import org.dromara.neutrinoproxy.server.service.UniqueVisitorService;
 import org.dromara.solonplugins.job.IJobHandler;
 import org.dromara.solonplugins.job.annotation.JobHandler;
 import org.noear.snack.ONode;
@@ -42,6 +45,10 @@ public class DataCleanJob implements IJobHandler {
      * 客户端连接记录保留天数
      */
     private static final Integer CLIENT_CONNECT_RECORD_KEEP_DAYS = 30;
+    /**
+     * 访问者会话记录保留天数
+     */
+    private static final Integer VISITOR_SESSION_RECORD_KEEP_DAYS = 7;
 
     /**
      * 流量统计分钟报表记录保留天数
@@ -55,6 +62,14 @@ public class DataCleanJob implements IJobHandler {
      * 流量统计天报表记录保留天数
      */
     private static final Integer FLOW_DAY_REPORT_KEEP_DAYS = 400;
+    /**
+     * 每批删除的行数
+     */
+    private static final Integer PURGE_BATCH_SIZE = 1000;
+    /**
+     * 每批删除之间的间隔（毫秒）
+     */
+    private static final Long PURGE_INTERVAL_MILLIS = 100L;
     @Inject
     private JobLogMapper jobLogMapper;
     @Inject
@@ -62,52 +77,66 @@ public class DataCleanJob implements IJobHandler {
     @Inject
     private ClientConnectRecordMapper clientConnectRecordMapper;
     @Inject
+    private VisitorSessionRecordMapper visitorSessionRecordMapper;
+    @Inject
     private FlowReportMinuteMapper flowReportMinuteMapper;
     @Inject
     private FlowReportHourMapper flowReportHourMapper;
     @Inject
     private FlowReportDayMapper flowReportDayMapper;
+    @Inject
+    private UniqueVisitorReportMapper uniqueVisitorReportMapper;
     private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     @Override
     public void execute(String s) throws Exception {
         JobParams jobParams = getParams(s);
+        // 旧版本保存的任务参数中没有以下项，使用默认值
+        int batchSize = null == jobParams.getPurgeBatchSize() || jobParams.getPurgeBatchSize() <= 0 ? PURGE_BATCH_SIZE : jobParams.getPurgeBatchSize();
+        long intervalMillis = null == jobParams.getPurgeIntervalMillis() || jobParams.getPurgeIntervalMillis() < 0 ? PURGE_INTERVAL_MILLIS : jobParams.getPurgeIntervalMillis();
+        Integer visitorSessionRecordKeepDays = null == jobParams.getVisitorSessionRecordKeepDays() ? VISITOR_SESSION_RECORD_KEEP_DAYS : jobParams.getVisitorSessionRecordKeepDays();
+        long startTime = System.currentTimeMillis();
+        long total = 0;
 
-        {
-            Date date = DateUtil.addDate(new Date(), Calendar.DATE, -1 * jobParams.getJobLogKeepDays());
-            log.info("clean job log date:{}", sdf.format(date));
-            jobLogMapper.clean(date);
-        }
-
-        {
-            Date date = DateUtil.addDate(new Date(), Calendar.DATE, -1 * jobParams.getUserLoginRecordKeepDays());
-            log.info("clean user login record date:{}", sdf.format(date));
-            userLoginRecordMapper.clean(date);
-        }
+        total += purge("job log", jobParams.getJobLogKeepDays(), batchSize, intervalMillis, jobLogMapper::clean);
+        total += purge("user login record", jobParams.getUserLoginRecordKeepDays(), batchSize, intervalMillis, userLoginRecordMapper::clean);
+        total += purge("client connect record", jobParams.getClientConnectRecordKeepDays(), batchSize, intervalMillis, clientConnectRecordMapper::clean);
+        total += purge("visitor session record", visitorSessionRecordKeepDays, batchSize, intervalMillis, visitorSessionRecordMapper::clean);
+        total += purge("flow report minute record", jobParams.getFlowMinuteReportKeepDays(), batchSize, intervalMillis, flowReportMinuteMapper::clean);
+        total += purge("flow report hour record", jobParams.getFlowHourReportKeepDays(), batchSize, intervalMillis, flowReportHourMapper::clean);
+        // 独立访客数报表与流量报表保留天数一致
+        total += purge("unique visitor hour record", jobParams.getFlowHourReportKeepDays(), batchSize, intervalMillis,
+            (date, limit) -> uniqueVisitorReportMapper.clean(UniqueVisitorService.PERIOD_HOUR, date, limit));
+        total += purge("flow report day record", jobParams.getFlowDayReportKeepDays(), batchSize, intervalMillis, flowReportDayMapper::clean);
+        total += purge("unique visitor day record", jobParams.getFlowDayReportKeepDays(), batchSize, intervalMillis,
+            (date, limit) -> uniqueVisitorReportMapper.clean(UniqueVisitorService.PERIOD_DAY, date, limit));
 
-        {
-            Date date = DateUtil.addDate(new Date(), Calendar.DATE, -1 * jobParams.getClientConnectRecordKeepDays());
-            log.info("clean client connect record date:{}", sdf.format(date));
-            clientConnectRecordMapper.clean(date);
-        }
-
-        {
-            Date date = DateUtil.addDate(new Date(), Calendar.DATE, -1 * jobParams.getFlowMinuteReportKeepDays());
-            log.info("clean flow report minute record date:{}", sdf.format(date));
-            flowReportMinuteMapper.clean(date);
-        }
-
-        {
-            Date date = DateUtil.addDate(new Date(), Calendar.DATE, -1 * jobParams.getFlowHourReportKeepDays());
-            log.info("clean flow report hour record date:{}", sdf.format(date));
-            flowReportHourMapper.clean(date);
-        }
+        log.info("clean data finished, rows:{} cost:{}ms", total, System.currentTimeMillis() - startTime);
+    }
 
-        {
-            Date date = DateUtil.addDate(new Date(), Calendar.DATE, -1 * jobParams.getFlowDayReportKeepDays());
-            log.info("clean flow report day record date:{}", sdf.format(date));
-            flowReportDayMapper.clean(date);
-        }
+    /**
+     * 分批删除过期数据，每批之间暂停一段时间，避免长时间锁表、占满IO
+     * @param name 数据名称
+     * @param keepDays 保留天数
+     * @param batchSize 每批删除的行数
+     * @param intervalMillis 每批之间的间隔
+     * @param cleaner 删除一批数据，返回删除的行数
+     * @return 删除的总行数
+     */
+    private long purge(String name, Integer keepDays, int batchSize, long intervalMillis, BatchCleaner cleaner) throws InterruptedException {
+        Date date = DateUtil.addDate(new Date(), Calendar.DATE, -1 * keepDays);
+        long startTime = System.currentTimeMillis();
+        long total = 0;
+        int rows;
+        do {
+            rows = cleaner.clean(date, batchSize);
+            total += rows;
+            if (rows >= batchSize && intervalMillis > 0) {
+                Thread.sleep(intervalMillis);
+            }
+        } while (rows >= batchSize);
+        log.info("clean {} date:{} rows:{} cost:{}ms", name, sdf.format(date), total, System.currentTimeMillis() - startTime);
+        return total;
     }
 
     public static JobParams getParams(String s) {
@@ -122,9 +151,12 @@ public class DataCleanJob implements IJobHandler {
                 .setJobLogKeepDays(JOB_LOG_KEEP_DAYS)
                 .setUserLoginRecordKeepDays(USER_LOGIN_RECORD_KEEP_DAYS)
                 .setClientConnectRecordKeepDays(CLIENT_CONNECT_RECORD_KEEP_DAYS)
+                .setVisitorSessionRecordKeepDays(VISITOR_SESSION_RECORD_KEEP_DAYS)
                 .setFlowMinuteReportKeepDays(FLOW_MINUTE_REPORT_KEEP_DAYS)
                 .setFlowHourReportKeepDays(FLOW_HOUR_REPORT_KEEP_DAYS)
-                .setFlowDayReportKeepDays(FLOW_DAY_REPORT_KEEP_DAYS);
+                .setFlowDayReportKeepDays(FLOW_DAY_REPORT_KEEP_DAYS)
+                .setPurgeBatchSize(PURGE_BATCH_SIZE)
+                .setPurgeIntervalMillis(PURGE_INTERVAL_MILLIS);
     }
 
     @Accessors(chain = true)
@@ -133,8 +165,16 @@ public class DataCleanJob implements IJobHandler {
         private Integer jobLogKeepDays;
         private Integer userLoginRecordKeepDays;
         private Integer clientConnectRecordKeepDays;
+        private Integer visitorSessionRecordKeepDays;
         private Integer flowMinuteReportKeepDays;
         private Integer flowHourReportKeepDays;
         private Integer flowDayReportKeepDays;
+        private Integer purgeBatchSize;
+        private Long purgeIntervalMillis;
+    }
+
+    @FunctionalInterface
+    private interface BatchCleaner {
+        int clean(Date date, int limit);
     }
 }
@@ -6,7 +6,9 @@ import org.dromara.neutrinoproxy.server.dal.FlowReportMinuteMapper;
 import org.dromara.neutrinoproxy.server.dal.LicenseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.FlowReportMinuteDO;
 import org.dromara.neutrinoproxy.server.dal.entity.LicenseDO;
+import org.dromara.neutrinoproxy.server.service.FlowQuotaService;
 import org.dromara.neutrinoproxy.server.service.FlowReportService;
+import org.dromara.neutrinoproxy.server.service.ReportService;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.solonplugins.job.IJobHandler;
 import org.dromara.solonplugins.job.annotation.JobHandler;
@@ -33,37 +35,62 @@ public class FlowReportForMinuteJob implements IJobHandler {
     private LicenseMapper licenseMapper;
     @Inject
     private FlowReportMinuteMapper flowReportMinuteMapper;
+    @Inject
+    private FlowQuotaService flowQuotaService;
+    @Inject
+    private ReportService reportService;
 
     @Override
     public void execute(String param) throws Exception {
-        List<LicenseDO> list = licenseMapper.listAll();
-        if (CollectionUtil.isEmpty(list)) {
+        // 月流量配额已用流量落库
+        flowQuotaService.checkpoint();
+
+        // 只处理上一分钟有流量的license，空闲license不写入
+        List<FlowReportService.FlowDelta> deltaList = flowReportService.snapshotLicenseDelta();
+        if (CollectionUtil.isEmpty(deltaList)) {
             return;
         }
-        Set<Integer> licenseIds = list.stream().map(LicenseDO::getId).collect(Collectors.toSet());
+        Set<Integer> licenseIds = deltaList.stream().map(FlowReportService.FlowDelta::getLicenseId).collect(Collectors.toSet());
         Date now = new Date();
         String dateStr = DateUtil.format(DateUtil.addDate(now, Calendar.MINUTE, -1), "yyyy-MM-dd HH:mm");
         Date date = DateUtil.parse(dateStr, "yyyy-MM-dd HH:mm");
-        List<FlowReportMinuteDO> oldList = flowReportMinuteMapper.findList(licenseIds, dateStr);
-        Map<Integer, FlowReportMinuteDO> oldMap = CollectionUtil.isEmpty(oldList) ? new HashMap<>() :
-                oldList.stream().collect(Collectors.toMap(FlowReportMinuteDO::getLicenseId, Function.identity(), (a,b) -> a));
+        // 避免job重复执行导致数据重复，已有记录的license增量不确认，计入下一分钟
+        Set<Integer> existLicenseIds = flowReportMinuteMapper.findList(licenseIds, dateStr).stream()
+                .map(FlowReportMinuteDO::getLicenseId).collect(Collectors.toSet());
+        Map<Integer, LicenseDO> licenseMap = licenseMapper.findByIds(licenseIds).stream()
+                .collect(Collectors.toMap(LicenseDO::getId, Function.identity(), (a, b) -> a));
 
-        for (LicenseDO item : list) {
-            // 避免job重复执行导致数据重复
-            if (oldMap.containsKey(item.getId())) {
+        List<FlowReportService.FlowDelta> commitList = new ArrayList<>(deltaList.size());
+        List<FlowReportMinuteDO> reportList = new ArrayList<>(deltaList.size());
+        for (FlowReportService.FlowDelta delta : deltaList) {
+            if (existLicenseIds.contains(delta.getLicenseId())) {
+                continue;
+            }
+            commitList.add(delta);
+            LicenseDO licenseDO = licenseMap.get(delta.getLicenseId());
+            if (null == licenseDO) {
+                // license已删除，丢弃其流量
                 continue;
             }
-            Integer writeBytes = flowReportService.getAndResetWriteByte(item.getId());
-            Integer readBytes = flowReportService.getAndResetReadByte(item.getId());
             FlowReportMinuteDO flowReportMinuteDO = new FlowReportMinuteDO();
-            flowReportMinuteDO.setUserId(item.getUserId());
-            flowReportMinuteDO.setLicenseId(item.getId());
-            flowReportMinuteDO.setWriteBytes(writeBytes);
-            flowReportMinuteDO.setReadBytes(readBytes);
+            flowReportMinuteDO.setUserId(licenseDO.getUserId());
+            flowReportMinuteDO.setLicenseId(licenseDO.getId());
+            flowReportMinuteDO.setWriteBytes(delta.getWriteBytes());
+            flowReportMinuteDO.setReadBytes(delta.getReadBytes());
             flowReportMinuteDO.setDate(date);
             flowReportMinuteDO.setDateStr(dateStr);
             flowReportMinuteDO.setCreateTime(now);
-            flowReportMinuteMapper.insert(flowReportMinuteDO);
+            reportList.add(flowReportMinuteDO);
+        }
+
+        // 落库成功后再确认快照，落库失败时流量保留到下一分钟
+        flowReportService.saveMinuteReport(reportList);
+        flowReportService.commitLicenseDelta(commitList);
+        reportService.onMinuteReportSaved(reportList);
+
+        // 刷新当前小时的小时报表，小时报表保持分钟级时效
+        if (!reportList.isEmpty()) {
+            flowReportService.rollupHour(DateUtil.format(date, "yyyy-MM-dd HH"));
         }
     }
 }
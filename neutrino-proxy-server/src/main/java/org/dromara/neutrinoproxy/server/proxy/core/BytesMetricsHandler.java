@@ -1,51 +1,163 @@
 package org.dromara.neutrinoproxy.server.proxy.core;
 
+import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
 import org.dromara.neutrinoproxy.server.proxy.domain.MetricsCollector;
+import org.dromara.neutrinoproxy.server.proxy.domain.VisitorChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.service.TopTalkerService;
+import org.dromara.neutrinoproxy.server.service.VisitorSessionLogService;
+import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import org.noear.solon.Solon;
 
 import java.net.InetSocketAddress;
 
 /**
- *
+ * 访问指标统计
+ * 连接建立时解析一次端口对应的统计器并缓存在处理器中，读写时不再查表
+ * 同时累计本连接的读写字节数，TCP、HTTP访问者连接关闭时生成会话记录；
+ * 流量排行按 TALKER_FLUSH_BYTES 攒批后再更新，避免每个数据包都进入排行统计的锁；
+ * HTTP长连接上的附加信息可能随请求变化，每次统计时重新读取，变化时先结算上一段
  * @author: aoshiguchen
  * @date: 2022/6/16
  */
 public class BytesMetricsHandler extends ChannelDuplexHandler {
+    private static final long TALKER_FLUSH_BYTES = 64 * 1024;
+    private final NetworkProtocolEnum protocol;
+    private MetricsCollector metricsCollector;
+    private long activeTime;
+    /**
+     * 当前会话段的开始时间，HTTP长连接切换映射时重新开始
+     */
+    private long sessionStartTime;
+    /**
+     * 本连接的读写字节数，读写事件都在连接所属的EventLoop中执行，无需同步
+     */
+    private long readBytes;
+    private long writeBytes;
+    /**
+     * 尚未计入流量排行的字节数
+     */
+    private long talkerPendingBytes;
+    /**
+     * 访问者通道附加信息，HTTP需解析完域名后才有，且每次统计时重新读取
+     */
+    private VisitorChannelAttachInfo attachInfo;
+
+    public BytesMetricsHandler(NetworkProtocolEnum protocol) {
+        this.protocol = protocol;
+    }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        InetSocketAddress sa = (InetSocketAddress) ctx.channel().localAddress();
-        MetricsCollector metricsCollector = MetricsCollector.getCollector(sa.getPort());
-        metricsCollector.incrementReadBytes(((ByteBuf) msg).readableBytes());
-        metricsCollector.incrementReadMsgs(1);
-//        System.out.println("字节数:" + metricsCollector.getMetrics().getReadBytes());
+        long size = calculateSize(msg);
+        if (size >= 0 && null != metricsCollector) {
+            metricsCollector.incrementReadBytes(size);
+            readBytes += size;
+            talkerPendingBytes += size;
+        }
         ctx.fireChannelRead(msg);
+        if (NetworkProtocolEnum.UDP != protocol) {
+            flushTalkerBytes(ctx, false);
+        }
     }
 
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
-        InetSocketAddress sa = (InetSocketAddress) ctx.channel().localAddress();
-        MetricsCollector metricsCollector = MetricsCollector.getCollector(sa.getPort());
-        metricsCollector.incrementWriteBytes(((ByteBuf) msg).readableBytes());
-        metricsCollector.incrementWroteMsgs(1);
+        long size = calculateSize(msg);
+        if (size >= 0 && null != metricsCollector) {
+            metricsCollector.incrementWriteBytes(size);
+            writeBytes += size;
+            talkerPendingBytes += size;
+        }
         super.write(ctx, msg, promise);
+        if (NetworkProtocolEnum.UDP != protocol) {
+            flushTalkerBytes(ctx, false);
+        }
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         InetSocketAddress sa = (InetSocketAddress) ctx.channel().localAddress();
-        MetricsCollector.getCollector(sa.getPort()).getChannels().incrementAndGet();
+        metricsCollector = MetricsCollector.getCollector(protocol, sa.getPort());
+        metricsCollector.channelActive();
+        activeTime = System.currentTimeMillis();
+        sessionStartTime = activeTime;
         super.channelActive(ctx);
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        InetSocketAddress sa = (InetSocketAddress) ctx.channel().localAddress();
-        MetricsCollector.getCollector(sa.getPort()).getChannels().decrementAndGet();
+        if (null != metricsCollector) {
+            metricsCollector.channelInactive(System.currentTimeMillis() - activeTime);
+        }
+        // UDP为共享的数据报通道，没有独立的访问者连接，不记录会话
+        if (NetworkProtocolEnum.UDP != protocol && activeTime > 0) {
+            flushTalkerBytes(ctx, true);
+            publishSession(ctx);
+        }
         super.channelInactive(ctx);
     }
 
+    /**
+     * 将攒下的字节数计入流量排行，首次获取到附加信息时计一次连接
+     * @param force 是否忽略攒批阈值
+     */
+    private void flushTalkerBytes(ChannelHandlerContext ctx, boolean force) {
+        if (null == attachInfo || NetworkProtocolEnum.HTTP == protocol) {
+            VisitorChannelAttachInfo current = ProxyUtil.getAttachInfo(ctx.channel());
+            // 附加信息被移除时仍沿用上一个，直到连接关闭结算
+            if (null != current && null != current.getIp() && current != attachInfo) {
+                switchAttachInfo(ctx, current);
+            }
+            if (null == attachInfo) {
+                return;
+            }
+        }
+        if (talkerPendingBytes <= 0 || (!force && talkerPendingBytes < TALKER_FLUSH_BYTES)) {
+            return;
+        }
+        Solon.context().getBean(TopTalkerService.class).addBytes(attachInfo.getLicenseId(), attachInfo.getServerPort(), attachInfo.getIp(), talkerPendingBytes);
+        talkerPendingBytes = 0;
+    }
+
+    /**
+     * 附加信息变化时，已统计的字节数与会话归属上一个映射，之后的计入新映射
+     */
+    private void switchAttachInfo(ChannelHandlerContext ctx, VisitorChannelAttachInfo current) {
+        if (null != attachInfo) {
+            if (talkerPendingBytes > 0) {
+                Solon.context().getBean(TopTalkerService.class).addBytes(attachInfo.getLicenseId(), attachInfo.getServerPort(), attachInfo.getIp(), talkerPendingBytes);
+                talkerPendingBytes = 0;
+            }
+            publishSession(ctx);
+            sessionStartTime = System.currentTimeMillis();
+            readBytes = 0;
+            writeBytes = 0;
+        }
+        attachInfo = current;
+        Solon.context().getBean(TopTalkerService.class).addConnection(attachInfo.getLicenseId(), attachInfo.getServerPort(), attachInfo.getIp());
+    }
+
+    private void publishSession(ChannelHandlerContext ctx) {
+        if (null == attachInfo) {
+            return;
+        }
+        Solon.context().getBean(VisitorSessionLogService.class).publish(protocol, attachInfo,
+            (InetSocketAddress) ctx.channel().remoteAddress(), sessionStartTime, readBytes, writeBytes);
+    }
+
+    private long calculateSize(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        return -1;
+    }
+
 }
@@ -0,0 +1,74 @@
+package org.dromara.neutrinoproxy.server.proxy.core;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.core.DatagramTunnelFrame;
+import org.dromara.neutrinoproxy.server.proxy.domain.DatagramTunnel;
+import org.dromara.neutrinoproxy.server.proxy.domain.UdpSession;
+import org.dromara.neutrinoproxy.server.service.DatagramTunnelService;
+import org.dromara.neutrinoproxy.server.service.UdpSessionService;
+import org.noear.solon.Solon;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 数据报隧道处理器
+ * 令牌无效、消息认证码错误、计数重放、格式错误的数据报直接丢弃，不应答；
+ * 客户端地址只随认证帧更新，其他帧须来自当前地址
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+@Slf4j
+public class DatagramTunnelChannelHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+    private final DatagramTunnelService datagramTunnelService = Solon.context().getBean(DatagramTunnelService.class);
+    private final UdpSessionService udpSessionService = Solon.context().getBean(UdpSessionService.class);
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagramPacket) throws Exception {
+        DatagramTunnel tunnel = datagramTunnelService.getByToken(DatagramTunnelFrame.peekToken(datagramPacket.content()));
+        if (null == tunnel) {
+            return;
+        }
+        DatagramTunnelFrame frame = tunnel.decode(datagramPacket.content());
+        if (null == frame) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (DatagramTunnelFrame.TYPE_AUTH == frame.getType()) {
+            // 只有认证帧可以更新客户端地址
+            tunnel.authenticate(datagramPacket.sender(), now);
+            log.info("[datagram tunnel]auth success licenseId:{} address:{}", tunnel.getLicenseId(), datagramPacket.sender());
+            reply(ctx, tunnel, DatagramTunnelFrame.TYPE_AUTH_ACK, datagramPacket.sender());
+            return;
+        }
+        if (!tunnel.touch(datagramPacket.sender(), now)) {
+            return;
+        }
+        switch (frame.getType()) {
+            case DatagramTunnelFrame.TYPE_KEEPALIVE:
+                reply(ctx, tunnel, DatagramTunnelFrame.TYPE_KEEPALIVE, datagramPacket.sender());
+                break;
+            case DatagramTunnelFrame.TYPE_DATA:
+                // 只能回写到本license的访问者会话
+                UdpSession session = udpSessionService.getByVisitorId(String.valueOf(frame.getVisitorId()));
+                if (null != session && tunnel.getLicenseId().equals(session.getLicenseId())) {
+                    udpSessionService.reply(session, frame.getData());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void reply(ChannelHandlerContext ctx, DatagramTunnel tunnel, byte type, InetSocketAddress recipient) {
+        ctx.writeAndFlush(new DatagramPacket(tunnel.encode(DatagramTunnelFrame.create(type, tunnel.getToken()), ctx.alloc()), recipient));
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // 监听通道为所有客户端共用，不关闭
+        log.error("[datagram tunnel] error", cause);
+    }
+}
@@ -0,0 +1,66 @@
+package org.dromara.neutrinoproxy.server.proxy.core;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.logging.LoggingHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.service.DatagramTunnelService;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+import org.noear.solon.core.event.AppLoadEndEvent;
+import org.noear.solon.core.event.EventListener;
+import org.noear.solon.core.runtime.NativeDetector;
+
+/**
+ * 数据报隧道服务
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+@Slf4j
+@Component
+public class DatagramTunnelServer implements EventListener<AppLoadEndEvent> {
+	@Inject
+	private ProxyConfig proxyConfig;
+	@Inject("tunnelWorkerGroup")
+	private NioEventLoopGroup serverWorkerGroup;
+	@Inject
+	private DatagramTunnelService datagramTunnelService;
+
+	@Override
+	public void onEvent(AppLoadEndEvent appLoadEndEvent) throws Throwable {
+		// aot 阶段，不启动代理服务
+		if (NativeDetector.isNotAotRuntime() && null != proxyConfig.getTunnel().getDatagramPort()) {
+			startDatagramTunnelServer();
+		}
+	}
+
+	private void startDatagramTunnelServer() {
+		Bootstrap bootstrap = new Bootstrap();
+		bootstrap.group(serverWorkerGroup)
+			.channel(NioDatagramChannel.class)
+			// 所有客户端共用一个通道，读写缓冲区适当加大
+			.option(ChannelOption.SO_RCVBUF, 4096 * 1024)
+			.option(ChannelOption.SO_SNDBUF, 4096 * 1024)
+			.handler(new ChannelInitializer<NioDatagramChannel>() {
+				@Override
+				protected void initChannel(NioDatagramChannel ch) {
+					if (null != proxyConfig.getTunnel().getTransferLogEnable() && proxyConfig.getTunnel().getTransferLogEnable()) {
+						ch.pipeline().addFirst(new LoggingHandler(DatagramTunnelServer.class));
+					}
+					ch.pipeline().addLast(new DatagramTunnelChannelHandler());
+				}
+			});
+		try {
+			Channel channel = bootstrap.bind(proxyConfig.getTunnel().getDatagramPort()).sync().channel();
+			datagramTunnelService.setChannel(channel);
+			log.info("datagram tunnel server started，port：{}", proxyConfig.getTunnel().getDatagramPort());
+		} catch (Exception e) {
+			log.error("datagram tunnel server error", e);
+		}
+	}
+}
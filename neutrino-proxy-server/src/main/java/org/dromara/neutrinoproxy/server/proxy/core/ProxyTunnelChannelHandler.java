@@ -8,8 +8,11 @@ import org.dromara.neutrinoproxy.server.constant.ClientConnectTypeEnum;
 import org.dromara.neutrinoproxy.server.constant.SuccessCodeEnum;
 import org.dromara.neutrinoproxy.server.dal.entity.ClientConnectRecordDO;
 import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.security.HierarchicalTrafficShapingHandler;
 import org.dromara.neutrinoproxy.server.service.ClientConnectRecordService;
+import org.dromara.neutrinoproxy.server.service.DatagramTunnelService;
 import org.dromara.neutrinoproxy.server.service.ProxyMutualService;
+import org.dromara.neutrinoproxy.server.service.UdpSessionService;
 import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
@@ -50,7 +53,7 @@ public class ProxyTunnelChannelHandler extends SimpleChannelInboundHandler<Proxy
     public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
         Channel visitorChannel = ctx.channel().attr(Constants.NEXT_CHANNEL).get();
         if (visitorChannel != null) {
-            visitorChannel.config().setOption(ChannelOption.AUTO_READ, ctx.channel().isWritable());
+            HierarchicalTrafficShapingHandler.setAutoRead(visitorChannel, ctx.channel().isWritable());
         }
 
         super.channelWritabilityChanged(ctx);
@@ -69,9 +72,11 @@ public class ProxyTunnelChannelHandler extends SimpleChannelInboundHandler<Proxy
             }
             ProxyUtil.remoteProxyConnectAttachment(visitorId);
 
-            // 此处如果时UDP的 visitorChannel，则不能close，先临时判断一下
+            // udp监听通道为端口级别共享，不能close，只解除会话与该隧道的绑定
             Boolean isUdp = visitorChannel.attr(Constants.IS_UDP_KEY).get();
-            if (visitorChannel.isActive() && null == isUdp) {
+            if (null != isUdp) {
+                Solon.context().getBean(UdpSessionService.class).unbindTunnel(visitorId, ctx.channel());
+            } else if (visitorChannel.isActive()) {
                 // 数据发送完成后再关闭连接，解决http1.0数据传输问题
                 visitorChannel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
                 visitorChannel.close();
@@ -87,6 +92,8 @@ public class ProxyTunnelChannelHandler extends SimpleChannelInboundHandler<Proxy
                     // 防止下次换一个客户端，无法连接的情况
                     ProxyUtil.removeClientIdByLicenseId(cmdChannelAttachInfo.getLicenseId());
                 }
+                // 数据报隧道令牌随指令通道失效
+                Solon.context().getBean(DatagramTunnelService.class).revoke(cmdChannelAttachInfo.getLicenseId(), ctx.channel());
                 // 即便是因为上述原因断开，断开的日志依然要记录，方便排查问题
                 Solon.context().getBean(ClientConnectRecordService.class).add(new ClientConnectRecordDO()
                         .setIp(((InetSocketAddress)ctx.channel().remoteAddress()).getAddress().getHostAddress())
@@ -124,7 +131,13 @@ public class ProxyTunnelChannelHandler extends SimpleChannelInboundHandler<Proxy
                     }
                     break;
                 case WRITER_IDLE:
-                    ctx.channel().writeAndFlush(ProxyMessage.buildHeartbeatMessage());
+                    ProxyMessage heartbeat = ProxyMessage.buildHeartbeatMessage();
+                    // 控制通道的心跳带上探测序号，客户端以负序号回显，用于统计往返时延
+                    CmdChannelAttachInfo cmdChannelAttachInfo = ProxyUtil.getAttachInfo(ctx.channel());
+                    if (null != cmdChannelAttachInfo) {
+                        heartbeat.setSerialNumber(cmdChannelAttachInfo.getRttStats().nextProbe(System.nanoTime()));
+                    }
+                    ctx.channel().writeAndFlush(heartbeat);
                     break;
                 case ALL_IDLE:
                     break;
@@ -3,16 +3,18 @@ package org.dromara.neutrinoproxy.server.proxy.core;
 import io.netty.handler.logging.LoggingHandler;
 import org.dromara.neutrinoproxy.core.ProxyMessageDecoder;
 import org.dromara.neutrinoproxy.core.ProxyMessageEncoder;
+import org.dromara.neutrinoproxy.core.transport.TunnelTransport;
+import org.dromara.neutrinoproxy.core.transport.TunnelTransports;
 import org.dromara.neutrinoproxy.core.util.FileUtil;
 import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.EventExecutorGroup;
 import lombok.extern.slf4j.Slf4j;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Inject;
@@ -41,50 +43,57 @@ public class ProxyTunnelServer implements EventListener<AppLoadEndEvent> {
 	private NioEventLoopGroup serverBossGroup;
 	@Inject("tunnelWorkerGroup")
 	private NioEventLoopGroup serverWorkerGroup;
+	private final TunnelTransport tcpTransport = TunnelTransports.of(TunnelTransport.TCP, null);
 	@Override
 	public void onEvent(AppLoadEndEvent appLoadEndEvent) throws Throwable {
         // aot 阶段，不启动代理服务
         if (NativeDetector.isNotAotRuntime()) {
             startProxyServer();
             startProxyServerForSSL();
+            startKcpProxyServer();
         }
 	}
 	/**
 	 * 启动代理服务
 	 */
 	private void startProxyServer() {
-		ServerBootstrap bootstrap = new ServerBootstrap();
-		bootstrap.group(serverBossGroup, serverWorkerGroup).channel(NioServerSocketChannel.class).childHandler(new ChannelInitializer<SocketChannel>() {
+		startProxyServer(tcpTransport, proxyConfig.getTunnel().getPort(), false);
+	}
 
-			@Override
-			public void initChannel(SocketChannel ch) throws Exception {
-				proxyServerCommonInitHandler(ch);
-			}
-		});
-		try {
-			bootstrap.bind(proxyConfig.getTunnel().getPort()).sync();
-			log.info("proxy server started，port：{}", proxyConfig.getTunnel().getPort());
-		} catch (Exception e) {
-			log.error("proxy server error", e);
+	private void startProxyServerForSSL() {
+		startProxyServer(tcpTransport, proxyConfig.getTunnel().getSslPort(), true);
+	}
+
+	/**
+	 * 启动KCP隧道服务，与TCP隧道共用同一套协议处理
+	 */
+	private void startKcpProxyServer() {
+		if (null == proxyConfig.getTunnel().getKcpPort() && null == proxyConfig.getTunnel().getKcpSslPort()) {
+			return;
 		}
+		TunnelTransport kcpTransport = TunnelTransports.of(TunnelTransport.KCP, proxyConfig.getTunnel().getKcp());
+		startProxyServer(kcpTransport, proxyConfig.getTunnel().getKcpPort(), false);
+		startProxyServer(kcpTransport, proxyConfig.getTunnel().getKcpSslPort(), true);
 	}
 
-	private void startProxyServerForSSL() {
-		if (null == proxyConfig.getTunnel().getSslPort()) {
+	private void startProxyServer(TunnelTransport transport, Integer port, boolean ssl) {
+		if (null == port) {
 			return;
 		}
- 		ServerBootstrap bootstrap = new ServerBootstrap();
-		bootstrap.group(serverBossGroup, serverWorkerGroup)
-			.channel(NioServerSocketChannel.class).childHandler(new ChannelInitializer<SocketChannel>() {
+		// KCP等基于UDP的传输所有连接共用一个事件循环，协议处理分派到 workerGroup
+		EventExecutorGroup executor = transport.childExecutor(serverWorkerGroup);
+		ServerBootstrap bootstrap = transport.serverBootstrap(serverBossGroup, serverWorkerGroup, new ChannelInitializer<Channel>() {
 			@Override
-			public void initChannel(SocketChannel ch) throws Exception {
-				ch.pipeline().addLast(createSslHandler());
-				proxyServerCommonInitHandler(ch);
+			public void initChannel(Channel ch) throws Exception {
+				if (ssl) {
+					ch.pipeline().addLast(executor, createSslHandler());
+				}
+				proxyServerCommonInitHandler(ch, executor);
 			}
 		});
 		try {
-			bootstrap.bind(proxyConfig.getTunnel().getSslPort()).sync();
-			log.info("proxy server started，SSL port： {}", proxyConfig.getTunnel().getSslPort());
+			bootstrap.bind(port).sync();
+			log.info("proxy server started，{} {}port：{}", transport.name(), ssl ? "SSL " : "", port);
 		} catch (Exception e) {
 			log.error("proxy server error", e);
 		}
@@ -115,15 +124,15 @@ public class ProxyTunnelServer implements EventListener<AppLoadEndEvent> {
 		return null;
 	}
 
-	private void proxyServerCommonInitHandler(SocketChannel ch) {
+	private void proxyServerCommonInitHandler(Channel ch, EventExecutorGroup executor) {
 		if (null != proxyConfig.getTunnel().getTransferLogEnable() && proxyConfig.getTunnel().getTransferLogEnable()) {
 			ch.pipeline().addFirst(new LoggingHandler(ProxyTunnelServer.class));
 		}
-		ch.pipeline().addLast(new ProxyMessageDecoder(proxyConfig.getProtocol().getMaxFrameLength(),
+		ch.pipeline().addLast(executor, new ProxyMessageDecoder(proxyConfig.getProtocol().getMaxFrameLength(),
 			proxyConfig.getProtocol().getLengthFieldOffset(), proxyConfig.getProtocol().getLengthFieldLength(),
 			proxyConfig.getProtocol().getLengthAdjustment(), proxyConfig.getProtocol().getInitialBytesToStrip()));
-		ch.pipeline().addLast(new ProxyMessageEncoder());
-		ch.pipeline().addLast(new IdleStateHandler(proxyConfig.getProtocol().getReadIdleTime(), proxyConfig.getProtocol().getWriteIdleTime(), proxyConfig.getProtocol().getAllIdleTimeSeconds()));
-		ch.pipeline().addLast(new ProxyTunnelChannelHandler());
+		ch.pipeline().addLast(executor, new ProxyMessageEncoder());
+		ch.pipeline().addLast(executor, new IdleStateHandler(proxyConfig.getProtocol().getReadIdleTime(), proxyConfig.getProtocol().getWriteIdleTime(), proxyConfig.getProtocol().getAllIdleTimeSeconds()));
+		ch.pipeline().addLast(executor, new ProxyTunnelChannelHandler());
 	}
 }
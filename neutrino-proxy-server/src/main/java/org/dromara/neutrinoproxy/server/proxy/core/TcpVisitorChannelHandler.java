@@ -10,7 +10,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.dromara.neutrinoproxy.core.Constants;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
 import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
+import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
 import org.dromara.neutrinoproxy.server.proxy.domain.VisitorChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.security.HierarchicalTrafficShapingHandler;
+import org.dromara.neutrinoproxy.server.service.FlowQuotaService;
 import org.dromara.neutrinoproxy.server.service.FlowReportService;
 import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import org.noear.solon.Solon;
@@ -47,7 +50,7 @@ public class TcpVisitorChannelHandler extends SimpleChannelInboundHandler<ByteBu
         buf.readBytes(bytes);
 
         // 代理通道可写，则设置访问通道可读。代理通道不可写，则设置访问通道不可读
-        visitorChannel.config().setAutoRead(proxyChannel.isWritable());
+        HierarchicalTrafficShapingHandler.setAutoRead(visitorChannel, proxyChannel.isWritable());
 
         // 转发代理数据
         String visitorId = ProxyUtil.getVisitorIdByChannel(visitorChannel);
@@ -55,11 +58,12 @@ public class TcpVisitorChannelHandler extends SimpleChannelInboundHandler<ByteBu
 
         // 增加流量计数
         VisitorChannelAttachInfo visitorChannelAttachInfo = ProxyUtil.getAttachInfo(visitorChannel);
-        Solon.context().getBean(FlowReportService.class).addWriteByte(visitorChannelAttachInfo.getLicenseId(), bytes.length);
+        Solon.context().getBean(FlowReportService.class).addWriteByte(visitorChannelAttachInfo.getLicenseId(), visitorChannelAttachInfo.getServerPort(), bytes.length);
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        long acceptNanos = System.nanoTime();
         Channel visitorChannel = ctx.channel();
         InetSocketAddress sa = (InetSocketAddress) visitorChannel.localAddress();
 
@@ -70,6 +74,13 @@ public class TcpVisitorChannelHandler extends SimpleChannelInboundHandler<ByteBu
             return;
         }
 
+        // 流量配额已用完，拒绝新的访问者
+        CmdChannelAttachInfo cmdChannelAttachInfo = ProxyUtil.getAttachInfo(cmdChannel);
+        if (null != cmdChannelAttachInfo && Solon.context().getBean(FlowQuotaService.class).isExceeded(cmdChannelAttachInfo.getLicenseId())) {
+            ctx.channel().close();
+            return;
+        }
+
         // 根据代理服务端端口，获取被代理客户端局域网连接信息
         String lanInfo = ProxyUtil.getClientLanInfoByServerPort(sa.getPort());
         if (StrUtil.isEmpty(lanInfo)) {
@@ -78,11 +89,15 @@ public class TcpVisitorChannelHandler extends SimpleChannelInboundHandler<ByteBu
         }
 
         // 用户连接到代理服务器时，设置用户连接不可读，等待代理后端服务器连接成功后再改变为可读状态
-        visitorChannel.config().setOption(ChannelOption.AUTO_READ, false);
+        HierarchicalTrafficShapingHandler.setAutoRead(visitorChannel, false);
 
         String visitorId = ProxyUtil.newVisitorId();
         ProxyUtil.addVisitorChannelToCmdChannel(NetworkProtocolEnum.TCP, cmdChannel, visitorId, visitorChannel, sa.getPort());
-        cmdChannel.writeAndFlush(ProxyMessage.buildConnectMessage(visitorId).setData(lanInfo.getBytes()));
+        // 记录连接建立各阶段的时间
+        VisitorChannelAttachInfo visitorChannelAttachInfo = ProxyUtil.getAttachInfo(visitorChannel);
+        visitorChannelAttachInfo.setAcceptNanos(acceptNanos);
+        cmdChannel.writeAndFlush(ProxyMessage.buildConnectMessage(visitorId).setData(lanInfo.getBytes()))
+                .addListener(future -> visitorChannelAttachInfo.setConnectSentNanos(System.nanoTime()));
 
         super.channelActive(ctx);
     }
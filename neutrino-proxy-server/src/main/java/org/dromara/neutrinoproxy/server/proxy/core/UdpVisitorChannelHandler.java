@@ -3,16 +3,15 @@ package org.dromara.neutrinoproxy.server.proxy.core;
 import cn.hutool.core.util.StrUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramPacket;
 import lombok.extern.slf4j.Slf4j;
-import org.dromara.neutrinoproxy.core.Constants;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
 import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
-import org.dromara.neutrinoproxy.server.proxy.domain.ProxyAttachment;
-import org.dromara.neutrinoproxy.server.proxy.domain.VisitorChannelAttachInfo;
-import org.dromara.neutrinoproxy.server.service.FlowReportService;
+import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.domain.UdpSession;
+import org.dromara.neutrinoproxy.server.service.FlowQuotaService;
+import org.dromara.neutrinoproxy.server.service.UdpSessionService;
 import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import org.noear.solon.Solon;
 
@@ -24,60 +23,25 @@ import java.net.InetSocketAddress;
  */
 @Slf4j
 public class UdpVisitorChannelHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+    private final FlowQuotaService flowQuotaService = Solon.context().getBean(FlowQuotaService.class);
+    private final UdpSessionService udpSessionService = Solon.context().getBean(UdpSessionService.class);
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagramPacket) throws Exception {
         Channel visitorChannel = ctx.channel();
         InetSocketAddress sa = (InetSocketAddress) visitorChannel.localAddress();
 
-        byte[] bytes = new byte[datagramPacket.content().readableBytes()];
-        datagramPacket.content().readBytes(bytes);
-        datagramPacket.content().resetReaderIndex();
-        ProxyAttachment proxyAttachment = new ProxyAttachment(ctx.channel(), bytes, (channel, buf) -> {
-            Channel proxyChannel = channel.attr(Constants.NEXT_CHANNEL).get();
-
-            if (null == proxyChannel) {
-//                // 该端口还没有代理客户端
-//                ctx.channel().close();
-                return;
-            }
-
-            proxyChannel.attr(Constants.SENDER).set(datagramPacket.sender());
-            String targetIp = proxyChannel.attr(Constants.TARGET_IP).get();
-            int targetPort = proxyChannel.attr(Constants.TARGET_PORT).get();
-            Integer proxyResponses = proxyChannel.attr(Constants.PROXY_RESPONSES).get();
-            Long proxyTimeoutMs = proxyChannel.attr(Constants.PROXY_TIMEOUT_MS).get();
-
-            // 转发代理数据
-            String visitorId = ProxyUtil.getVisitorIdByChannel(channel);
-            proxyChannel.writeAndFlush(ProxyMessage.buildUdpTransferMessage(new ProxyMessage.UdpBaseInfo()
-                    .setVisitorId(visitorId)
-                    .setVisitorIp(datagramPacket.sender().getAddress().getHostAddress())
-                    .setVisitorPort(datagramPacket.sender().getPort())
-                    .setTargetIp(targetIp)
-                    .setTargetPort(targetPort)
-                    .setProxyTimeoutMs(proxyTimeoutMs)
-                    .setProxyResponses(proxyResponses)
-            ).setData(bytes));
-
-            // 增加流量计数
-            VisitorChannelAttachInfo visitorChannelAttachInfo = ProxyUtil.getAttachInfo(channel);
-            Solon.context().getBean(FlowReportService.class).addWriteByte(visitorChannelAttachInfo.getLicenseId(), bytes.length);
-        });
-
-        Channel proxyChannel = ctx.channel().attr(Constants.NEXT_CHANNEL).get();
-        if (null != proxyChannel && proxyChannel.isActive()) {
-            // UDP代理隧道已就绪，直接转发
-            proxyAttachment.execute();
-            return;
-        }
-
         Channel cmdChannel = ProxyUtil.getCmdChannelByServerPort(sa.getPort());
-
-        // 没有指令通道，直接结束
+        // 没有指令通道，该端口还没有代理客户端，直接丢弃
         if (null == cmdChannel) {
-            // 该端口还没有代理客户端
-//            ctx.channel().close();
+            return;
+        }
+        CmdChannelAttachInfo cmdChannelAttachInfo = ProxyUtil.getAttachInfo(cmdChannel);
+        if (null == cmdChannelAttachInfo) {
+            return;
+        }
+        // 流量配额已用完，udp访问通道为端口级别共享，不能关闭，直接丢弃数据包
+        if (flowQuotaService.isExceeded(cmdChannelAttachInfo.getLicenseId())) {
             return;
         }
 
@@ -88,23 +52,26 @@ public class UdpVisitorChannelHandler extends SimpleChannelInboundHandler<Datagr
             return;
         }
 
-        String[] targetInfo = lanInfo.split(":");
-        String targetIp = targetInfo[0];
-        int targetPort = Integer.parseInt(targetInfo[1]);
+        // 按来源地址区分访问者，超出端口会话数上限时丢弃
+        UdpSession session = udpSessionService.getOrCreate(sa.getPort(), datagramPacket.sender(), cmdChannelAttachInfo.getLicenseId(), visitorChannel);
+        if (null == session) {
+            return;
+        }
 
-//        // 用户连接到代理服务器时，设置用户连接不可读，等待代理后端服务器连接成功后再改变为可读状态
-//        visitorChannel.config().setOption(ChannelOption.AUTO_READ, false);
+        byte[] bytes = new byte[datagramPacket.content().readableBytes()];
+        datagramPacket.content().readBytes(bytes);
+        if (!udpSessionService.forward(session, bytes)) {
+            return;
+        }
 
-        // TODO UDP此处叫visitor似有不妥，与TCP不同,2.x重构思考
-        String visitorId = ProxyUtil.newVisitorId();
-        // 此处需要和tcp分开
-        ProxyUtil.addVisitorChannelToCmdChannel(NetworkProtocolEnum.UDP, cmdChannel, visitorId, visitorChannel, sa.getPort());
-        ProxyUtil.addProxyConnectAttachment(visitorId, proxyAttachment);
+        // 会话的代理隧道未建立，通知代理客户端建立，期间的数据包暂存在会话中
+        String[] targetInfo = lanInfo.split(":");
+        ProxyUtil.addVisitorChannelToCmdChannel(NetworkProtocolEnum.UDP, cmdChannel, session.getVisitorId(), visitorChannel, sa.getPort());
         cmdChannel.writeAndFlush(ProxyMessage.buildUdpConnectMessage(new ProxyMessage.UdpBaseInfo()
-                .setVisitorId(visitorId)
+                .setVisitorId(session.getVisitorId())
                 .setServerPort(sa.getPort())
-                .setTargetIp(targetIp)
-                .setTargetPort(targetPort)
+                .setTargetIp(targetInfo[0])
+                .setTargetPort(Integer.parseInt(targetInfo[1]))
         ));
     }
 
@@ -133,10 +100,7 @@ public class UdpVisitorChannelHandler extends SimpleChannelInboundHandler<Datagr
             ctx.channel().close();
         }
         else {
-            Channel proxyChannel = visitorChannel.attr(Constants.NEXT_CHANNEL).get();
-            if (null != proxyChannel) {
-                proxyChannel.config().setOption(ChannelOption.AUTO_READ, visitorChannel.isWritable());
-            }
+            udpSessionService.setTunnelAutoRead(sa.getPort(), visitorChannel.isWritable());
         }
 
         super.channelWritabilityChanged(ctx);
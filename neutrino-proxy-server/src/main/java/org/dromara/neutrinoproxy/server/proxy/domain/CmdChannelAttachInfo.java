@@ -31,4 +31,8 @@ public class CmdChannelAttachInfo {
 	 * ip
 	 */
 	private String ip;
+	/**
+	 * 心跳探测的往返时延统计
+	 */
+	private final TunnelRttStats rttStats = new TunnelRttStats();
 }
@@ -0,0 +1,124 @@
+package org.dromara.neutrinoproxy.server.proxy.domain;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import org.dromara.neutrinoproxy.core.DatagramReplayWindow;
+import org.dromara.neutrinoproxy.core.DatagramTunnelFrame;
+
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端的数据报隧道
+ * 令牌与密钥由指令通道下发，与指令通道同生命周期；客户端地址只在校验通过的认证帧到达时更新，客户端NAT映射变化后由客户端重新认证
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+public final class DatagramTunnel {
+    private final Integer licenseId;
+    private final long token;
+    private final byte[] key;
+    private final Channel cmdChannel;
+    private volatile InetSocketAddress address;
+    private volatile long lastActiveTime;
+    /**
+     * 已经指令通道通知客户端放行的转发目标
+     */
+    private final Set<String> announcedTargets = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sendCounter = new AtomicLong();
+    private final DatagramReplayWindow replayWindow = new DatagramReplayWindow();
+
+    public DatagramTunnel(Integer licenseId, long token, byte[] key, Channel cmdChannel) {
+        this.licenseId = licenseId;
+        this.token = token;
+        this.key = key;
+        this.cmdChannel = cmdChannel;
+    }
+
+    /**
+     * 校验并解码客户端发来的帧
+     * @return 消息认证码错误、格式错误或计数重放时返回null
+     */
+    public DatagramTunnelFrame decode(ByteBuf buf) {
+        if (!DatagramTunnelFrame.verify(buf, key)) {
+            return null;
+        }
+        DatagramTunnelFrame frame = DatagramTunnelFrame.decode(buf);
+        if (null == frame || !replayWindow.accept(frame.getCounter())) {
+            return null;
+        }
+        return frame;
+    }
+
+    /**
+     * 客户端认证成功，更新客户端地址与活跃时间
+     */
+    public void authenticate(InetSocketAddress sender, long now) {
+        if (!sender.equals(address)) {
+            address = sender;
+        }
+        lastActiveTime = now;
+    }
+
+    /**
+     * 收到当前地址发来的数据报，更新活跃时间
+     * @return 非当前地址时返回false
+     */
+    public boolean touch(InetSocketAddress sender, long now) {
+        if (!sender.equals(address)) {
+            return false;
+        }
+        lastActiveTime = now;
+        return true;
+    }
+
+    /**
+     * 是否可用：客户端已认证，且空闲未超时
+     */
+    public boolean isAlive(long now, long idleMillis) {
+        return null != address && now - lastActiveTime < idleMillis && cmdChannel.isActive();
+    }
+
+    /**
+     * 编码发往客户端的帧
+     * @return 超过单个数据报的最大载荷时返回null
+     */
+    public ByteBuf encode(DatagramTunnelFrame frame, ByteBufAllocator alloc) {
+        return frame.setCounter(sendCounter.incrementAndGet()).encode(alloc, key);
+    }
+
+    /**
+     * 记录已通知客户端放行的转发目标
+     * @return 首次通知时返回true
+     */
+    public boolean announce(String targetKey) {
+        return announcedTargets.add(targetKey);
+    }
+
+    public Integer getLicenseId() {
+        return licenseId;
+    }
+
+    public long getToken() {
+        return token;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public Channel getCmdChannel() {
+        return cmdChannel;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public long getLastActiveTime() {
+        return lastActiveTime;
+    }
+}
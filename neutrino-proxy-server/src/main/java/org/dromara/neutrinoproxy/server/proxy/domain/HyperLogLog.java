@@ -0,0 +1,140 @@
+package org.dromara.neutrinoproxy.server.proxy.domain;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * HyperLogLog 基数估计
+ * 精度 P = 12，共 4096 个寄存器，标准误差约 1.6%，内存固定 4KB，与访问者数量无关。
+ * 寄存器更新只会变大，使用CAS无锁更新，多个EventLoop线程可并发写入；合并即逐个寄存器取最大值。
+ * 序列化时非零寄存器较少则按稀疏格式（2字节下标 + 1字节值）存储，否则每个寄存器按6位紧凑存储（3KB）
+ * @author: aoshiguchen
+ * @date: 2024/9/22
+ */
+public final class HyperLogLog {
+    private static final int P = 12;
+    private static final int M = 1 << P;
+    private static final double ALPHA_M2 = 0.7213 / (1 + 1.079 / M) * M * M;
+    private static final byte FORMAT_SPARSE = 1;
+    private static final byte FORMAT_DENSE = 2;
+    private static final int DENSE_BYTES = M * 6 / 8;
+    private static final VarHandle REGISTERS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final byte[] registers = new byte[M];
+
+    /**
+     * 加入一个元素
+     * @param hash 元素的64位哈希值，需分布均匀
+     */
+    public void offer(long hash) {
+        int index = (int) (hash >>> (64 - P));
+        // 剩余位中前导0的个数 + 1，补一个哨兵位保证最大值不超过 64 - P + 1
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1);
+        byte current;
+        do {
+            current = (byte) REGISTERS.getVolatile(registers, index);
+            if (current >= rank) {
+                return;
+            }
+        } while (!REGISTERS.compareAndSet(registers, index, current, rank));
+    }
+
+    /**
+     * 基数估计值
+     */
+    public long cardinality() {
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < M; i++) {
+            int value = (byte) REGISTERS.getVolatile(registers, i);
+            sum += 1D / (1L << value);
+            if (value == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA_M2 / sum;
+        // 小基数时使用线性计数修正
+        if (estimate <= 2.5 * M && zeros > 0) {
+            estimate = M * Math.log((double) M / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * 合并另一个统计，结果为两者的并集
+     */
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < M; i++) {
+            byte value = (byte) REGISTERS.getVolatile(other.registers, i);
+            byte current;
+            do {
+                current = (byte) REGISTERS.getVolatile(registers, i);
+                if (current >= value) {
+                    break;
+                }
+            } while (!REGISTERS.compareAndSet(registers, i, current, value));
+        }
+    }
+
+    /**
+     * 序列化寄存器
+     */
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (int i = 0; i < M; i++) {
+            if (registers[i] != 0) {
+                nonZero++;
+            }
+        }
+        if (nonZero * 3 < DENSE_BYTES) {
+            byte[] bytes = new byte[1 + nonZero * 3];
+            bytes[0] = FORMAT_SPARSE;
+            int pos = 1;
+            for (int i = 0; i < M; i++) {
+                if (registers[i] != 0) {
+                    bytes[pos++] = (byte) (i >>> 8);
+                    bytes[pos++] = (byte) i;
+                    bytes[pos++] = registers[i];
+                }
+            }
+            return bytes;
+        }
+        byte[] bytes = new byte[1 + DENSE_BYTES];
+        bytes[0] = FORMAT_DENSE;
+        // 每4个寄存器（4 * 6位）打包为3个字节
+        for (int i = 0, pos = 1; i < M; i += 4, pos += 3) {
+            int packed = (registers[i] << 18) | (registers[i + 1] << 12) | (registers[i + 2] << 6) | registers[i + 3];
+            bytes[pos] = (byte) (packed >>> 16);
+            bytes[pos + 1] = (byte) (packed >>> 8);
+            bytes[pos + 2] = (byte) packed;
+        }
+        return bytes;
+    }
+
+    /**
+     * 反序列化，数据为空或格式不正确时返回空统计
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog hll = new HyperLogLog();
+        if (null == bytes || bytes.length == 0) {
+            return hll;
+        }
+        if (bytes[0] == FORMAT_SPARSE) {
+            for (int pos = 1; pos + 2 < bytes.length; pos += 3) {
+                int index = ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+                if (index < M) {
+                    hll.registers[index] = bytes[pos + 2];
+                }
+            }
+        } else if (bytes[0] == FORMAT_DENSE && bytes.length == 1 + DENSE_BYTES) {
+            for (int i = 0, pos = 1; i < M; i += 4, pos += 3) {
+                int packed = ((bytes[pos] & 0xFF) << 16) | ((bytes[pos + 1] & 0xFF) << 8) | (bytes[pos + 2] & 0xFF);
+                hll.registers[i] = (byte) ((packed >>> 18) & 0x3F);
+                hll.registers[i + 1] = (byte) ((packed >>> 12) & 0x3F);
+                hll.registers[i + 2] = (byte) ((packed >>> 6) & 0x3F);
+                hll.registers[i + 3] = (byte) (packed & 0x3F);
+            }
+        }
+        return hll;
+    }
+}
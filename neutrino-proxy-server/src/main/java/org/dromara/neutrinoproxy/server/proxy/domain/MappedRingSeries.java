@@ -0,0 +1,197 @@
+package org.dromara.neutrinoproxy.server.proxy.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 内存映射的定长环形时间序列文件
+ * 一个文件对应一个序列，按 TIERS 分为秒、分钟、小时三个精度层，每层是固定槽位数的环形数组，槽位下标 = 时间 / 步长 % 槽位数。
+ * 每次写入同时累加到三个精度层（降采样在写入时完成）：流量累加，连接数取峰值；槽位中记录的时间与目标时间不一致即视为过期，直接覆盖。
+ * 文件大小固定，不需要清理，写入只有一个线程；读取不加锁，可能读到正在写入的槽位，用于图表展示可以接受
+ * @author: aoshiguchen
+ * @date: 2024/9/24
+ */
+public final class MappedRingSeries {
+    public static final int TIER_SECOND = 0;
+    public static final int TIER_MINUTE = 1;
+    public static final int TIER_HOUR = 2;
+    /**
+     * 各精度层的 {步长（秒）, 槽位数}：1秒 x 1小时、1分钟 x 1天、1小时 x 30天
+     */
+    private static final int[][] TIERS = {{1, 3600}, {60, 1440}, {3600, 720}};
+    private static final int MAGIC = 0x4E505453;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    /**
+     * 槽位：时间（秒） 8 + 读取字节数 8 + 写入字节数 8 + 连接数峰值 4 + 保留 4
+     */
+    private static final int SLOT_SIZE = 32;
+    private static final long FILE_SIZE;
+    private static final int[] TIER_OFFSETS = new int[TIERS.length];
+
+    static {
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < TIERS.length; i++) {
+            TIER_OFFSETS[i] = offset;
+            offset += TIERS[i][1] * SLOT_SIZE;
+        }
+        FILE_SIZE = offset;
+    }
+
+    private final MappedByteBuffer buffer;
+
+    private MappedRingSeries(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * 打开序列文件，不存在或格式不一致时重新创建
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedRingSeries open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            boolean valid = raf.length() == FILE_SIZE;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            if (valid) {
+                valid = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(8) == TIERS.length && buffer.getInt(12) == SLOT_SIZE;
+                for (int i = 0; valid && i < TIERS.length; i++) {
+                    valid = buffer.getInt(16 + i * 8) == TIERS[i][0] && buffer.getInt(20 + i * 8) == TIERS[i][1];
+                }
+            }
+            if (!valid) {
+                for (int i = 0; i < FILE_SIZE; i += 8) {
+                    buffer.putLong(i, 0L);
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, TIERS.length);
+                buffer.putInt(12, SLOT_SIZE);
+                for (int i = 0; i < TIERS.length; i++) {
+                    buffer.putInt(16 + i * 8, TIERS[i][0]);
+                    buffer.putInt(20 + i * 8, TIERS[i][1]);
+                }
+            }
+            // 映射建立后关闭文件不影响映射
+            return new MappedRingSeries(buffer);
+        }
+    }
+
+    /**
+     * 记录一个采样点，只能由一个线程调用
+     * @param epochSecond 采样时间（秒）
+     * @param readBytes 采样周期内的读取字节数
+     * @param writeBytes 采样周期内的写入字节数
+     * @param channels 当前连接数
+     */
+    public void record(long epochSecond, long readBytes, long writeBytes, int channels) {
+        for (int i = 0; i < TIERS.length; i++) {
+            int step = TIERS[i][0];
+            long slotTime = epochSecond - Math.floorMod(epochSecond, step);
+            int offset = slotOffset(i, slotTime);
+            if (buffer.getLong(offset) != slotTime) {
+                // 槽位已过期，先写数据再写时间
+                buffer.putLong(offset + 8, readBytes);
+                buffer.putLong(offset + 16, writeBytes);
+                buffer.putInt(offset + 24, channels);
+                buffer.putLong(offset, slotTime);
+            } else {
+                buffer.putLong(offset + 8, buffer.getLong(offset + 8) + readBytes);
+                buffer.putLong(offset + 16, buffer.getLong(offset + 16) + writeBytes);
+                buffer.putInt(offset + 24, Math.max(buffer.getInt(offset + 24), channels));
+            }
+        }
+    }
+
+    /**
+     * 查询时间范围内的数据点，没有数据的时间点不返回
+     * @param tier 精度层
+     * @param startSecond 开始时间（秒，含）
+     * @param endSecond 结束时间（秒，含）
+     * @return 按时间升序的数据点
+     */
+    public List<Point> query(int tier, long startSecond, long endSecond) {
+        int step = TIERS[tier][0];
+        int slots = TIERS[tier][1];
+        long end = endSecond - Math.floorMod(endSecond, step);
+        // 不超过该层的保留范围
+        long start = Math.max(startSecond - Math.floorMod(startSecond, step), end - (long) (slots - 1) * step);
+        List<Point> list = new ArrayList<>();
+        for (long slotTime = start; slotTime <= end; slotTime += step) {
+            int offset = slotOffset(tier, slotTime);
+            if (buffer.getLong(offset) != slotTime) {
+                continue;
+            }
+            list.add(new Point(slotTime * 1000, buffer.getLong(offset + 8), buffer.getLong(offset + 16), buffer.getInt(offset + 24)));
+        }
+        return list;
+    }
+
+    /**
+     * 刷盘
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * 精度层的步长（秒）
+     */
+    public static int getStepSeconds(int tier) {
+        return TIERS[tier][0];
+    }
+
+    /**
+     * 精度层的保留时长（秒）
+     */
+    public static long getRetentionSeconds(int tier) {
+        return (long) TIERS[tier][0] * TIERS[tier][1];
+    }
+
+    private static int slotOffset(int tier, long slotTime) {
+        int index = (int) Math.floorMod(slotTime / TIERS[tier][0], (long) TIERS[tier][1]);
+        return TIER_OFFSETS[tier] + index * SLOT_SIZE;
+    }
+
+    public static final class Point {
+        private final long time;
+        private final long readBytes;
+        private final long writeBytes;
+        private final int channels;
+
+        private Point(long time, long readBytes, long writeBytes, int channels) {
+            this.time = time;
+            this.readBytes = readBytes;
+            this.writeBytes = writeBytes;
+            this.channels = channels;
+        }
+
+        /**
+         * 时间（毫秒）
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public long getReadBytes() {
+            return readBytes;
+        }
+
+        public long getWriteBytes() {
+            return writeBytes;
+        }
+
+        /**
+         * 连接数峰值
+         */
+        public int getChannels() {
+            return channels;
+        }
+    }
+}
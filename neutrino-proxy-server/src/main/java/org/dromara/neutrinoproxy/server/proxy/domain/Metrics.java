@@ -12,11 +12,28 @@ import java.io.Serializable;
 @Data
 public class Metrics implements Serializable {
     private static final long serialVersionUID = 1L;
+    private String protocol;
     private int port;
     private long readBytes;
     private long wroteBytes;
     private long readMsgs;
     private long wroteMsgs;
     private int channels;
+    /**
+     * 活跃连接数峰值
+     */
+    private int peakChannels;
+    /**
+     * 已关闭连接数
+     */
+    private long closedChannels;
+    /**
+     * 已关闭连接的总时长（毫秒）
+     */
+    private long channelDurationSum;
+    /**
+     * 已关闭连接的最长时长（毫秒）
+     */
+    private long channelDurationMax;
     private long timestamp;
 }
@@ -1,59 +1,83 @@
 package org.dromara.neutrinoproxy.server.proxy.domain;
 
+import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
+
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- *
+ * 按协议、端口统计的访问指标
+ * 字节数、消息数等高频计数使用分段累加的LongAdder，同一端口的多个连接并发累加时不会争用同一个缓存行
  * @author: aoshiguchen
  * @date: 2022/6/16
  */
 public class MetricsCollector {
 
-    private static Map<Integer, MetricsCollector> metricsCollectors = new ConcurrentHashMap<Integer, MetricsCollector>();
+    private static final Map<NetworkProtocolEnum, Map<Integer, MetricsCollector>> metricsCollectors = new EnumMap<>(NetworkProtocolEnum.class);
+
+    static {
+        for (NetworkProtocolEnum protocol : NetworkProtocolEnum.values()) {
+            metricsCollectors.put(protocol, new ConcurrentHashMap<>(64));
+        }
+    }
+
+    private final NetworkProtocolEnum protocol;
+
+    private final Integer port;
 
-    private Integer port;
+    private final LongAdder readBytes = new LongAdder();
 
-    private AtomicLong readBytes = new AtomicLong();
+    private final LongAdder writeBytes = new LongAdder();
 
-    private AtomicLong writeBytes = new AtomicLong();
+    private final LongAdder readMsgs = new LongAdder();
 
-    private AtomicLong readMsgs = new AtomicLong();
+    private final LongAdder wroteMsgs = new LongAdder();
 
-    private AtomicLong wroteMsgs = new AtomicLong();
+    /**
+     * 当前活跃连接数
+     */
+    private final AtomicInteger channels = new AtomicInteger();
 
-    private AtomicInteger channels = new AtomicInteger();
+    /**
+     * 统计周期内的活跃连接数峰值
+     */
+    private final AtomicInteger peakChannels = new AtomicInteger();
 
-    private MetricsCollector() {
+    /**
+     * 已关闭连接的数量、总时长、最长时长（毫秒）
+     */
+    private final LongAdder closedChannels = new LongAdder();
+
+    private final LongAdder channelDurationSum = new LongAdder();
+
+    private final LongAccumulator channelDurationMax = new LongAccumulator(Math::max, 0);
+
+    private MetricsCollector(NetworkProtocolEnum protocol, Integer port) {
+        this.protocol = protocol;
+        this.port = port;
     }
 
-    public static MetricsCollector getCollector(Integer port) {
-        MetricsCollector collector = metricsCollectors.get(port);
+    public static MetricsCollector getCollector(NetworkProtocolEnum protocol, Integer port) {
+        Map<Integer, MetricsCollector> collectors = metricsCollectors.get(protocol);
+        MetricsCollector collector = collectors.get(port);
         if (collector == null) {
-            synchronized (metricsCollectors) {
-                collector = metricsCollectors.get(port);
-                if (collector == null) {
-                    collector = new MetricsCollector();
-                    collector.setPort(port);
-                    metricsCollectors.put(port, collector);
-                }
-            }
+            collector = collectors.computeIfAbsent(port, k -> new MetricsCollector(protocol, port));
         }
-
         return collector;
     }
 
     public static List<Metrics> getAndResetAllMetrics() {
         List<Metrics> allMetrics = new ArrayList<Metrics>();
-        Iterator<Entry<Integer, MetricsCollector>> ite = metricsCollectors.entrySet().iterator();
-        while (ite.hasNext()) {
-            allMetrics.add(ite.next().getValue().getAndResetMetrics());
+        for (Map<Integer, MetricsCollector> collectors : metricsCollectors.values()) {
+            for (MetricsCollector collector : collectors.values()) {
+                allMetrics.add(collector.getAndResetMetrics());
+            }
         }
 
         return allMetrics;
@@ -61,9 +85,10 @@ public class MetricsCollector {
 
     public static List<Metrics> getAllMetrics() {
         List<Metrics> allMetrics = new ArrayList<Metrics>();
-        Iterator<Entry<Integer, MetricsCollector>> ite = metricsCollectors.entrySet().iterator();
-        while (ite.hasNext()) {
-            allMetrics.add(ite.next().getValue().getMetrics());
+        for (Map<Integer, MetricsCollector> collectors : metricsCollectors.values()) {
+            for (MetricsCollector collector : collectors.values()) {
+                allMetrics.add(collector.getMetrics());
+            }
         }
 
         return allMetrics;
@@ -71,56 +96,79 @@ public class MetricsCollector {
 
     public Metrics getAndResetMetrics() {
         Metrics metrics = new Metrics();
-        metrics.setChannels(channels.get());
+        metrics.setProtocol(protocol.getDesc());
         metrics.setPort(port);
-        metrics.setReadBytes(readBytes.getAndSet(0));
-        metrics.setWroteBytes(writeBytes.getAndSet(0));
+        metrics.setChannels(channels.get());
+        metrics.setPeakChannels(peakChannels.getAndSet(channels.get()));
+        metrics.setReadBytes(readBytes.sumThenReset());
+        metrics.setWroteBytes(writeBytes.sumThenReset());
+        metrics.setReadMsgs(readMsgs.sumThenReset());
+        metrics.setWroteMsgs(wroteMsgs.sumThenReset());
+        metrics.setClosedChannels(closedChannels.sumThenReset());
+        metrics.setChannelDurationSum(channelDurationSum.sumThenReset());
+        metrics.setChannelDurationMax(channelDurationMax.getThenReset());
         metrics.setTimestamp(System.currentTimeMillis());
-        metrics.setReadMsgs(readMsgs.getAndSet(0));
-        metrics.setWroteMsgs(wroteMsgs.getAndSet(0));
 
         return metrics;
     }
 
     public Metrics getMetrics() {
         Metrics metrics = new Metrics();
-        metrics.setChannels(channels.get());
+        metrics.setProtocol(protocol.getDesc());
         metrics.setPort(port);
-        metrics.setReadBytes(readBytes.get());
-        metrics.setWroteBytes(writeBytes.get());
+        metrics.setChannels(channels.get());
+        metrics.setPeakChannels(peakChannels.get());
+        metrics.setReadBytes(readBytes.sum());
+        metrics.setWroteBytes(writeBytes.sum());
+        metrics.setReadMsgs(readMsgs.sum());
+        metrics.setWroteMsgs(wroteMsgs.sum());
+        metrics.setClosedChannels(closedChannels.sum());
+        metrics.setChannelDurationSum(channelDurationSum.sum());
+        metrics.setChannelDurationMax(channelDurationMax.get());
         metrics.setTimestamp(System.currentTimeMillis());
-        metrics.setReadMsgs(readMsgs.get());
-        metrics.setWroteMsgs(wroteMsgs.get());
 
         return metrics;
     }
 
     public void incrementReadBytes(long bytes) {
-        readBytes.addAndGet(bytes);
+        readBytes.add(bytes);
+        readMsgs.increment();
     }
 
     public void incrementWriteBytes(long bytes) {
-        writeBytes.addAndGet(bytes);
+        writeBytes.add(bytes);
+        wroteMsgs.increment();
     }
 
-    public void incrementReadMsgs(long msgs) {
-        readMsgs.addAndGet(msgs);
+    /**
+     * 连接建立
+     */
+    public void channelActive() {
+        int active = channels.incrementAndGet();
+        peakChannels.accumulateAndGet(active, Math::max);
     }
 
-    public void incrementWroteMsgs(long msgs) {
-        wroteMsgs.addAndGet(msgs);
+    /**
+     * 连接关闭
+     * @param durationMillis 连接时长（毫秒）
+     */
+    public void channelInactive(long durationMillis) {
+        channels.decrementAndGet();
+        closedChannels.increment();
+        channelDurationSum.add(durationMillis);
+        channelDurationMax.accumulate(durationMillis);
     }
 
-    public AtomicInteger getChannels() {
-        return channels;
+    public int getChannels() {
+        return channels.get();
     }
 
-    public Integer getPort() {
-        return port;
+    public NetworkProtocolEnum getProtocol() {
+        return protocol;
     }
 
-    public void setPort(Integer port) {
-        this.port = port;
+    public Integer getPort() {
+        return port;
     }
 
 }
@@ -0,0 +1,111 @@
+package org.dromara.neutrinoproxy.server.proxy.domain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving 高频项统计
+ * 最多保留 capacity 个键，新键到来且已满时替换计数最小的键，并继承其计数作为误差上界。
+ * 真实值 >= count - error，任何真实值超过 总量/capacity 的键一定在表中，内存与流量大小无关
+ * @author: aoshiguchen
+ * @date: 2024/9/20
+ */
+public final class SpaceSavingSketch {
+    private final int capacity;
+    private final Map<String, Counter> counterMap;
+    private Counter minCounter;
+
+    public SpaceSavingSketch(int capacity) {
+        this.capacity = capacity;
+        this.counterMap = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * 累加
+     * @param key 键
+     * @param weight 权重，必须大于0
+     */
+    public synchronized void add(String key, long weight) {
+        Counter counter = counterMap.get(key);
+        if (null != counter) {
+            counter.count += weight;
+            if (counter == minCounter) {
+                minCounter = null;
+            }
+            return;
+        }
+        if (counterMap.size() < capacity) {
+            counter = new Counter(key, weight, 0);
+            counterMap.put(key, counter);
+            if (null != minCounter && weight < minCounter.count) {
+                minCounter = counter;
+            }
+            return;
+        }
+        // 已满，替换计数最小的键
+        Counter min = findMin();
+        counterMap.remove(min.key);
+        counter = new Counter(key, min.count + weight, min.count);
+        counterMap.put(key, counter);
+        minCounter = null;
+    }
+
+    /**
+     * 清空
+     */
+    public synchronized void clear() {
+        counterMap.clear();
+        minCounter = null;
+    }
+
+    /**
+     * 当前所有计数的快照
+     */
+    public synchronized List<Counter> snapshot() {
+        List<Counter> list = new ArrayList<>(counterMap.size());
+        for (Counter counter : counterMap.values()) {
+            list.add(new Counter(counter.key, counter.count, counter.error));
+        }
+        return list;
+    }
+
+    private Counter findMin() {
+        if (null == minCounter) {
+            for (Counter counter : counterMap.values()) {
+                if (null == minCounter || counter.count < minCounter.count) {
+                    minCounter = counter;
+                }
+            }
+        }
+        return minCounter;
+    }
+
+    public static final class Counter {
+        private final String key;
+        private long count;
+        private final long error;
+
+        private Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * 计数的最大高估值
+         */
+        public long getError() {
+            return error;
+        }
+    }
+}
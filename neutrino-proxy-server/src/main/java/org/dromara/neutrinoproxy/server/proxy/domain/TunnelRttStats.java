@@ -0,0 +1,104 @@
+package org.dromara.neutrinoproxy.server.proxy.domain;
+
+/**
+ * 隧道往返时延统计（单位：微秒）
+ * 服务端在写空闲时发送带序号的心跳探测，客户端原样回显负序号，收到回显后按 RFC 6298 的方式更新平滑RTT与抖动：
+ * srtt = 7/8 * srtt + 1/8 * rtt，rttvar = 3/4 * rttvar + 1/4 * |srtt - rtt|
+ * 丢包率同样取指数加权平均：发送新探测时，上一个探测未收到回显记为1，否则记为0。
+ * 同一时刻只有一个探测在途，读写均在该连接所属的EventLoop线程中完成，字段用volatile保证其他线程可见
+ * @author: aoshiguchen
+ * @date: 2024/9/18
+ */
+public final class TunnelRttStats {
+    private static final double LOSS_ALPHA = 1D / 8;
+
+    /**
+     * 最近一次发出的探测序号，从1开始
+     */
+    private long probeSeq;
+    /**
+     * 在途探测的发送时间，0表示没有在途探测
+     */
+    private long probeSentNanos;
+
+    private volatile long lastRtt;
+    private volatile long srtt;
+    private volatile long rttVar;
+    private volatile double loss;
+    private volatile long echoCount;
+    private volatile long lastEchoTime;
+
+    /**
+     * 发出新的探测
+     * @param nanos 发送时间 {@link System#nanoTime()}
+     * @return 探测序号
+     */
+    public long nextProbe(long nanos) {
+        if (probeSentNanos != 0) {
+            loss = loss * (1 - LOSS_ALPHA) + LOSS_ALPHA;
+        } else if (probeSeq > 0) {
+            loss = loss * (1 - LOSS_ALPHA);
+        }
+        probeSentNanos = nanos;
+        return ++probeSeq;
+    }
+
+    /**
+     * 收到探测回显
+     * @param seq 探测序号
+     * @param nanos 收到时间 {@link System#nanoTime()}
+     * @return 是否为当前在途探测的回显，迟到或重复的回显忽略
+     */
+    public boolean onEcho(long seq, long nanos) {
+        if (seq != probeSeq || probeSentNanos == 0) {
+            return false;
+        }
+        long rtt = Math.max((nanos - probeSentNanos) / 1000, 0);
+        probeSentNanos = 0;
+        if (echoCount == 0) {
+            srtt = rtt;
+            rttVar = rtt / 2;
+        } else {
+            rttVar = (3 * rttVar + Math.abs(srtt - rtt)) / 4;
+            srtt = (7 * srtt + rtt) / 8;
+        }
+        lastRtt = rtt;
+        echoCount++;
+        lastEchoTime = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * 是否有有效数据。旧版本客户端不回显探测，此时不对外展示
+     */
+    public boolean isAvailable() {
+        return echoCount > 0;
+    }
+
+    public long getLastRtt() {
+        return lastRtt;
+    }
+
+    public long getSrtt() {
+        return srtt;
+    }
+
+    public long getRttVar() {
+        return rttVar;
+    }
+
+    /**
+     * 探测丢失率 0 ~ 1
+     */
+    public double getLoss() {
+        return loss;
+    }
+
+    public long getEchoCount() {
+        return echoCount;
+    }
+
+    public long getLastEchoTime() {
+        return lastEchoTime;
+    }
+}
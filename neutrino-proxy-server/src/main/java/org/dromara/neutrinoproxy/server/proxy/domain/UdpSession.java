@@ -0,0 +1,217 @@
+package org.dromara.neutrinoproxy.server.proxy.domain;
+
+import io.netty.channel.Channel;
+import io.netty.util.Timeout;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * UDP访问者会话
+ * udp监听通道为端口级别共享，以 服务端端口 + 来源地址 区分访问者（类似NAT表项），每个会话有独立的visitorId与代理隧道，
+ * 响应按会话回写到对应的来源地址。隧道建立前到达的数据包暂存在会话中，隧道就绪后按序转发
+ * @author: aoshiguchen
+ * @date: 2024/9/28
+ */
+public final class UdpSession {
+    public static final int OFFER_READY = 0;
+    public static final int OFFER_CONNECT = 1;
+    public static final int OFFER_QUEUED = 2;
+    /**
+     * 隧道建立前最多暂存的数据包数
+     */
+    private static final int PENDING_LIMIT = 64;
+
+    private final Integer serverPort;
+    private final InetSocketAddress sender;
+    private final String visitorIp;
+    private final String visitorId;
+    private final Integer licenseId;
+    private final Channel visitorChannel;
+    private final long createTime;
+    private final LongAdder readBytes = new LongAdder();
+    private final LongAdder writeBytes = new LongAdder();
+    private volatile long lastActiveTime;
+    private volatile Channel tunnelChannel;
+    private volatile String targetIp;
+    private volatile int targetPort;
+    private volatile int proxyResponses;
+    private volatile long proxyTimeoutMs;
+    /**
+     * 空闲检测任务
+     */
+    private volatile Timeout idleTimeout;
+    /**
+     * 隧道建立中的数据包，与 connectTime 一起由 this 加锁保护
+     */
+    private Queue<byte[]> pendingQueue;
+    /**
+     * 最近一次请求建立隧道的时间，0 表示未在建立中
+     */
+    private long connectTime;
+
+    public UdpSession(Integer serverPort, InetSocketAddress sender, String visitorId, Integer licenseId, Channel visitorChannel) {
+        this.serverPort = serverPort;
+        this.sender = sender;
+        this.visitorIp = sender.getAddress().getHostAddress();
+        this.visitorId = visitorId;
+        this.licenseId = licenseId;
+        this.visitorChannel = visitorChannel;
+        this.createTime = System.currentTimeMillis();
+        this.lastActiveTime = createTime;
+    }
+
+    /**
+     * 暂存隧道建立前的数据包
+     * @param bytes
+     * @param now
+     * @param connectTimeoutMillis 隧道建立超时时间，超时后允许重新请求建立
+     * @return OFFER_READY 隧道已就绪（未暂存，直接转发）、OFFER_CONNECT 已暂存且需要（重新）请求建立隧道、OFFER_QUEUED 已暂存
+     */
+    public synchronized int offerPending(byte[] bytes, long now, long connectTimeoutMillis) {
+        Channel channel = tunnelChannel;
+        if (null != channel && channel.isActive()) {
+            return OFFER_READY;
+        }
+        if (null == pendingQueue) {
+            pendingQueue = new ArrayDeque<>();
+        }
+        if (pendingQueue.size() >= PENDING_LIMIT) {
+            // 丢弃最早的数据包，UDP本身不保证送达
+            pendingQueue.poll();
+        }
+        pendingQueue.offer(bytes);
+        if (connectTime > 0 && now - connectTime < connectTimeoutMillis) {
+            return OFFER_QUEUED;
+        }
+        connectTime = now;
+        return OFFER_CONNECT;
+    }
+
+    /**
+     * 绑定代理隧道，返回暂存的数据包
+     */
+    public synchronized List<byte[]> bindTunnel(Channel tunnelChannel, String targetIp, int targetPort, Integer proxyResponses, Long proxyTimeoutMs) {
+        setTarget(targetIp, targetPort, proxyResponses, proxyTimeoutMs);
+        this.tunnelChannel = tunnelChannel;
+        connectTime = 0;
+        if (null == pendingQueue || pendingQueue.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<byte[]> list = new ArrayList<>(pendingQueue);
+        pendingQueue = null;
+        return list;
+    }
+
+    /**
+     * 设置被代理的目标，TCP隧道建立时或首次经数据报隧道转发时设置，targetIp 最后写入，不为空即表示目标已设置
+     */
+    public void setTarget(String targetIp, int targetPort, Integer proxyResponses, Long proxyTimeoutMs) {
+        this.targetPort = targetPort;
+        this.proxyResponses = null == proxyResponses ? 0 : proxyResponses;
+        this.proxyTimeoutMs = null == proxyTimeoutMs ? 0 : proxyTimeoutMs;
+        this.targetIp = targetIp;
+    }
+
+    /**
+     * 解除代理隧道，只有当前绑定的隧道才能解除
+     */
+    public synchronized boolean unbindTunnel(Channel tunnelChannel) {
+        if (this.tunnelChannel != tunnelChannel) {
+            return false;
+        }
+        this.tunnelChannel = null;
+        return true;
+    }
+
+    public void touch(long now) {
+        lastActiveTime = now;
+    }
+
+    public void addReadBytes(long bytes) {
+        readBytes.add(bytes);
+    }
+
+    public void addWriteBytes(long bytes) {
+        writeBytes.add(bytes);
+    }
+
+    public Integer getServerPort() {
+        return serverPort;
+    }
+
+    public InetSocketAddress getSender() {
+        return sender;
+    }
+
+    public String getVisitorIp() {
+        return visitorIp;
+    }
+
+    public String getVisitorId() {
+        return visitorId;
+    }
+
+    public Integer getLicenseId() {
+        return licenseId;
+    }
+
+    public Channel getVisitorChannel() {
+        return visitorChannel;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+    /**
+     * 访问者收到的字节数（响应）
+     */
+    public long getReadBytes() {
+        return readBytes.sum();
+    }
+
+    /**
+     * 访问者发出的字节数（请求）
+     */
+    public long getWriteBytes() {
+        return writeBytes.sum();
+    }
+
+    public Channel getTunnelChannel() {
+        return tunnelChannel;
+    }
+
+    public String getTargetIp() {
+        return targetIp;
+    }
+
+    public int getTargetPort() {
+        return targetPort;
+    }
+
+    public int getProxyResponses() {
+        return proxyResponses;
+    }
+
+    public long getProxyTimeoutMs() {
+        return proxyTimeoutMs;
+    }
+
+    public Timeout getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Timeout idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+}
@@ -24,4 +24,12 @@ public class VisitorChannelAttachInfo {
 	 * ip地址
 	 */
 	private String ip;
+	/**
+	 * 访问者接入时间（System.nanoTime）
+	 */
+	private volatile long acceptNanos;
+	/**
+	 * CONNECT指令写出指令通道的时间（System.nanoTime）
+	 */
+	private volatile long connectSentNanos;
 }
@@ -8,6 +8,7 @@ import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LoggingHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
 import org.dromara.neutrinoproxy.server.proxy.core.BytesMetricsHandler;
 import org.dromara.neutrinoproxy.server.proxy.security.HttpVisitorSecurityChannelHandler;
 import org.dromara.neutrinoproxy.server.proxy.security.VisitorFlowLimiterChannelHandler;
@@ -45,7 +46,7 @@ public class HttpProxy implements EventListener<AppLoadEndEvent> {
                             if (null != proxyConfig.getServer().getTcp().getTransferLogEnable() && proxyConfig.getServer().getTcp().getTransferLogEnable()) {
                                 ch.pipeline().addFirst(new LoggingHandler(HttpProxy.class));
                             }
-                            ch.pipeline().addFirst(new BytesMetricsHandler());
+                            ch.pipeline().addFirst(new BytesMetricsHandler(NetworkProtocolEnum.HTTP));
                             ch.pipeline().addLast(new HttpVisitorSecurityChannelHandler(false));
                             ch.pipeline().addLast("flowLimiter",new VisitorFlowLimiterChannelHandler());
                             ch.pipeline().addLast(new HttpVisitorChannelHandler());
@@ -10,8 +10,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.dromara.neutrinoproxy.core.Constants;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
 import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
+import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
 import org.dromara.neutrinoproxy.server.proxy.domain.ProxyAttachment;
 import org.dromara.neutrinoproxy.server.proxy.domain.VisitorChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.security.HierarchicalTrafficShapingHandler;
+import org.dromara.neutrinoproxy.server.service.FlowQuotaService;
 import org.dromara.neutrinoproxy.server.service.FlowReportService;
 import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import org.noear.solon.Solon;
@@ -42,7 +45,7 @@ public class HttpVisitorChannelHandler extends SimpleChannelInboundHandler<ByteB
 
             // 增加流量计数
             VisitorChannelAttachInfo visitorChannelAttachInfo = ProxyUtil.getAttachInfo(channel);
-            Solon.context().getBean(FlowReportService.class).addWriteByte(visitorChannelAttachInfo.getLicenseId(), bytes.length);
+            Solon.context().getBean(FlowReportService.class).addWriteByte(visitorChannelAttachInfo.getLicenseId(), visitorChannelAttachInfo.getServerPort(), bytes.length);
         });
 
         String visitorId = ProxyUtil.getVisitorIdByChannel(ctx.channel());
@@ -51,8 +54,9 @@ public class HttpVisitorChannelHandler extends SimpleChannelInboundHandler<ByteB
             return;
         }
 
+        long acceptNanos = System.nanoTime();
         // 用户连接到代理服务器时，设置用户连接不可读，等待代理后端服务器连接成功后再改变为可读状态
-        ctx.channel().config().setOption(ChannelOption.AUTO_READ, false);
+        HierarchicalTrafficShapingHandler.setAutoRead(ctx.channel(), false);
 
 
         // 根据域名拿到绑定的映射对应的cmdChannel
@@ -62,6 +66,12 @@ public class HttpVisitorChannelHandler extends SimpleChannelInboundHandler<ByteB
             ctx.channel().close();
             return;
         }
+        // 流量配额已用完，拒绝新的访问者
+        CmdChannelAttachInfo cmdChannelAttachInfo = ProxyUtil.getAttachInfo(cmdChannel);
+        if (null != cmdChannelAttachInfo && Solon.context().getBean(FlowQuotaService.class).isExceeded(cmdChannelAttachInfo.getLicenseId())) {
+            ctx.channel().close();
+            return;
+        }
         String lanInfo = ProxyUtil.getClientLanInfoByServerPort(serverPort);
         if (StringUtils.isBlank(lanInfo)) {
             ctx.channel().close();
@@ -71,7 +81,11 @@ public class HttpVisitorChannelHandler extends SimpleChannelInboundHandler<ByteB
         visitorId = ProxyUtil.newVisitorId();
         ProxyUtil.addVisitorChannelToCmdChannel(NetworkProtocolEnum.HTTP, cmdChannel, visitorId, ctx.channel(), serverPort);
         ProxyUtil.addProxyConnectAttachment(visitorId, proxyAttachment);
-        cmdChannel.writeAndFlush(ProxyMessage.buildConnectMessage(visitorId).setData(lanInfo.getBytes()));
+        // 记录连接建立各阶段的时间
+        VisitorChannelAttachInfo visitorChannelAttachInfo = ProxyUtil.getAttachInfo(ctx.channel());
+        visitorChannelAttachInfo.setAcceptNanos(acceptNanos);
+        cmdChannel.writeAndFlush(ProxyMessage.buildConnectMessage(visitorId).setData(lanInfo.getBytes()))
+                .addListener(future -> visitorChannelAttachInfo.setConnectSentNanos(System.nanoTime()));
     }
 
     @Override
@@ -10,6 +10,7 @@ import io.netty.handler.ssl.SniHandler;
 import io.netty.handler.ssl.SslContext;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
 import org.dromara.neutrinoproxy.server.proxy.core.BytesMetricsHandler;
 import org.dromara.neutrinoproxy.server.proxy.security.HttpVisitorSecurityChannelHandler;
 import org.dromara.neutrinoproxy.server.proxy.security.VisitorFlowLimiterChannelHandler;
@@ -51,7 +52,7 @@ public class HttpsProxy implements EventListener<AppLoadEndEvent> {
                                 ch.pipeline().addFirst(new LoggingHandler(HttpsProxy.class));
                             }
                             ch.pipeline().addLast(createSniHandler());
-                            ch.pipeline().addFirst(new BytesMetricsHandler());
+                            ch.pipeline().addFirst(new BytesMetricsHandler(NetworkProtocolEnum.HTTP));
                             ch.pipeline().addLast(new HttpVisitorSecurityChannelHandler(true));
                             ch.pipeline().addLast("flowLimiter",new VisitorFlowLimiterChannelHandler());
                             ch.pipeline().addLast(new HttpVisitorChannelHandler());
@@ -7,7 +7,6 @@ import org.dromara.neutrinoproxy.core.dispatcher.Match;
 import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
 import org.dromara.neutrinoproxy.server.constant.ClientConnectTypeEnum;
 import org.dromara.neutrinoproxy.server.constant.EnableStatusEnum;
-import org.dromara.neutrinoproxy.server.constant.OnlineStatusEnum;
 import org.dromara.neutrinoproxy.server.constant.SuccessCodeEnum;
 import org.dromara.neutrinoproxy.server.dal.LicenseMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.ClientConnectRecordDO;
@@ -159,7 +158,7 @@ public class ProxyMessageAuthHandler implements ProxyMessageHandler {
 		log.warn("[client connection] auth success info:{} ", info);
 
 		// 更新license在线状态
-		licenseMapper.updateOnlineStatus(licenseDO.getId(), OnlineStatusEnum.ONLINE.getStatus(), now);
+		proxyMutualService.online(licenseDO.getId());
 		// 初始化VisitorChannel
 		visitorChannelService.initVisitorChannel(licenseDO.getId(), ctx.channel());
 	}
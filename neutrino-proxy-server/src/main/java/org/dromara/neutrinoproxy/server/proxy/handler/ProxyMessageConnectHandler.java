@@ -8,12 +8,14 @@ import org.dromara.neutrinoproxy.server.constant.EnableStatusEnum;
 import org.dromara.neutrinoproxy.server.dal.entity.LicenseDO;
 import org.dromara.neutrinoproxy.server.dal.entity.UserDO;
 import org.dromara.neutrinoproxy.server.proxy.domain.ProxyAttachment;
+import org.dromara.neutrinoproxy.server.proxy.domain.VisitorChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.security.HierarchicalTrafficShapingHandler;
+import org.dromara.neutrinoproxy.server.service.ConnectLatencyService;
 import org.dromara.neutrinoproxy.server.service.LicenseService;
 import org.dromara.neutrinoproxy.server.service.UserService;
 import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelOption;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Inject;
 
@@ -29,9 +31,12 @@ public class ProxyMessageConnectHandler implements ProxyMessageHandler {
 	private LicenseService licenseService;
 	@Inject
 	private UserService userService;
+	@Inject
+	private ConnectLatencyService connectLatencyService;
 
 	@Override
 	public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
+		long receivedNanos = System.nanoTime();
 		String info = proxyMessage.getInfo();
 		if (StrUtil.isEmpty(info)) {
 			ctx.channel().writeAndFlush(ProxyMessage.buildErrMessage(ExceptionEnum.CONNECT_FAILED, "info cannot be empty!"));
@@ -84,7 +89,9 @@ public class ProxyMessageConnectHandler implements ProxyMessageHandler {
 		visitorChannel.attr(Constants.NEXT_CHANNEL).set(ctx.channel());
         visitorChannel.attr(Constants.LICENSE_ID).set(licenseDO.getId());
         // 代理客户端与后端服务器连接成功，修改用户连接为可读状态
-		visitorChannel.config().setOption(ChannelOption.AUTO_READ, true);
+		HierarchicalTrafficShapingHandler.setAutoRead(visitorChannel, true);
+		VisitorChannelAttachInfo visitorChannelAttachInfo = ProxyUtil.getAttachInfo(visitorChannel);
+		connectLatencyService.record(visitorChannelAttachInfo, receivedNanos, proxyMessage.getData());
 
 		// 获取代理附加对象
 		ProxyAttachment proxyAttachment = ProxyUtil.getProxyConnectAttachment(visitorId);
@@ -0,0 +1,51 @@
+package org.dromara.neutrinoproxy.server.proxy.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.core.Constants;
+import org.dromara.neutrinoproxy.core.ProxyDataTypeEnum;
+import org.dromara.neutrinoproxy.core.ProxyMessage;
+import org.dromara.neutrinoproxy.core.ProxyMessageHandler;
+import org.dromara.neutrinoproxy.core.dispatcher.Match;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.domain.DatagramTunnel;
+import org.dromara.neutrinoproxy.server.service.DatagramTunnelService;
+import org.dromara.neutrinoproxy.server.util.ProxyUtil;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+
+/**
+ * 数据报隧道令牌申请处理器
+ * 只接受已认证的指令通道的申请，未开启数据报隧道时不应答，客户端继续使用TCP隧道
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+@Slf4j
+@Match(type = Constants.ProxyDataTypeName.DATAGRAM_TUNNEL)
+@Component
+public class ProxyMessageDatagramTunnelHandler implements ProxyMessageHandler {
+	@Inject
+	private ProxyConfig proxyConfig;
+	@Inject
+	private DatagramTunnelService datagramTunnelService;
+
+	@Override
+	public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
+		CmdChannelAttachInfo cmdChannelAttachInfo = ProxyUtil.getAttachInfo(ctx.channel());
+		if (null == cmdChannelAttachInfo || ProxyUtil.getCmdChannelByLicenseId(cmdChannelAttachInfo.getLicenseId()) != ctx.channel()) {
+			return;
+		}
+		DatagramTunnel tunnel = datagramTunnelService.issue(cmdChannelAttachInfo.getLicenseId(), ctx.channel());
+		if (null == tunnel) {
+			log.debug("[datagram tunnel] not enabled, licenseId:{}", cmdChannelAttachInfo.getLicenseId());
+			return;
+		}
+		ctx.channel().writeAndFlush(ProxyMessage.buildDatagramTunnelMessage(proxyConfig.getTunnel().getDatagramPort(), tunnel.getToken(), tunnel.getKey()));
+	}
+
+	@Override
+	public String name() {
+		return ProxyDataTypeEnum.DATAGRAM_TUNNEL.getDesc();
+	}
+}
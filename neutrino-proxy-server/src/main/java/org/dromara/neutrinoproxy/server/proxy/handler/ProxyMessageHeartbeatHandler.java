@@ -5,11 +5,14 @@ import org.dromara.neutrinoproxy.core.ProxyDataTypeEnum;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
 import org.dromara.neutrinoproxy.core.ProxyMessageHandler;
 import org.dromara.neutrinoproxy.core.dispatcher.Match;
+import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import io.netty.channel.ChannelHandlerContext;
 import org.noear.solon.annotation.Component;
 
 /**
- *
+ * 心跳处理器
+ * 序号为负数的心跳是客户端对服务端探测的回显，只记录往返时延，不再应答
  * @author: aoshiguchen
  * @date: 2022/6/16
  */
@@ -19,6 +22,13 @@ public class ProxyMessageHeartbeatHandler implements ProxyMessageHandler {
 
 	@Override
 	public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
+		if (proxyMessage.getSerialNumber() < 0) {
+			CmdChannelAttachInfo cmdChannelAttachInfo = ProxyUtil.getAttachInfo(ctx.channel());
+			if (null != cmdChannelAttachInfo) {
+				cmdChannelAttachInfo.getRttStats().onEcho(-proxyMessage.getSerialNumber(), System.nanoTime());
+			}
+			return;
+		}
 		ctx.channel().writeAndFlush(ProxyMessage.buildHeartbeatMessage());
 	}
 
@@ -47,7 +47,7 @@ public class ProxyMessageTransferHandler implements ProxyMessageHandler {
 
 			// 增加流量计数
 			VisitorChannelAttachInfo visitorChannelAttachInfo = ProxyUtil.getAttachInfo(visitorChannel);
-			Solon.context().getBean(FlowReportService.class).addReadByte(visitorChannelAttachInfo.getLicenseId(), proxyMessage.getData().length);
+			Solon.context().getBean(FlowReportService.class).addReadByte(visitorChannelAttachInfo.getLicenseId(), visitorChannelAttachInfo.getServerPort(), proxyMessage.getData().length);
 		}
 	}
 
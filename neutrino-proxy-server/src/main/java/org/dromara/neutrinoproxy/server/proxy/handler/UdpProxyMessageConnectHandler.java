@@ -14,8 +14,9 @@ import org.dromara.neutrinoproxy.server.dal.PortMappingMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.LicenseDO;
 import org.dromara.neutrinoproxy.server.dal.entity.PortMappingDO;
 import org.dromara.neutrinoproxy.server.dal.entity.UserDO;
-import org.dromara.neutrinoproxy.server.proxy.domain.ProxyAttachment;
+import org.dromara.neutrinoproxy.server.proxy.domain.UdpSession;
 import org.dromara.neutrinoproxy.server.service.LicenseService;
+import org.dromara.neutrinoproxy.server.service.UdpSessionService;
 import org.dromara.neutrinoproxy.server.service.UserService;
 import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import org.noear.snack.ONode;
@@ -36,6 +37,8 @@ public class UdpProxyMessageConnectHandler implements ProxyMessageHandler {
     private UserService userService;
     @Inject
     private PortMappingMapper portMappingMapper;
+    @Inject
+    private UdpSessionService udpSessionService;
 
     @Override
     public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
@@ -69,10 +72,13 @@ public class UdpProxyMessageConnectHandler implements ProxyMessageHandler {
             return;
         }
 
-        Channel visitorChannel = ProxyUtil.getVisitorChannel(cmdChannel, udpBaseInfo.getVisitorId());
-        if (null == visitorChannel) {
+        // 会话已空闲过期，不再需要该隧道；visitorId可被猜测，不属于该license的会话同样不能绑定
+        UdpSession session = udpSessionService.getByVisitorId(udpBaseInfo.getVisitorId());
+        if (null == session || !session.getLicenseId().equals(licenseDO.getId())) {
+            ctx.channel().close();
             return;
         }
+        Channel visitorChannel = session.getVisitorChannel();
         PortMappingDO portMappingDO = portMappingMapper.findByLicenseIdAndServerPort(licenseDO.getId(), udpBaseInfo.getServerPort());
         if (null == portMappingDO || !EnableStatusEnum.ENABLE.getStatus().equals(portMappingDO.getEnable())) {
             ctx.channel().writeAndFlush(ProxyMessage.buildErrMessage(ExceptionEnum.CONNECT_FAILED, "server error, port mapping notfound!"));
@@ -83,21 +89,10 @@ public class UdpProxyMessageConnectHandler implements ProxyMessageHandler {
         ctx.channel().attr(Constants.VISITOR_ID).set(udpBaseInfo.getVisitorId());
         ctx.channel().attr(Constants.LICENSE_ID).set(licenseDO.getId());
         ctx.channel().attr(Constants.NEXT_CHANNEL).set(visitorChannel);
-        ctx.channel().attr(Constants.TARGET_IP).set(portMappingDO.getClientIp());
-        ctx.channel().attr(Constants.TARGET_PORT).set(portMappingDO.getClientPort());
-        ctx.channel().attr(Constants.PROXY_RESPONSES).set(portMappingDO.getProxyResponses());
-        ctx.channel().attr(Constants.PROXY_TIMEOUT_MS).set(portMappingDO.getProxyTimeoutMs());
-        visitorChannel.attr(Constants.NEXT_CHANNEL).set(ctx.channel());
         visitorChannel.attr(Constants.IS_UDP_KEY).set(Boolean.TRUE);
-//        // 代理客户端与后端服务器连接成功，修改用户连接为可读状态
-//        visitorChannel.config().setOption(ChannelOption.AUTO_READ, true);
-        // 获取代理附加对象
-        ProxyAttachment proxyAttachment = ProxyUtil.getProxyConnectAttachment(udpBaseInfo.getVisitorId());
-        if (null != proxyAttachment) {
-            // 及时释放
-            ProxyUtil.remoteProxyConnectAttachment(udpBaseInfo.getVisitorId());
-            proxyAttachment.execute();
-        }
+        // 绑定到会话，并转发隧道建立期间暂存的数据包
+        udpSessionService.bindTunnel(session, ctx.channel(), portMappingDO.getClientIp(), portMappingDO.getClientPort(),
+                portMappingDO.getProxyResponses(), portMappingDO.getProxyTimeoutMs());
     }
 
     @Override
@@ -1,21 +1,18 @@
 package org.dromara.neutrinoproxy.server.proxy.handler;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.socket.DatagramPacket;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.neutrinoproxy.core.Constants;
 import org.dromara.neutrinoproxy.core.ProxyDataTypeEnum;
 import org.dromara.neutrinoproxy.core.ProxyMessage;
 import org.dromara.neutrinoproxy.core.ProxyMessageHandler;
 import org.dromara.neutrinoproxy.core.dispatcher.Match;
-import org.dromara.neutrinoproxy.server.service.FlowReportService;
+import org.dromara.neutrinoproxy.server.proxy.domain.UdpSession;
+import org.dromara.neutrinoproxy.server.service.UdpSessionService;
 import org.noear.snack.ONode;
-import org.noear.solon.Solon;
 import org.noear.solon.annotation.Component;
-
-import java.net.InetSocketAddress;
+import org.noear.solon.annotation.Inject;
 
 /**
  * @author: aoshiguchen
@@ -25,40 +22,27 @@ import java.net.InetSocketAddress;
 @Match(type = Constants.ProxyDataTypeName.UDP_TRANSFER)
 @Component
 public class UdpProxyMessageTransferHandler implements ProxyMessageHandler {
+    @Inject
+    private UdpSessionService udpSessionService;
+
     @Override
     public void handle(ChannelHandlerContext ctx, ProxyMessage proxyMessage) {
         final ProxyMessage.UdpBaseInfo udpBaseInfo = ONode.deserialize(proxyMessage.getInfo(), ProxyMessage.UdpBaseInfo.class);
         log.debug("[UDP transfer]info:{} data:{}", proxyMessage.getInfo(), new String(proxyMessage.getData()));
 
-        Channel visitorChannel = ctx.channel().attr(Constants.NEXT_CHANNEL).get();
-        if (null != visitorChannel) {
-
-            if (!visitorChannel.isWritable()) {
-                //自己不可写，通道可以读，让通道关闭读
-                //自己可写，通道不可以读，让通道打开读
-                if (ctx.channel().config().isAutoRead()) {
-                    ctx.channel().config().setAutoRead(false);
-                }
-            } else {
-                if (ctx.channel().config().isAutoRead()) {
-                    ctx.channel().config().setAutoRead(true);
-                }
-            }
-
-//            InetSocketAddress address = new InetSocketAddress(udpBaseInfo.getVisitorIp(), udpBaseInfo.getVisitorPort());
-//            ByteBuf byteBuf = Unpooled.copiedBuffer(proxyMessage.getData());
-//            visitorChannel.writeAndFlush(new DatagramPacket(byteBuf, address));
-            InetSocketAddress address = ctx.channel().attr(Constants.SENDER).get();
-            if (null != address) {
-                visitorChannel.writeAndFlush(new DatagramPacket(Unpooled.copiedBuffer(proxyMessage.getData()), address));
-            }
-
-            // 增加流量计数(TODO 如果UDP映射服务端端口修改，这个似乎不准)
-            Integer licenseId = visitorChannel.attr(Constants.LICENSE_ID).get();
-            if (null != licenseId) {
-                Solon.context().getBean(FlowReportService.class).addReadByte(licenseId, proxyMessage.getData().length);
-            }
+        // 按会话回写，响应中的visitorId由客户端原样带回，旧版本客户端未带回时使用隧道绑定的visitorId
+        String visitorId = null == udpBaseInfo.getVisitorId() ? ctx.channel().attr(Constants.VISITOR_ID).get() : udpBaseInfo.getVisitorId();
+        UdpSession session = udpSessionService.getByVisitorId(visitorId);
+        // visitorId可被猜测，只能回写到本隧道所属license的访问者会话
+        if (null == session || !session.getLicenseId().equals(ctx.channel().attr(Constants.LICENSE_ID).get())) {
+            return;
+        }
+        Channel visitorChannel = session.getVisitorChannel();
+        // 访问通道不可写时，暂停读取隧道
+        if (ctx.channel().config().isAutoRead() != visitorChannel.isWritable()) {
+            ctx.channel().config().setAutoRead(visitorChannel.isWritable());
         }
+        udpSessionService.reply(session, proxyMessage.getData());
     }
 
     @Override
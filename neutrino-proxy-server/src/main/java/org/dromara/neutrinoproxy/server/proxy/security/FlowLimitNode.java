@@ -0,0 +1,154 @@
+package org.dromara.neutrinoproxy.server.proxy.security;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分层限速中的一个层级节点（用户、license、端口映射各对应一个节点）
+ * 节点在该层级下的所有连接之间共享，不区分连接所在的EventLoop，上传、下载各有一个令牌桶。
+ * 令牌桶采用GCRA算法：只记录"理论到达时间"一个long，通过CAS无锁更新；空闲时最多积累 BURST_NANOS 的突发额度。
+ * 数据已经读到/即将写出时才扣减，因此允许欠账，欠账部分通过返回的等待时长由调用方延后读写来偿还
+ * @author: aoshiguchen
+ * @date: 2024/9/10
+ */
+public final class FlowLimitNode {
+    /**
+     * 各层级空闲时可积累的突发额度：1秒的限速流量
+     */
+    static final long BURST_NANOS = 1000_000_000L;
+    private static final long NANOS_PER_SECOND = 1000_000_000L;
+    /**
+     * 以固定起点计算相对时间，保证时间为非负数，与初始值0的理论到达时间可以直接比较
+     */
+    private static final long ORIGIN_NANOS = System.nanoTime();
+
+    private final Bucket up = new Bucket();
+    private final Bucket down = new Bucket();
+    /**
+     * 配置的限速，0表示不限速
+     */
+    private long upLimitRate;
+    private long downLimitRate;
+    /**
+     * 流量配额超过软阈值后的降速上限，0表示不降速
+     */
+    private long quotaLimitRate;
+    /**
+     * 当前挂在该节点下的活跃连接数，用于计算连接间的公平份额
+     */
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    public FlowLimitNode(Long upLimitRate, Long downLimitRate) {
+        setLimit(upLimitRate, downLimitRate);
+    }
+
+    /**
+     * 更新限速，已建立的连接立即生效
+     * @param upLimitRate 上传限速（字节/秒），为空或不大于0表示不限速
+     * @param downLimitRate 下载限速（字节/秒），为空或不大于0表示不限速
+     */
+    public synchronized void setLimit(Long upLimitRate, Long downLimitRate) {
+        this.upLimitRate = null == upLimitRate ? 0 : Math.max(upLimitRate, 0);
+        this.downLimitRate = null == downLimitRate ? 0 : Math.max(downLimitRate, 0);
+        applyRate();
+    }
+
+    /**
+     * 设置流量配额降速，上传、下载均不超过该速率
+     * @param quotaLimitRate 降速上限（字节/秒），为空表示解除降速
+     */
+    public synchronized void setQuotaLimitRate(Long quotaLimitRate) {
+        this.quotaLimitRate = null == quotaLimitRate ? 0 : Math.max(quotaLimitRate, 0);
+        applyRate();
+    }
+
+    /**
+     * 当前生效的上传限速
+     */
+    public long getUpLimitRate() {
+        return up.rate;
+    }
+
+    /**
+     * 当前生效的下载限速
+     */
+    public long getDownLimitRate() {
+        return down.rate;
+    }
+
+    private void applyRate() {
+        up.rate = minRate(upLimitRate, quotaLimitRate);
+        down.rate = minRate(downLimitRate, quotaLimitRate);
+    }
+
+    private static long minRate(long a, long b) {
+        if (a <= 0) {
+            return b;
+        }
+        if (b <= 0) {
+            return a;
+        }
+        return Math.min(a, b);
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    void attach() {
+        activeConnections.incrementAndGet();
+    }
+
+    void detach() {
+        activeConnections.decrementAndGet();
+    }
+
+    Bucket bucket(boolean isUp) {
+        return isUp ? up : down;
+    }
+
+    /**
+     * 当前单调递增的相对时间（纳秒）
+     */
+    static long now() {
+        return System.nanoTime() - ORIGIN_NANOS;
+    }
+
+    /**
+     * 按GCRA算法扣减指定字节数
+     * @param tat 理论到达时间
+     * @param bytes 字节数
+     * @param rate 速率（字节/秒），必须大于0
+     * @param now 当前相对时间
+     * @return 需要等待的纳秒数，不大于0表示无需等待
+     */
+    static long consume(AtomicLong tat, long bytes, long rate, long now) {
+        long increment = bytes * NANOS_PER_SECOND / rate;
+        while (true) {
+            long prev = tat.get();
+            long next = Math.max(prev, now) + increment;
+            if (tat.compareAndSet(prev, next)) {
+                return next - now - BURST_NANOS;
+            }
+        }
+    }
+
+    /**
+     * 单个方向的令牌桶
+     */
+    static final class Bucket {
+        volatile long rate;
+        final AtomicLong tat = new AtomicLong();
+
+        /**
+         * @return 需要等待的纳秒数，不限速时为0
+         */
+        long consume(long bytes, long now) {
+            long r = rate;
+            if (r <= 0) {
+                return 0;
+            }
+            return Math.max(FlowLimitNode.consume(tat, bytes, r, now), 0);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package org.dromara.neutrinoproxy.server.proxy.security;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分层限速处理器（用户 -> license -> 端口映射 -> 连接）
+ * 每个连接一个实例，但扣减的是各层级共享的令牌桶，因此同一license开再多连接，总速率也不会超过license的限速。
+ * 任一层级超速时视为拥塞，此时连接还需按公平份额（该层限速 / 该层活跃连接数）扣减自身的令牌桶，
+ * 份额内的连接只承担层级本身的等待，超出份额的连接等待更久，把带宽让给其他连接。
+ * 上传（读访问者）超速时暂停读，下载（写访问者）超速时延后写出，积压过多时将连接标记为不可写，由上游的背压逻辑暂停读取代理数据。
+ * 访问者连接的自动读还被连接建立、背压逻辑控制，这些逻辑需通过 {@link #setAutoRead(Channel, boolean)} 设置，
+ * 暂停读期间只记录其期望值，恢复时若其期望关闭自动读则保持关闭
+ * @author: aoshiguchen
+ * @date: 2024/9/10
+ */
+public class HierarchicalTrafficShapingHandler extends ChannelDuplexHandler {
+    /**
+     * 小于该等待时长时不做处理，避免频繁调度
+     */
+    private static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /**
+     * 单次最长等待时长
+     */
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(15);
+    /**
+     * 延后写出的数据超过该大小时，将连接标记为不可写
+     */
+    private static final long MAX_PENDING_BYTES = 4 * 1024 * 1024;
+    /**
+     * netty自带的流量整形使用了1~3
+     */
+    private static final int USER_DEFINED_WRITABILITY_INDEX = 4;
+    /**
+     * 限速暂停读中，参照netty流量整形的READ_SUSPENDED
+     */
+    private static final AttributeKey<Boolean> READ_SUSPENDED = AttributeKey.valueOf("trafficShaping.readSuspended");
+    /**
+     * 连接建立、背压逻辑期望的自动读状态，未设置时视为开启
+     */
+    private static final AttributeKey<Boolean> AUTO_READ = AttributeKey.valueOf("trafficShaping.autoRead");
+
+    /**
+     * 从上到下依次为用户、license、端口映射节点
+     */
+    private final FlowLimitNode[] nodes;
+    /**
+     * 本连接的公平份额令牌桶
+     */
+    private final AtomicLong upShareTat = new AtomicLong();
+    private final AtomicLong downShareTat = new AtomicLong();
+
+    // 以下状态只在连接所在的EventLoop中访问
+    private boolean attached;
+    private final ArrayDeque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private long pendingBytes;
+    private ScheduledFuture<?> writeTask;
+
+    public HierarchicalTrafficShapingHandler(FlowLimitNode... nodes) {
+        this.nodes = nodes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        for (FlowLimitNode node : nodes) {
+            node.attach();
+        }
+        attached = true;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (attached) {
+            attached = false;
+            for (FlowLimitNode node : nodes) {
+                node.detach();
+            }
+        }
+        if (null != writeTask) {
+            writeTask.cancel(false);
+            writeTask = null;
+        }
+        PendingWrite pendingWrite;
+        while ((pendingWrite = pendingWrites.poll()) != null) {
+            ReferenceCountUtil.safeRelease(pendingWrite.msg);
+            pendingWrite.promise.tryFailure(new ClosedChannelException());
+        }
+        pendingBytes = 0;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        long size = calculateSize(msg);
+        if (size > 0) {
+            long wait = reserve(true, size);
+            if (wait >= MIN_WAIT_NANOS && !isReadSuspended(ctx.channel())) {
+                // 暂停读，期间其他处理器重新打开自动读时触发的read()也会被拦截
+                ctx.channel().attr(READ_SUSPENDED).set(true);
+                ctx.channel().config().setAutoRead(false);
+                ctx.executor().schedule(() -> reopenRead(ctx), wait, TimeUnit.NANOSECONDS);
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        if (!isReadSuspended(ctx.channel())) {
+            ctx.read();
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        long size = calculateSize(msg);
+        long wait = size > 0 ? reserve(false, size) : 0;
+        // 没有积压且无需等待时直接写出，有积压时必须排队以保证顺序
+        if (pendingWrites.isEmpty() && wait < MIN_WAIT_NANOS) {
+            ctx.write(msg, promise);
+            return;
+        }
+        long now = FlowLimitNode.now();
+        long sendTime = now + wait;
+        PendingWrite last = pendingWrites.peekLast();
+        if (null != last) {
+            sendTime = Math.max(sendTime, last.sendTime);
+        }
+        pendingWrites.addLast(new PendingWrite(msg, promise, Math.max(size, 0), sendTime));
+        pendingBytes += Math.max(size, 0);
+        if (pendingBytes > MAX_PENDING_BYTES) {
+            setUserDefinedWritability(ctx, false);
+        }
+        if (null == writeTask) {
+            writeTask = ctx.executor().schedule(() -> sendPendingWrites(ctx), sendTime - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 依次扣减各层级的令牌桶，返回需要等待的纳秒数
+     */
+    private long reserve(boolean isUp, long bytes) {
+        long now = FlowLimitNode.now();
+        long wait = 0;
+        long fairRate = Long.MAX_VALUE;
+        for (FlowLimitNode node : nodes) {
+            FlowLimitNode.Bucket bucket = node.bucket(isUp);
+            long nodeWait = bucket.consume(bytes, now);
+            long rate = bucket.rate;
+            if (nodeWait > 0 && rate > 0) {
+                wait = Math.max(wait, nodeWait);
+                fairRate = Math.min(fairRate, Math.max(rate / Math.max(node.getActiveConnections(), 1), 1));
+            }
+        }
+        if (wait > 0) {
+            long shareWait = FlowLimitNode.consume(isUp ? upShareTat : downShareTat, bytes, fairRate, now);
+            wait = Math.max(wait, shareWait);
+        }
+        return Math.min(wait, MAX_WAIT_NANOS);
+    }
+
+    /**
+     * 设置访问者连接的自动读，限速暂停读期间只记录期望值
+     * 在连接所在的EventLoop中执行，避免与恢复读交错
+     */
+    public static void setAutoRead(Channel channel, boolean autoRead) {
+        if (!channel.eventLoop().inEventLoop()) {
+            channel.eventLoop().execute(() -> setAutoRead(channel, autoRead));
+            return;
+        }
+        channel.attr(AUTO_READ).set(autoRead);
+        if (!isReadSuspended(channel)) {
+            channel.config().setAutoRead(autoRead);
+        }
+    }
+
+    private static boolean isReadSuspended(Channel channel) {
+        return Boolean.TRUE.equals(channel.attr(READ_SUSPENDED).get());
+    }
+
+    private void reopenRead(ChannelHandlerContext ctx) {
+        Channel channel = ctx.channel();
+        channel.attr(READ_SUSPENDED).set(false);
+        if (!channel.isActive() || Boolean.FALSE.equals(channel.attr(AUTO_READ).get())) {
+            // 连接建立、背压逻辑期望关闭自动读，由其自行重新打开
+            return;
+        }
+        ChannelConfig config = channel.config();
+        if (config.isAutoRead()) {
+            // 暂停期间自动读已被其他处理器重新打开，但对应的read()被拦截了，这里补发
+            ctx.read();
+        } else {
+            config.setAutoRead(true);
+        }
+    }
+
+    private void sendPendingWrites(ChannelHandlerContext ctx) {
+        writeTask = null;
+        long now = FlowLimitNode.now();
+        boolean written = false;
+        PendingWrite pendingWrite;
+        while ((pendingWrite = pendingWrites.peek()) != null && pendingWrite.sendTime <= now) {
+            pendingWrites.poll();
+            pendingBytes -= pendingWrite.size;
+            ctx.write(pendingWrite.msg, pendingWrite.promise);
+            written = true;
+        }
+        if (written) {
+            ctx.flush();
+        }
+        if (pendingBytes <= MAX_PENDING_BYTES / 2) {
+            setUserDefinedWritability(ctx, true);
+        }
+        if (null != pendingWrite) {
+            writeTask = ctx.executor().schedule(() -> sendPendingWrites(ctx), pendingWrite.sendTime - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void setUserDefinedWritability(ChannelHandlerContext ctx, boolean writable) {
+        ChannelOutboundBuffer outboundBuffer = ctx.channel().unsafe().outboundBuffer();
+        if (null != outboundBuffer) {
+            outboundBuffer.setUserDefinedWritability(USER_DEFINED_WRITABILITY_INDEX, writable);
+        }
+    }
+
+    private long calculateSize(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        return -1;
+    }
+
+    private static final class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+        private final long size;
+        private final long sendTime;
+
+        private PendingWrite(Object msg, ChannelPromise promise, long size, long sendTime) {
+            this.msg = msg;
+            this.promise = promise;
+            this.size = size;
+            this.sendTime = sendTime;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.dromara.neutrinoproxy.server.proxy.security;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import lombok.extern.slf4j.Slf4j;
@@ -8,13 +9,19 @@ import org.apache.commons.lang3.StringUtils;
 import org.dromara.neutrinoproxy.core.Constants;
 import org.dromara.neutrinoproxy.core.util.HttpUtil;
 import org.dromara.neutrinoproxy.core.util.IpUtil;
+import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
 import org.dromara.neutrinoproxy.server.service.DomainService;
+import org.dromara.neutrinoproxy.server.service.FlowQuotaService;
 import org.dromara.neutrinoproxy.server.service.PortMappingService;
 import org.dromara.neutrinoproxy.server.service.SecurityGroupService;
+import org.dromara.neutrinoproxy.server.service.UniqueVisitorService;
 import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import org.noear.solon.Solon;
 
 /**
+ * http访问者安全校验
+ * 保留在pipeline中，只解析请求首包的请求头；长连接上Host与上一个请求相同、或为请求体数据时直接放行，
+ * Host变化时重新校验域名、安全组与流量配额，映射到其他端口的请求拒绝（访问者连接已绑定到首个映射）
  * @author: aoshiguchen
  * @date: 2023/12/14
  */
@@ -23,10 +30,16 @@ public class HttpVisitorSecurityChannelHandler extends ChannelInboundHandlerAdap
     private final SecurityGroupService securityGroupService = Solon.context().getBean(SecurityGroupService.class);
     private final PortMappingService portMappingService = Solon.context().getBean(PortMappingService.class);
     private final DomainService domainService = Solon.context().getBean(DomainService.class);
+    private final UniqueVisitorService uniqueVisitorService = Solon.context().getBean(UniqueVisitorService.class);
+    private final FlowQuotaService flowQuotaService = Solon.context().getBean(FlowQuotaService.class);
     /**
      * 域名
      */
     private Boolean isHttps;
+    /**
+     * 上一个已通过校验的请求的Host
+     */
+    private String checkedHost;
 
     public HttpVisitorSecurityChannelHandler(Boolean isHttps) {
         this.isHttps = isHttps;
@@ -35,56 +48,80 @@ public class HttpVisitorSecurityChannelHandler extends ChannelInboundHandlerAdap
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         ByteBuf buf = (ByteBuf) msg;
 
-        // 获取Host请求头
-        byte[] bytes = new byte[buf.readableBytes()];
-        buf.readBytes(bytes);
-        String httpContent = new String(bytes);
+        // 已校验过的连接上，请求体等非请求首包数据直接放行
+        if (null != checkedHost && !HttpUtil.isHttpRequest(buf)) {
+            ctx.fireChannelRead(buf);
+            return;
+        }
+
+        // 获取Host请求头，只解码请求头部分
+        String httpContent = HttpUtil.getHeaderContent(buf);
         String host = HttpUtil.getHostIgnorePort(httpContent); //test1.asgc.fun
 
         log.debug("HttpProxy host: {}", host);
         if (StringUtils.isBlank(host)) {
-            ctx.channel().close();
+            reject(ctx, buf);
+            return;
+        }
+        // 长连接上Host未变化，无需重复校验
+        if (host.equals(checkedHost)) {
+            ctx.fireChannelRead(buf);
             return;
         }
         // 判断域名是否被禁用或删除
         Integer domainNameId = ProxyUtil.getDomainNameIdByFullDomain(host);
         if (domainNameId == null) {
-            ctx.channel().close();
+            reject(ctx, buf);
             return;
         }
         // 域名映射强制https验证
         if (!isHttps && domainService.isOnlyHttps(domainNameId)) {
-            ctx.channel().close();
+            reject(ctx, buf);
             return;
         }
 
-        Integer serverPort = ctx.channel().attr(Constants.SERVER_PORT).get();
+        Integer serverPort = ProxyUtil.getServerPortByFullDomain(host);
         if (null == serverPort) {
-            // channel没有服务器端口信息，尝试根据完整域名拿到服务端端口
-            serverPort = ProxyUtil.getServerPortByFullDomain(host);
-            if (null == serverPort) {
-                ctx.channel().close();
-                return;
-            }
-
-            // 判断IP是否在该端口绑定的安全组允许的规则内
-            String ip = IpUtil.getRealRemoteIp(httpContent);
-            if (ip == null) {
-                ip = IpUtil.getRemoteIp(ctx);
-            }
-            if (!securityGroupService.judgeAllow(ip, portMappingService.getSecurityGroupIdByMappingPort(serverPort))) {
-                // 不在安全组规则放行范围内
-                ctx.channel().close();
-                return;
-            }
+            reject(ctx, buf);
+            return;
+        }
+        Integer boundServerPort = ctx.channel().attr(Constants.SERVER_PORT).get();
+        if (null != boundServerPort && !boundServerPort.equals(serverPort)) {
+            // 访问者连接已绑定到其他映射，无法转发
+            reject(ctx, buf);
+            return;
+        }
 
-            ctx.channel().attr(Constants.REAL_REMOTE_IP).set(ip);
-            ctx.channel().attr(Constants.SERVER_PORT).set(serverPort);
+        // 判断IP是否在该端口绑定的安全组允许的规则内
+        String ip = IpUtil.getRealRemoteIp(httpContent);
+        if (ip == null) {
+            ip = IpUtil.getRemoteIp(ctx);
         }
+        if (!securityGroupService.judgeAllow(ip, portMappingService.getSecurityGroupIdByMappingPort(serverPort))) {
+            // 不在安全组规则放行范围内
+            reject(ctx, buf);
+            return;
+        }
+        // 流量配额已用完，拒绝访问
+        Channel cmdChannel = ProxyUtil.getCmdChannelByServerPort(serverPort);
+        CmdChannelAttachInfo cmdChannelAttachInfo = null == cmdChannel ? null : ProxyUtil.getAttachInfo(cmdChannel);
+        if (null != cmdChannelAttachInfo && flowQuotaService.isExceeded(cmdChannelAttachInfo.getLicenseId())) {
+            reject(ctx, buf);
+            return;
+        }
+        ctx.channel().attr(Constants.REAL_REMOTE_IP).set(ip);
+        ctx.channel().attr(Constants.SERVER_PORT).set(serverPort);
+        checkedHost = host;
+
+        // 独立访客数统计，按端口映射与域名分别计数
+        uniqueVisitorService.offer(serverPort, host, ip);
 
-        // 继续传播
-        buf.resetReaderIndex();
         ctx.fireChannelRead(buf);
     }
 
+    private void reject(ChannelHandlerContext ctx, ByteBuf buf) {
+        buf.release();
+        ctx.channel().close();
+    }
+
 }
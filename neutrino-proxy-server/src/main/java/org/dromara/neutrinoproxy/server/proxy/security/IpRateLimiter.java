@@ -0,0 +1,108 @@
+package org.dromara.neutrinoproxy.server.proxy.security;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按来源IP限速的令牌桶
+ * 采用count-min结构：DEPTH行、每行width个令牌桶，IP经不同哈希落到每行的一个桶上，取各行剩余令牌的最大值作为该IP的可用令牌。
+ * 内存固定为 DEPTH * width 个long，与来源IP数量无关；哈希冲突只会让少量IP被更早限速，不会放过超限的IP。
+ * 应按 并发活跃IP数 / 每IP速率 的量级设置width。
+ * 每个桶的状态打包在一个long中（高32位为上次补充时间毫秒，低32位为千分之一令牌数），通过CAS无锁更新
+ * @author: aoshiguchen
+ * @date: 2024/9/6
+ */
+public final class IpRateLimiter {
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+    /**
+     * 令牌以千分之一为单位存储，避免低速率下的精度损失
+     */
+    private static final long TOKEN_UNIT = 1000L;
+    private static final long TOKEN_MASK = 0xFFFFFFFFL;
+
+    /**
+     * 每秒补充的令牌数
+     */
+    private final int rate;
+    /**
+     * 桶容量（千分之一令牌）
+     */
+    private final long capacity;
+    private final int widthMask;
+    private final int widthBits;
+    private final AtomicLongArray buckets;
+
+    /**
+     * @param rate 每秒允许的次数
+     * @param burst 允许的突发次数
+     * @param width 每行桶数，向上取整为2的幂
+     */
+    public IpRateLimiter(int rate, int burst, int width) {
+        this.rate = Math.max(rate, 1);
+        this.capacity = Math.min(Math.max(burst, this.rate) * TOKEN_UNIT, TOKEN_MASK);
+        int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+        this.widthMask = size - 1;
+        this.widthBits = Integer.numberOfTrailingZeros(size);
+        this.buckets = new AtomicLongArray(DEPTH * size);
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public long getBurst() {
+        return capacity / TOKEN_UNIT;
+    }
+
+    /**
+     * 尝试为指定IP获取一个令牌
+     * @param address 来源IP
+     * @return 是否放行
+     */
+    public boolean tryAcquire(InetAddress address) {
+        int hash = address.hashCode();
+        int now = (int) (System.nanoTime() / 1000_000L);
+
+        // 先只读估算该IP的可用令牌：每行的桶都可能被其他IP共用而偏少，取各行最大值作为估算（count-min），不足则拒绝
+        long estimate = 0;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.max(estimate, available(buckets.get(index(hash, row)), now));
+        }
+        if (estimate < TOKEN_UNIT) {
+            return false;
+        }
+
+        // 保守更新：各行只扣减到 估算值-1，已被其他IP消耗得更少的行不再重复扣减，降低哈希冲突导致的误限速
+        long target = estimate - TOKEN_UNIT;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            while (true) {
+                long state = buckets.get(index);
+                long tokens = Math.min(available(state, now), target);
+                if (buckets.compareAndSet(index, state, ((long) now << 32) | tokens)) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private long available(long state, int now) {
+        // 从未使用过的桶视为满桶
+        if (state == 0) {
+            return capacity;
+        }
+        long elapsedMs = (now - (int) (state >>> 32)) & TOKEN_MASK;
+        long tokens = (state & TOKEN_MASK) + elapsedMs * rate;
+        return Math.min(tokens, capacity);
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        return (row << widthBits) | (h & widthMask);
+    }
+}
@@ -0,0 +1,427 @@
+package org.dromara.neutrinoproxy.server.proxy.security;
+
+import cn.hutool.core.util.StrUtil;
+import io.netty.util.NetUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.server.constant.SecurityRulePassTypeEnum;
+import org.dromara.neutrinoproxy.server.dal.entity.SecurityGroupDO;
+import org.dromara.neutrinoproxy.server.dal.entity.SecurityRuleDO;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 安全组规则索引
+ * 安全组下所有启用的规则按优先级编译为互不重叠的有序IP区间（IPv4、IPv6各一份），每个区间记录命中的最高优先级规则，
+ * 判断时只需一次二分查找，不查库、不走正则，IPv4判断不产生临时对象。规则或安全组变更时整体重建后替换
+ * @author: aoshiguchen
+ * @date: 2024/9/2
+ */
+@Slf4j
+public final class SecurityRuleIndex {
+    /**
+     * 没有匹配到任何规则
+     */
+    public static final int NO_MATCH = -1;
+    /**
+     * 无法解析的IP
+     */
+    public static final int INVALID_IP = -2;
+
+    private static final BigInteger IPV4_MAX = BigInteger.ONE.shiftLeft(32).subtract(BigInteger.ONE);
+    private static final BigInteger IPV6_MAX = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+    private static final BigInteger LONG_MASK = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    private final Integer groupId;
+    private final boolean defaultAllow;
+
+    /**
+     * 规则槽位，下标越小优先级越高
+     */
+    private final int[] ruleIds;
+    private final boolean[] ruleAllows;
+
+    private final long[] v4Starts;
+    private final long[] v4Ends;
+    private final int[] v4Slots;
+
+    private final long[] v6StartHighs;
+    private final long[] v6StartLows;
+    private final long[] v6EndHighs;
+    private final long[] v6EndLows;
+    private final int[] v6Slots;
+
+    private SecurityRuleIndex(Integer groupId, boolean defaultAllow, int[] ruleIds, boolean[] ruleAllows,
+                              List<Segment> v4Segments, List<Segment> v6Segments) {
+        this.groupId = groupId;
+        this.defaultAllow = defaultAllow;
+        this.ruleIds = ruleIds;
+        this.ruleAllows = ruleAllows;
+
+        int v4Size = v4Segments.size();
+        this.v4Starts = new long[v4Size];
+        this.v4Ends = new long[v4Size];
+        this.v4Slots = new int[v4Size];
+        for (int i = 0; i < v4Size; i++) {
+            Segment segment = v4Segments.get(i);
+            v4Starts[i] = segment.start.longValue();
+            v4Ends[i] = segment.end.longValue();
+            v4Slots[i] = segment.slot;
+        }
+
+        int v6Size = v6Segments.size();
+        this.v6StartHighs = new long[v6Size];
+        this.v6StartLows = new long[v6Size];
+        this.v6EndHighs = new long[v6Size];
+        this.v6EndLows = new long[v6Size];
+        this.v6Slots = new int[v6Size];
+        for (int i = 0; i < v6Size; i++) {
+            Segment segment = v6Segments.get(i);
+            v6StartHighs[i] = segment.start.shiftRight(64).longValue();
+            v6StartLows[i] = segment.start.and(LONG_MASK).longValue();
+            v6EndHighs[i] = segment.end.shiftRight(64).longValue();
+            v6EndLows[i] = segment.end.and(LONG_MASK).longValue();
+            v6Slots[i] = segment.slot;
+        }
+    }
+
+    /**
+     * 编译安全组规则
+     * @param groupDO 安全组
+     * @param ruleDOList 该安全组下启用的规则
+     * @return 规则索引
+     */
+    public static SecurityRuleIndex compile(SecurityGroupDO groupDO, List<SecurityRuleDO> ruleDOList) {
+        List<SecurityRuleDO> sortedList = new ArrayList<>(ruleDOList);
+        sortedList.sort(Comparator.comparing((SecurityRuleDO ruleDO) -> null == ruleDO.getPriority() ? Integer.MAX_VALUE : ruleDO.getPriority())
+            .thenComparing(ruleDO -> null == ruleDO.getId() ? Integer.MAX_VALUE : ruleDO.getId()));
+
+        int[] ruleIds = new int[sortedList.size()];
+        boolean[] ruleAllows = new boolean[sortedList.size()];
+        List<Interval> v4Intervals = new ArrayList<>();
+        List<Interval> v6Intervals = new ArrayList<>();
+        for (int slot = 0; slot < sortedList.size(); slot++) {
+            SecurityRuleDO ruleDO = sortedList.get(slot);
+            ruleIds[slot] = null == ruleDO.getId() ? 0 : ruleDO.getId();
+            ruleAllows[slot] = SecurityRulePassTypeEnum.ALLOW.getType().equals(ruleDO.getPassType());
+
+            // 没有规则，默认允许访问
+            if (StrUtil.isBlank(ruleDO.getRule())) {
+                ruleAllows[slot] = true;
+                v4Intervals.add(new Interval(BigInteger.ZERO, IPV4_MAX, slot));
+                v6Intervals.add(new Interval(BigInteger.ZERO, IPV6_MAX, slot));
+                continue;
+            }
+            for (String item : ruleDO.getRule().split(",")) {
+                item = item.trim();
+                if (item.isEmpty()) {
+                    continue;
+                }
+                if (!parseRuleItem(item, slot, v4Intervals, v6Intervals)) {
+                    log.warn("[SecurityGroup] groupId:{} ruleId:{} invalid rule item:{}, ignored", groupDO.getId(), ruleDO.getId(), item);
+                }
+            }
+        }
+
+        boolean defaultAllow = SecurityRulePassTypeEnum.ALLOW.getType().equals(groupDO.getDefaultPassType());
+        return new SecurityRuleIndex(groupDO.getId(), defaultAllow, ruleIds, ruleAllows,
+            flatten(v4Intervals), flatten(v6Intervals));
+    }
+
+    public Integer getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * 未命中任何规则时是否放行
+     */
+    public boolean isDefaultAllow() {
+        return defaultAllow;
+    }
+
+    public boolean isAllow(int slot) {
+        return ruleAllows[slot];
+    }
+
+    public int getRuleId(int slot) {
+        return ruleIds[slot];
+    }
+
+    /**
+     * 查找IP命中的最高优先级规则槽位
+     * X-Forwarded-For 等多个IP以逗号分隔时，只取第一个
+     * @param ip IP地址
+     * @return 规则槽位，或 {@link #NO_MATCH}、{@link #INVALID_IP}
+     */
+    public int match(String ip) {
+        int end = ip.indexOf(',');
+        if (end < 0) {
+            end = ip.length();
+        }
+        int begin = 0;
+        while (begin < end && ip.charAt(begin) <= ' ') {
+            begin++;
+        }
+        while (end > begin && ip.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (begin == end) {
+            return INVALID_IP;
+        }
+
+        long v4 = parseIpv4(ip, begin, end);
+        if (v4 >= 0) {
+            return matchIpv4(v4);
+        }
+        if (ip.indexOf(':', begin) < 0) {
+            return INVALID_IP;
+        }
+        byte[] bytes = NetUtil.createByteArrayFromIpAddressString(ip.substring(begin, end));
+        if (null == bytes) {
+            return INVALID_IP;
+        }
+        if (bytes.length == 4) {
+            return matchIpv4(toLong(bytes, 0, 4));
+        }
+        // IPv4映射地址（::ffff:a.b.c.d）按IPv4处理
+        if (isIpv4Mapped(bytes)) {
+            return matchIpv4(toLong(bytes, 12, 4));
+        }
+        return matchIpv6(toLong(bytes, 0, 8), toLong(bytes, 8, 8));
+    }
+
+    private int matchIpv4(long ip) {
+        int low = 0;
+        int high = v4Starts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (v4Starts[mid] > ip) {
+                high = mid - 1;
+            } else if (v4Ends[mid] < ip) {
+                low = mid + 1;
+            } else {
+                return v4Slots[mid];
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private int matchIpv6(long ipHigh, long ipLow) {
+        int low = 0;
+        int high = v6Slots.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compareUnsigned(v6StartHighs[mid], v6StartLows[mid], ipHigh, ipLow) > 0) {
+                high = mid - 1;
+            } else if (compareUnsigned(v6EndHighs[mid], v6EndLows[mid], ipHigh, ipLow) < 0) {
+                low = mid + 1;
+            } else {
+                return v6Slots[mid];
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private static int compareUnsigned(long aHigh, long aLow, long bHigh, long bLow) {
+        int res = Long.compareUnsigned(aHigh, bHigh);
+        return res != 0 ? res : Long.compareUnsigned(aLow, bLow);
+    }
+
+    /**
+     * 解析单条规则项
+     * 单个ip：192.168.1.1、::1
+     * 范围类型：192.168.1.0-192.168.1.255
+     * 掩码类型：192.168.1.0/24、2001:db8::/32
+     * 泛型：ALL、0.0.0.0、0.0.0.0/0、0.0.0.0/ALL
+     */
+    private static boolean parseRuleItem(String item, int slot, List<Interval> v4Intervals, List<Interval> v6Intervals) {
+        if (item.equalsIgnoreCase("ALL") || item.equals("0.0.0.0") || item.equals("0.0.0.0/0")
+            || item.toUpperCase().endsWith("/ALL")) {
+            v4Intervals.add(new Interval(BigInteger.ZERO, IPV4_MAX, slot));
+            v6Intervals.add(new Interval(BigInteger.ZERO, IPV6_MAX, slot));
+            return true;
+        }
+
+        int rangeIndex = item.indexOf('-');
+        if (rangeIndex > 0) {
+            byte[] begin = parseAddress(item.substring(0, rangeIndex).trim());
+            byte[] end = parseAddress(item.substring(rangeIndex + 1).trim());
+            if (null == begin || null == end || begin.length != end.length) {
+                return false;
+            }
+            BigInteger beginValue = new BigInteger(1, begin);
+            BigInteger endValue = new BigInteger(1, end);
+            if (beginValue.compareTo(endValue) > 0) {
+                BigInteger tmp = beginValue;
+                beginValue = endValue;
+                endValue = tmp;
+            }
+            (begin.length == 4 ? v4Intervals : v6Intervals).add(new Interval(beginValue, endValue, slot));
+            return true;
+        }
+
+        int maskIndex = item.indexOf('/');
+        if (maskIndex > 0) {
+            byte[] address = parseAddress(item.substring(0, maskIndex).trim());
+            if (null == address) {
+                return false;
+            }
+            int bits = address.length * 8;
+            int prefix;
+            try {
+                prefix = Integer.parseInt(item.substring(maskIndex + 1).trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (prefix < 0 || prefix > bits) {
+                return false;
+            }
+            BigInteger hostMask = BigInteger.ONE.shiftLeft(bits - prefix).subtract(BigInteger.ONE);
+            BigInteger beginValue = new BigInteger(1, address).andNot(hostMask);
+            (address.length == 4 ? v4Intervals : v6Intervals).add(new Interval(beginValue, beginValue.or(hostMask), slot));
+            return true;
+        }
+
+        byte[] address = parseAddress(item);
+        if (null == address) {
+            return false;
+        }
+        BigInteger value = new BigInteger(1, address);
+        (address.length == 4 ? v4Intervals : v6Intervals).add(new Interval(value, value, slot));
+        return true;
+    }
+
+    /**
+     * 解析IP字面量，IPv4映射地址折叠为4字节，非法返回null
+     */
+    private static byte[] parseAddress(String address) {
+        byte[] bytes = NetUtil.createByteArrayFromIpAddressString(address);
+        if (null != bytes && bytes.length == 16 && isIpv4Mapped(bytes)) {
+            byte[] v4 = new byte[4];
+            System.arraycopy(bytes, 12, v4, 0, 4);
+            return v4;
+        }
+        return bytes;
+    }
+
+    private static boolean isIpv4Mapped(byte[] bytes) {
+        for (int i = 0; i < 10; i++) {
+            if (bytes[i] != 0) {
+                return false;
+            }
+        }
+        return bytes[10] == (byte) 0xff && bytes[11] == (byte) 0xff;
+    }
+
+    private static long toLong(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * 不产生临时对象的IPv4解析
+     * @return IPv4数值，非IPv4返回-1
+     */
+    private static long parseIpv4(String ip, int begin, int end) {
+        long value = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = begin; i < end; i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet >= 0 && dots < 3) {
+                value = (value << 8) | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || octet < 0) {
+            return -1;
+        }
+        return (value << 8) | octet;
+    }
+
+    /**
+     * 将按优先级标记的区间展开为互不重叠的有序区间，每段取覆盖它的最高优先级（最小槽位）规则，相邻同槽位的段合并
+     */
+    private static List<Segment> flatten(List<Interval> intervals) {
+        List<Segment> segments = new ArrayList<>();
+        if (intervals.isEmpty()) {
+            return segments;
+        }
+        // 区间边界 -> 该点开始生效/失效的槽位
+        TreeMap<BigInteger, List<Integer>> starts = new TreeMap<>();
+        TreeMap<BigInteger, List<Integer>> ends = new TreeMap<>();
+        for (Interval interval : intervals) {
+            starts.computeIfAbsent(interval.start, k -> new ArrayList<>()).add(interval.slot);
+            ends.computeIfAbsent(interval.end.add(BigInteger.ONE), k -> new ArrayList<>()).add(interval.slot);
+        }
+        TreeSet<BigInteger> points = new TreeSet<>(starts.keySet());
+        points.addAll(ends.keySet());
+
+        // 当前生效的槽位 -> 覆盖次数
+        TreeMap<Integer, Integer> active = new TreeMap<>();
+        BigInteger segmentStart = null;
+        for (BigInteger point : points) {
+            if (null != segmentStart && !active.isEmpty()) {
+                appendSegment(segments, segmentStart, point.subtract(BigInteger.ONE), active.firstKey());
+            }
+            for (Integer slot : ends.getOrDefault(point, List.of())) {
+                active.computeIfPresent(slot, (k, count) -> count > 1 ? count - 1 : null);
+            }
+            for (Integer slot : starts.getOrDefault(point, List.of())) {
+                active.merge(slot, 1, Integer::sum);
+            }
+            segmentStart = point;
+        }
+        return segments;
+    }
+
+    private static void appendSegment(List<Segment> segments, BigInteger start, BigInteger end, int slot) {
+        if (!segments.isEmpty()) {
+            Segment last = segments.get(segments.size() - 1);
+            if (last.slot == slot && last.end.add(BigInteger.ONE).equals(start)) {
+                last.end = end;
+                return;
+            }
+        }
+        segments.add(new Segment(start, end, slot));
+    }
+
+    private static class Interval {
+        private final BigInteger start;
+        private final BigInteger end;
+        private final int slot;
+
+        private Interval(BigInteger start, BigInteger end, int slot) {
+            this.start = start;
+            this.end = end;
+            this.slot = slot;
+        }
+    }
+
+    private static class Segment {
+        private final BigInteger start;
+        private BigInteger end;
+        private final int slot;
+
+        private Segment(BigInteger start, BigInteger end, int slot) {
+            this.start = start;
+            this.end = end;
+            this.slot = slot;
+        }
+    }
+}
@@ -7,14 +7,18 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.dromara.neutrinoproxy.core.Constants;
+import org.dromara.neutrinoproxy.core.util.HttpUtil;
 import org.dromara.neutrinoproxy.core.util.IpUtil;
 import org.dromara.neutrinoproxy.server.service.PortMappingService;
 import org.dromara.neutrinoproxy.server.service.SecurityGroupService;
+import org.dromara.neutrinoproxy.server.service.UniqueVisitorService;
 import org.noear.solon.Solon;
 
 import java.net.InetSocketAddress;
 
 /**
+ * tcp访问者安全校验
+ * 连接建立时按来源IP校验一次并做新建连接限速，首包为http请求时再按X-Forwarded-For/X-Real-IP校验一次，之后从pipeline中移除，后续数据不再经过该处理器
  * @author: aoshiguchen
  * @date: 2023/12/14
  */
@@ -22,30 +26,27 @@ import java.net.InetSocketAddress;
 public class TcpVisitorSecurityChannelHandler extends ChannelInboundHandlerAdapter {
     private final SecurityGroupService securityGroupService = Solon.context().getBean(SecurityGroupService.class);
     private final PortMappingService portMappingService = Solon.context().getBean(PortMappingService.class);
+    private final UniqueVisitorService uniqueVisitorService = Solon.context().getBean(UniqueVisitorService.class);
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         Channel visitorChannel = ctx.channel();
-
         ByteBuf buf = (ByteBuf) msg;
-        byte[] bytes = new byte[buf.readableBytes()];
-        buf.readBytes(bytes);
 
-        // 判断IP是否在该端口绑定的安全组允许的规则内
-        String ip = IpUtil.getRealRemoteIp(new String(bytes));
-        if (StringUtils.isEmpty(ip)) {
-            ip = IpUtil.getRemoteIp(ctx);
-        }
-        InetSocketAddress sa = (InetSocketAddress) visitorChannel.localAddress();
-        if (!securityGroupService.judgeAllow(ip, portMappingService.getSecurityGroupIdByMappingPort(sa.getPort()))) {
-            // 不在安全组规则放行范围内
-            ctx.channel().close();
-            return;
+        // 只有首包是http请求时，才需要解析请求头中的真实IP
+        if (HttpUtil.isHttpRequest(buf)) {
+            String ip = IpUtil.getRealRemoteIp(HttpUtil.getHeaderContent(buf));
+            Integer serverPort = visitorChannel.attr(Constants.SERVER_PORT).get();
+            if (StringUtils.isNotEmpty(ip) && !securityGroupService.judgeAllow(ip, portMappingService.getSecurityGroupIdByMappingPort(serverPort))) {
+                // 不在安全组规则放行范围内
+                buf.release();
+                ctx.channel().close();
+                return;
+            }
         }
 
-        // 继续传播
-        ctx.channel().attr(Constants.SERVER_PORT).set(sa.getPort());
-        buf.resetReaderIndex();
+        // 首包处理完毕，后续数据不再校验
+        ctx.pipeline().remove(this);
         ctx.fireChannelRead(buf);
     }
 
@@ -53,15 +54,27 @@ public class TcpVisitorSecurityChannelHandler extends ChannelInboundHandlerAdapt
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         Channel visitorChannel = ctx.channel();
         InetSocketAddress sa = (InetSocketAddress) visitorChannel.localAddress();
+        Integer securityGroupId = portMappingService.getSecurityGroupIdByMappingPort(sa.getPort());
 
         // 判断IP是否在该端口绑定的安全组允许的规则内
-        if (!securityGroupService.judgeAllow(IpUtil.getRemoteIp(ctx), portMappingService.getSecurityGroupIdByMappingPort(sa.getPort()))) {
+        if (!securityGroupService.judgeAllow(IpUtil.getRemoteIp(ctx), securityGroupId)) {
             // 不在安全组规则放行范围内
             ctx.channel().close();
             return;
         }
 
+        // 来源IP新建连接限速，在通知客户端建立连接之前拦截
+        InetSocketAddress remoteAddress = (InetSocketAddress) visitorChannel.remoteAddress();
+        if (null != remoteAddress && !securityGroupService.tryAcquireConnect(remoteAddress.getAddress(), securityGroupId)) {
+            ctx.channel().close();
+            return;
+        }
+
+        // 独立访客数统计
+        uniqueVisitorService.offer(sa.getPort(), null, IpUtil.getRemoteIp(ctx));
+
         // 继续传播
+        ctx.channel().attr(Constants.SERVER_PORT).set(sa.getPort());
         ctx.fireChannelActive();
     }
 
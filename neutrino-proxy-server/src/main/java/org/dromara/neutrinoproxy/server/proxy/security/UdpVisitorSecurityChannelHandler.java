@@ -1,6 +1,5 @@
 package org.dromara.neutrinoproxy.server.proxy.security;
 
-import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.socket.DatagramPacket;
@@ -8,6 +7,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.dromara.neutrinoproxy.core.Constants;
 import org.dromara.neutrinoproxy.server.service.PortMappingService;
 import org.dromara.neutrinoproxy.server.service.SecurityGroupService;
+import org.dromara.neutrinoproxy.server.service.UniqueVisitorService;
 import org.noear.solon.Solon;
 
 import java.net.InetSocketAddress;
@@ -20,20 +20,39 @@ import java.net.InetSocketAddress;
 public class UdpVisitorSecurityChannelHandler extends ChannelInboundHandlerAdapter {
     private final SecurityGroupService securityGroupService = Solon.context().getBean(SecurityGroupService.class);
     private final PortMappingService portMappingService = Solon.context().getBean(PortMappingService.class);
+    private final UniqueVisitorService uniqueVisitorService = Solon.context().getBean(UniqueVisitorService.class);
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        Channel visitorChannel = ctx.channel();
-        InetSocketAddress sa = (InetSocketAddress) visitorChannel.localAddress();
+        Integer serverPort = ctx.channel().attr(Constants.SERVER_PORT).get();
         DatagramPacket datagramPacket = (DatagramPacket) msg;
 
+        Integer securityGroupId = portMappingService.getSecurityGroupIdByMappingPort(serverPort);
+
+        // 来源IP包速率限制，超限直接丢弃
+        if (!securityGroupService.tryAcquirePacket(datagramPacket.sender().getAddress(), securityGroupId)) {
+            datagramPacket.release();
+            return;
+        }
+
         // 判断IP是否在该端口绑定的安全组允许的规则内
-        if (!securityGroupService.judgeAllow(datagramPacket.sender().getAddress().getHostAddress(), portMappingService.getSecurityGroupIdByMappingPort(sa.getPort()))) {
+        if (!securityGroupService.judgeAllow(datagramPacket.sender().getAddress().getHostAddress(), securityGroupId)) {
+            datagramPacket.release();
             return;
         }
 
+        // 独立访客数统计，同一IP重复计入不影响结果
+        uniqueVisitorService.offer(serverPort, null, datagramPacket.sender().getAddress().getHostAddress());
+
         // 继续传播
-        ctx.channel().attr(Constants.SERVER_PORT).set(sa.getPort());
         ctx.fireChannelRead(msg);
     }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        // udp监听通道与服务端端口一一对应，绑定时设置一次即可
+        InetSocketAddress sa = (InetSocketAddress) ctx.channel().localAddress();
+        ctx.channel().attr(Constants.SERVER_PORT).set(sa.getPort());
+        ctx.fireChannelActive();
+    }
 }
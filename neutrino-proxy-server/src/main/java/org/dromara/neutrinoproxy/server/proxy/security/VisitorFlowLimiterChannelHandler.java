@@ -2,49 +2,73 @@ package org.dromara.neutrinoproxy.server.proxy.security;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.handler.traffic.ChannelTrafficShapingHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.neutrinoproxy.core.Constants;
 import org.dromara.neutrinoproxy.server.service.LicenseService;
 import org.dromara.neutrinoproxy.server.service.PortMappingService;
-import org.dromara.neutrinoproxy.server.service.SecurityGroupService;
-import org.dromara.neutrinoproxy.server.service.bo.FlowLimitBO;
+import org.dromara.neutrinoproxy.server.service.UserService;
 import org.noear.solon.Solon;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 访问者流量限制器
+ * 服务端端口已知时（tcp/udp在连接建立时，http在首包解析出域名后）挂上分层限速处理器，之后从pipeline中移除
  * @author: aoshiguchen
  * @date: 2023/12/15
  */
 @Slf4j
 public class VisitorFlowLimiterChannelHandler extends ChannelInboundHandlerAdapter {
     private final PortMappingService portMappingService = Solon.context().getBean(PortMappingService.class);
+    private final LicenseService licenseService = Solon.context().getBean(LicenseService.class);
+    private final UserService userService = Solon.context().getBean(UserService.class);
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        Integer serverPort = ctx.channel().attr(Constants.SERVER_PORT).get();
+        if (null != serverPort) {
+            applyFlowLimit(ctx, serverPort);
+        }
+        ctx.fireChannelActive();
+    }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        Boolean flowLimiterFlag = ctx.channel().attr(Constants.FLOW_LIMITER_FLAG).get();
-
-        if (null == flowLimiterFlag || !flowLimiterFlag) {
-            Integer serverPort = ctx.channel().attr(Constants.SERVER_PORT).get();
-            Long upLimitRate = null;
-            Long downLimitRate = null;
-            // 先获取端口映射上的限速设置
-            FlowLimitBO flowLimitBO = portMappingService.getFlowLimitByServerPort(serverPort);
-            if (null != flowLimitBO) {
-                upLimitRate = flowLimitBO.getUpLimitRate();
-                downLimitRate = flowLimitBO.getDownLimitRate();
+        applyFlowLimit(ctx, ctx.channel().attr(Constants.SERVER_PORT).get());
+
+        // 继续传播
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * 每个连接只处理一次，挂上共享各层级令牌桶的限速处理器后将自身移除，避免后续数据频繁执行影响性能
+     * 不论当前是否配置了限速都挂上，之后修改用户、license、端口映射的限速时，已建立的连接也会立即生效
+     */
+    private void applyFlowLimit(ChannelHandlerContext ctx, Integer serverPort) {
+        Integer portMappingId = portMappingService.getPortMappingIdByServerPort(serverPort);
+        if (null != portMappingId) {
+            List<FlowLimitNode> nodes = new ArrayList<>(3);
+            Integer licenseId = portMappingService.getLicenseIdById(portMappingId);
+            if (null != licenseId) {
+                Integer userId = licenseService.getUserIdById(licenseId);
+                if (null != userId) {
+                    addIfNotNull(nodes, userService.getFlowLimitNode(userId));
+                }
+                addIfNotNull(nodes, licenseService.getFlowLimitNode(licenseId));
             }
-            if (null != upLimitRate || null != downLimitRate) {
-                // 如果不全为空，则需要做限速
-                ctx.pipeline().addAfter("flowLimiter", "trafficShaping", new ChannelTrafficShapingHandler(downLimitRate == null ? 0 : downLimitRate, upLimitRate == null ? 0 : upLimitRate, 100, 600000));
+            addIfNotNull(nodes, portMappingService.getFlowLimitNode(portMappingId));
+            if (!nodes.isEmpty()) {
+                ctx.pipeline().addAfter(ctx.name(), "trafficShaping", new HierarchicalTrafficShapingHandler(nodes.toArray(new FlowLimitNode[0])));
             }
-
-            // 每个连接第一次处理之后。无论是否限速，该连接后续都不在处理，避免频繁执行影响性能
-            ctx.channel().attr(Constants.FLOW_LIMITER_FLAG).set(Boolean.TRUE);
         }
+        ctx.pipeline().remove(this);
+    }
 
-        // 继续传播
-        ctx.fireChannelRead(msg);
+    private void addIfNotNull(List<FlowLimitNode> nodes, FlowLimitNode node) {
+        if (null != node) {
+            nodes.add(node);
+        }
     }
 
 }
@@ -0,0 +1,151 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.server.constant.ConnectPhaseEnum;
+import org.dromara.neutrinoproxy.server.controller.res.report.ConnectLatencyRes;
+import org.dromara.neutrinoproxy.server.proxy.domain.LatencyHistogram;
+import org.dromara.neutrinoproxy.server.proxy.domain.VisitorChannelAttachInfo;
+import org.noear.solon.annotation.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接建立耗时统计
+ * 访问者接入 -> CONNECT指令写出 -> 客户端连接被代理服务 -> 客户端获取代理通道 -> 代理通道CONNECT到达 -> 访问者恢复读取，
+ * 各阶段耗时分别按端口映射、客户端（license）记录到直方图，用于区分是内网服务慢还是隧道慢。
+ * 客户端阶段耗时由客户端在代理通道的CONNECT消息中上报（data为 "连接被代理服务微秒,获取代理通道微秒"），旧版本客户端不上报时只统计服务端阶段
+ * @author: aoshiguchen
+ * @date: 2024/9/16
+ */
+@Slf4j
+@Component
+public class ConnectLatencyService {
+    private static final String DIMENSION_MAPPING = "mapping";
+    private static final String DIMENSION_LICENSE = "license";
+    private static final ConnectPhaseEnum[] PHASES = ConnectPhaseEnum.values();
+
+    private final Map<Integer/*serverPort*/, LatencyHistogram[]> mappingHistogramMap = new ConcurrentHashMap<>(1024);
+    private final Map<Integer/*licenseId*/, LatencyHistogram[]> licenseHistogramMap = new ConcurrentHashMap<>(256);
+
+    /**
+     * 代理通道CONNECT到达、访问者恢复读取后记录本次连接各阶段耗时
+     * @param attachInfo 访问者通道附加信息
+     * @param receivedNanos 代理通道CONNECT到达时间
+     * @param clientReport 客户端上报的阶段耗时
+     */
+    public void record(VisitorChannelAttachInfo attachInfo, long receivedNanos, byte[] clientReport) {
+        if (null == attachInfo || attachInfo.getAcceptNanos() <= 0) {
+            return;
+        }
+        long readyNanos = System.nanoTime();
+        LatencyHistogram[] mappingHistograms = getHistograms(mappingHistogramMap, attachInfo.getServerPort());
+        LatencyHistogram[] licenseHistograms = getHistograms(licenseHistogramMap, attachInfo.getLicenseId());
+
+        long sentNanos = attachInfo.getConnectSentNanos();
+        long tunnelMicros = -1;
+        if (sentNanos > 0) {
+            record(mappingHistograms, licenseHistograms, ConnectPhaseEnum.DISPATCH, toMicros(sentNanos - attachInfo.getAcceptNanos()));
+            tunnelMicros = toMicros(receivedNanos - sentNanos);
+        }
+        long[] clientMicros = parseClientReport(clientReport);
+        if (null != clientMicros) {
+            record(mappingHistograms, licenseHistograms, ConnectPhaseEnum.CLIENT_CONNECT, clientMicros[0]);
+            record(mappingHistograms, licenseHistograms, ConnectPhaseEnum.CLIENT_BORROW, clientMicros[1]);
+            if (tunnelMicros >= 0) {
+                tunnelMicros = Math.max(tunnelMicros - clientMicros[0] - clientMicros[1], 0);
+            }
+        }
+        if (tunnelMicros >= 0) {
+            record(mappingHistograms, licenseHistograms, ConnectPhaseEnum.TUNNEL, tunnelMicros);
+        }
+        record(mappingHistograms, licenseHistograms, ConnectPhaseEnum.BIND, toMicros(readyNanos - receivedNanos));
+        record(mappingHistograms, licenseHistograms, ConnectPhaseEnum.TOTAL, toMicros(readyNanos - attachInfo.getAcceptNanos()));
+    }
+
+    /**
+     * 各维度、各阶段耗时统计
+     * @return
+     */
+    public List<ConnectLatencyRes> list() {
+        List<ConnectLatencyRes> list = new ArrayList<>();
+        collect(list, DIMENSION_MAPPING, mappingHistogramMap);
+        collect(list, DIMENSION_LICENSE, licenseHistogramMap);
+        return list;
+    }
+
+    private void collect(List<ConnectLatencyRes> list, String dimension, Map<Integer, LatencyHistogram[]> histogramMap) {
+        for (Map.Entry<Integer, LatencyHistogram[]> entry : histogramMap.entrySet()) {
+            for (ConnectPhaseEnum phase : PHASES) {
+                LatencyHistogram histogram = entry.getValue()[phase.ordinal()];
+                long count = histogram.getCount();
+                if (count == 0) {
+                    continue;
+                }
+                list.add(new ConnectLatencyRes()
+                        .setDimension(dimension)
+                        .setKey(entry.getKey())
+                        .setPhase(phase.getPhase())
+                        .setCount(count)
+                        .setAvg(toMillis(histogram.getSum() / count))
+                        .setP50(toMillis(histogram.getPercentile(50)))
+                        .setP90(toMillis(histogram.getPercentile(90)))
+                        .setP99(toMillis(histogram.getPercentile(99)))
+                        .setMax(toMillis(histogram.getMax())));
+            }
+        }
+    }
+
+    private void record(LatencyHistogram[] mappingHistograms, LatencyHistogram[] licenseHistograms, ConnectPhaseEnum phase, long micros) {
+        if (null != mappingHistograms) {
+            mappingHistograms[phase.ordinal()].record(micros);
+        }
+        if (null != licenseHistograms) {
+            licenseHistograms[phase.ordinal()].record(micros);
+        }
+    }
+
+    private LatencyHistogram[] getHistograms(Map<Integer, LatencyHistogram[]> histogramMap, Integer key) {
+        if (null == key) {
+            return null;
+        }
+        LatencyHistogram[] histograms = histogramMap.get(key);
+        if (null == histograms) {
+            histograms = histogramMap.computeIfAbsent(key, k -> {
+                LatencyHistogram[] array = new LatencyHistogram[PHASES.length];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = new LatencyHistogram();
+                }
+                return array;
+            });
+        }
+        return histograms;
+    }
+
+    private long[] parseClientReport(byte[] clientReport) {
+        if (null == clientReport || clientReport.length == 0) {
+            return null;
+        }
+        String[] tokens = new String(clientReport, StandardCharsets.UTF_8).split(",");
+        if (tokens.length != 2) {
+            return null;
+        }
+        try {
+            return new long[]{Long.parseLong(tokens[0].trim()), Long.parseLong(tokens[1].trim())};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000D;
+    }
+}
@@ -0,0 +1,148 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.core.DatagramTunnelFrame;
+import org.dromara.neutrinoproxy.core.ProxyMessage;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.constant.EnableStatusEnum;
+import org.dromara.neutrinoproxy.server.dal.PortMappingMapper;
+import org.dromara.neutrinoproxy.server.dal.entity.PortMappingDO;
+import org.dromara.neutrinoproxy.server.proxy.domain.DatagramTunnel;
+import org.dromara.neutrinoproxy.server.proxy.domain.UdpSession;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据报隧道
+ * 客户端认证成功后通过指令通道申请令牌，再携带令牌从UDP向服务端数据报隧道端口发起认证。
+ * UDP访问者会话优先经数据报隧道转发，隧道不可用（未开启、客户端未认证、空闲超时）或数据报过大时回退到TCP隧道。
+ * 令牌明文传输只用于查找隧道，帧以指令通道下发的密钥认证并防重放；客户端只接受服务端地址发来的帧，且只向经指令通道通知过的目标转发
+ * @author: aoshiguchen
+ * @date: 2024/10/2
+ */
+@Slf4j
+@Component
+public class DatagramTunnelService {
+    @Inject
+    private ProxyConfig proxyConfig;
+    @Inject
+    private PortMappingMapper portMappingMapper;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Long/*token*/, DatagramTunnel> tokenTunnelMap = new ConcurrentHashMap<>();
+    private final Map<Integer/*licenseId*/, DatagramTunnel> licenseTunnelMap = new ConcurrentHashMap<>();
+    /**
+     * 服务端数据报隧道监听通道
+     */
+    private volatile Channel channel;
+
+    public void setChannel(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 数据报隧道端口已监听
+     */
+    public boolean isEnable() {
+        Channel curChannel = channel;
+        return null != curChannel && curChannel.isActive();
+    }
+
+    /**
+     * 为指令通道下发令牌与密钥，同一license重新下发时旧令牌失效
+     * @return 未开启数据报隧道时返回null
+     */
+    public DatagramTunnel issue(Integer licenseId, Channel cmdChannel) {
+        if (!isEnable()) {
+            return null;
+        }
+        long token;
+        do {
+            token = random.nextLong();
+        } while (0 == token || tokenTunnelMap.containsKey(token));
+        byte[] key = new byte[DatagramTunnelFrame.KEY_SIZE];
+        random.nextBytes(key);
+        DatagramTunnel tunnel = new DatagramTunnel(licenseId, token, key, cmdChannel);
+        tokenTunnelMap.put(token, tunnel);
+        DatagramTunnel oldTunnel = licenseTunnelMap.put(licenseId, tunnel);
+        if (null != oldTunnel) {
+            tokenTunnelMap.remove(oldTunnel.getToken());
+        }
+        return tunnel;
+    }
+
+    /**
+     * 指令通道断开，令牌失效
+     */
+    public void revoke(Integer licenseId, Channel cmdChannel) {
+        DatagramTunnel tunnel = licenseTunnelMap.get(licenseId);
+        if (null != tunnel && tunnel.getCmdChannel() == cmdChannel && licenseTunnelMap.remove(licenseId, tunnel)) {
+            tokenTunnelMap.remove(tunnel.getToken());
+        }
+    }
+
+    public DatagramTunnel getByToken(long token) {
+        return tokenTunnelMap.get(token);
+    }
+
+    /**
+     * 经数据报隧道转发访问者的数据包
+     * @return 隧道不可用时返回false，由调用方走TCP隧道
+     */
+    public boolean forward(UdpSession session, byte[] bytes) {
+        Channel curChannel = channel;
+        if (null == curChannel) {
+            return false;
+        }
+        DatagramTunnel tunnel = licenseTunnelMap.get(session.getLicenseId());
+        if (null == tunnel || !tunnel.isAlive(System.currentTimeMillis(), getIdleMillis())) {
+            return false;
+        }
+        if (null == session.getTargetIp() && !resolveTarget(session)) {
+            return false;
+        }
+        if (tunnel.announce(DatagramTunnelFrame.targetKey(session.getServerPort(), session.getTargetIp(), session.getTargetPort()))) {
+            // 首次经隧道转发该目标，先通知客户端放行，本次走TCP隧道
+            tunnel.getCmdChannel().writeAndFlush(ProxyMessage.buildDatagramTunnelTargetMessage(session.getServerPort(), session.getTargetIp(), session.getTargetPort()));
+            return false;
+        }
+        ByteBuf buf = tunnel.encode(DatagramTunnelFrame.create(DatagramTunnelFrame.TYPE_DATA, tunnel.getToken())
+                .setVisitorId(Long.parseLong(session.getVisitorId()))
+                .setServerPort(session.getServerPort())
+                .setTargetIp(session.getTargetIp())
+                .setTargetPort(session.getTargetPort())
+                .setProxyResponses(session.getProxyResponses())
+                .setProxyTimeoutMs(session.getProxyTimeoutMs())
+                .setData(bytes), curChannel.alloc());
+        if (null == buf) {
+            return false;
+        }
+        curChannel.writeAndFlush(new DatagramPacket(buf, tunnel.getAddress()));
+        return true;
+    }
+
+    /**
+     * 会话首次经数据报隧道转发时查询端口映射，每个会话只查一次；TCP隧道则在建立隧道时查询
+     */
+    private boolean resolveTarget(UdpSession session) {
+        PortMappingDO portMappingDO = portMappingMapper.findByLicenseIdAndServerPort(session.getLicenseId(), session.getServerPort());
+        if (null == portMappingDO || !EnableStatusEnum.ENABLE.getStatus().equals(portMappingDO.getEnable())) {
+            return false;
+        }
+        session.setTarget(portMappingDO.getClientIp(), portMappingDO.getClientPort(), portMappingDO.getProxyResponses(), portMappingDO.getProxyTimeoutMs());
+        return true;
+    }
+
+    private long getIdleMillis() {
+        Integer idleSeconds = proxyConfig.getTunnel().getDatagramIdleSeconds();
+        return TimeUnit.SECONDS.toMillis(null == idleSeconds ? 60 : idleSeconds);
+    }
+}
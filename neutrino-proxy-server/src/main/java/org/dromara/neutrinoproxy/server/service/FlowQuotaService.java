@@ -0,0 +1,272 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import cn.hutool.core.collection.CollectionUtil;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.solon.annotation.Db;
+import org.dromara.neutrinoproxy.core.util.DateUtil;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
+import org.dromara.neutrinoproxy.server.dal.LicenseMapper;
+import org.dromara.neutrinoproxy.server.dal.entity.LicenseDO;
+import org.dromara.neutrinoproxy.server.proxy.domain.VisitorChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.security.FlowLimitNode;
+import org.dromara.neutrinoproxy.server.service.bo.FlowLimitBO;
+import org.dromara.neutrinoproxy.server.util.ProxyUtil;
+import org.dromara.neutrinoproxy.server.util.StringUtil;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+import org.noear.solon.core.bean.LifecycleBean;
+import org.noear.solon.core.runtime.NativeDetector;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 月流量配额服务
+ * 数据通道上只累加内存计数器、读取配额状态，license所属用户、流量配额均取自 LicenseService、UserService 的全量内存缓存，不查询数据库；每秒在后台按license、用户汇总判定一次配额状态，每分钟将计数器落库。
+ * 达到软阈值时license降速，达到配额时拒绝新的访问者并断开已有连接
+ * @author: aoshiguchen
+ * @date: 2024/9/12
+ */
+@Slf4j
+@Component
+public class FlowQuotaService implements LifecycleBean {
+    /**
+     * 配额状态：正常
+     */
+    private static final int STATE_NORMAL = 0;
+    /**
+     * 配额状态：超过软阈值，降速
+     */
+    private static final int STATE_SOFT = 1;
+    /**
+     * 配额状态：超过配额，拒绝访问
+     */
+    private static final int STATE_HARD = 2;
+    private static final String MONTH_PATTERN = "yyyy-MM";
+
+    @Db
+    private LicenseMapper licenseMapper;
+    @Inject
+    private LicenseService licenseService;
+    @Inject
+    private UserService userService;
+    @Inject
+    private ProxyConfig proxyConfig;
+
+    private final Map<Integer/*licenseId*/, QuotaCounter> counterMap = new ConcurrentHashMap<>(256);
+    private volatile String month;
+    /**
+     * 最近一次判定的用户配额状态
+     */
+    private volatile Map<Integer/*userId*/, Integer> userStateMap = Collections.emptyMap();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 累加license的已用流量
+     * @param licenseId
+     * @param bytes
+     */
+    public void addUsage(Integer licenseId, long bytes) {
+        if (null == licenseId) {
+            return;
+        }
+        getCounter(licenseId).used.add(bytes);
+    }
+
+    /**
+     * license或其所属用户的流量配额是否已用完
+     * @param licenseId
+     * @return
+     */
+    public boolean isExceeded(Integer licenseId) {
+        if (null == licenseId) {
+            return false;
+        }
+        QuotaCounter counter = counterMap.get(licenseId);
+        if (null != counter) {
+            return counter.state == STATE_HARD;
+        }
+        // 本月尚无流量的license还没有计数器，按所属用户的配额状态判定
+        Integer userId = licenseService.getUserIdById(licenseId);
+        return null != userId && Integer.valueOf(STATE_HARD).equals(userStateMap.get(userId));
+    }
+
+    /**
+     * 将当月已用流量落库
+     */
+    public void checkpoint() {
+        String curMonth = month;
+        for (Map.Entry<Integer, QuotaCounter> entry : counterMap.entrySet()) {
+            QuotaCounter counter = entry.getValue();
+            long used = counter.used.sum();
+            if (used == counter.checkpointBytes) {
+                continue;
+            }
+            try {
+                licenseMapper.updateQuotaUsed(entry.getKey(), used, curMonth);
+                counter.checkpointBytes = used;
+            } catch (Exception e) {
+                log.error("[FlowQuota] checkpoint error licenseId:{}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private QuotaCounter getCounter(Integer licenseId) {
+        QuotaCounter counter = counterMap.get(licenseId);
+        if (null == counter) {
+            counter = counterMap.computeIfAbsent(licenseId, k -> new QuotaCounter());
+        }
+        return counter;
+    }
+
+    /**
+     * 汇总各license、用户的已用流量，判定配额状态
+     */
+    private void evaluate() {
+        String curMonth = DateUtil.format(new Date(), MONTH_PATTERN);
+        if (!curMonth.equals(month)) {
+            // 跨月，已用流量清零
+            month = curMonth;
+            for (QuotaCounter counter : counterMap.values()) {
+                // 减去而非 reset()，不丢失跨月瞬间并发累加的流量
+                counter.used.add(-counter.used.sum());
+                counter.checkpointBytes = -1;
+            }
+        }
+
+        Map<Integer, Long> licenseUsedMap = new HashMap<>(counterMap.size());
+        Map<Integer, Long> userUsedMap = new HashMap<>();
+        Map<Integer, Integer> licenseUserMap = new HashMap<>(counterMap.size());
+        for (Map.Entry<Integer, QuotaCounter> entry : counterMap.entrySet()) {
+            Integer userId = licenseService.getUserIdById(entry.getKey());
+            if (null == userId) {
+                // license已删除
+                counterMap.remove(entry.getKey());
+                continue;
+            }
+            long used = entry.getValue().used.sum();
+            licenseUsedMap.put(entry.getKey(), used);
+            licenseUserMap.put(entry.getKey(), userId);
+            userUsedMap.merge(userId, used, Long::sum);
+        }
+
+        Map<Integer, Integer> userStateMap = new HashMap<>(userUsedMap.size());
+        for (Map.Entry<Integer, Long> entry : userUsedMap.entrySet()) {
+            FlowLimitBO flowLimitBO = userService.getFlowLimit(entry.getKey());
+            userStateMap.put(entry.getKey(), judgeState(entry.getValue(), null == flowLimitBO ? null : flowLimitBO.getFlowQuota()));
+        }
+        this.userStateMap = userStateMap;
+
+        for (Map.Entry<Integer, QuotaCounter> entry : counterMap.entrySet()) {
+            Integer licenseId = entry.getKey();
+            Integer userId = licenseUserMap.get(licenseId);
+            if (null == userId) {
+                continue;
+            }
+            FlowLimitBO flowLimitBO = licenseService.getFlowLimit(licenseId);
+            int state = judgeState(licenseUsedMap.get(licenseId), null == flowLimitBO ? null : flowLimitBO.getFlowQuota());
+            state = Math.max(state, userStateMap.get(userId));
+            QuotaCounter counter = entry.getValue();
+            if (state != counter.state) {
+                changeState(licenseId, counter, state);
+            }
+        }
+    }
+
+    private int judgeState(Long used, Long quota) {
+        if (null == used || null == quota || quota <= 0) {
+            return STATE_NORMAL;
+        }
+        if (used >= quota) {
+            return STATE_HARD;
+        }
+        Integer softPercent = null == proxyConfig.getServer().getQuota() ? null : proxyConfig.getServer().getQuota().getSoftPercent();
+        if (null != softPercent && used * 100 >= quota * softPercent) {
+            return STATE_SOFT;
+        }
+        return STATE_NORMAL;
+    }
+
+    private void changeState(Integer licenseId, QuotaCounter counter, int state) {
+        log.info("[FlowQuota] licenseId:{} state {} -> {}", licenseId, counter.state, state);
+        counter.state = state;
+
+        // 超过软阈值后降速
+        FlowLimitNode flowLimitNode = licenseService.getFlowLimitNode(licenseId);
+        if (null != flowLimitNode) {
+            String softLimitRate = null == proxyConfig.getServer().getQuota() ? null : proxyConfig.getServer().getQuota().getSoftLimitRate();
+            flowLimitNode.setQuotaLimitRate(state == STATE_NORMAL ? null : StringUtil.parseBytes(softLimitRate));
+        }
+
+        // 超过配额后断开已有连接，udp访问通道为端口级别共享，只丢弃后续数据包
+        if (state == STATE_HARD) {
+            List<Channel> visitorChannels = ProxyUtil.getVisitorChannelList(ProxyUtil.getCmdChannelByLicenseId(licenseId));
+            for (Channel visitorChannel : visitorChannels) {
+                VisitorChannelAttachInfo attachInfo = ProxyUtil.getAttachInfo(visitorChannel);
+                if (null != attachInfo && NetworkProtocolEnum.UDP != attachInfo.getProtocol()) {
+                    visitorChannel.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() throws Throwable {
+        // aot 阶段，不初始化
+        if (NativeDetector.isAotRuntime()) {
+            return;
+        }
+        month = DateUtil.format(new Date(), MONTH_PATTERN);
+        // 从上次落库的已用流量恢复
+        List<LicenseDO> licenseDOList = licenseMapper.listAll();
+        if (CollectionUtil.isNotEmpty(licenseDOList)) {
+            for (LicenseDO licenseDO : licenseDOList) {
+                if (month.equals(licenseDO.getQuotaMonth()) && null != licenseDO.getQuotaUsedBytes()) {
+                    QuotaCounter counter = getCounter(licenseDO.getId());
+                    counter.used.add(licenseDO.getQuotaUsedBytes());
+                    counter.checkpointBytes = licenseDO.getQuotaUsedBytes();
+                }
+            }
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "flow-quota");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                evaluate();
+            } catch (Exception e) {
+                log.error("[FlowQuota] evaluate error", e);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() throws Throwable {
+        if (null == scheduler) {
+            return;
+        }
+        scheduler.shutdownNow();
+        checkpoint();
+    }
+
+    private static class QuotaCounter {
+        private final LongAdder used = new LongAdder();
+        /**
+         * 最近一次落库的值，-1表示需要重新落库
+         */
+        private volatile long checkpointBytes = -1;
+        private volatile int state = STATE_NORMAL;
+    }
+}
@@ -0,0 +1,58 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import org.apache.ibatis.solon.annotation.Db;
+import org.dromara.neutrinoproxy.core.util.DateUtil;
+import org.dromara.neutrinoproxy.server.dal.FlowReportDayMapper;
+import org.dromara.neutrinoproxy.server.dal.FlowReportHourMapper;
+import org.dromara.neutrinoproxy.server.dal.FlowReportMonthMapper;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.data.annotation.Tran;
+
+import java.util.Date;
+
+/**
+ * 流量报表汇总
+ * 每个周期的报表按"删除 + 汇总插入"重建，删除与插入在同一事务中完成。
+ * 并发重建须在事务之外串行化（见 FlowReportService），否则后一个事务看不到前一个未提交的插入，会重复插入
+ * @author: aoshiguchen
+ * @date: 2024/10/7
+ */
+@Component
+public class FlowReportRollupService {
+    @Db
+    private FlowReportHourMapper flowReportHourMapper;
+    @Db
+    private FlowReportDayMapper flowReportDayMapper;
+    @Db
+    private FlowReportMonthMapper flowReportMonthMapper;
+
+    /**
+     * @param dateStr yyyy-MM-dd HH
+     */
+    @Tran
+    public void rebuildHour(String dateStr) {
+        Date date = DateUtil.parse(dateStr, "yyyy-MM-dd HH");
+        flowReportHourMapper.deleteByDateStr(dateStr);
+        flowReportHourMapper.insertFromReport(date, dateStr, DateUtil.getHourBegin(date), DateUtil.getHourEnd(date), new Date());
+    }
+
+    /**
+     * @param dateStr yyyy-MM-dd
+     */
+    @Tran
+    public void rebuildDay(String dateStr) {
+        Date date = DateUtil.parse(dateStr, "yyyy-MM-dd");
+        flowReportDayMapper.deleteByDateStr(dateStr);
+        flowReportDayMapper.insertFromReport(date, dateStr, DateUtil.getDayBegin(date), DateUtil.getDayEnd(date), new Date());
+    }
+
+    /**
+     * @param dateStr yyyy-MM
+     */
+    @Tran
+    public void rebuildMonth(String dateStr) {
+        Date date = DateUtil.parse(dateStr, "yyyy-MM");
+        flowReportMonthMapper.deleteByDateStr(dateStr);
+        flowReportMonthMapper.insertFromReport(date, dateStr, DateUtil.getMonthBegin(date), DateUtil.getMonthEnd(date), new Date());
+    }
+}
@@ -1,56 +1,231 @@
 package org.dromara.neutrinoproxy.server.service;
 
-import org.dromara.neutrinoproxy.core.util.LockUtil;
+import cn.hutool.core.collection.CollectionUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.solon.annotation.Db;
+import org.dromara.neutrinoproxy.server.dal.FlowReportMinuteMapper;
+import org.dromara.neutrinoproxy.server.dal.entity.FlowReportMinuteDO;
 import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+import org.noear.solon.data.annotation.Tran;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 流量报表服务
+ * 按license、端口映射（服务端端口）分别计数，计数器为分段累加的LongAdder，数据通道上无锁、无竞争。
+ * 计数器只增不减，报表取数时以"本次累计值 - 上次已取值"计算增量，取数期间的写入会计入下一次，不会丢失。
+ * 取数分为快照、确认两步：报表落库成功后才确认快照，落库失败时增量保留到下一次取数
  * @author: aoshiguchen
  * @date: 2022/10/26
  */
 @Slf4j
 @Component
 public class FlowReportService {
-    private Map<Integer/*licenseId*/, AtomicInteger/*writeByte*/> writeByteMap = new HashMap<>();
-    private Map<Integer/*licenseId*/, AtomicInteger/*readByte*/> readByteMap = new HashMap<>();
+    /**
+     * 分钟报表单条insert语句的最大行数
+     */
+    private static final int MINUTE_REPORT_BATCH_SIZE = 500;
+    @Inject
+    private FlowQuotaService flowQuotaService;
+    @Db
+    private FlowReportMinuteMapper flowReportMinuteMapper;
+    @Inject
+    private FlowReportRollupService flowReportRollupService;
+    private final Map<Integer/*licenseId*/, FlowCounter> licenseCounterMap = new ConcurrentHashMap<>(256);
+    private final Map<Integer/*serverPort*/, FlowCounter> mappingCounterMap = new ConcurrentHashMap<>(1024);
 
-    private AtomicInteger getWriteByte(Integer licenseId) {
-        return LockUtil.doubleCheckProcessForNoException(() -> !writeByteMap.containsKey(licenseId),
-            licenseId,
-            () -> {
-                writeByteMap.put(licenseId, new AtomicInteger());
-            },
-            () -> writeByteMap.get(licenseId));
+    /**
+     * 增加写入流量（访问者 -> 客户端）
+     * @param licenseId
+     * @param serverPort 服务端端口，为空时只计入license
+     * @param writeByte
+     */
+    public void addWriteByte(Integer licenseId, Integer serverPort, int writeByte) {
+        if (null != licenseId) {
+            getCounter(licenseCounterMap, licenseId).write.add(writeByte);
+            flowQuotaService.addUsage(licenseId, writeByte);
+        }
+        if (null != serverPort) {
+            getCounter(mappingCounterMap, serverPort).write.add(writeByte);
+        }
     }
 
-    private AtomicInteger getReadByte(Integer licenseId) {
-        return LockUtil.doubleCheckProcessForNoException(() -> !readByteMap.containsKey(licenseId),
-                licenseId,
-                () -> {
-                    readByteMap.put(licenseId, new AtomicInteger());
-                },
-                () -> readByteMap.get(licenseId));
+    /**
+     * 增加读取流量（客户端 -> 访问者）
+     * @param licenseId
+     * @param serverPort 服务端端口，为空时只计入license
+     * @param readByte
+     */
+    public void addReadByte(Integer licenseId, Integer serverPort, int readByte) {
+        if (null != licenseId) {
+            getCounter(licenseCounterMap, licenseId).read.add(readByte);
+            flowQuotaService.addUsage(licenseId, readByte);
+        }
+        if (null != serverPort) {
+            getCounter(mappingCounterMap, serverPort).read.add(readByte);
+        }
     }
 
-    public void addWriteByte(Integer licenseId, Integer writeByte) {
-        getWriteByte(licenseId).addAndGet(writeByte);
+    /**
+     * 快照各license自上次确认以来的流量增量，只返回有流量的license
+     * 快照不会修改计数器，需在报表落库成功后调用 commitLicenseDelta 确认
+     */
+    public List<FlowDelta> snapshotLicenseDelta() {
+        List<FlowDelta> list = new ArrayList<>();
+        for (Map.Entry<Integer, FlowCounter> entry : licenseCounterMap.entrySet()) {
+            FlowDelta delta = entry.getValue().snapshot(entry.getKey());
+            if (null != delta) {
+                list.add(delta);
+            }
+        }
+        return list;
     }
 
-    public void addReadByte(Integer licenseId, Integer readByte) {
-        getReadByte(licenseId).addAndGet(readByte);
+    /**
+     * 确认快照，快照之后新增的流量计入下一次取数
+     */
+    public void commitLicenseDelta(List<FlowDelta> list) {
+        for (FlowDelta delta : list) {
+            FlowCounter counter = licenseCounterMap.get(delta.licenseId);
+            if (null != counter) {
+                counter.commit(delta);
+            }
+        }
     }
 
-    public Integer getAndResetWriteByte(Integer licenseId) {
-        return getWriteByte(licenseId).getAndSet(0);
+    /**
+     * 分钟报表批量落库，多行insert，在同一事务中提交
+     */
+    @Tran
+    public void saveMinuteReport(List<FlowReportMinuteDO> list) {
+        if (CollectionUtil.isEmpty(list)) {
+            return;
+        }
+        for (List<FlowReportMinuteDO> batch : CollectionUtil.split(list, MINUTE_REPORT_BATCH_SIZE)) {
+            flowReportMinuteMapper.insertBatch(batch);
+        }
     }
 
-    public Integer getAndResetReadByte(Integer licenseId) {
-        return getReadByte(licenseId).getAndSet(0);
+    /**
+     * 由分钟报表汇总小时报表
+     * 汇总在数据库中按license分组计算。分钟报表落库后即刷新当前小时，小时任务再做最终汇总，两者可能同时执行，
+     * 因此串行化；锁在事务之外持有，直到重建事务提交后才释放
+     * @param dateStr yyyy-MM-dd HH
+     */
+    public synchronized void rollupHour(String dateStr) {
+        flowReportRollupService.rebuildHour(dateStr);
+    }
+
+    /**
+     * 由小时报表汇总天报表
+     * 报表查询以"月报表 + 本月天报表 + 当天分钟报表"计算，当天的天报表须在当天结束后生成，不能提前刷新
+     * @param dateStr yyyy-MM-dd
+     */
+    public synchronized void rollupDay(String dateStr) {
+        flowReportRollupService.rebuildDay(dateStr);
+    }
+
+    /**
+     * 由天报表汇总月报表
+     * @param dateStr yyyy-MM
+     */
+    public synchronized void rollupMonth(String dateStr) {
+        flowReportRollupService.rebuildMonth(dateStr);
+    }
+
+    /**
+     * license累计流量（服务启动以来），只读，不影响报表取数
+     */
+    public Map<Integer, FlowCounter> getLicenseCounterMap() {
+        return Collections.unmodifiableMap(licenseCounterMap);
+    }
+
+    /**
+     * 端口映射累计流量（服务启动以来），只读，不影响报表取数
+     */
+    public Map<Integer, FlowCounter> getMappingCounterMap() {
+        return Collections.unmodifiableMap(mappingCounterMap);
+    }
+
+    private FlowCounter getCounter(Map<Integer, FlowCounter> counterMap, Integer key) {
+        FlowCounter counter = counterMap.get(key);
+        if (null == counter) {
+            counter = counterMap.computeIfAbsent(key, k -> new FlowCounter());
+        }
+        return counter;
+    }
+
+    /**
+     * 单个license/端口映射的双向流量计数器
+     */
+    public static final class FlowCounter {
+        private final LongAdder write = new LongAdder();
+        private final LongAdder read = new LongAdder();
+        /**
+         * 上次报表取数时的累计值
+         */
+        private long reportedWrite;
+        private long reportedRead;
+
+        public long getWriteBytes() {
+            return write.sum();
+        }
+
+        public long getReadBytes() {
+            return read.sum();
+        }
+
+        private synchronized FlowDelta snapshot(Integer licenseId) {
+            long writeSum = write.sum();
+            long readSum = read.sum();
+            if (writeSum == reportedWrite && readSum == reportedRead) {
+                return null;
+            }
+            return new FlowDelta(licenseId, writeSum, readSum, writeSum - reportedWrite, readSum - reportedRead);
+        }
+
+        private synchronized void commit(FlowDelta delta) {
+            // 只前进，避免重复确认同一快照
+            reportedWrite = Math.max(reportedWrite, delta.writeSum);
+            reportedRead = Math.max(reportedRead, delta.readSum);
+        }
+    }
+
+    /**
+     * license流量增量快照
+     */
+    public static final class FlowDelta {
+        private final Integer licenseId;
+        private final long writeSum;
+        private final long readSum;
+        private final long writeBytes;
+        private final long readBytes;
+
+        private FlowDelta(Integer licenseId, long writeSum, long readSum, long writeBytes, long readBytes) {
+            this.licenseId = licenseId;
+            this.writeSum = writeSum;
+            this.readSum = readSum;
+            this.writeBytes = writeBytes;
+            this.readBytes = readBytes;
+        }
+
+        public Integer getLicenseId() {
+            return licenseId;
+        }
+
+        public long getWriteBytes() {
+            return writeBytes;
+        }
+
+        public long getReadBytes() {
+            return readBytes;
+        }
     }
 
 }
@@ -1,13 +1,13 @@
 package org.dromara.neutrinoproxy.server.service;
 
-import cn.hutool.cache.Cache;
-import cn.hutool.cache.CacheUtil;
 import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.util.NumberUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.CollectionUtils;
 import com.baomidou.mybatisplus.solon.plugins.pagination.Page;
 import com.google.common.collect.Sets;
+import io.netty.channel.Channel;
 import org.apache.ibatis.solon.annotation.Db;
 import org.dromara.neutrinoproxy.server.base.db.DBInitialize;
 import org.dromara.neutrinoproxy.server.base.page.PageInfo;
@@ -32,8 +32,12 @@ import org.dromara.neutrinoproxy.server.dal.UserMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.LicenseDO;
 import org.dromara.neutrinoproxy.server.dal.entity.PortMappingDO;
 import org.dromara.neutrinoproxy.server.dal.entity.UserDO;
+import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.domain.TunnelRttStats;
+import org.dromara.neutrinoproxy.server.proxy.security.FlowLimitNode;
 import org.dromara.neutrinoproxy.server.service.bo.FlowLimitBO;
 import org.dromara.neutrinoproxy.server.util.ParamCheckUtil;
+import org.dromara.neutrinoproxy.server.util.ProxyUtil;
 import org.dromara.neutrinoproxy.server.util.StringUtil;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Init;
@@ -47,6 +51,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -68,8 +73,12 @@ public class LicenseService implements LifecycleBean {
     private VisitorChannelService visitorChannelService;
     @Inject
     private DBInitialize dbInitialize;
-    // 流量限制缓存
-    private final Cache<Integer, FlowLimitBO> flowLimitCache = CacheUtil.newLRUCache(200, 1000 * 60 * 5);
+    // 流量限制缓存，启动时加载全部license，增删改时刷新，数据通道上不查询数据库
+    private final Map<Integer, FlowLimitBO> flowLimitCache = new ConcurrentHashMap<>();
+    // license id 到 userId的缓存，同上
+    private final Map<Integer, Integer> idToUserIdCache = new ConcurrentHashMap<>();
+    // 分层限速节点，该license下的所有连接共享
+    private final Map<Integer, FlowLimitNode> flowLimitNodeMap = new ConcurrentHashMap<>();
 
     public PageInfo<LicenseListRes> page(PageQuery pageQuery, LicenseListReq req) {
         Page<LicenseDO> page = licenseMapper.selectPage(new Page<>(pageQuery.getCurrent(), pageQuery.getSize()), new LambdaQueryWrapper<LicenseDO>()
@@ -92,6 +101,7 @@ public class LicenseService implements LifecycleBean {
                     item.setUserName(userDO.getName());
                 }
                 item.setKey(desensitization(item.getUserId(), item.getKey()));
+                fillTunnelRtt(item);
             }
         }
         return PageInfo.of(respList, page);
@@ -105,6 +115,21 @@ public class LicenseService implements LifecycleBean {
         return licenseList;
     }
 
+    /**
+     * 填充隧道往返时延统计
+     */
+    private void fillTunnelRtt(LicenseListRes item) {
+        Channel cmdChannel = ProxyUtil.getCmdChannelByLicenseId(item.getId());
+        CmdChannelAttachInfo cmdChannelAttachInfo = ProxyUtil.getAttachInfo(cmdChannel);
+        if (null == cmdChannelAttachInfo || !cmdChannelAttachInfo.getRttStats().isAvailable()) {
+            return;
+        }
+        TunnelRttStats rttStats = cmdChannelAttachInfo.getRttStats();
+        item.setRtt(NumberUtil.round(rttStats.getSrtt() / 1000D, 1).doubleValue());
+        item.setRttJitter(NumberUtil.round(rttStats.getRttVar() / 1000D, 1).doubleValue());
+        item.setProbeLoss(NumberUtil.round(rttStats.getLoss() * 100, 1).doubleValue());
+    }
+
     private List<LicenseListRes> assembleConvertLicenses(List<LicenseDO> list) {
         List<LicenseListRes> licenseList = list.stream().map(LicenseDO::toRes).collect(Collectors.toList());
         if (!CollectionUtil.isEmpty(licenseList)) {
@@ -117,6 +142,7 @@ public class LicenseService implements LifecycleBean {
                     item.setUserName(userDO.getName());
                 }
                 item.setKey(desensitization(item.getUserId(), item.getKey()));
+                fillTunnelRtt(item);
             }
         }
         return licenseList;
@@ -141,6 +167,7 @@ public class LicenseService implements LifecycleBean {
             .setUserId(req.getUserId())
             .setUpLimitRate(req.getUpLimitRate())
             .setDownLimitRate(req.getDownLimitRate())
+            .setFlowQuota(req.getFlowQuota())
             .setIsOnline(OnlineStatusEnum.OFFLINE.getStatus())
             .setEnable(EnableStatusEnum.ENABLE.getStatus())
             .setCreateTime(now)
@@ -149,7 +176,8 @@ public class LicenseService implements LifecycleBean {
         licenseMapper.insert(licenseDO);
 
         // 刷新流量限制缓存
-        refreshFlowLimitCache(licenseDO.getId(), licenseDO.getUpLimitRate(), licenseDO.getDownLimitRate());
+        refreshFlowLimitCache(licenseDO.getId(), licenseDO.getUpLimitRate(), licenseDO.getDownLimitRate(), licenseDO.getFlowQuota());
+        idToUserIdCache.put(licenseDO.getId(), licenseDO.getUserId());
         return new LicenseCreateRes();
     }
 
@@ -165,11 +193,12 @@ public class LicenseService implements LifecycleBean {
             .set(LicenseDO::getName, req.getName())
             .set(LicenseDO::getUpLimitRate, req.getUpLimitRate())
             .set(LicenseDO::getDownLimitRate, req.getDownLimitRate())
+            .set(LicenseDO::getFlowQuota, req.getFlowQuota())
             .set(LicenseDO::getUpdateTime, new Date())
         );
 
         // 刷新流量限制缓存
-        refreshFlowLimitCache(req.getId(), req.getUpLimitRate(), req.getDownLimitRate());
+        refreshFlowLimitCache(req.getId(), req.getUpLimitRate(), req.getDownLimitRate(), req.getFlowQuota());
 
         return new LicenseUpdateRes();
     }
@@ -225,6 +254,8 @@ public class LicenseService implements LifecycleBean {
         visitorChannelService.updateVisitorChannelByLicenseId(id, EnableStatusEnum.DISABLE.getStatus());
         // 删除流量限制缓存
         flowLimitCache.remove(id);
+        flowLimitNodeMap.remove(id);
+        idToUserIdCache.remove(id);
     }
 
     /**
@@ -272,9 +303,10 @@ public class LicenseService implements LifecycleBean {
         licenseMapper.updateOnlineStatus(OnlineStatusEnum.OFFLINE.getStatus(), new Date());
         // 刷新流量限制缓存
         List<LicenseDO> licenseDOList = licenseMapper.listAll();
-        if (CollectionUtils.isEmpty(licenseDOList)) {
+        if (CollectionUtils.isNotEmpty(licenseDOList)) {
             for (LicenseDO licenseDO : licenseDOList) {
-                refreshFlowLimitCache(licenseDO.getId(), licenseDO.getUpLimitRate(), licenseDO.getDownLimitRate());
+                refreshFlowLimitCache(licenseDO.getId(), licenseDO.getUpLimitRate(), licenseDO.getDownLimitRate(), licenseDO.getFlowQuota());
+                idToUserIdCache.put(licenseDO.getId(), licenseDO.getUserId());
             }
         }
     }
@@ -285,15 +317,22 @@ public class LicenseService implements LifecycleBean {
      * @param id
      * @param upLimitRate
      * @param downLimitRate
+     * @param flowQuota
      */
-    private void refreshFlowLimitCache(Integer id, String upLimitRate, String downLimitRate) {
+    private void refreshFlowLimitCache(Integer id, String upLimitRate, String downLimitRate, String flowQuota) {
         if (null == id) {
             return;
         }
-        flowLimitCache.put(id, new FlowLimitBO()
+        FlowLimitBO flowLimitBO = new FlowLimitBO()
             .setUpLimitRate(StringUtil.parseBytes(upLimitRate))
             .setDownLimitRate(StringUtil.parseBytes(downLimitRate))
-        );
+            .setFlowQuota(StringUtil.parseBytes(flowQuota));
+        flowLimitCache.put(id, flowLimitBO);
+        // 已建立的连接立即按新的限速生效
+        FlowLimitNode flowLimitNode = flowLimitNodeMap.get(id);
+        if (null != flowLimitNode) {
+            flowLimitNode.setLimit(flowLimitBO.getUpLimitRate(), flowLimitBO.getDownLimitRate());
+        }
     }
 
     /**
@@ -302,15 +341,33 @@ public class LicenseService implements LifecycleBean {
      * @return
      */
     public FlowLimitBO getFlowLimit(Integer licenseId) {
-        FlowLimitBO res = flowLimitCache.get(licenseId);
-        if (null == res) {
-            LicenseDO licenseDO = licenseMapper.queryById(licenseId);
-            if (null != licenseDO) {
-                refreshFlowLimitCache(licenseId, licenseDO.getUpLimitRate(), licenseDO.getDownLimitRate());
-                res = flowLimitCache.get(licenseId);
-            }
+        return flowLimitCache.get(licenseId);
+    }
+
+    /**
+     * 获取license的分层限速节点
+     * @param licenseId
+     * @return license不存在时返回null
+     */
+    public FlowLimitNode getFlowLimitNode(Integer licenseId) {
+        FlowLimitNode flowLimitNode = flowLimitNodeMap.get(licenseId);
+        if (null != flowLimitNode) {
+            return flowLimitNode;
         }
-        return res;
+        FlowLimitBO flowLimitBO = getFlowLimit(licenseId);
+        if (null == flowLimitBO) {
+            return null;
+        }
+        return flowLimitNodeMap.computeIfAbsent(licenseId, k -> new FlowLimitNode(flowLimitBO.getUpLimitRate(), flowLimitBO.getDownLimitRate()));
+    }
+
+    /**
+     * 获取license所属的用户id
+     * @param licenseId
+     * @return
+     */
+    public Integer getUserIdById(Integer licenseId) {
+        return idToUserIdCache.get(licenseId);
     }
 
     @Override
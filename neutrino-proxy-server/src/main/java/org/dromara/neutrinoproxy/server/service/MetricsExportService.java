@@ -0,0 +1,331 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.dromara.neutrinoproxy.core.DatagramBatchMetricsHandler;
+import org.dromara.neutrinoproxy.core.util.DatagramChannelUtil;
+import org.dromara.neutrinoproxy.server.controller.res.report.ConnectLatencyRes;
+import org.dromara.neutrinoproxy.server.proxy.domain.CmdChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.proxy.domain.Metrics;
+import org.dromara.neutrinoproxy.server.proxy.domain.MetricsCollector;
+import org.dromara.neutrinoproxy.server.proxy.domain.TunnelRttStats;
+import org.dromara.neutrinoproxy.server.util.ProxyUtil;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 指标导出服务，按Prometheus文本格式输出代理运行时指标
+ * 所有数据都来自内存中的计数器，直接拼接文本，不做反射、不查询数据库，抓取开销只与端口、license数量成正比
+ * @author: aoshiguchen
+ * @date: 2024/9/14
+ */
+@Component
+public class MetricsExportService {
+    private static final String PREFIX = "neutrino_";
+
+    @Inject
+    private FlowReportService flowReportService;
+    @Inject
+    private ConnectLatencyService connectLatencyService;
+    @Inject
+    private VisitorSessionLogService visitorSessionLogService;
+    @Inject
+    private DataSource dataSource;
+    @Inject("tcpServerBossGroup")
+    private NioEventLoopGroup tcpServerBossGroup;
+    @Inject("tcpServerWorkerGroup")
+    private NioEventLoopGroup tcpServerWorkerGroup;
+    @Inject("udpServerBossGroup")
+    private EventLoopGroup udpServerBossGroup;
+    @Inject("udpServerWorkerGroup")
+    private NioEventLoopGroup udpServerWorkerGroup;
+    @Inject("tunnelBossGroup")
+    private NioEventLoopGroup tunnelBossGroup;
+    @Inject("tunnelWorkerGroup")
+    private NioEventLoopGroup tunnelWorkerGroup;
+    @Inject("udpBatchMetricsHandler")
+    private DatagramBatchMetricsHandler udpBatchMetricsHandler;
+
+    /**
+     * 导出全部指标
+     * @return Prometheus文本格式
+     */
+    public String export() {
+        StringBuilder sb = new StringBuilder(8192);
+        exportPortMetrics(sb);
+        exportFlowMetrics(sb);
+        exportTunnelMetrics(sb);
+        exportConnectLatencyMetrics(sb);
+        exportSessionLogMetrics(sb);
+        exportUdpBatchMetrics(sb);
+        exportEventLoopMetrics(sb);
+        exportAllocatorMetrics(sb);
+        exportDbPoolMetrics(sb);
+        return sb.toString();
+    }
+
+    /**
+     * 按协议、端口统计的访问指标
+     */
+    private void exportPortMetrics(StringBuilder sb) {
+        List<Metrics> metricsList = MetricsCollector.getAllMetrics();
+        header(sb, "port_read_bytes_total", "counter", "Bytes read from visitors");
+        for (Metrics metrics : metricsList) {
+            sample(sb, "port_read_bytes_total", portLabels(metrics), metrics.getReadBytes());
+        }
+        header(sb, "port_write_bytes_total", "counter", "Bytes written to visitors");
+        for (Metrics metrics : metricsList) {
+            sample(sb, "port_write_bytes_total", portLabels(metrics), metrics.getWroteBytes());
+        }
+        header(sb, "port_read_messages_total", "counter", "Messages read from visitors");
+        for (Metrics metrics : metricsList) {
+            sample(sb, "port_read_messages_total", portLabels(metrics), metrics.getReadMsgs());
+        }
+        header(sb, "port_write_messages_total", "counter", "Messages written to visitors");
+        for (Metrics metrics : metricsList) {
+            sample(sb, "port_write_messages_total", portLabels(metrics), metrics.getWroteMsgs());
+        }
+        header(sb, "port_channels", "gauge", "Active visitor channels");
+        for (Metrics metrics : metricsList) {
+            sample(sb, "port_channels", portLabels(metrics), metrics.getChannels());
+        }
+        header(sb, "port_channels_peak", "gauge", "Peak active visitor channels since start");
+        for (Metrics metrics : metricsList) {
+            sample(sb, "port_channels_peak", portLabels(metrics), metrics.getPeakChannels());
+        }
+        header(sb, "port_channel_duration_seconds", "summary", "Duration of closed visitor channels");
+        for (Metrics metrics : metricsList) {
+            String labels = portLabels(metrics);
+            sample(sb, "port_channel_duration_seconds_sum", labels, metrics.getChannelDurationSum() / 1000D);
+            sample(sb, "port_channel_duration_seconds_count", labels, metrics.getClosedChannels());
+        }
+        header(sb, "port_channel_duration_seconds_max", "gauge", "Longest closed visitor channel since start");
+        for (Metrics metrics : metricsList) {
+            sample(sb, "port_channel_duration_seconds_max", portLabels(metrics), metrics.getChannelDurationMax() / 1000D);
+        }
+    }
+
+    /**
+     * 按license、端口映射统计的转发流量
+     */
+    private void exportFlowMetrics(StringBuilder sb) {
+        Map<Integer, FlowReportService.FlowCounter> licenseCounterMap = flowReportService.getLicenseCounterMap();
+        header(sb, "license_flow_bytes_total", "counter", "Bytes forwarded per license");
+        for (Map.Entry<Integer, FlowReportService.FlowCounter> entry : licenseCounterMap.entrySet()) {
+            sample(sb, "license_flow_bytes_total", labels("license_id", entry.getKey(), "direction", "write"), entry.getValue().getWriteBytes());
+            sample(sb, "license_flow_bytes_total", labels("license_id", entry.getKey(), "direction", "read"), entry.getValue().getReadBytes());
+        }
+        Map<Integer, FlowReportService.FlowCounter> mappingCounterMap = flowReportService.getMappingCounterMap();
+        header(sb, "mapping_flow_bytes_total", "counter", "Bytes forwarded per port mapping");
+        for (Map.Entry<Integer, FlowReportService.FlowCounter> entry : mappingCounterMap.entrySet()) {
+            sample(sb, "mapping_flow_bytes_total", labels("server_port", entry.getKey(), "direction", "write"), entry.getValue().getWriteBytes());
+            sample(sb, "mapping_flow_bytes_total", labels("server_port", entry.getKey(), "direction", "read"), entry.getValue().getReadBytes());
+        }
+    }
+
+    /**
+     * 客户端隧道指标
+     */
+    private void exportTunnelMetrics(StringBuilder sb) {
+        Map<Integer, Channel> cmdChannelMap = ProxyUtil.getLicenseToCmdChannelMap();
+        header(sb, "tunnel_connections", "gauge", "Connected client command tunnels");
+        sample(sb, "tunnel_connections", "", cmdChannelMap.size());
+        header(sb, "tunnel_visitor_channels", "gauge", "Visitor channels bound to each client tunnel");
+        for (Map.Entry<Integer, Channel> entry : cmdChannelMap.entrySet()) {
+            CmdChannelAttachInfo attachInfo = ProxyUtil.getAttachInfo(entry.getValue());
+            if (null != attachInfo && null != attachInfo.getVisitorChannelMap()) {
+                sample(sb, "tunnel_visitor_channels", labels("license_id", entry.getKey()), attachInfo.getVisitorChannelMap().size());
+            }
+        }
+        header(sb, "tunnel_pending_connects", "gauge", "Visitors waiting for the client to open a proxy channel");
+        sample(sb, "tunnel_pending_connects", "", ProxyUtil.getProxyConnectAttachmentCount());
+
+        Map<Integer, TunnelRttStats> rttStatsMap = new TreeMap<>();
+        for (Map.Entry<Integer, Channel> entry : cmdChannelMap.entrySet()) {
+            CmdChannelAttachInfo attachInfo = ProxyUtil.getAttachInfo(entry.getValue());
+            if (null != attachInfo && attachInfo.getRttStats().isAvailable()) {
+                rttStatsMap.put(entry.getKey(), attachInfo.getRttStats());
+            }
+        }
+        header(sb, "tunnel_rtt_seconds", "gauge", "Smoothed heartbeat round trip time of each client tunnel");
+        rttStatsMap.forEach((licenseId, stats) -> sample(sb, "tunnel_rtt_seconds", labels("license_id", licenseId), stats.getSrtt() / 1000000D));
+        header(sb, "tunnel_rtt_jitter_seconds", "gauge", "Heartbeat round trip time variation of each client tunnel");
+        rttStatsMap.forEach((licenseId, stats) -> sample(sb, "tunnel_rtt_jitter_seconds", labels("license_id", licenseId), stats.getRttVar() / 1000000D));
+        header(sb, "tunnel_probe_loss_ratio", "gauge", "Smoothed ratio of unanswered heartbeat probes of each client tunnel");
+        rttStatsMap.forEach((licenseId, stats) -> sample(sb, "tunnel_probe_loss_ratio", labels("license_id", licenseId), stats.getLoss()));
+    }
+
+    /**
+     * 连接建立各阶段耗时
+     */
+    private void exportConnectLatencyMetrics(StringBuilder sb) {
+        List<ConnectLatencyRes> list = connectLatencyService.list();
+        header(sb, "connect_latency_seconds", "summary", "Visitor connection setup latency per phase");
+        for (ConnectLatencyRes res : list) {
+            String keyName = "mapping".equals(res.getDimension()) ? "server_port" : "license_id";
+            sample(sb, "connect_latency_seconds", labels(keyName, res.getKey(), "phase", res.getPhase(), "quantile", "0.5"), res.getP50() / 1000D);
+            sample(sb, "connect_latency_seconds", labels(keyName, res.getKey(), "phase", res.getPhase(), "quantile", "0.9"), res.getP90() / 1000D);
+            sample(sb, "connect_latency_seconds", labels(keyName, res.getKey(), "phase", res.getPhase(), "quantile", "0.99"), res.getP99() / 1000D);
+            sample(sb, "connect_latency_seconds_sum", labels(keyName, res.getKey(), "phase", res.getPhase()), res.getAvg() * res.getCount() / 1000D);
+            sample(sb, "connect_latency_seconds_count", labels(keyName, res.getKey(), "phase", res.getPhase()), res.getCount());
+        }
+    }
+
+    /**
+     * 访问者会话日志写入情况
+     */
+    private void exportSessionLogMetrics(StringBuilder sb) {
+        header(sb, "session_log_published_total", "counter", "Visitor session records published to the ring buffer");
+        sample(sb, "session_log_published_total", "", visitorSessionLogService.getPublishedCount());
+        header(sb, "session_log_written_total", "counter", "Visitor session records written to the sink");
+        sample(sb, "session_log_written_total", "", visitorSessionLogService.getWrittenCount());
+        header(sb, "session_log_dropped_total", "counter", "Visitor session records dropped because the buffer was full or the write failed");
+        sample(sb, "session_log_dropped_total", "", visitorSessionLogService.getDroppedCount());
+        header(sb, "session_log_pending", "gauge", "Visitor session records waiting in the ring buffer");
+        sample(sb, "session_log_pending", "", visitorSessionLogService.getPendingCount());
+    }
+
+    /**
+     * UDP监听批量收发情况，两组计数相除即为每次系统调用收发的数据报数
+     */
+    private void exportUdpBatchMetrics(StringBuilder sb) {
+        header(sb, "udp_transport_info", "gauge", "Transport of the udp listeners");
+        sample(sb, "udp_transport_info", labels("transport", udpServerBossGroup instanceof EpollEventLoopGroup ? DatagramChannelUtil.TRANSPORT_EPOLL : DatagramChannelUtil.TRANSPORT_NIO), 1);
+        header(sb, "udp_read_packets_total", "counter", "Datagrams read by the udp listeners");
+        sample(sb, "udp_read_packets_total", "", udpBatchMetricsHandler.getReadPackets());
+        header(sb, "udp_read_batches_total", "counter", "Read batches of the udp listeners, one recvmmsg per batch in epoll mode");
+        sample(sb, "udp_read_batches_total", "", udpBatchMetricsHandler.getReadBatches());
+        header(sb, "udp_write_packets_total", "counter", "Datagrams written by the udp listeners");
+        sample(sb, "udp_write_packets_total", "", udpBatchMetricsHandler.getWritePackets());
+        header(sb, "udp_write_flushes_total", "counter", "Flushes of the udp listeners, one sendmmsg per flush in epoll mode");
+        sample(sb, "udp_write_flushes_total", "", udpBatchMetricsHandler.getFlushes());
+    }
+
+    /**
+     * EventLoop待执行任务数
+     */
+    private void exportEventLoopMetrics(StringBuilder sb) {
+        Map<String, EventLoopGroup> groups = new LinkedHashMap<>();
+        groups.put("tcp_boss", tcpServerBossGroup);
+        groups.put("tcp_worker", tcpServerWorkerGroup);
+        groups.put("udp_boss", udpServerBossGroup);
+        groups.put("udp_worker", udpServerWorkerGroup);
+        groups.put("tunnel_boss", tunnelBossGroup);
+        groups.put("tunnel_worker", tunnelWorkerGroup);
+        header(sb, "event_loop_pending_tasks", "gauge", "Pending tasks per event loop");
+        for (Map.Entry<String, EventLoopGroup> entry : groups.entrySet()) {
+            if (null == entry.getValue()) {
+                continue;
+            }
+            int index = 0;
+            for (EventExecutor executor : entry.getValue()) {
+                if (executor instanceof SingleThreadEventExecutor) {
+                    sample(sb, "event_loop_pending_tasks", labels("group", entry.getKey(), "loop", index), ((SingleThreadEventExecutor) executor).pendingTasks());
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * netty内存分配器指标
+     */
+    private void exportAllocatorMetrics(StringBuilder sb) {
+        if (!(ByteBufAllocator.DEFAULT instanceof ByteBufAllocatorMetricProvider)) {
+            return;
+        }
+        ByteBufAllocatorMetric metric = ((ByteBufAllocatorMetricProvider) ByteBufAllocator.DEFAULT).metric();
+        header(sb, "allocator_used_bytes", "gauge", "Memory used by the netty allocator");
+        sample(sb, "allocator_used_bytes", labels("type", "heap"), metric.usedHeapMemory());
+        sample(sb, "allocator_used_bytes", labels("type", "direct"), metric.usedDirectMemory());
+        if (metric instanceof PooledByteBufAllocatorMetric) {
+            PooledByteBufAllocatorMetric pooledMetric = (PooledByteBufAllocatorMetric) metric;
+            header(sb, "allocator_arenas", "gauge", "Arenas of the netty pooled allocator");
+            sample(sb, "allocator_arenas", labels("type", "heap"), pooledMetric.numHeapArenas());
+            sample(sb, "allocator_arenas", labels("type", "direct"), pooledMetric.numDirectArenas());
+            header(sb, "allocator_thread_local_caches", "gauge", "Thread local caches of the netty pooled allocator");
+            sample(sb, "allocator_thread_local_caches", "", pooledMetric.numThreadLocalCaches());
+        }
+    }
+
+    /**
+     * 数据库连接池指标
+     */
+    private void exportDbPoolMetrics(StringBuilder sb) {
+        if (!(dataSource instanceof HikariDataSource)) {
+            return;
+        }
+        HikariPoolMXBean poolMXBean = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+        if (null == poolMXBean) {
+            return;
+        }
+        header(sb, "db_pool_connections", "gauge", "Database pool connections");
+        sample(sb, "db_pool_connections", labels("state", "active"), poolMXBean.getActiveConnections());
+        sample(sb, "db_pool_connections", labels("state", "idle"), poolMXBean.getIdleConnections());
+        sample(sb, "db_pool_connections", labels("state", "total"), poolMXBean.getTotalConnections());
+        header(sb, "db_pool_pending_threads", "gauge", "Threads waiting for a database connection");
+        sample(sb, "db_pool_pending_threads", "", poolMXBean.getThreadsAwaitingConnection());
+    }
+
+    private String portLabels(Metrics metrics) {
+        return labels("protocol", metrics.getProtocol(), "port", metrics.getPort());
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, long value) {
+        sb.append(PREFIX).append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(PREFIX).append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * 拼接标签，参数依次为 名称、值、名称、值...
+     */
+    private static String labels(Object... nameAndValues) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i + 1 < nameAndValues.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(nameAndValues[i]).append("=\"");
+            escape(sb, String.valueOf(nameAndValues[i + 1]));
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void escape(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
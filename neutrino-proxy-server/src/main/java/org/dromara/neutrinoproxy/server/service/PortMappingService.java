@@ -32,6 +32,7 @@ import org.dromara.neutrinoproxy.server.controller.res.proxy.PortMappingListRes;
 import org.dromara.neutrinoproxy.server.controller.res.proxy.PortMappingUpdateEnableStatusRes;
 import org.dromara.neutrinoproxy.server.dal.*;
 import org.dromara.neutrinoproxy.server.dal.entity.*;
+import org.dromara.neutrinoproxy.server.proxy.security.FlowLimitNode;
 import org.dromara.neutrinoproxy.server.service.bo.FlowLimitBO;
 import org.dromara.neutrinoproxy.server.service.bo.FullDomainNameBO;
 import org.dromara.neutrinoproxy.server.util.ParamCheckUtil;
@@ -75,8 +76,6 @@ public class PortMappingService implements LifecycleBean {
     private ProxyConfig proxyConfig;
     @Inject
     private DBInitialize dbInitialize;
-    @Inject
-    private LicenseService licenseService;
 
     /** 端口到安全组Id的映射 */
     private final Map<Integer, Integer> mappingPortToSecurityGroupMap = new ConcurrentHashMap<>();
@@ -85,6 +84,8 @@ public class PortMappingService implements LifecycleBean {
     private final Cache<Integer, Integer> idToLicenseIdCache = CacheUtil.newLRUCache(500, 1000 * 60 * 10);
     // 流量限制缓存
     private final Cache<Integer, FlowLimitBO> flowLimitCache = CacheUtil.newLRUCache(500, 1000 * 60 * 5);
+    // 分层限速节点，该端口映射下的所有连接共享
+    private final Map<Integer, FlowLimitNode> flowLimitNodeMap = new ConcurrentHashMap<>();
 
     public PageInfo<PortMappingListRes> page(PageQuery pageQuery, PortMappingListReq req) {
         if (StringUtils.isNotEmpty(req.getDescription())) {
@@ -394,6 +395,7 @@ public class PortMappingService implements LifecycleBean {
         idToLicenseIdCache.remove(id);
         // 删除流量限制缓存
         flowLimitCache.remove(id);
+        flowLimitNodeMap.remove(id);
     }
 
     public void portBindSecurityGroup(Integer portMappingId, Integer groupId) {
@@ -470,10 +472,15 @@ public class PortMappingService implements LifecycleBean {
         if (null == id) {
             return;
         }
-        flowLimitCache.put(id, new FlowLimitBO()
+        FlowLimitBO flowLimitBO = new FlowLimitBO()
             .setUpLimitRate(StringUtil.parseBytes(upLimitRate))
-            .setDownLimitRate(StringUtil.parseBytes(downLimitRate))
-        );
+            .setDownLimitRate(StringUtil.parseBytes(downLimitRate));
+        flowLimitCache.put(id, flowLimitBO);
+        // 已建立的连接立即按新的限速生效
+        FlowLimitNode flowLimitNode = flowLimitNodeMap.get(id);
+        if (null != flowLimitNode) {
+            flowLimitNode.setLimit(flowLimitBO.getUpLimitRate(), flowLimitBO.getDownLimitRate());
+        }
     }
 
     /**
@@ -523,19 +530,21 @@ public class PortMappingService implements LifecycleBean {
         return licenseId;
     }
 
-    public FlowLimitBO getFlowLimitByServerPort(Integer serverPort) {
-        Integer id = getPortMappingIdByServerPort(serverPort);
-        if (null == id) {
-            return null;
+    /**
+     * 获取端口映射的分层限速节点
+     * @param id 端口映射id
+     * @return 端口映射不存在时返回null
+     */
+    public FlowLimitNode getFlowLimitNode(Integer id) {
+        FlowLimitNode flowLimitNode = flowLimitNodeMap.get(id);
+        if (null != flowLimitNode) {
+            return flowLimitNode;
         }
-        FlowLimitBO res = getFlowLimit(id);
-        if (null == res || (null == res.getUpLimitRate() && null == res.getDownLimitRate())) {
-            Integer licenseId = getLicenseIdById(id);
-            if (null != licenseId) {
-                res = licenseService.getFlowLimit(licenseId);
-            }
+        FlowLimitBO flowLimitBO = getFlowLimit(id);
+        if (null == flowLimitBO) {
+            return null;
         }
-        return res;
+        return flowLimitNodeMap.computeIfAbsent(id, k -> new FlowLimitNode(flowLimitBO.getUpLimitRate(), flowLimitBO.getDownLimitRate()));
     }
 
     private void updateMappingPortToSecurityGroupMap(Integer serverPort, Integer securityGroupId) {
@@ -9,9 +9,13 @@ import org.apache.ibatis.solon.annotation.Db;
 import org.noear.solon.annotation.Component;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 代理交互服务
+ * 在线状态变更在写库的同时维护内存中的在线license、端口映射，首页统计直接读取，无需查库
  * @author: aoshiguchen
  * @date: 2022/9/3
  */
@@ -22,6 +26,17 @@ public class ProxyMutualService {
 	private PortMappingMapper portMappingMapper;
 	@Db
 	private LicenseMapper licenseMapper;
+	private final Set<Integer> onlineLicenseIds = ConcurrentHashMap.newKeySet();
+	private final Map<Integer/*serverPort*/, Integer/*licenseId*/> onlineServerPortMap = new ConcurrentHashMap<>(1024);
+
+	/**
+	 * 客户端上线（认证成功）
+	 * @param licenseId
+	 */
+	public void online(Integer licenseId) {
+		licenseMapper.updateOnlineStatus(licenseId, OnlineStatusEnum.ONLINE.getStatus(), new Date());
+		onlineLicenseIds.add(licenseId);
+	}
 
 	/**
 	 * 绑定服务端端口处理
@@ -32,9 +47,22 @@ public class ProxyMutualService {
 		Date now = new Date();
 		portMappingMapper.updateOnlineStatus(attachInfo.getLicenseId(), serverPort, OnlineStatusEnum.ONLINE.getStatus(), now);
 		licenseMapper.updateOnlineStatus(attachInfo.getLicenseId(), OnlineStatusEnum.ONLINE.getStatus(), now);
+		onlineLicenseIds.add(attachInfo.getLicenseId());
+		onlineServerPortMap.put(serverPort, attachInfo.getLicenseId());
 		log.info("bind server port licenseId:{},ip:{},serverPort:{}", attachInfo.getLicenseId(), attachInfo.getIp(),  serverPort);
 	}
 
+	/**
+	 * 解绑服务端端口处理（端口映射被删除、禁用）
+	 * @param licenseId
+	 * @param serverPort
+	 */
+	public void unbindServerPort(Integer licenseId, Integer serverPort) {
+		if (onlineServerPortMap.remove(serverPort, licenseId)) {
+			portMappingMapper.updateOnlineStatus(licenseId, serverPort, OnlineStatusEnum.OFFLINE.getStatus(), new Date());
+		}
+	}
+
 	/**
 	 * 客户端下线
 	 * @param attachInfo
@@ -43,7 +71,23 @@ public class ProxyMutualService {
 		Date now = new Date();
 		portMappingMapper.updateOnlineStatus(attachInfo.getLicenseId(), OnlineStatusEnum.OFFLINE.getStatus(), now);
 		licenseMapper.updateOnlineStatus(attachInfo.getLicenseId(), OnlineStatusEnum.OFFLINE.getStatus(), now);
+		onlineLicenseIds.remove(attachInfo.getLicenseId());
+		onlineServerPortMap.values().removeIf(licenseId -> licenseId.equals(attachInfo.getLicenseId()));
 		log.info("client offline licenseId:{},ip:{}", attachInfo.getLicenseId(), attachInfo.getIp());
 	}
 
+	/**
+	 * 在线license数
+	 */
+	public int getOnlineLicenseCount() {
+		return onlineLicenseIds.size();
+	}
+
+	/**
+	 * 在线端口映射数
+	 */
+	public int getOnlinePortMappingCount() {
+		return onlineServerPortMap.size();
+	}
+
 }
@@ -1,7 +1,6 @@
 package org.dromara.neutrinoproxy.server.service;
 
 import cn.hutool.core.collection.CollectionUtil;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.solon.plugins.pagination.Page;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
@@ -11,7 +10,6 @@ import org.dromara.neutrinoproxy.server.base.db.DbConfig;
 import org.dromara.neutrinoproxy.server.base.page.PageInfo;
 import org.dromara.neutrinoproxy.server.base.page.PageQuery;
 import org.dromara.neutrinoproxy.server.constant.Constants;
-import org.dromara.neutrinoproxy.server.constant.OnlineStatusEnum;
 import org.dromara.neutrinoproxy.server.controller.req.report.LicenseFlowMonthReportReq;
 import org.dromara.neutrinoproxy.server.controller.req.report.LicenseFlowReportReq;
 import org.dromara.neutrinoproxy.server.controller.req.report.UserFlowMonthReportReq;
@@ -24,14 +22,15 @@ import org.dromara.neutrinoproxy.server.controller.res.report.UserFlowReportRes;
 import org.dromara.neutrinoproxy.server.dal.LicenseMapper;
 import org.dromara.neutrinoproxy.server.dal.PortMappingMapper;
 import org.dromara.neutrinoproxy.server.dal.ReportMapper;
-import org.dromara.neutrinoproxy.server.dal.entity.LicenseDO;
-import org.dromara.neutrinoproxy.server.dal.entity.PortMappingDO;
+import org.dromara.neutrinoproxy.server.dal.entity.FlowReportMinuteDO;
 import org.dromara.neutrinoproxy.server.service.bo.FlowBO;
 import org.dromara.neutrinoproxy.server.service.bo.SingleDayFlowBO;
 import org.dromara.neutrinoproxy.server.util.FormatUtil;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Inject;
+import org.noear.solon.core.bean.LifecycleBean;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
@@ -39,6 +38,9 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -47,7 +49,15 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 @Component
-public class ReportService {
+public class ReportService implements LifecycleBean {
+    /**
+     * 首页数据快照刷新间隔
+     */
+    private static final long HOME_DATA_VIEW_REFRESH_MILLIS = 10 * 1000L;
+    /**
+     * 首页流量基线重新查库校准的间隔
+     */
+    private static final long HOME_FLOW_RESEED_MILLIS = 10 * 60 * 1000L;
     @Db
     private ReportMapper reportMapper;
     @Db
@@ -56,50 +66,142 @@ public class ReportService {
     private PortMappingMapper portMappingMapper;
     @Inject
     private DbConfig dbConfig;
+    @Inject
+    private ProxyMutualService proxyMutualService;
+    @Inject
+    private FlowReportService flowReportService;
+
+    private volatile HomeDataView homeDataViewSnapshot;
+    private volatile long homeDataViewTime;
+    private final AtomicBoolean homeDataViewRefreshing = new AtomicBoolean();
+    private ExecutorService homeDataViewExecutor;
+    /**
+     * 首页流量基线：已落库的分钟报表流量，启动时及每隔一段时间查库校准，其间随分钟报表落库累加
+     */
+    private final HomeFlowBaseline homeFlowBaseline = new HomeFlowBaseline();
 
     /**
      * 首页图表
+     * 返回内存中的快照，快照过期时在后台刷新，多个管理员同时打开首页也只会有一个刷新在执行
      * @return
      */
     public HomeDataView homeDataView() {
-        HomeDataView homeDataView = new HomeDataView();
-        homeDataView.setLicense(new HomeDataView.License().setTotalCount(0).setOnlineCount(0));
-        homeDataView.setPortMapping(new HomeDataView.PortMapping().setTotalCount(0).setOnlineCount(0));
-        homeDataView.setTodayFlow(new HomeDataView.TodayFlow().setUpFlowBytes(0L).setDownFlowBytes(0L));
-        homeDataView.setTotalFlow(new HomeDataView.TotalFlow().setUpFlowBytes(0L).setDownFlowBytes(0L));
-
-        // 查询license列表
-        List<LicenseDO> licenseDOList = licenseMapper.listAll();
-        if (CollectionUtil.isNotEmpty(licenseDOList)) {
-            homeDataView.getLicense().setTotalCount(licenseDOList.size());
-            homeDataView.getLicense().setOnlineCount((int)licenseDOList.stream().filter(e -> OnlineStatusEnum.ONLINE.getStatus().equals(e.getIsOnline())).count());
-        }
-        // 查询端口映射列表
-        List<PortMappingDO> portMappingDOList = portMappingMapper.selectList(new LambdaQueryWrapper<>());
-        if (CollectionUtil.isNotEmpty(portMappingDOList)) {
-            homeDataView.getPortMapping().setTotalCount(portMappingDOList.size());
-            homeDataView.getPortMapping().setOnlineCount((int)portMappingDOList.stream().filter(e -> OnlineStatusEnum.ONLINE.getStatus().equals(e.getIsOnline())).count());
-        }
-        // 今日流量
+        HomeDataView snapshot = homeDataViewSnapshot;
+        if (null == snapshot) {
+            return refreshHomeDataView();
+        }
+        if (System.currentTimeMillis() - homeDataViewTime >= HOME_DATA_VIEW_REFRESH_MILLIS && homeDataViewRefreshing.compareAndSet(false, true)) {
+            homeDataViewExecutor.execute(() -> {
+                try {
+                    refreshHomeDataView();
+                } catch (Exception e) {
+                    log.error("[HomeDataView] refresh error", e);
+                } finally {
+                    homeDataViewRefreshing.set(false);
+                }
+            });
+        }
+        return snapshot;
+    }
+
+    /**
+     * 分钟报表落库后累加首页流量基线
+     * @param list
+     */
+    public void onMinuteReportSaved(List<FlowReportMinuteDO> list) {
+        homeFlowBaseline.add(list);
+    }
+
+    @Override
+    public void start() throws Throwable {
+        homeDataViewExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "home-data-view");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void stop() throws Throwable {
+        if (null != homeDataViewExecutor) {
+            homeDataViewExecutor.shutdownNow();
+        }
+    }
+
+    private HomeDataView refreshHomeDataView() {
         Date now = new Date();
-        FlowBO todayFlow = reportMapper.homeTodayFlow(DateUtil.getDayBegin(now), now);
-        homeDataView.setTodayFlow(todayFlow.todayFlow());
+        HomeDataView homeDataView = new HomeDataView();
 
-        // 总流量
-        FlowBO totalFlow = reportMapper.homeTotalFlow(DateUtil.getMonthBegin(now), DateUtil.getDayBegin(now), now);
-        homeDataView.setTotalFlow(totalFlow.totalFlow());
+        // license、端口映射总数只做count查询，在线数取自内存中的在线状态
+        homeDataView.setLicense(new HomeDataView.License()
+                .setTotalCount(licenseMapper.selectCount(null).intValue())
+                .setOnlineCount(proxyMutualService.getOnlineLicenseCount()));
+        homeDataView.setPortMapping(new HomeDataView.PortMapping()
+                .setTotalCount(portMappingMapper.selectCount(null).intValue())
+                .setOnlineCount(proxyMutualService.getOnlinePortMappingCount()));
 
-        // 最近n日流量
-        Integer days = Constants.HOME_FLOW_DAYS;
-        List<SingleDayFlowBO> last7dFlowList = reportMapper.homeLast7dFlowList(DateUtil.getDayBegin(DateUtil.addDate(now, Calendar.DATE, -(days - 1))), DateUtil.getDayBegin(now), now);
+        // 流量 = 已落库的基线 + 尚未落库的计数器增量
+        long unreportedUp = 0;
+        long unreportedDown = 0;
+        for (FlowReportService.FlowDelta delta : flowReportService.snapshotLicenseDelta()) {
+            unreportedUp += delta.getWriteBytes();
+            unreportedDown += delta.getReadBytes();
+        }
+        HomeFlowBaseline baseline = homeFlowBaseline.get(now);
+        homeDataView.setTodayFlow(new HomeDataView.TodayFlow()
+                .setUpFlowBytes(baseline.todayUp + unreportedUp)
+                .setDownFlowBytes(baseline.todayDown + unreportedDown));
+        homeDataView.setTotalFlow(new HomeDataView.TotalFlow()
+                .setUpFlowBytes(baseline.totalUp + unreportedUp)
+                .setDownFlowBytes(baseline.totalDown + unreportedDown));
+
+        // 最近n日流量，之前的天报表当天内不会变化，当天取实时值
+        List<HomeDataView.SingleDayFlow> dataList = new ArrayList<>();
+        for (SingleDayFlowBO item : baseline.pastDayFlowList) {
+            dataList.add(item.toSingleDayFlow());
+        }
+        dataList.add(new HomeDataView.SingleDayFlow()
+                .setDate(DateUtil.getDayBegin(now))
+                .setUpFlowBytes(homeDataView.getTodayFlow().getUpFlowBytes())
+                .setDownFlowBytes(homeDataView.getTodayFlow().getDownFlowBytes()));
         homeDataView.setLast7dFlow(new HomeDataView.Last7dFlow());
-        homeDataView.getLast7dFlow().setDataList(last7dFlowList.stream().map(SingleDayFlowBO::toSingleDayFlow).collect(Collectors.toList()));
+        homeDataView.getLast7dFlow().setDataList(dataList);
 
         // 数据处理
         fillHomeDataView(homeDataView, now);
+        homeDataViewSnapshot = homeDataView;
+        homeDataViewTime = System.currentTimeMillis();
         return homeDataView;
     }
 
+    /**
+     * 查库得到的流量基线
+     */
+    private HomeFlowBaseline seedHomeFlowBaseline(Date now) {
+        Date dayBegin = DateUtil.getDayBegin(now);
+        FlowBO todayFlow = reportMapper.homeTodayFlow(dayBegin, now);
+        FlowBO totalFlow = reportMapper.homeTotalFlow(DateUtil.getMonthBegin(now), dayBegin, now);
+        Integer days = Constants.HOME_FLOW_DAYS;
+        List<SingleDayFlowBO> last7dFlowList = reportMapper.homeLast7dFlowList(DateUtil.getDayBegin(DateUtil.addDate(now, Calendar.DATE, -(days - 1))), dayBegin, now);
+
+        HomeFlowBaseline baseline = new HomeFlowBaseline();
+        baseline.seedTime = now.getTime();
+        baseline.dayBegin = dayBegin.getTime();
+        baseline.todayUp = nullToZero(todayFlow.getUpFlowBytes());
+        baseline.todayDown = nullToZero(todayFlow.getDownFlowBytes());
+        baseline.totalUp = nullToZero(totalFlow.getUpFlowBytes());
+        baseline.totalDown = nullToZero(totalFlow.getDownFlowBytes());
+        // 当天的数据由基线实时计算
+        baseline.pastDayFlowList = last7dFlowList.stream()
+                .filter(item -> null != item.getDate() && item.getDate().getTime() < baseline.dayBegin)
+                .collect(Collectors.toList());
+        return baseline;
+    }
+
+    private static long nullToZero(Long value) {
+        return null == value ? 0L : value;
+    }
+
     /**
      * 用户流量报表分页
      * @param pageQuery
@@ -356,4 +458,57 @@ public class ReportService {
                 .setSeriesData(last7dFlow.getDataList().stream().map(HomeDataView.SingleDayFlow::getTotalFlowBytes).collect(Collectors.toList()))
         );
     }
+
+    /**
+     * 首页流量基线
+     */
+    private class HomeFlowBaseline {
+        private long seedTime;
+        private long dayBegin;
+        private long todayUp;
+        private long todayDown;
+        private long totalUp;
+        private long totalDown;
+        private List<SingleDayFlowBO> pastDayFlowList = Collections.emptyList();
+
+        /**
+         * 获取当前基线的副本，跨天或超过校准间隔时重新查库
+         */
+        private synchronized HomeFlowBaseline get(Date now) {
+            if (seedTime == 0 || DateUtil.getDayBegin(now).getTime() != dayBegin || now.getTime() - seedTime >= HOME_FLOW_RESEED_MILLIS) {
+                copyFrom(seedHomeFlowBaseline(now));
+            }
+            HomeFlowBaseline copy = new HomeFlowBaseline();
+            copy.copyFrom(this);
+            return copy;
+        }
+
+        private synchronized void add(List<FlowReportMinuteDO> list) {
+            if (seedTime == 0 || CollectionUtil.isEmpty(list)) {
+                return;
+            }
+            for (FlowReportMinuteDO item : list) {
+                // 查库校准之前创建的记录已包含在基线中
+                if (item.getCreateTime().getTime() < seedTime) {
+                    continue;
+                }
+                totalUp += item.getWriteBytes();
+                totalDown += item.getReadBytes();
+                if (item.getDate().getTime() >= dayBegin) {
+                    todayUp += item.getWriteBytes();
+                    todayDown += item.getReadBytes();
+                }
+            }
+        }
+
+        private void copyFrom(HomeFlowBaseline other) {
+            this.seedTime = other.seedTime;
+            this.dayBegin = other.dayBegin;
+            this.todayUp = other.todayUp;
+            this.todayDown = other.todayDown;
+            this.totalUp = other.totalUp;
+            this.totalDown = other.totalDown;
+            this.pastDayFlowList = other.pastDayFlowList;
+        }
+    }
 }
@@ -1,7 +1,5 @@
 package org.dromara.neutrinoproxy.server.service;
 
-import cn.hutool.cache.Cache;
-import cn.hutool.cache.CacheUtil;
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
@@ -13,25 +11,31 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.solon.annotation.Db;
 import org.dromara.neutrinoproxy.server.base.page.PageInfo;
 import org.dromara.neutrinoproxy.server.base.page.PageQuery;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
 import org.dromara.neutrinoproxy.server.base.rest.SystemContextHolder;
 import org.dromara.neutrinoproxy.server.constant.EnableStatusEnum;
 import org.dromara.neutrinoproxy.server.constant.ExceptionConstant;
-import org.dromara.neutrinoproxy.server.constant.SecurityRulePassTypeEnum;
 import org.dromara.neutrinoproxy.server.controller.req.system.*;
 import org.dromara.neutrinoproxy.server.controller.res.system.*;
 import org.dromara.neutrinoproxy.server.dal.SecurityGroupMapper;
 import org.dromara.neutrinoproxy.server.dal.SecurityRuleMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.SecurityGroupDO;
 import org.dromara.neutrinoproxy.server.dal.entity.SecurityRuleDO;
+import org.dromara.neutrinoproxy.server.proxy.security.IpRateLimiter;
+import org.dromara.neutrinoproxy.server.proxy.security.SecurityRuleIndex;
 import org.dromara.neutrinoproxy.server.util.ParamCheckUtil;
 import org.noear.solon.annotation.Component;
 import org.noear.solon.annotation.Init;
+import org.noear.solon.annotation.Inject;
 import org.noear.solon.core.runtime.NativeDetector;
 
+import java.net.InetAddress;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
@@ -45,10 +49,23 @@ public class SecurityGroupService {
     @Db
     private SecurityRuleMapper securityRuleMapper;
 
-    private final Map<Integer, SecurityGroupDO> securityGroupMap = new ConcurrentHashMap<>();
+    @Inject
+    private ProxyConfig proxyConfig;
 
-    // 允许通过控制的缓存，缓存类型最近最久未使用缓存，容量100，超时时间5分钟
-    private final Cache<String, Boolean> ipAllowControlCache = CacheUtil.newLRUCache(100, 1000 * 60 * 5);
+    /**
+     * 启用的安全组 -> 编译后的规则索引
+     */
+    private final Map<Integer, SecurityRuleIndex> securityRuleIndexMap = new ConcurrentHashMap<>();
+
+    /**
+     * 开启了来源IP限速的安全组 -> tcp新建连接限速器
+     */
+    private final Map<Integer, IpRateLimiter> connectLimiterMap = new ConcurrentHashMap<>();
+
+    /**
+     * 开启了来源IP限速的安全组 -> udp包限速器
+     */
+    private final Map<Integer, IpRateLimiter> packetLimiterMap = new ConcurrentHashMap<>();
 
     @Init(index = 100)
     public synchronized void init() {
@@ -56,15 +73,59 @@ public class SecurityGroupService {
         if (NativeDetector.isAotRuntime()) {
             return;
         }
-        securityGroupMap.clear();
         List<SecurityGroupDO> groupDOList = securityGroupMapper.selectList(Wrappers.lambdaQuery(SecurityGroupDO.class)
             .eq(SecurityGroupDO::getEnable, EnableStatusEnum.ENABLE.getStatus()));
-        groupDOList.forEach(securityGroupDO -> securityGroupMap.put(securityGroupDO.getId(), securityGroupDO));
-        ipAllowControlCache.clear();
+        Map<Integer, List<SecurityRuleDO>> groupRuleMap = securityRuleMapper.selectList(Wrappers.lambdaQuery(SecurityRuleDO.class)
+            .eq(SecurityRuleDO::getEnable, EnableStatusEnum.ENABLE.getStatus()))
+            .stream().collect(Collectors.groupingBy(SecurityRuleDO::getGroupId));
+
+        Map<Integer, SecurityRuleIndex> indexMap = new HashMap<>();
+        groupDOList.forEach(groupDO -> indexMap.put(groupDO.getId(),
+            SecurityRuleIndex.compile(groupDO, groupRuleMap.getOrDefault(groupDO.getId(), Collections.emptyList()))));
+        securityRuleIndexMap.putAll(indexMap);
+        securityRuleIndexMap.keySet().retainAll(indexMap.keySet());
+
+        groupDOList.forEach(groupDO -> {
+            refreshLimiter(connectLimiterMap, groupDO.getId(), groupDO.getIpConnectLimit());
+            refreshLimiter(packetLimiterMap, groupDO.getId(), groupDO.getIpPacketLimit());
+        });
+        connectLimiterMap.keySet().retainAll(indexMap.keySet());
+        packetLimiterMap.keySet().retainAll(indexMap.keySet());
+    }
+
+    /**
+     * 刷新安全组的来源IP限速器，速率未变化时保留原限速器及其状态
+     */
+    private void refreshLimiter(Map<Integer, IpRateLimiter> limiterMap, Integer groupId, Integer limit) {
+        if (null == limit || limit <= 0) {
+            limiterMap.remove(groupId);
+            return;
+        }
+        IpRateLimiter limiter = limiterMap.get(groupId);
+        if (null != limiter && limiter.getRate() == limit) {
+            return;
+        }
+        Integer width = null == proxyConfig.getServer().getSecurity() ? null : proxyConfig.getServer().getSecurity().getIpLimiterWidth();
+        limiterMap.put(groupId, new IpRateLimiter(limit, limit, null == width ? 4096 : width));
     }
 
-    public void clearCache() {
-        ipAllowControlCache.clear();
+    /**
+     * 规则变更后，重新编译所属安全组的规则索引
+     * @param groupId 安全组Id
+     */
+    public synchronized void refreshRuleIndex(Integer groupId) {
+        if (null == groupId) {
+            return;
+        }
+        SecurityGroupDO groupDO = securityGroupMapper.selectById(groupId);
+        if (null == groupDO || !EnableStatusEnum.ENABLE.getStatus().equals(groupDO.getEnable())) {
+            securityRuleIndexMap.remove(groupId);
+            return;
+        }
+        List<SecurityRuleDO> ruleDOList = securityRuleMapper.selectList(Wrappers.lambdaQuery(SecurityRuleDO.class)
+            .eq(SecurityRuleDO::getGroupId, groupId)
+            .eq(SecurityRuleDO::getEnable, EnableStatusEnum.ENABLE.getStatus()));
+        securityRuleIndexMap.put(groupId, SecurityRuleIndex.compile(groupDO, ruleDOList));
     }
 
     public PageInfo<SecurityGroupListRes> groupPage(PageQuery pageQuery, SecurityGroupListReq req) {
@@ -180,19 +241,26 @@ public class SecurityGroupService {
                 .setEnable(EnableStatusEnum.ENABLE.getStatus())
                 .setUpdateTime(new Date());
         securityRuleMapper.insert(ruleDO);
-        clearCache();
+        refreshRuleIndex(ruleDO.getGroupId());
     }
 
     public void updateRule(SecurityRuleUpdateReq req) {
         SecurityRuleDO ruleDO = securityRuleMapper.selectById(req.getId());
+        Integer oldGroupId = ruleDO.getGroupId();
         BeanUtil.copyProperties(req, ruleDO);
         securityRuleMapper.updateById(ruleDO);
-        clearCache();
+        refreshRuleIndex(ruleDO.getGroupId());
+        if (!Objects.equals(oldGroupId, ruleDO.getGroupId())) {
+            refreshRuleIndex(oldGroupId);
+        }
     }
 
     public void deleteRule(Integer ruleId) {
+        SecurityRuleDO ruleDO = securityRuleMapper.selectById(ruleId);
         securityRuleMapper.deleteById(ruleId);
-        clearCache();
+        if (null != ruleDO) {
+            refreshRuleIndex(ruleDO.getGroupId());
+        }
     }
 
     public SecurityRuleUpdateEnableStatueRes updateRuleEnableStatueReq(SecurityRuleUpdateEnableStatueReq req) {
@@ -200,7 +268,7 @@ public class SecurityGroupService {
         ParamCheckUtil.checkNotNull(ruleDO, ExceptionConstant.SECURITY_RULE_NOT_EXIST);
 
         securityRuleMapper.updateEnableStatus(req.getId(), req.getEnable(), new Date());
-        clearCache();
+        refreshRuleIndex(ruleDO.getGroupId());
         return new SecurityRuleUpdateEnableStatueRes();
     }
 
@@ -211,7 +279,6 @@ public class SecurityGroupService {
      * @return 是否放行
      */
     public boolean judgeAllow(String ip, Integer groupId) {
-        ip = ip.toLowerCase();
         // 不能判断当前连接的IP，保守处理，拒绝放行
         if (StrUtil.isEmpty(ip)) {
             log.debug("[SecurityGroup] cannot get remote ip,this pack be reject");
@@ -222,46 +289,63 @@ public class SecurityGroupService {
         if (groupId == null) {
             return true;
         }
-        SecurityGroupDO groupDO = securityGroupMap.get(groupId);
-        if (groupDO == null) {
+        SecurityRuleIndex ruleIndex = securityRuleIndexMap.get(groupId);
+        if (ruleIndex == null) {
             return true;
         }
 
-        Boolean allow = null;
-        String judgeAllowMapKey = ip + groupId;
-        if (ipAllowControlCache.containsKey(judgeAllowMapKey)) {
-            allow = ipAllowControlCache.get(judgeAllowMapKey);
-            log.debug("[SecurityGroup] ip:{} groupId:{} cached security strategy:{}", ip, groupId, allow ? "allow" : "reject");
+        int slot = ruleIndex.match(ip);
+        // 当前IP无法解析或没有匹配到任何一条规则，则使用安全组默认规则
+        if (slot == SecurityRuleIndex.INVALID_IP || slot == SecurityRuleIndex.NO_MATCH) {
+            boolean allow = ruleIndex.isDefaultAllow();
+            if (log.isDebugEnabled()) {
+                log.debug("[SecurityGroup] ip:{} groupId{} use security group default strategy:{}", ip, groupId, allow ? "allow" : "reject");
+            }
             return allow;
         }
 
-        List<SecurityRuleDO>  ruleDOList = securityRuleMapper.selectList(Wrappers.lambdaQuery(SecurityRuleDO.class)
-            .eq(SecurityRuleDO::getGroupId, groupId)
-            .eq(SecurityRuleDO::getEnable, EnableStatusEnum.ENABLE.getStatus())
-            .orderByAsc(SecurityRuleDO::getPriority)
-        );
-        for (SecurityRuleDO ruleDO : ruleDOList) {
-            SecurityRulePassTypeEnum passType = ruleDO.judge(ip);
-            if (passType == SecurityRulePassTypeEnum.ALLOW) {
-                allow = true;
-                log.debug("[SecurityGroup] ip:{} groupId:{} ruleId:{} security strategy:{}", ip, groupId, ruleDO.getId(), "allow");
-                break;
-            }
-            if (passType == SecurityRulePassTypeEnum.DENY) {
-                allow = false;
-                log.info("[SecurityGroup] ip:{} groupId:{} ruleId:{} security strategy:{}", ip, groupId, ruleDO.getId(), "reject");
-                break;
+        boolean allow = ruleIndex.isAllow(slot);
+        if (allow) {
+            if (log.isDebugEnabled()) {
+                log.debug("[SecurityGroup] ip:{} groupId:{} ruleId:{} security strategy:{}", ip, groupId, ruleIndex.getRuleId(slot), "allow");
             }
+        } else {
+            log.info("[SecurityGroup] ip:{} groupId:{} ruleId:{} security strategy:{}", ip, groupId, ruleIndex.getRuleId(slot), "reject");
         }
+        return allow;
+    }
 
-        // 当前IP没有匹配到任何一条规则，则使用安全组默认规则
-        if (allow == null) {
-            allow = SecurityRulePassTypeEnum.ALLOW.getType().equals(groupDO.getDefaultPassType());
-            log.debug("[SecurityGroup] ip:{} groupId{} use security group default strategy:{}", ip, groupId, allow ? "allow" : "reject");
-        }
+    /**
+     * 来源IP新建tcp连接限速，安全组未开启限速时直接放行
+     * @param address 来源IP
+     * @param groupId 安全组Id
+     * @return 是否放行
+     */
+    public boolean tryAcquireConnect(InetAddress address, Integer groupId) {
+        return tryAcquire(connectLimiterMap, address, groupId);
+    }
 
-        ipAllowControlCache.put(judgeAllowMapKey, allow);
+    /**
+     * 来源IP udp包限速，安全组未开启限速时直接放行
+     * @param address 来源IP
+     * @param groupId 安全组Id
+     * @return 是否放行
+     */
+    public boolean tryAcquirePacket(InetAddress address, Integer groupId) {
+        return tryAcquire(packetLimiterMap, address, groupId);
+    }
 
-        return allow;
+    private boolean tryAcquire(Map<Integer, IpRateLimiter> limiterMap, InetAddress address, Integer groupId) {
+        if (null == groupId || null == address) {
+            return true;
+        }
+        IpRateLimiter limiter = limiterMap.get(groupId);
+        if (null == limiter || limiter.tryAcquire(address)) {
+            return true;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("[SecurityGroup] ip:{} groupId:{} exceeded rate limit:{}/s", address.getHostAddress(), groupId, limiter.getRate());
+        }
+        return false;
     }
 }
@@ -0,0 +1,235 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.controller.req.report.TimeSeriesReq;
+import org.dromara.neutrinoproxy.server.controller.res.report.TimeSeriesRes;
+import org.dromara.neutrinoproxy.server.proxy.domain.Metrics;
+import org.dromara.neutrinoproxy.server.proxy.domain.MappedRingSeries;
+import org.dromara.neutrinoproxy.server.proxy.domain.MetricsCollector;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+import org.noear.solon.core.bean.LifecycleBean;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 秒级流量、连接数时间序列
+ * 每秒从 FlowReportService 的累计流量计数器、MetricsCollector 的连接数采样一次，按端口映射、license分别写入内存映射的环形文件，
+ * 不经过数据库。只有有流量或有连接的序列才会写入，空闲的端口映射不产生文件
+ * @author: aoshiguchen
+ * @date: 2024/9/24
+ */
+@Slf4j
+@Component
+public class TimeSeriesService implements LifecycleBean {
+    public static final String TYPE_MAPPING = "mapping";
+    public static final String TYPE_LICENSE = "license";
+    public static final String RESOLUTION_SECOND = "second";
+    public static final String RESOLUTION_MINUTE = "minute";
+    public static final String RESOLUTION_HOUR = "hour";
+    private static final String FILE_SUFFIX = ".ts";
+
+    @Inject
+    private ProxyConfig proxyConfig;
+    @Inject
+    private FlowReportService flowReportService;
+
+    private File dir;
+    private ScheduledExecutorService sampler;
+    private final Map<String, MappedRingSeries> seriesMap = new ConcurrentHashMap<>(1024);
+    /**
+     * 上次采样时的累计流量 {write, read}，只在采样线程中访问
+     */
+    private final Map<String, long[]> lastTotalMap = new HashMap<>(1024);
+    private volatile boolean enable;
+
+    /**
+     * 查询时间序列
+     * @param req
+     * @return
+     */
+    public List<TimeSeriesRes> list(TimeSeriesReq req) {
+        if (!enable) {
+            return Collections.emptyList();
+        }
+        String type = TYPE_LICENSE.equals(req.getType()) ? TYPE_LICENSE : TYPE_MAPPING;
+        MappedRingSeries series = getSeries(type, req.getKey(), false);
+        if (null == series) {
+            return Collections.emptyList();
+        }
+        int tier;
+        long defaultRangeSeconds;
+        if (RESOLUTION_HOUR.equals(req.getResolution())) {
+            tier = MappedRingSeries.TIER_HOUR;
+            defaultRangeSeconds = 7 * 24 * 3600L;
+        } else if (RESOLUTION_MINUTE.equals(req.getResolution())) {
+            tier = MappedRingSeries.TIER_MINUTE;
+            defaultRangeSeconds = 2 * 3600L;
+        } else {
+            tier = MappedRingSeries.TIER_SECOND;
+            defaultRangeSeconds = 5 * 60L;
+        }
+        long endSecond = (null == req.getEndTime() ? System.currentTimeMillis() : req.getEndTime()) / 1000;
+        long startSecond = null == req.getStartTime() ? endSecond - defaultRangeSeconds : req.getStartTime() / 1000;
+
+        List<MappedRingSeries.Point> pointList = series.query(tier, startSecond, endSecond);
+        List<TimeSeriesRes> resList = new ArrayList<>(pointList.size());
+        for (MappedRingSeries.Point point : pointList) {
+            resList.add(new TimeSeriesRes()
+                .setTime(point.getTime())
+                .setWriteBytes(point.getWriteBytes())
+                .setReadBytes(point.getReadBytes())
+                .setChannels(point.getChannels())
+            );
+        }
+        return resList;
+    }
+
+    @Override
+    public void start() throws Throwable {
+        ProxyConfig.TimeSeries config = proxyConfig.getServer().getTimeSeries();
+        if (null == config || !Boolean.TRUE.equals(config.getEnable())) {
+            return;
+        }
+        dir = new File(config.getDir());
+        if (!dir.exists() && !dir.mkdirs()) {
+            log.error("[TimeSeries] create dir failed: {}", dir.getAbsolutePath());
+            return;
+        }
+        cleanExpiredFiles();
+
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "time-series");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long initialDelay = 1000 - System.currentTimeMillis() % 1000;
+        sampler.scheduleAtFixedRate(() -> {
+            try {
+                sample();
+            } catch (Throwable e) {
+                log.error("[TimeSeries] sample error", e);
+            }
+        }, initialDelay, 1000, TimeUnit.MILLISECONDS);
+        enable = true;
+    }
+
+    @Override
+    public void stop() throws Throwable {
+        if (null == sampler) {
+            return;
+        }
+        enable = false;
+        sampler.shutdown();
+        sampler.awaitTermination(5, TimeUnit.SECONDS);
+        for (MappedRingSeries series : seriesMap.values()) {
+            series.force();
+        }
+    }
+
+    /**
+     * 采样：流量取累计值与上次采样的差，连接数取当前值
+     */
+    private void sample() {
+        long epochSecond = System.currentTimeMillis() / 1000;
+
+        Map<Integer, Integer> channelsMap = new HashMap<>();
+        for (Metrics metrics : MetricsCollector.getAllMetrics()) {
+            if (metrics.getChannels() > 0) {
+                channelsMap.merge(metrics.getPort(), metrics.getChannels(), Integer::sum);
+            }
+        }
+
+        Set<Integer> recordedPorts = new HashSet<>();
+        for (Map.Entry<Integer, FlowReportService.FlowCounter> entry : flowReportService.getMappingCounterMap().entrySet()) {
+            Integer channels = channelsMap.get(entry.getKey());
+            record(TYPE_MAPPING, entry.getKey(), entry.getValue(), null == channels ? 0 : channels, epochSecond);
+            recordedPorts.add(entry.getKey());
+        }
+        // 有连接但还没有流量的端口映射
+        for (Map.Entry<Integer, Integer> entry : channelsMap.entrySet()) {
+            if (!recordedPorts.contains(entry.getKey())) {
+                record(TYPE_MAPPING, entry.getKey(), null, entry.getValue(), epochSecond);
+            }
+        }
+        for (Map.Entry<Integer, FlowReportService.FlowCounter> entry : flowReportService.getLicenseCounterMap().entrySet()) {
+            record(TYPE_LICENSE, entry.getKey(), entry.getValue(), 0, epochSecond);
+        }
+    }
+
+    private void record(String type, Integer key, FlowReportService.FlowCounter counter, int channels, long epochSecond) {
+        long writeBytes = 0;
+        long readBytes = 0;
+        if (null != counter) {
+            long[] last = lastTotalMap.computeIfAbsent(type + key, k -> new long[2]);
+            long writeTotal = counter.getWriteBytes();
+            long readTotal = counter.getReadBytes();
+            writeBytes = writeTotal - last[0];
+            readBytes = readTotal - last[1];
+            last[0] = writeTotal;
+            last[1] = readTotal;
+        }
+        if (writeBytes == 0 && readBytes == 0 && channels == 0) {
+            return;
+        }
+        MappedRingSeries series = getSeries(type, key, true);
+        if (null != series) {
+            series.record(epochSecond, readBytes, writeBytes, channels);
+        }
+    }
+
+    private MappedRingSeries getSeries(String type, Integer key, boolean create) {
+        if (null == key) {
+            return null;
+        }
+        String name = type + "-" + key;
+        MappedRingSeries series = seriesMap.get(name);
+        if (null != series) {
+            return series;
+        }
+        File file = new File(dir, name + FILE_SUFFIX);
+        if (!create && !file.exists()) {
+            return null;
+        }
+        try {
+            return seriesMap.computeIfAbsent(name, k -> {
+                try {
+                    return MappedRingSeries.open(file);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (Exception e) {
+            log.error("[TimeSeries] open series file error: {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 删除超过最长保留时长未写入的序列文件（已删除的端口映射、license）
+     */
+    private void cleanExpiredFiles() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(FILE_SUFFIX));
+        if (null == files) {
+            return;
+        }
+        long expireTime = System.currentTimeMillis() - MappedRingSeries.getRetentionSeconds(MappedRingSeries.TIER_HOUR) * 1000;
+        for (File file : files) {
+            if (file.lastModified() < expireTime && !file.delete()) {
+                log.warn("[TimeSeries] delete expired file failed: {}", file.getAbsolutePath());
+            }
+        }
+    }
+}
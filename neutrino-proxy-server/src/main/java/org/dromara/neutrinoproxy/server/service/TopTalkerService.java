@@ -0,0 +1,187 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import cn.hutool.core.util.NumberUtil;
+import org.dromara.neutrinoproxy.server.controller.req.report.TopTalkerReq;
+import org.dromara.neutrinoproxy.server.controller.res.report.TopTalkerRes;
+import org.dromara.neutrinoproxy.server.proxy.domain.SpaceSavingSketch;
+import org.noear.solon.annotation.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 访问者IP流量排行（Top Talkers）
+ * 按端口映射、license分别维护最近 SLOT_COUNT 分钟的 Space-Saving 统计，每分钟一个槽位循环复用，
+ * 以访问者IP为键、分别按字节数与连接数加权。查询时合并窗口内的槽位，内存只与映射数量有关，与访问者数量无关
+ * @author: aoshiguchen
+ * @date: 2024/9/20
+ */
+@Component
+public class TopTalkerService {
+    public static final String DIMENSION_MAPPING = "mapping";
+    public static final String DIMENSION_LICENSE = "license";
+    public static final String METRIC_BYTES = "bytes";
+    public static final String METRIC_CONNECTIONS = "connections";
+    /**
+     * 每个槽位保留的IP数，应明显大于查询的排行数，保证排行结果的准确性
+     */
+    private static final int CAPACITY = 64;
+    private static final int SLOT_COUNT = 5;
+    private static final long SLOT_MILLIS = 60 * 1000L;
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final Map<Integer/*serverPort*/, TalkerWindow> mappingWindowMap = new ConcurrentHashMap<>(1024);
+    private final Map<Integer/*licenseId*/, TalkerWindow> licenseWindowMap = new ConcurrentHashMap<>(256);
+
+    /**
+     * 累加访问者流量
+     * @param licenseId
+     * @param serverPort
+     * @param ip 访问者IP
+     * @param bytes 上下行字节数
+     */
+    public void addBytes(Integer licenseId, Integer serverPort, String ip, long bytes) {
+        if (null == ip || bytes <= 0) {
+            return;
+        }
+        long slot = currentSlot();
+        if (null != serverPort) {
+            getWindow(mappingWindowMap, serverPort).getSketch(slot, true).add(ip, bytes);
+        }
+        if (null != licenseId) {
+            getWindow(licenseWindowMap, licenseId).getSketch(slot, true).add(ip, bytes);
+        }
+    }
+
+    /**
+     * 累加访问者连接数
+     * @param licenseId
+     * @param serverPort
+     * @param ip 访问者IP
+     */
+    public void addConnection(Integer licenseId, Integer serverPort, String ip) {
+        if (null == ip) {
+            return;
+        }
+        long slot = currentSlot();
+        if (null != serverPort) {
+            getWindow(mappingWindowMap, serverPort).getSketch(slot, false).add(ip, 1);
+        }
+        if (null != licenseId) {
+            getWindow(licenseWindowMap, licenseId).getSketch(slot, false).add(ip, 1);
+        }
+    }
+
+    /**
+     * 查询最近若干分钟的访问者排行
+     * @param req
+     * @return
+     */
+    public List<TopTalkerRes> list(TopTalkerReq req) {
+        removeExpiredWindows();
+        Map<Integer, TalkerWindow> windowMap = DIMENSION_LICENSE.equals(req.getDimension()) ? licenseWindowMap : mappingWindowMap;
+        TalkerWindow window = windowMap.get(req.getKey());
+        if (null == window) {
+            return Collections.emptyList();
+        }
+        boolean bytes = !METRIC_CONNECTIONS.equals(req.getMetric());
+        int minutes = null == req.getMinutes() ? SLOT_COUNT : Math.min(Math.max(req.getMinutes(), 1), SLOT_COUNT);
+        int limit = null == req.getLimit() ? DEFAULT_LIMIT : Math.min(Math.max(req.getLimit(), 1), CAPACITY);
+
+        // 合并窗口内的槽位，计数与误差分别相加
+        long slot = currentSlot();
+        long total = 0;
+        Map<String, long[]> merged = new HashMap<>(CAPACITY * 2);
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (slot - window.slots.get(i) >= minutes) {
+                continue;
+            }
+            SpaceSavingSketch sketch = bytes ? window.bytesSketches[i] : window.connectionSketches[i];
+            for (SpaceSavingSketch.Counter counter : sketch.snapshot()) {
+                long[] value = merged.computeIfAbsent(counter.getKey(), k -> new long[2]);
+                value[0] += counter.getCount();
+                value[1] += counter.getError();
+                total += counter.getCount();
+            }
+        }
+        List<Map.Entry<String, long[]>> entryList = new ArrayList<>(merged.entrySet());
+        entryList.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        List<TopTalkerRes> resList = new ArrayList<>(Math.min(limit, entryList.size()));
+        for (int i = 0; i < entryList.size() && i < limit; i++) {
+            Map.Entry<String, long[]> entry = entryList.get(i);
+            resList.add(new TopTalkerRes()
+                .setIp(entry.getKey())
+                .setValue(entry.getValue()[0])
+                .setError(entry.getValue()[1])
+                .setPercent(NumberUtil.round(entry.getValue()[0] * 100D / total, 2).doubleValue())
+            );
+        }
+        return resList;
+    }
+
+    private static long currentSlot() {
+        return System.currentTimeMillis() / SLOT_MILLIS;
+    }
+
+    private static TalkerWindow getWindow(Map<Integer, TalkerWindow> windowMap, Integer key) {
+        TalkerWindow window = windowMap.get(key);
+        if (null == window) {
+            window = windowMap.computeIfAbsent(key, k -> new TalkerWindow());
+        }
+        return window;
+    }
+
+    /**
+     * 删除窗口内已没有数据的映射、license
+     */
+    private void removeExpiredWindows() {
+        long slot = currentSlot();
+        mappingWindowMap.values().removeIf(window -> window.isExpired(slot));
+        licenseWindowMap.values().removeIf(window -> window.isExpired(slot));
+    }
+
+    private static class TalkerWindow {
+        /**
+         * 各槽位当前对应的分钟
+         */
+        private final AtomicLongArray slots = new AtomicLongArray(SLOT_COUNT);
+        private final SpaceSavingSketch[] bytesSketches = new SpaceSavingSketch[SLOT_COUNT];
+        private final SpaceSavingSketch[] connectionSketches = new SpaceSavingSketch[SLOT_COUNT];
+
+        private TalkerWindow() {
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                bytesSketches[i] = new SpaceSavingSketch(CAPACITY);
+                connectionSketches[i] = new SpaceSavingSketch(CAPACITY);
+            }
+        }
+
+        private SpaceSavingSketch getSketch(long slot, boolean bytes) {
+            int index = (int) (slot % SLOT_COUNT);
+            if (slots.get(index) != slot) {
+                synchronized (this) {
+                    // 进入新的一分钟，清空复用的槽位
+                    if (slots.get(index) != slot) {
+                        bytesSketches[index].clear();
+                        connectionSketches[index].clear();
+                        slots.set(index, slot);
+                    }
+                }
+            }
+            return bytes ? bytesSketches[index] : connectionSketches[index];
+        }
+
+        private boolean isExpired(long slot) {
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                if (slot - slots.get(i) < SLOT_COUNT) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
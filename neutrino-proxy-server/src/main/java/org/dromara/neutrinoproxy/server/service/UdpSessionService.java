@@ -0,0 +1,250 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.neutrinoproxy.core.ProxyMessage;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.proxy.domain.UdpSession;
+import org.dromara.neutrinoproxy.server.util.ProxyUtil;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+import org.noear.solon.core.bean.LifecycleBean;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UDP访问者会话表
+ * 以 服务端端口 -> 来源地址 -> 会话 维护，会话空闲检测使用时间轮：每个会话只挂一个检测任务，到期时若期间有过活动则按剩余时间重新挂上，
+ * 不需要每个数据包都重置定时任务
+ * @author: aoshiguchen
+ * @date: 2024/9/28
+ */
+@Slf4j
+@Component
+public class UdpSessionService implements LifecycleBean {
+    /**
+     * 请求建立隧道后等待的时间，超时未建立则下一个数据包重新请求
+     */
+    private static final long CONNECT_TIMEOUT_MILLIS = 10 * 1000L;
+
+    @Inject
+    private ProxyConfig proxyConfig;
+    @Inject
+    private FlowReportService flowReportService;
+    @Inject
+    private TopTalkerService topTalkerService;
+    @Inject
+    private DatagramTunnelService datagramTunnelService;
+
+    private final Map<Integer/*serverPort*/, Map<InetSocketAddress, UdpSession>> portSessionMap = new ConcurrentHashMap<>();
+    private final Map<String/*visitorId*/, UdpSession> visitorIdSessionMap = new ConcurrentHashMap<>();
+    private volatile HashedWheelTimer timer;
+    private long idleMillis;
+    private int maxSessionsPerPort;
+
+    /**
+     * 获取会话，不存在则创建
+     * @param serverPort 服务端端口
+     * @param sender 来源地址
+     * @param licenseId
+     * @param visitorChannel udp监听通道
+     * @return 超出端口会话数上限时返回null
+     */
+    public UdpSession getOrCreate(Integer serverPort, InetSocketAddress sender, Integer licenseId, Channel visitorChannel) {
+        Map<InetSocketAddress, UdpSession> sessionMap = portSessionMap.computeIfAbsent(serverPort, k -> new ConcurrentHashMap<>());
+        UdpSession session = sessionMap.get(sender);
+        if (null != session) {
+            return session;
+        }
+        if (sessionMap.size() >= maxSessionsPerPort) {
+            return null;
+        }
+        return sessionMap.computeIfAbsent(sender, k -> {
+            UdpSession newSession = new UdpSession(serverPort, sender, ProxyUtil.newVisitorId(), licenseId, visitorChannel);
+            visitorIdSessionMap.put(newSession.getVisitorId(), newSession);
+            scheduleIdleCheck(newSession, idleMillis);
+            return newSession;
+        });
+    }
+
+    public UdpSession getByVisitorId(String visitorId) {
+        if (null == visitorId) {
+            return null;
+        }
+        return visitorIdSessionMap.get(visitorId);
+    }
+
+    /**
+     * 转发访问者的数据包，优先走数据报隧道；走TCP隧道时，隧道未就绪则暂存
+     * @param session
+     * @param bytes
+     * @return 是否需要请求建立隧道
+     */
+    public boolean forward(UdpSession session, byte[] bytes) {
+        long now = System.currentTimeMillis();
+        session.touch(now);
+        if (datagramTunnelService.forward(session, bytes)) {
+            addWriteBytes(session, bytes.length);
+            return false;
+        }
+        int result = session.offerPending(bytes, now, CONNECT_TIMEOUT_MILLIS);
+        if (UdpSession.OFFER_READY == result) {
+            transfer(session, session.getTunnelChannel(), bytes);
+        }
+        return UdpSession.OFFER_CONNECT == result;
+    }
+
+    /**
+     * 绑定代理隧道，并转发隧道建立期间暂存的数据包
+     */
+    public void bindTunnel(UdpSession session, Channel tunnelChannel, String targetIp, int targetPort, Integer proxyResponses, Long proxyTimeoutMs) {
+        Channel oldTunnelChannel = session.getTunnelChannel();
+        List<byte[]> pendingList = session.bindTunnel(tunnelChannel, targetIp, targetPort, proxyResponses, proxyTimeoutMs);
+        if (null != oldTunnelChannel && oldTunnelChannel != tunnelChannel) {
+            // 建立超时后重新请求，先建立的隧道不再使用
+            oldTunnelChannel.close();
+        }
+        for (byte[] bytes : pendingList) {
+            transfer(session, tunnelChannel, bytes);
+        }
+    }
+
+    /**
+     * 代理隧道断开，会话保留，下一个数据包重新建立隧道
+     */
+    public void unbindTunnel(String visitorId, Channel tunnelChannel) {
+        UdpSession session = getByVisitorId(visitorId);
+        if (null != session) {
+            session.unbindTunnel(tunnelChannel);
+        }
+    }
+
+    /**
+     * 将代理客户端的响应写回访问者
+     */
+    public void reply(UdpSession session, byte[] bytes) {
+        session.touch(System.currentTimeMillis());
+        session.getVisitorChannel().writeAndFlush(new DatagramPacket(Unpooled.wrappedBuffer(bytes), session.getSender()));
+
+        session.addReadBytes(bytes.length);
+        flowReportService.addReadByte(session.getLicenseId(), session.getServerPort(), bytes.length);
+        topTalkerService.addBytes(session.getLicenseId(), session.getServerPort(), session.getVisitorIp(), bytes.length);
+    }
+
+    /**
+     * 设置端口下所有会话隧道的自动读
+     */
+    public void setTunnelAutoRead(Integer serverPort, boolean autoRead) {
+        Map<InetSocketAddress, UdpSession> sessionMap = portSessionMap.get(serverPort);
+        if (null == sessionMap) {
+            return;
+        }
+        for (UdpSession session : sessionMap.values()) {
+            Channel tunnelChannel = session.getTunnelChannel();
+            if (null != tunnelChannel) {
+                tunnelChannel.config().setAutoRead(autoRead);
+            }
+        }
+    }
+
+    /**
+     * 删除端口下的所有会话，端口映射删除、禁用时调用
+     */
+    public void removeByServerPort(Integer serverPort) {
+        Map<InetSocketAddress, UdpSession> sessionMap = portSessionMap.remove(serverPort);
+        if (null == sessionMap) {
+            return;
+        }
+        for (UdpSession session : new ArrayList<>(sessionMap.values())) {
+            close(session);
+        }
+    }
+
+    @Override
+    public void start() throws Throwable {
+        ProxyConfig.Udp udp = proxyConfig.getServer().getUdp();
+        idleMillis = TimeUnit.SECONDS.toMillis(null == udp || null == udp.getSessionIdleSeconds() ? 60 : udp.getSessionIdleSeconds());
+        maxSessionsPerPort = null == udp || null == udp.getMaxSessionsPerPort() ? 10000 : udp.getMaxSessionsPerPort();
+        timer = new HashedWheelTimer(r -> {
+            Thread thread = new Thread(r, "udp-session-timer");
+            thread.setDaemon(true);
+            return thread;
+        }, 1, TimeUnit.SECONDS, 512);
+    }
+
+    @Override
+    public void stop() throws Throwable {
+        if (null != timer) {
+            timer.stop();
+        }
+    }
+
+    private void transfer(UdpSession session, Channel tunnelChannel, byte[] bytes) {
+        tunnelChannel.writeAndFlush(ProxyMessage.buildUdpTransferMessage(new ProxyMessage.UdpBaseInfo()
+                .setVisitorId(session.getVisitorId())
+                .setVisitorIp(session.getVisitorIp())
+                .setVisitorPort(session.getSender().getPort())
+                .setServerPort(session.getServerPort())
+                .setTargetIp(session.getTargetIp())
+                .setTargetPort(session.getTargetPort())
+                .setProxyTimeoutMs(session.getProxyTimeoutMs())
+                .setProxyResponses(session.getProxyResponses())
+        ).setData(bytes));
+
+        addWriteBytes(session, bytes.length);
+    }
+
+    private void addWriteBytes(UdpSession session, int length) {
+        session.addWriteBytes(length);
+        flowReportService.addWriteByte(session.getLicenseId(), session.getServerPort(), length);
+        topTalkerService.addBytes(session.getLicenseId(), session.getServerPort(), session.getVisitorIp(), length);
+    }
+
+    private void scheduleIdleCheck(UdpSession session, long delayMillis) {
+        HashedWheelTimer curTimer = timer;
+        if (null == curTimer) {
+            return;
+        }
+        session.setIdleTimeout(curTimer.newTimeout(timeout -> checkIdle(session), delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void checkIdle(UdpSession session) {
+        long idle = System.currentTimeMillis() - session.getLastActiveTime();
+        if (idle < idleMillis) {
+            scheduleIdleCheck(session, idleMillis - idle);
+            return;
+        }
+        close(session);
+    }
+
+    private void close(UdpSession session) {
+        Map<InetSocketAddress, UdpSession> sessionMap = portSessionMap.get(session.getServerPort());
+        if (null != sessionMap) {
+            sessionMap.remove(session.getSender(), session);
+        }
+        visitorIdSessionMap.remove(session.getVisitorId());
+        Timeout idleTimeout = session.getIdleTimeout();
+        if (null != idleTimeout) {
+            idleTimeout.cancel();
+        }
+        Channel cmdChannel = ProxyUtil.getCmdChannelByLicenseId(session.getLicenseId());
+        if (null != cmdChannel) {
+            ProxyUtil.removeVisitorChannelFromCmdChannel(cmdChannel, session.getVisitorId());
+        }
+        Channel tunnelChannel = session.getTunnelChannel();
+        if (null != tunnelChannel && session.unbindTunnel(tunnelChannel)) {
+            tunnelChannel.close();
+        }
+        log.debug("[UDP session]close serverPort:{} sender:{} visitorId:{} writeBytes:{} readBytes:{} duration:{}ms", session.getServerPort(), session.getSender(),
+                session.getVisitorId(), session.getWriteBytes(), session.getReadBytes(), System.currentTimeMillis() - session.getCreateTime());
+    }
+}
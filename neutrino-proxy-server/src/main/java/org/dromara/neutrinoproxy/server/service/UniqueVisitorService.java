@@ -0,0 +1,282 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.lang.hash.MurmurHash;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.solon.annotation.Db;
+import org.dromara.neutrinoproxy.core.util.DateUtil;
+import org.dromara.neutrinoproxy.server.base.rest.SystemContextHolder;
+import org.dromara.neutrinoproxy.server.constant.ExceptionConstant;
+import org.dromara.neutrinoproxy.server.controller.req.report.UniqueVisitorReportReq;
+import org.dromara.neutrinoproxy.server.controller.res.report.UniqueVisitorReportRes;
+import org.dromara.neutrinoproxy.server.dal.LicenseMapper;
+import org.dromara.neutrinoproxy.server.dal.PortMappingMapper;
+import org.dromara.neutrinoproxy.server.dal.UniqueVisitorReportMapper;
+import org.dromara.neutrinoproxy.server.dal.entity.LicenseDO;
+import org.dromara.neutrinoproxy.server.dal.entity.PortMappingDO;
+import org.dromara.neutrinoproxy.server.dal.entity.UniqueVisitorReportDO;
+import org.dromara.neutrinoproxy.server.proxy.domain.HyperLogLog;
+import org.dromara.neutrinoproxy.server.util.ParamCheckUtil;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.core.bean.LifecycleBean;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 独立访客数统计
+ * 访问者通过安全校验后，以来源IP的64位哈希更新当前小时按端口映射、域名划分的 HyperLogLog。
+ * 跨小时后当前统计转入待落库队列，由小时报表任务写入 unique_visitor_report，天、月报表任务再将区间内的小时寄存器合并（并集），
+ * 因此任意区间的去重访客数都可以由寄存器合并得到，而不是简单相加
+ * @author: aoshiguchen
+ * @date: 2024/9/22
+ */
+@Slf4j
+@Component
+public class UniqueVisitorService implements LifecycleBean {
+    public static final String PERIOD_HOUR = "hour";
+    public static final String PERIOD_DAY = "day";
+    public static final String PERIOD_MONTH = "month";
+    public static final String DIMENSION_MAPPING = "mapping";
+    public static final String DIMENSION_DOMAIN = "domain";
+    private static final String HOUR_PATTERN = "yyyy-MM-dd HH";
+    private static final String DAY_PATTERN = "yyyy-MM-dd";
+    private static final String MONTH_PATTERN = "yyyy-MM";
+
+    @Db
+    private UniqueVisitorReportMapper uniqueVisitorReportMapper;
+    @Db
+    private PortMappingMapper portMappingMapper;
+    @Db
+    private LicenseMapper licenseMapper;
+
+    private volatile HourBucket currentBucket = new HourBucket(System.currentTimeMillis());
+    private final Queue<HourBucket> completedBuckets = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 记录一次访问
+     * @param serverPort 服务端端口
+     * @param domain 完整域名，非域名访问为空
+     * @param ip 访问者IP
+     */
+    public void offer(Integer serverPort, String domain, String ip) {
+        if (StrUtil.isEmpty(ip)) {
+            return;
+        }
+        long hash = MurmurHash.hash64(ip);
+        HourBucket bucket = getBucket(System.currentTimeMillis());
+        if (null != serverPort) {
+            getHll(bucket.mappingMap, String.valueOf(serverPort)).offer(hash);
+        }
+        if (StrUtil.isNotEmpty(domain)) {
+            getHll(bucket.domainMap, domain).offer(hash);
+        }
+    }
+
+    /**
+     * 将已结束的小时统计落库，由小时报表任务调用
+     */
+    public void persistCompletedHours() {
+        getBucket(System.currentTimeMillis());
+        HourBucket bucket;
+        while (null != (bucket = completedBuckets.poll())) {
+            persist(bucket);
+        }
+    }
+
+    /**
+     * 由小时报表合并生成天、月报表
+     * 月报表任务在月初第一个天报表任务之前执行，因此同样由小时报表合并，不依赖天报表
+     * @param period day、month
+     * @param dateStr yyyy-MM-dd、yyyy-MM
+     */
+    public void rollup(String period, String dateStr) {
+        Date date;
+        Date startDate;
+        Date endDate;
+        if (PERIOD_MONTH.equals(period)) {
+            date = DateUtil.parse(dateStr, MONTH_PATTERN);
+            startDate = DateUtil.getMonthBegin(date);
+            endDate = DateUtil.getMonthEnd(date);
+        } else {
+            date = DateUtil.parse(dateStr, DAY_PATTERN);
+            startDate = DateUtil.getDayBegin(date);
+            endDate = DateUtil.getDayEnd(date);
+        }
+
+        // 删除原来的记录
+        uniqueVisitorReportMapper.deleteByDateStr(period, dateStr);
+
+        List<UniqueVisitorReportDO> sourceList = uniqueVisitorReportMapper.findListByDateRange(PERIOD_HOUR, startDate, endDate);
+        if (CollectionUtil.isEmpty(sourceList)) {
+            return;
+        }
+        Map<String, UniqueVisitorReportDO> reportMap = new HashMap<>();
+        Map<String, HyperLogLog> hllMap = new HashMap<>();
+        for (UniqueVisitorReportDO item : sourceList) {
+            String key = item.getDimension() + ":" + item.getDimKey();
+            if (!reportMap.containsKey(key)) {
+                reportMap.put(key, new UniqueVisitorReportDO()
+                    .setPeriod(period)
+                    .setDimension(item.getDimension())
+                    .setDimKey(item.getDimKey())
+                    .setDate(date)
+                    .setDateStr(dateStr));
+                hllMap.put(key, new HyperLogLog());
+            }
+            hllMap.get(key).merge(HyperLogLog.fromBytes(item.getRegisters()));
+        }
+        Date now = new Date();
+        for (Map.Entry<String, UniqueVisitorReportDO> entry : reportMap.entrySet()) {
+            HyperLogLog hll = hllMap.get(entry.getKey());
+            uniqueVisitorReportMapper.insert(entry.getValue()
+                .setUv(hll.cardinality())
+                .setRegisters(hll.toBytes())
+                .setCreateTime(now));
+        }
+    }
+
+    /**
+     * 查询独立访客数报表
+     * @param req
+     * @return
+     */
+    public UniqueVisitorReportRes report(UniqueVisitorReportReq req) {
+        String period = StrUtil.blankToDefault(req.getPeriod(), PERIOD_DAY);
+        String dimension = StrUtil.blankToDefault(req.getDimension(), DIMENSION_MAPPING);
+        ParamCheckUtil.checkNotEmpty(req.getKey(), "key");
+        checkPermission(dimension, req.getKey());
+
+        Date now = new Date();
+        Date endDate = StrUtil.isBlank(req.getEndDate()) ? now : DateUtil.parse(req.getEndDate(), DAY_PATTERN);
+        Date startDate = StrUtil.isBlank(req.getStartDate()) ? DateUtil.addDate(now, Calendar.DATE, -6) : DateUtil.parse(req.getStartDate(), DAY_PATTERN);
+        if (PERIOD_MONTH.equals(period)) {
+            startDate = DateUtil.getMonthBegin(startDate);
+        }
+
+        List<UniqueVisitorReportDO> list = uniqueVisitorReportMapper.findListByDateRange(period, dimension, req.getKey(),
+            DateUtil.getDayBegin(startDate), DateUtil.getDayEnd(endDate));
+        HyperLogLog total = new HyperLogLog();
+        List<UniqueVisitorReportRes.Item> items = new ArrayList<>(list.size());
+        for (UniqueVisitorReportDO item : list) {
+            total.merge(HyperLogLog.fromBytes(item.getRegisters()));
+            items.add(new UniqueVisitorReportRes.Item()
+                .setDateStr(item.getDateStr())
+                .setUv(item.getUv()));
+        }
+        return new UniqueVisitorReportRes()
+            .setPeriod(period)
+            .setDimension(dimension)
+            .setKey(req.getKey())
+            .setTotal(total.cardinality())
+            .setItems(items);
+    }
+
+    @Override
+    public void start() throws Throwable {
+
+    }
+
+    @Override
+    public void stop() throws Throwable {
+        // 停机时将未结束的小时一并落库，重启后同一小时的统计会合并到同一条记录
+        try {
+            persistCompletedHours();
+            persist(currentBucket);
+        } catch (Exception e) {
+            log.error("[UniqueVisitor] persist on stop error", e);
+        }
+    }
+
+    /**
+     * 非管理员只能查看自己license下端口映射的统计
+     */
+    private void checkPermission(String dimension, String key) {
+        if (SystemContextHolder.isAdmin()) {
+            return;
+        }
+        ParamCheckUtil.checkExpression(DIMENSION_MAPPING.equals(dimension) && StrUtil.isNumeric(key), ExceptionConstant.NO_PERMISSION_VISIT);
+        PortMappingDO portMappingDO = portMappingMapper.findByPort(Integer.parseInt(key), null);
+        ParamCheckUtil.checkNotNull(portMappingDO, ExceptionConstant.PORT_MAPPING_NOT_EXIST);
+        LicenseDO licenseDO = licenseMapper.findById(portMappingDO.getLicenseId());
+        ParamCheckUtil.checkExpression(null != licenseDO && licenseDO.getUserId().equals(SystemContextHolder.getUserId()), ExceptionConstant.NO_PERMISSION_VISIT);
+    }
+
+    private HourBucket getBucket(long now) {
+        HourBucket bucket = currentBucket;
+        if (now < bucket.endTime) {
+            return bucket;
+        }
+        synchronized (this) {
+            bucket = currentBucket;
+            if (now >= bucket.endTime) {
+                completedBuckets.offer(bucket);
+                bucket = new HourBucket(now);
+                currentBucket = bucket;
+            }
+        }
+        return bucket;
+    }
+
+    private static HyperLogLog getHll(Map<String, HyperLogLog> map, String key) {
+        HyperLogLog hll = map.get(key);
+        if (null == hll) {
+            hll = map.computeIfAbsent(key, k -> new HyperLogLog());
+        }
+        return hll;
+    }
+
+    /**
+     * 小时统计落库，已存在的记录（重启前写入的同一小时）合并寄存器后更新
+     */
+    private void persist(HourBucket bucket) {
+        Date date = new Date(bucket.startTime);
+        String dateStr = DateUtil.format(date, HOUR_PATTERN);
+        Date now = new Date();
+        persist(DIMENSION_MAPPING, bucket.mappingMap, date, dateStr, now);
+        persist(DIMENSION_DOMAIN, bucket.domainMap, date, dateStr, now);
+    }
+
+    private void persist(String dimension, Map<String, HyperLogLog> hllMap, Date date, String dateStr, Date now) {
+        for (Map.Entry<String, HyperLogLog> entry : hllMap.entrySet()) {
+            HyperLogLog hll = entry.getValue();
+            UniqueVisitorReportDO exist = uniqueVisitorReportMapper.findOne(PERIOD_HOUR, dimension, entry.getKey(), dateStr);
+            if (null != exist) {
+                hll.merge(HyperLogLog.fromBytes(exist.getRegisters()));
+                uniqueVisitorReportMapper.updateById(exist
+                    .setUv(hll.cardinality())
+                    .setRegisters(hll.toBytes()));
+                continue;
+            }
+            uniqueVisitorReportMapper.insert(new UniqueVisitorReportDO()
+                .setPeriod(PERIOD_HOUR)
+                .setDimension(dimension)
+                .setDimKey(entry.getKey())
+                .setUv(hll.cardinality())
+                .setRegisters(hll.toBytes())
+                .setDate(date)
+                .setDateStr(dateStr)
+                .setCreateTime(now));
+        }
+    }
+
+    private static class HourBucket {
+        private final long startTime;
+        private final long endTime;
+        private final Map<String/*serverPort*/, HyperLogLog> mappingMap = new ConcurrentHashMap<>(1024);
+        private final Map<String/*domain*/, HyperLogLog> domainMap = new ConcurrentHashMap<>(1024);
+
+        private HourBucket(long now) {
+            this.startTime = DateUtil.getHourBegin(new Date(now)).getTime();
+            this.endTime = startTime + DateUtil.HOUR_LONG;
+        }
+    }
+}
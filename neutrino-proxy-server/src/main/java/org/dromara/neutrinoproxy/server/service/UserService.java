@@ -3,6 +3,7 @@ package org.dromara.neutrinoproxy.server.service;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.solon.plugins.pagination.Page;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.ibatis.solon.annotation.Db;
 import org.dromara.neutrinoproxy.core.util.DateUtil;
@@ -32,15 +33,27 @@ import org.dromara.neutrinoproxy.server.dal.UserTokenMapper;
 import org.dromara.neutrinoproxy.server.dal.entity.UserDO;
 import org.dromara.neutrinoproxy.server.dal.entity.UserLoginRecordDO;
 import org.dromara.neutrinoproxy.server.dal.entity.UserTokenDO;
+import org.dromara.neutrinoproxy.server.proxy.security.FlowLimitNode;
+import org.dromara.neutrinoproxy.server.service.bo.FlowLimitBO;
 import org.dromara.neutrinoproxy.server.util.Md5Util;
 import org.dromara.neutrinoproxy.server.util.ParamCheckUtil;
+import org.dromara.neutrinoproxy.server.util.StringUtil;
 import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Init;
 import org.noear.solon.annotation.Inject;
+import org.noear.solon.core.bean.LifecycleBean;
+import org.noear.solon.core.runtime.NativeDetector;
 
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -48,9 +61,26 @@ import java.util.stream.Collectors;
  * @author: aoshiguchen
  * @date: 2022/7/31
  */
+@Slf4j
 @Component
-public class UserService {
+public class UserService implements LifecycleBean {
 	private static final String DEFAULT_PASSWORD = "123456";
+	/**
+	 * token有效期
+	 */
+	private static final long TOKEN_EXPIRE_MILLIS = DateUtil.HOUR_LONG;
+	/**
+	 * token缓存有效期，超过后重新查库校验，直接修改数据库禁用用户时最多延迟这么久生效
+	 */
+	private static final long TOKEN_CACHE_TTL_MILLIS = 30 * 1000L;
+	/**
+	 * token续期最多每隔这么久写一次库
+	 */
+	private static final long TOKEN_PERSIST_INTERVAL_MILLIS = 5 * 60 * 1000L;
+	/**
+	 * 过期token缓存的清理间隔
+	 */
+	private static final long TOKEN_SWEEP_INTERVAL_MILLIS = 60 * 1000L;
 
 	@Db
 	private UserMapper userMapper;
@@ -60,6 +90,13 @@ public class UserService {
 	private UserLoginRecordMapper userLoginRecordMapper;
 	@Inject
 	private VisitorChannelService visitorChannelService;
+	// 流量限制缓存，启动时加载全部用户，增删改时刷新，数据通道上不查询数据库
+	private final Map<Integer, FlowLimitBO> flowLimitCache = new ConcurrentHashMap<>();
+	// 分层限速节点，该用户下的所有连接共享
+	private final Map<Integer, FlowLimitNode> flowLimitNodeMap = new ConcurrentHashMap<>();
+	// token -> 用户缓存，避免每个请求查询 user_token、user 两张表
+	private final Map<String, TokenSession> tokenSessionMap = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler;
 
 	public LoginRes login(LoginReq req) {
 		UserDO userDO = userMapper.findByLoginName(req.getLoginName());
@@ -99,6 +136,7 @@ public class UserService {
 	}
 
 	public void logout() {
+		tokenSessionMap.remove(SystemContextHolder.getToken());
 		userTokenMapper.deleteByToken(SystemContextHolder.getToken());
 
 		// 新增用户登录日志
@@ -112,22 +150,65 @@ public class UserService {
 	}
 
 	public UserDO findByToken(String token) {
-		Date now = new Date();
-		UserTokenDO userTokenDO = userTokenMapper.findByAvailableToken(token, now);
+		long now = System.currentTimeMillis();
+		TokenSession session = tokenSessionMap.get(token);
+		if (null != session && now - session.loadTime < TOKEN_CACHE_TTL_MILLIS && now < session.expirationTime) {
+			return session.user;
+		}
+		// 库中的过期时间最多落后内存中续期的时间 TOKEN_PERSIST_INTERVAL_MILLIS，以两者中较晚的为准
+		UserTokenDO userTokenDO = userTokenMapper.findByToken(token);
 		if (null == userTokenDO) {
+			tokenSessionMap.remove(token);
+			return null;
+		}
+		long expirationTime = userTokenDO.getExpirationTime().getTime();
+		if (null != session) {
+			// 内存中已续期、尚未写库的部分
+			expirationTime = Math.max(expirationTime, session.expirationTime);
+		}
+		if (expirationTime <= now) {
+			tokenSessionMap.remove(token);
 			return null;
 		}
-		return userMapper.findById(userTokenDO.getUserId());
+		UserDO userDO = userMapper.findById(userTokenDO.getUserId());
+		if (null == userDO) {
+			tokenSessionMap.remove(token);
+			return null;
+		}
+		long persistTime = null != session ? session.persistTime.get() : userTokenDO.getExpirationTime().getTime() - TOKEN_EXPIRE_MILLIS;
+		tokenSessionMap.put(token, new TokenSession(userDO, now, expirationTime, persistTime));
+		return userDO;
 	}
 
 	public UserDO findById(Integer id) {
 		return userMapper.findById(id);
 	}
 
+	/**
+	 * token续期，先在内存中续期，距上次写库超过 TOKEN_PERSIST_INTERVAL_MILLIS 才写库
+	 * @param token
+	 */
 	public void updateTokenExpirationTime(String token) {
-		Date now = new Date();
-		Date expirationTime = DateUtil.addDate(now, Calendar.HOUR, 1);
-		userTokenMapper.updateTokenExpirationTime(token, expirationTime);
+		long now = System.currentTimeMillis();
+		long expirationTime = now + TOKEN_EXPIRE_MILLIS;
+		TokenSession session = tokenSessionMap.get(token);
+		if (null == session) {
+			userTokenMapper.updateTokenExpirationTime(token, new Date(expirationTime));
+			return;
+		}
+		session.expirationTime = expirationTime;
+		long persistTime = session.persistTime.get();
+		if (now - persistTime >= TOKEN_PERSIST_INTERVAL_MILLIS && session.persistTime.compareAndSet(persistTime, now)) {
+			userTokenMapper.updateTokenExpirationTime(token, new Date(expirationTime));
+		}
+	}
+
+	/**
+	 * 清除用户的token缓存，用户被禁用、删除、修改后调用
+	 * @param userId
+	 */
+	private void invalidateTokenCache(Integer userId) {
+		tokenSessionMap.values().removeIf(item -> item.user.getId().equals(userId));
 	}
 
 	public PageInfo<UserListRes> page(PageQuery pageQuery, UserListReq req) {
@@ -166,6 +247,7 @@ public class UserService {
 
 	public UserUpdateEnableStatusRes updateEnableStatus(UserUpdateEnableStatusReq req) {
 		userMapper.updateEnableStatus(req.getId(), req.getEnable(), new Date());
+		invalidateTokenCache(req.getId());
 		// 更新VisitorChannel
 		visitorChannelService.updateVisitorChannelByUserId(req.getId(), req.getEnable());
 		return new UserUpdateEnableStatusRes();
@@ -178,9 +260,15 @@ public class UserService {
 		userDO.setLoginName(req.getLoginName());
 		userDO.setLoginPassword(Md5Util.encode(DEFAULT_PASSWORD));
 		userDO.setEnable(EnableStatusEnum.ENABLE.getStatus());
+		userDO.setUpLimitRate(req.getUpLimitRate());
+		userDO.setDownLimitRate(req.getDownLimitRate());
+		userDO.setFlowQuota(req.getFlowQuota());
 		userDO.setCreateTime(now);
 		userDO.setUpdateTime(now);
 		userMapper.insert(userDO);
+
+		// 刷新流量限制缓存
+		refreshFlowLimitCache(userDO.getId(), userDO.getUpLimitRate(), userDO.getDownLimitRate(), userDO.getFlowQuota());
 		return new UserCreateRes();
 	}
 
@@ -189,8 +277,15 @@ public class UserService {
 				.eq(UserDO::getId, req.getId())
 				.set(UserDO::getName, req.getName())
 				.set(UserDO::getLoginName, req.getLoginName())
+				.set(UserDO::getUpLimitRate, req.getUpLimitRate())
+				.set(UserDO::getDownLimitRate, req.getDownLimitRate())
+				.set(UserDO::getFlowQuota, req.getFlowQuota())
 				.set(UserDO::getUpdateTime, new Date())
 		);
+		invalidateTokenCache(req.getId());
+
+		// 刷新流量限制缓存
+		refreshFlowLimitCache(req.getId(), req.getUpLimitRate(), req.getDownLimitRate(), req.getFlowQuota());
 		return new UserUpdateRes();
 	}
 
@@ -204,13 +299,143 @@ public class UserService {
 
 		// 删除该用户所有token
 		userTokenMapper.deleteByUserId(req.getId());
+		invalidateTokenCache(req.getId());
 
 		return new UserUpdatePasswordRes();
 	}
 
 	public void delete(Integer id) {
 		userMapper.deleteById(id);
+		invalidateTokenCache(id);
 		// 更新VisitorChannel
 		visitorChannelService.updateVisitorChannelByUserId(id, EnableStatusEnum.DISABLE.getStatus());
+		// 删除流量限制缓存
+		flowLimitCache.remove(id);
+		flowLimitNodeMap.remove(id);
+	}
+
+	/**
+	 * 加载全部用户的流量限制
+	 */
+	@Init
+	public void init() {
+		// aot 阶段，不初始化
+		if (NativeDetector.isAotRuntime()) {
+			return;
+		}
+		List<UserDO> userDOList = userMapper.selectList(null);
+		if (null != userDOList) {
+			for (UserDO userDO : userDOList) {
+				refreshFlowLimitCache(userDO.getId(), userDO.getUpLimitRate(), userDO.getDownLimitRate(), userDO.getFlowQuota());
+			}
+		}
+	}
+
+	/**
+	 * 刷新流量限制缓存
+	 * @param id
+	 * @param upLimitRate
+	 * @param downLimitRate
+	 * @param flowQuota
+	 */
+	private void refreshFlowLimitCache(Integer id, String upLimitRate, String downLimitRate, String flowQuota) {
+		if (null == id) {
+			return;
+		}
+		FlowLimitBO flowLimitBO = new FlowLimitBO()
+			.setUpLimitRate(StringUtil.parseBytes(upLimitRate))
+			.setDownLimitRate(StringUtil.parseBytes(downLimitRate))
+			.setFlowQuota(StringUtil.parseBytes(flowQuota));
+		flowLimitCache.put(id, flowLimitBO);
+		// 已建立的连接立即按新的限速生效
+		FlowLimitNode flowLimitNode = flowLimitNodeMap.get(id);
+		if (null != flowLimitNode) {
+			flowLimitNode.setLimit(flowLimitBO.getUpLimitRate(), flowLimitBO.getDownLimitRate());
+		}
+	}
+
+	/**
+	 * 获取用户的流量限制
+	 * @param userId
+	 * @return
+	 */
+	public FlowLimitBO getFlowLimit(Integer userId) {
+		return flowLimitCache.get(userId);
+	}
+
+	/**
+	 * 获取用户的分层限速节点
+	 * @param userId
+	 * @return 用户不存在时返回null
+	 */
+	public FlowLimitNode getFlowLimitNode(Integer userId) {
+		FlowLimitNode flowLimitNode = flowLimitNodeMap.get(userId);
+		if (null != flowLimitNode) {
+			return flowLimitNode;
+		}
+		FlowLimitBO flowLimitBO = getFlowLimit(userId);
+		if (null == flowLimitBO) {
+			return null;
+		}
+		return flowLimitNodeMap.computeIfAbsent(userId, k -> new FlowLimitNode(flowLimitBO.getUpLimitRate(), flowLimitBO.getDownLimitRate()));
+	}
+
+	/**
+	 * 清理已过期的token缓存
+	 */
+	private void sweepTokenCache() {
+		long now = System.currentTimeMillis();
+		tokenSessionMap.values().removeIf(item -> item.expirationTime <= now);
+	}
+
+	@Override
+	public void start() throws Throwable {
+		// aot 阶段，不初始化
+		if (NativeDetector.isAotRuntime()) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "user-token-sweep");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				sweepTokenCache();
+			} catch (Exception e) {
+				log.error("[UserService] sweep token cache error", e);
+			}
+		}, TOKEN_SWEEP_INTERVAL_MILLIS, TOKEN_SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop() throws Throwable {
+		if (null == scheduler) {
+			return;
+		}
+		scheduler.shutdownNow();
+	}
+
+	private static class TokenSession {
+		private final UserDO user;
+		/**
+		 * 查库时间
+		 */
+		private final long loadTime;
+		/**
+		 * 内存中的过期时间，可能晚于库中的过期时间
+		 */
+		private volatile long expirationTime;
+		/**
+		 * 上次续期写库的时间
+		 */
+		private final AtomicLong persistTime;
+
+		private TokenSession(UserDO user, long loadTime, long expirationTime, long persistTime) {
+			this.user = user;
+			this.loadTime = loadTime;
+			this.expirationTime = expirationTime;
+			this.persistTime = new AtomicLong(persistTime);
+		}
 	}
 }
@@ -49,6 +49,8 @@ public class VisitorChannelService {
     private Bootstrap udpServerBootstrap;
     @Inject
     private ProxyMutualService proxyMutualService;
+    @Inject
+    private UdpSessionService udpSessionService;
     @Db
     private UserMapper userMapper;
     @Db
@@ -214,7 +216,10 @@ public class VisitorChannelService {
             // TODO 此处如果时UDP的visitorChannel,则不能close，后续重构考虑
 //            visitorChannel.close();
         }
+        // udp会话及其代理隧道
+        udpSessionService.removeByServerPort(portMappingDO.getServerPort());
         ProxyUtil.removeProxyInfo(portMappingDO.getServerPort());
+        proxyMutualService.unbindServerPort(portMappingDO.getLicenseId(), portMappingDO.getServerPort());
     }
 
     private void startUserPortServer(CmdChannelAttachInfo cmdChannelAttachInfo, List<PortMappingDO> portMappingList) {
@@ -0,0 +1,327 @@
+package org.dromara.neutrinoproxy.server.service;
+
+import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.solon.plugins.pagination.Page;
+import io.netty.util.internal.PlatformDependent;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.solon.annotation.Db;
+import org.dromara.neutrinoproxy.server.base.page.PageInfo;
+import org.dromara.neutrinoproxy.server.base.page.PageQuery;
+import org.dromara.neutrinoproxy.server.base.proxy.ProxyConfig;
+import org.dromara.neutrinoproxy.server.base.rest.SystemContextHolder;
+import org.dromara.neutrinoproxy.server.constant.NetworkProtocolEnum;
+import org.dromara.neutrinoproxy.server.controller.req.log.VisitorSessionRecordListReq;
+import org.dromara.neutrinoproxy.server.controller.res.log.VisitorSessionRecordListRes;
+import org.dromara.neutrinoproxy.server.dal.LicenseMapper;
+import org.dromara.neutrinoproxy.server.dal.UserMapper;
+import org.dromara.neutrinoproxy.server.dal.VisitorSessionRecordMapper;
+import org.dromara.neutrinoproxy.server.dal.entity.LicenseDO;
+import org.dromara.neutrinoproxy.server.dal.entity.UserDO;
+import org.dromara.neutrinoproxy.server.dal.entity.VisitorSessionRecordDO;
+import org.dromara.neutrinoproxy.server.proxy.domain.VisitorChannelAttachInfo;
+import org.dromara.neutrinoproxy.server.util.StringUtil;
+import org.noear.solon.annotation.Component;
+import org.noear.solon.annotation.Inject;
+import org.noear.solon.core.bean.LifecycleBean;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 访问者会话日志
+ * 访问者连接关闭时按采样率生成一条会话记录，投递到无锁的有界环形队列（多生产者单消费者），由后台线程批量写入数据库或按天滚动的文件。
+ * 转发线程只做一次入队，队列写满时直接丢弃并计数，不会阻塞
+ * @author: aoshiguchen
+ * @date: 2024/9/18
+ */
+@Slf4j
+@Component
+public class VisitorSessionLogService implements LifecycleBean {
+    private static final String SINK_FILE = "file";
+
+    @Db
+    private VisitorSessionRecordMapper visitorSessionRecordMapper;
+    @Db
+    private LicenseMapper licenseMapper;
+    @Db
+    private UserMapper userMapper;
+    @Inject
+    private ProxyConfig proxyConfig;
+
+    private volatile boolean enable;
+    private int sampleRate = 1;
+    private long alwaysLogBytes = Long.MAX_VALUE;
+    private int batchSize = 500;
+    private Queue<VisitorSessionRecordDO> ringBuffer;
+    private ScheduledExecutorService writer;
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder writtenCount = new LongAdder();
+
+    private BufferedWriter fileWriter;
+    private String fileDate;
+
+    /**
+     * 访问者连接关闭时调用，按采样率投递会话记录
+     * @param protocol
+     * @param attachInfo
+     * @param remoteAddress 访问者地址
+     * @param startTime 连接建立时间
+     * @param readBytes 从访问者读取的字节数
+     * @param writeBytes 写给访问者的字节数
+     */
+    public void publish(NetworkProtocolEnum protocol, VisitorChannelAttachInfo attachInfo, InetSocketAddress remoteAddress, long startTime, long readBytes, long writeBytes) {
+        if (!enable || null == attachInfo || null == remoteAddress) {
+            return;
+        }
+        if (sampleRate > 1 && readBytes + writeBytes < alwaysLogBytes && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        VisitorSessionRecordDO record = new VisitorSessionRecordDO()
+            .setLicenseId(attachInfo.getLicenseId())
+            .setProtocol(protocol.getDesc())
+            .setServerPort(attachInfo.getServerPort())
+            .setVisitorIp(null != attachInfo.getIp() ? attachInfo.getIp() : remoteAddress.getAddress().getHostAddress())
+            .setVisitorPort(remoteAddress.getPort())
+            .setStartTime(new Date(startTime))
+            .setDuration(now - startTime)
+            .setReadBytes(readBytes)
+            .setWriteBytes(writeBytes)
+            .setCreateTime(new Date(now));
+        if (ringBuffer.offer(record)) {
+            publishedCount.increment();
+        } else {
+            droppedCount.increment();
+        }
+    }
+
+    public PageInfo<VisitorSessionRecordListRes> page(PageQuery pageQuery, VisitorSessionRecordListReq req) {
+        Set<Integer> licenseIdScope = null;
+        if (!SystemContextHolder.isAdmin()) {
+            // 非管理员只能查看自己license下的会话
+            licenseIdScope = licenseMapper.listByUserId(SystemContextHolder.getUserId()).stream().map(LicenseDO::getId).collect(Collectors.toSet());
+            if (CollectionUtil.isEmpty(licenseIdScope)) {
+                return PageInfo.of(Collections.emptyList(), 0L, pageQuery.getCurrent(), pageQuery.getSize());
+            }
+        }
+        Page<VisitorSessionRecordDO> pageResult = visitorSessionRecordMapper.selectPage(new Page<>(pageQuery.getCurrent(), pageQuery.getSize()), new LambdaQueryWrapper<VisitorSessionRecordDO>()
+            .eq(null != req.getLicenseId(), VisitorSessionRecordDO::getLicenseId, req.getLicenseId())
+            .in(null != licenseIdScope, VisitorSessionRecordDO::getLicenseId, licenseIdScope)
+            .eq(null != req.getServerPort(), VisitorSessionRecordDO::getServerPort, req.getServerPort())
+            .eq(StrUtil.isNotBlank(req.getVisitorIp()), VisitorSessionRecordDO::getVisitorIp, StrUtil.trim(req.getVisitorIp()))
+            .orderByDesc(VisitorSessionRecordDO::getId)
+        );
+        List<VisitorSessionRecordListRes> respList = pageResult.getRecords().stream().map(VisitorSessionRecordDO::toRes).collect(Collectors.toList());
+        if (CollectionUtil.isEmpty(respList)) {
+            return PageInfo.of(respList, pageResult);
+        }
+        Set<Integer> licenseIds = respList.stream().map(VisitorSessionRecordListRes::getLicenseId).collect(Collectors.toSet());
+        List<LicenseDO> licenseList = licenseMapper.findByIds(licenseIds);
+        if (CollectionUtil.isEmpty(licenseList)) {
+            return PageInfo.of(respList, pageResult);
+        }
+        Set<Integer> userIds = licenseList.stream().map(LicenseDO::getUserId).collect(Collectors.toSet());
+        Map<Integer, LicenseDO> licenseMap = licenseList.stream().collect(Collectors.toMap(LicenseDO::getId, Function.identity()));
+        Map<Integer, UserDO> userMap = userMapper.findByIds(userIds).stream().collect(Collectors.toMap(UserDO::getId, Function.identity()));
+        respList.forEach(item -> {
+            LicenseDO license = licenseMap.get(item.getLicenseId());
+            if (null == license) {
+                return;
+            }
+            item.setLicenseName(license.getName());
+            item.setUserId(license.getUserId());
+            UserDO user = userMap.get(license.getUserId());
+            if (null != user) {
+                item.setUserName(user.getName());
+            }
+        });
+        return PageInfo.of(respList, pageResult);
+    }
+
+    /**
+     * 已投递的记录数
+     */
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+
+    /**
+     * 因缓冲区已满丢弃的记录数
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 已写入的记录数
+     */
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    /**
+     * 缓冲区中待写入的记录数
+     */
+    public int getPendingCount() {
+        return null == ringBuffer ? 0 : ringBuffer.size();
+    }
+
+    @Override
+    public void start() throws Throwable {
+        ProxyConfig.SessionLog config = proxyConfig.getServer().getSessionLog();
+        if (null == config || !Boolean.TRUE.equals(config.getEnable())) {
+            return;
+        }
+        sampleRate = Math.max(null == config.getSampleRate() ? 1 : config.getSampleRate(), 1);
+        Long bytes = StringUtil.parseBytes(config.getAlwaysLogBytes());
+        alwaysLogBytes = null == bytes ? Long.MAX_VALUE : bytes;
+        batchSize = Math.max(null == config.getBatchSize() ? 500 : config.getBatchSize(), 1);
+        int bufferSize = Math.max(null == config.getBufferSize() ? 8192 : config.getBufferSize(), 64);
+        int flushInterval = Math.max(null == config.getFlushInterval() ? 1000 : config.getFlushInterval(), 100);
+        ringBuffer = PlatformDependent.newFixedMpscQueue(bufferSize);
+
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "visitor-session-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (Throwable e) {
+                log.error("[VisitorSessionLog] write error", e);
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        enable = true;
+    }
+
+    @Override
+    public void stop() throws Throwable {
+        if (null == writer) {
+            return;
+        }
+        enable = false;
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        try {
+            drain();
+        } finally {
+            closeFile();
+        }
+    }
+
+    /**
+     * 取出缓冲区中的全部记录，分批写入
+     */
+    private synchronized void drain() {
+        List<VisitorSessionRecordDO> batch = new ArrayList<>(batchSize);
+        VisitorSessionRecordDO record;
+        while (null != (record = ringBuffer.poll())) {
+            batch.add(record);
+            if (batch.size() >= batchSize) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+        if (null != fileWriter) {
+            try {
+                fileWriter.flush();
+            } catch (IOException e) {
+                log.error("[VisitorSessionLog] flush file error", e);
+            }
+        }
+    }
+
+    private void write(List<VisitorSessionRecordDO> batch) {
+        try {
+            if (SINK_FILE.equalsIgnoreCase(proxyConfig.getServer().getSessionLog().getSink())) {
+                writeFile(batch);
+            } else {
+                visitorSessionRecordMapper.insertBatch(batch);
+            }
+            writtenCount.add(batch.size());
+        } catch (Exception e) {
+            // 写入失败的批次直接丢弃，避免堆积
+            droppedCount.add(batch.size());
+            log.error("[VisitorSessionLog] write batch error, size:{}", batch.size(), e);
+        }
+    }
+
+    /**
+     * 按天滚动写入文件，每行一条记录，字段以制表符分隔
+     */
+    private void writeFile(List<VisitorSessionRecordDO> batch) throws IOException {
+        String date = DateUtil.formatDate(new Date());
+        if (null == fileWriter || !date.equals(fileDate)) {
+            closeFile();
+            File dir = new File(proxyConfig.getServer().getSessionLog().getFileDir());
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("create dir failed: " + dir.getAbsolutePath());
+            }
+            fileWriter = Files.newBufferedWriter(new File(dir, "visitor-session-" + date + ".log").toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            fileDate = date;
+        }
+        for (VisitorSessionRecordDO record : batch) {
+            fileWriter.write(DateUtil.formatDateTime(record.getCreateTime()));
+            fileWriter.write('\t');
+            fileWriter.write(String.valueOf(record.getLicenseId()));
+            fileWriter.write('\t');
+            fileWriter.write(record.getProtocol());
+            fileWriter.write('\t');
+            fileWriter.write(String.valueOf(record.getServerPort()));
+            fileWriter.write('\t');
+            fileWriter.write(record.getVisitorIp());
+            fileWriter.write('\t');
+            fileWriter.write(String.valueOf(record.getVisitorPort()));
+            fileWriter.write('\t');
+            fileWriter.write(DateUtil.formatDateTime(record.getStartTime()));
+            fileWriter.write('\t');
+            fileWriter.write(String.valueOf(record.getDuration()));
+            fileWriter.write('\t');
+            fileWriter.write(String.valueOf(record.getReadBytes()));
+            fileWriter.write('\t');
+            fileWriter.write(String.valueOf(record.getWriteBytes()));
+            fileWriter.newLine();
+        }
+    }
+
+    private void closeFile() {
+        if (null == fileWriter) {
+            return;
+        }
+        try {
+            fileWriter.close();
+        } catch (IOException e) {
+            log.error("[VisitorSessionLog] close file error", e);
+        }
+        fileWriter = null;
+        fileDate = null;
+    }
+}
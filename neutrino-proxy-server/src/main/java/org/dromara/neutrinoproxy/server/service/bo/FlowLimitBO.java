@@ -12,4 +12,8 @@ import lombok.experimental.Accessors;
 public class FlowLimitBO {
     private Long upLimitRate;
     private Long downLimitRate;
+    /**
+     * 月流量配额（字节），为空表示不限
+     */
+    private Long flowQuota;
 }
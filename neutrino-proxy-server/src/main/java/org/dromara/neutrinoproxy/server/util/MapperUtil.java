@@ -0,0 +1,45 @@
+package org.dromara.neutrinoproxy.server.util;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * mapper通用操作
+ * @author: aoshiguchen
+ * @date: 2024/10/8
+ */
+public class MapperUtil {
+
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     * @param mapper 数据表对应的mapper
+     * @param idColumn 主键列
+     * @param timeColumn 判断过期的时间列
+     * @param date 早于该时间的数据视为过期
+     * @param limit 每批最多删除的行数
+     */
+    public static <T> int clean(BaseMapper<T> mapper, SFunction<T, ?> idColumn, SFunction<T, ?> timeColumn, Date date, int limit) {
+        return clean(mapper, new LambdaQueryWrapper<>(), idColumn, timeColumn, date, limit);
+    }
+
+    /**
+     * 按主键顺序删除一批过期数据，返回删除的行数
+     * @param wrapper 附加的过滤条件
+     */
+    public static <T> int clean(BaseMapper<T> mapper, LambdaQueryWrapper<T> wrapper, SFunction<T, ?> idColumn, SFunction<T, ?> timeColumn, Date date, int limit) {
+        List<Object> ids = mapper.selectObjs(wrapper
+                .select(idColumn)
+                .lt(timeColumn, date)
+                .orderByAsc(idColumn)
+                .last("limit " + limit)
+        );
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return mapper.deleteBatchIds(ids);
+    }
+}
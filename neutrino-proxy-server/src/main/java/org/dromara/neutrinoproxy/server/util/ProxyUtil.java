@@ -59,7 +59,7 @@ public class ProxyUtil {
 	/**
 	 * 代理 - connect附加映射
 	 */
-	private static Map<String, ProxyAttachment> proxyConnectAttachmentMap = new HashMap<>();
+	private static Map<String, ProxyAttachment> proxyConnectAttachmentMap = new ConcurrentHashMap<>();
 	/**
 	 * 完整域名 - 服务端端口映射
 	 */
@@ -200,6 +200,14 @@ public class ProxyUtil {
 		return licenseToCmdChannelMap.get(licenseId);
 	}
 
+	/**
+	 * 获取所有在线license的指令通道
+	 * @return
+	 */
+	public static Map<Integer, Channel> getLicenseToCmdChannelMap() {
+		return Collections.unmodifiableMap(licenseToCmdChannelMap);
+	}
+
 	/**
 	 * 增加用户连接与代理客户端连接关系
 	 *
@@ -291,6 +299,25 @@ public class ProxyUtil {
 		return ((CmdChannelAttachInfo)getAttachInfo(cmdChannel)).getVisitorChannelMap();
 	}
 
+	/**
+	 * 获取代理控制客户端连接绑定的所有用户连接的快照，可在遍历时关闭连接
+	 *
+	 * @param cmdChannel
+	 * @return
+	 */
+	public static List<Channel> getVisitorChannelList(Channel cmdChannel) {
+		Map<String, Channel> visitorChannelMap = getVisitorChannels(cmdChannel);
+		if (null == visitorChannelMap) {
+			return Collections.emptyList();
+		}
+		userChannelMapLock.readLock().lock();
+		try {
+			return new ArrayList<>(visitorChannelMap.values());
+		} finally {
+			userChannelMapLock.readLock().unlock();
+		}
+	}
+
 	private static void setAttachInfo(Channel channel, Object obj) {
 		if (null == channel) {
 			return;
@@ -342,6 +369,14 @@ public class ProxyUtil {
 		proxyConnectAttachmentMap.remove(visitorId);
 	}
 
+	/**
+	 * 等待客户端建立连接的访问者数量
+	 * @return
+	 */
+	public static int getProxyConnectAttachmentCount() {
+		return proxyConnectAttachmentMap.size();
+	}
+
 	/**
 	 * 设置完整域名到服务端端口的映射
 	 * @param fullDomain
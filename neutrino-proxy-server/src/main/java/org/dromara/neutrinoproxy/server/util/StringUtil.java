@@ -10,12 +10,13 @@ import java.util.regex.Pattern;
  * @date: 2023/12/15
  */
 public class StringUtil {
-    private static final Integer BYTES_MUL_KB = 1024;
-    private static final Integer BYTES_MUL_MB = BYTES_MUL_KB * 1024;
-    private static final Integer BYTES_MUL_GB = BYTES_MUL_MB * 1024;
-    private static final String[] BYTES_UNIT_STR = {"B", "K", "KB", "M", "MB", "G", "GB"};
-    private static final Integer[] BYTES_UNIT_MUL = {1, BYTES_MUL_KB, BYTES_MUL_KB, BYTES_MUL_MB, BYTES_MUL_MB, BYTES_MUL_GB, BYTES_MUL_GB};
-    private static final String BYTES_DESC_REGEX = "\\s*(\\d+\\.*\\d*)\\s*(B|K|KB|M|MB|G|GB)\\s*";
+    private static final Long BYTES_MUL_KB = 1024L;
+    private static final Long BYTES_MUL_MB = BYTES_MUL_KB * 1024;
+    private static final Long BYTES_MUL_GB = BYTES_MUL_MB * 1024;
+    private static final Long BYTES_MUL_TB = BYTES_MUL_GB * 1024;
+    private static final String[] BYTES_UNIT_STR = {"B", "K", "KB", "M", "MB", "G", "GB", "T", "TB"};
+    private static final Long[] BYTES_UNIT_MUL = {1L, BYTES_MUL_KB, BYTES_MUL_KB, BYTES_MUL_MB, BYTES_MUL_MB, BYTES_MUL_GB, BYTES_MUL_GB, BYTES_MUL_TB, BYTES_MUL_TB};
+    private static final String BYTES_DESC_REGEX = "\\s*(\\d+\\.*\\d*)\\s*(B|K|KB|M|MB|G|GB|T|TB)\\s*";
     private static final Pattern BYTES_DESC_PATTERN = Pattern.compile(BYTES_DESC_REGEX);
 
     /**
@@ -32,7 +33,7 @@ public class StringUtil {
 
     /**
      * 解析字节数
-     * 支持B、K、KB、M、MB、G、GB 忽略大小写、忽略首尾空格、忽略数字与单位之间的空格
+     * 支持B、K、KB、M、MB、G、GB、T、TB 忽略大小写、忽略首尾空格、忽略数字与单位之间的空格
      * @param desc
      * @return
      */
@@ -6,6 +6,9 @@ CREATE TABLE IF NOT EXISTS `user` (
   `login_name` VARCHAR(50) NOT NULL,
   `login_password` VARCHAR(255) NOT NULL,
   `enable` INTEGER(2) NOT NULL,
+  `up_limit_rate` VARCHAR(20) DEFAULT NULL,
+  `down_limit_rate` VARCHAR(20) DEFAULT NULL,
+  `flow_quota` VARCHAR(20) DEFAULT NULL,
   `create_time` TIMESTAMP NOT NULL,
   `update_time` TIMESTAMP NOT NULL
 );
@@ -54,6 +57,8 @@ CREATE TABLE IF NOT EXISTS `security_group` (
     `user_id` INTEGER NOT NULL,
     `enable` INTEGER NOT NULL,
     `default_pass_type` INTEGER NOT NULL,
+    `ip_connect_limit` INTEGER DEFAULT NULL,
+    `ip_packet_limit` INTEGER DEFAULT NULL,
     `create_time` TIMESTAMP NOT NULL,
     `update_time` TIMESTAMP NOT NULL,
     PRIMARY KEY (`id`)
@@ -85,6 +90,9 @@ CREATE TABLE IF NOT EXISTS `license` (
     `user_id` INTEGER NOT NULL,
     `up_limit_rate` VARCHAR(20) DEFAULT NULL,
     `down_limit_rate` VARCHAR(20) DEFAULT NULL,
+    `flow_quota` VARCHAR(20) DEFAULT NULL,
+    `quota_used_bytes` BIGINT DEFAULT NULL,
+    `quota_month` VARCHAR(7) DEFAULT NULL,
     `is_online` INTEGER(2) NOT NULL,
     `enable` INTEGER(2) NOT NULL,
     `create_time` TIMESTAMP NOT NULL,
@@ -254,3 +262,35 @@ CREATE INDEX IF NOT EXISTS I_flow_report_month_create_time ON flow_report_month(
 CREATE INDEX IF NOT EXISTS I_flow_report_month_date ON flow_report_month(`date`);
 CREATE INDEX IF NOT EXISTS I_flow_report_month_user_id ON flow_report_month(`user_id`);
 CREATE INDEX IF NOT EXISTS I_flow_report_month_license_id ON flow_report_month(`license_id`);
+
+#访问者会话记录
+CREATE TABLE IF NOT EXISTS `visitor_session_record` (
+    `id` BIGINT NOT NULL PRIMARY KEY AUTO_INCREMENT,
+    `license_id` INTEGER(20) NOT NULL,
+    `protocol` VARCHAR(10) NOT NULL,
+    `server_port` INTEGER(10) NOT NULL,
+    `visitor_ip` VARCHAR(50) NOT NULL,
+    `visitor_port` INTEGER(10) NOT NULL,
+    `start_time` TIMESTAMP NOT NULL,
+    `duration` bigint NOT NULL,
+    `read_bytes` bigint NOT NULL,
+    `write_bytes` bigint NOT NULL,
+    `create_time` TIMESTAMP NOT NULL
+);
+CREATE INDEX IF NOT EXISTS I_visitor_session_record_create_time ON visitor_session_record(create_time);
+CREATE INDEX IF NOT EXISTS I_visitor_session_record_license_id ON visitor_session_record(`license_id`);
+CREATE INDEX IF NOT EXISTS I_visitor_session_record_visitor_ip ON visitor_session_record(`visitor_ip`);
+
+CREATE TABLE IF NOT EXISTS `unique_visitor_report` (
+    `id` INTEGER NOT NULL PRIMARY KEY AUTO_INCREMENT,
+    `period` VARCHAR(10) NOT NULL,
+    `dimension` VARCHAR(10) NOT NULL,
+    `dim_key` VARCHAR(100) NOT NULL,
+    `uv` bigint NOT NULL,
+    `registers` VARBINARY(4096) NOT NULL,
+    `date` TIMESTAMP NOT NULL,
+    `date_str` VARCHAR(20) NOT NULL,
+    `create_time` TIMESTAMP NOT NULL
+);
+CREATE INDEX IF NOT EXISTS I_unique_visitor_report_date ON unique_visitor_report(`period`, `date`);
+CREATE INDEX IF NOT EXISTS I_unique_visitor_report_dim ON unique_visitor_report(`period`, `dimension`, `dim_key`, `date_str`);
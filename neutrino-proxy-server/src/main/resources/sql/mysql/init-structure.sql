@@ -6,6 +6,9 @@ CREATE TABLE IF NOT EXISTS `user` (
     `login_name` varchar(50) NOT NULL COMMENT '登录名',
     `login_password` varchar(255) NOT NULL COMMENT '登录密码',
     `enable` int NOT NULL COMMENT '是否启用(1、启用 2、禁用)',
+    `up_limit_rate` varchar(20) DEFAULT NULL COMMENT '上传限速',
+    `down_limit_rate` varchar(20) DEFAULT NULL COMMENT '下载限速',
+    `flow_quota` varchar(20) DEFAULT NULL COMMENT '月流量配额',
     `create_time` datetime(3) NOT NULL COMMENT '创建时间',
     `update_time` datetime(3) NOT NULL COMMENT '更新时间',
     PRIMARY KEY (`id`),
@@ -58,6 +61,8 @@ CREATE TABLE IF NOT EXISTS `security_group` (
     `user_id` int NOT NULL COMMENT '用户ID',
     `enable` int NOT NULL COMMENT '是否启用(1、启用 2、禁用)',
     `default_pass_type` int NOT NULL COMMENT '默认放行类型',
+    `ip_connect_limit` int DEFAULT NULL COMMENT '单个来源IP每秒新建tcp连接数限制',
+    `ip_packet_limit` int DEFAULT NULL COMMENT '单个来源IP每秒udp包数限制',
     `create_time` datetime(3) NOT NULL COMMENT '创建时间',
     `update_time` datetime(3) NOT NULL COMMENT '更新时间',
     PRIMARY KEY (`id`)
@@ -89,6 +94,9 @@ CREATE TABLE IF NOT EXISTS `license` (
     `user_id` int NOT NULL COMMENT '用户ID',
     `up_limit_rate` varchar(20) DEFAULT NULL COMMENT '上传限速',
     `down_limit_rate` varchar(20) DEFAULT NULL COMMENT '下载限速',
+    `flow_quota` varchar(20) DEFAULT NULL COMMENT '月流量配额',
+    `quota_used_bytes` bigint DEFAULT NULL COMMENT '当月已用流量（字节）',
+    `quota_month` varchar(7) DEFAULT NULL COMMENT '已用流量所属月份(yyyy-MM)',
     `is_online` int NOT NULL COMMENT '是否在线（1、在线 2、离线）',
     `enable` int NOT NULL COMMENT '是否启用(1、启用 2、禁用)',
     `create_time` datetime(3) NOT NULL COMMENT '创建时间',
@@ -270,3 +278,36 @@ CREATE TABLE IF NOT EXISTS `flow_report_month` (
     KEY `I_flow_report_month_license_id` (`license_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+#访问者会话记录
+CREATE TABLE IF NOT EXISTS `visitor_session_record` (
+    `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+    `license_id` int NOT NULL COMMENT 'licenseId',
+    `protocol` varchar(10) NOT NULL COMMENT '协议',
+    `server_port` int NOT NULL COMMENT '服务端端口',
+    `visitor_ip` varchar(50) NOT NULL COMMENT '访问者IP',
+    `visitor_port` int NOT NULL COMMENT '访问者端口',
+    `start_time` datetime(3) NOT NULL COMMENT '连接建立时间',
+    `duration` bigint NOT NULL COMMENT '连接时长（毫秒）',
+    `read_bytes` bigint NOT NULL COMMENT '上行字节数',
+    `write_bytes` bigint NOT NULL COMMENT '下行字节数',
+    `create_time` datetime(3) NOT NULL COMMENT '连接关闭时间',
+    PRIMARY KEY (`id`),
+    KEY `I_visitor_session_record_create_time` (`create_time`) USING BTREE,
+    KEY `I_visitor_session_record_license_id` (`license_id`),
+    KEY `I_visitor_session_record_visitor_ip` (`visitor_ip`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS `unique_visitor_report` (
+    `id` int NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+    `period` varchar(10) NOT NULL COMMENT '统计周期：hour、day、month',
+    `dimension` varchar(10) NOT NULL COMMENT '统计维度：mapping、domain',
+    `dim_key` varchar(100) NOT NULL COMMENT '服务端端口或完整域名',
+    `uv` bigint NOT NULL COMMENT '独立访客数（估计值）',
+    `registers` blob NOT NULL COMMENT 'HyperLogLog寄存器',
+    `date` datetime NOT NULL COMMENT '报表统计时间',
+    `date_str` varchar(20) NOT NULL COMMENT '报表统计时间',
+    `create_time` datetime NOT NULL COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    KEY `I_unique_visitor_report_date` (`period`, `date`),
+    KEY `I_unique_visitor_report_dim` (`period`, `dimension`, `dim_key`, `date_str`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;